@@ -0,0 +1,103 @@
+#!/usr/bin/env bash
+#
+# Compare request throughput and latency with platform threads vs virtual threads.
+#
+# Starts the packaged jar once per thread mode, drives the same load against the
+# same endpoints with `hey` (https://github.com/rakyll/hey), and writes one summary
+# line per endpoint, mode and concurrency level.
+#
+# Usage:
+#   ./mvnw clean package -DskipTests
+#   TOKEN=<jwt> ./benchmark/thread-mode-benchmark.sh
+#
+# Options (environment variables):
+#   TOKEN          JWT sent as the Bearer token (required; the endpoints are authenticated)
+#   JAR            Jar to run (default: target/GrabTrash-0.0.1-SNAPSHOT.jar)
+#   PORT           Port for the app under test (default: 8085)
+#   ENDPOINTS      Space-separated paths to hit (default: payment list and dashboard stats)
+#   CONCURRENCY    Space-separated client concurrency levels (default: "50 200 800")
+#   DURATION       Load duration per run (default: 30s)
+#   TOMCAT_THREADS Platform-thread pool size for the platform run (default: 200, the Tomcat default)
+#   OUT            Results file (default: benchmark/results-<timestamp>.csv)
+#
+# Virtual threads need a Java 21+ runtime; on older runtimes Spring Boot ignores the
+# setting and both runs use the platform pool.
+
+set -euo pipefail
+
+cd "$(dirname "$0")/.."
+
+: "${TOKEN:?Set TOKEN to a valid JWT}"
+JAR="${JAR:-target/GrabTrash-0.0.1-SNAPSHOT.jar}"
+PORT="${PORT:-8085}"
+ENDPOINTS="${ENDPOINTS:-/api/payments /api/payments/dashboard/stats}"
+CONCURRENCY="${CONCURRENCY:-50 200 800}"
+DURATION="${DURATION:-30s}"
+TOMCAT_THREADS="${TOMCAT_THREADS:-200}"
+OUT="${OUT:-benchmark/results-$(date +%Y%m%d-%H%M%S).csv}"
+
+command -v hey >/dev/null || { echo "hey is required: go install github.com/rakyll/hey@latest" >&2; exit 1; }
+[ -f "$JAR" ] || { echo "Jar not found: $JAR (run ./mvnw clean package -DskipTests)" >&2; exit 1; }
+
+APP_PID=""
+stop_app() {
+    if [ -n "$APP_PID" ] && kill -0 "$APP_PID" 2>/dev/null; then
+        kill "$APP_PID"
+        wait "$APP_PID" 2>/dev/null || true
+    fi
+    APP_PID=""
+}
+trap stop_app EXIT
+
+start_app() {
+    local virtual="$1"
+    VIRTUAL_THREADS_ENABLED="$virtual" java -jar "$JAR" \
+        --server.port="$PORT" \
+        --server.tomcat.threads.max="$TOMCAT_THREADS" \
+        --logging.level.root=WARN \
+        --logging.level.com.capstone.GrabTrash=WARN \
+        > "benchmark/app-virtual-$virtual.log" 2>&1 &
+    APP_PID=$!
+
+    # Wait until the app answers (any HTTP status means it is up)
+    for _ in $(seq 1 120); do
+        if curl -s -o /dev/null "http://localhost:$PORT/error"; then
+            return 0
+        fi
+        sleep 1
+    done
+    echo "App did not start; see benchmark/app-virtual-$virtual.log" >&2
+    exit 1
+}
+
+run_load() {
+    local mode="$1" endpoint="$2" concurrency="$3"
+    local report
+    report=$(hey -z "$DURATION" -c "$concurrency" \
+        -H "Authorization: Bearer $TOKEN" \
+        "http://localhost:$PORT$endpoint")
+
+    local rps p50 p99 errors
+    rps=$(echo "$report" | awk '/Requests\/sec/ {print $2}')
+    p50=$(echo "$report" | awk '/ 50% in/ {print $3}')
+    p99=$(echo "$report" | awk '/ 99% in/ {print $3}')
+    errors=$(echo "$report" | awk '/^  \[[0-9]+\]/ && $1 != "[200]" {sum += $2} END {print sum + 0}')
+    echo "$mode,$endpoint,$concurrency,$rps,$p50,$p99,$errors" | tee -a "$OUT"
+}
+
+echo "mode,endpoint,concurrency,requests_per_sec,p50_sec,p99_sec,non_200" | tee "$OUT"
+
+for virtual in false true; do
+    mode=$([ "$virtual" = "true" ] && echo "virtual" || echo "platform")
+    start_app "$virtual"
+    for endpoint in $ENDPOINTS; do
+        # Warm up caches, listeners and the JIT before measuring
+        hey -z 10s -c 20 -H "Authorization: Bearer $TOKEN" "http://localhost:$PORT$endpoint" > /dev/null
+        for concurrency in $CONCURRENCY; do
+            run_load "$mode" "$endpoint" "$concurrency"
+        done
+    done
+    stop_app
+done
+
+echo "Results written to $OUT"
@@ -1,15 +1,23 @@
 package com.capstone.GrabTrash.config;
 
+import com.capstone.GrabTrash.service.CurrentUserContext;
+import com.capstone.GrabTrash.service.CustomUserDetailsService;
 import com.capstone.GrabTrash.service.JwtService;
+import com.capstone.GrabTrash.service.RoleChangeTracker;
+import com.capstone.GrabTrash.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -19,22 +27,34 @@ import java.util.Arrays;
 import java.util.List;
 
 @Component
+@Slf4j
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
     private final UserDetailsService userDetailsService;
+    private final RoleChangeTracker roleChangeTracker;
+    private final TokenRevocationService tokenRevocationService;
+    // "claims" builds the authentication from the verified token; "lookup" loads the user from Firestore
+    private final boolean claimsAuthentication;
     private final List<String> PUBLIC_PATHS = Arrays.asList(
         "/api/users/register",
         "/api/users/login",
+        "/api/users/refresh-token",
         "/api/users/security-questions",
         "/api/users/forgot-password/reset",
         "/api/users/forgot-password/question",
         "api/barangays"
     );
 
-    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService) {
+    public JwtAuthenticationFilter(JwtService jwtService, UserDetailsService userDetailsService,
+                                   RoleChangeTracker roleChangeTracker,
+                                   TokenRevocationService tokenRevocationService,
+                                   @Value("${jwt.authentication.mode:claims}") String authenticationMode) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.roleChangeTracker = roleChangeTracker;
+        this.tokenRevocationService = tokenRevocationService;
+        this.claimsAuthentication = "claims".equalsIgnoreCase(authenticationMode);
     }
 
     @Override
@@ -57,42 +77,104 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         final String authHeader = request.getHeader("Authorization");
-        System.out.println("Auth header: " + (authHeader != null ? "present" : "missing")); // Debug log
 
         if (authHeader == null || !authHeader.startsWith("Bearer ")) {
-            System.out.println("No valid Bearer token found"); // Debug log
+            log.debug("No bearer token on {} {}", method, path);
             filterChain.doFilter(request, response);
             return;
         }
 
         try {
             final String jwt = authHeader.substring(7);
-            final String userEmail = jwtService.extractUsername(jwt);
-            System.out.println("Extracted email from token: " + userEmail); // Debug log
-
-            if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
-                System.out.println("Loaded user details for: " + userEmail); // Debug log
-
-                if (jwtService.isTokenValid(jwt, userDetails)) {
-                    System.out.println("Token is valid"); // Debug log
-                    UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                            userDetails,
-                            null,
-                            userDetails.getAuthorities());
-
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                } else {
-                    System.out.println("Token validation failed"); // Debug log
-                }
-            }
+            // Parse and verify the token once; everything below works on these claims
+            final Claims claims = jwtService.extractAllClaims(jwt);
+
+            authenticate(request, claims);
+        } catch (UsernameNotFoundException e) {
+            // The message names the user, so it stays out of the log
+            log.warn("Rejected JWT on {} {}: the token's user was not found", method, path);
         } catch (Exception e) {
-            // Log the error but don't throw it
-            System.err.println("Error processing JWT token: " + e.getMessage()); // Enhanced error log
-            e.printStackTrace();
+            // The request continues unauthenticated; secured endpoints reject it further down the chain
+            log.warn("Rejected JWT on {} {}: {}", method, path, e.getMessage());
         }
 
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Put the token's user in the security context, unless it is a refresh token or revoked.
+     * The caller runs the filter chain either way.
+     * @param request Current request
+     * @param claims Verified token claims
+     */
+    private void authenticate(HttpServletRequest request, Claims claims) {
+        // Refresh tokens only work on the refresh endpoint, and revoked tokens not at all
+        if (jwtService.isRefreshToken(claims) || tokenRevocationService.isRevoked(claims)) {
+            return;
+        }
+
+        // Lets CurrentUserContext answer getUserId() without loading the user
+        String userId = claims.get("userId", String.class);
+        if (userId != null) {
+            request.setAttribute(CurrentUserContext.USER_ID_ATTRIBUTE, userId);
+        }
+
+        // Tokens without a role claim fall through to the Firestore lookup
+        UserDetails claimsUser = claimsAuthentication ? userDetailsFromClaims(claims) : null;
+        if (claimsUser != null) {
+            if (SecurityContextHolder.getContext().getAuthentication() == null) {
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        claimsUser,
+                        null,
+                        claimsUser.getAuthorities());
+
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            }
+            return;
+        }
+
+        final String userEmail = claims.getSubject();
+
+        if (userEmail != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            UserDetails userDetails = this.userDetailsService.loadUserByUsername(userEmail);
+
+            if (jwtService.isTokenValid(claims, userDetails)) {
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        userDetails,
+                        null,
+                        userDetails.getAuthorities());
+
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+            } else {
+                log.debug("Token for user {} failed validation against the loaded user", userId);
+            }
+        }
+    }
+
+    /**
+     * Build the principal from verified token claims without touching Firestore.
+     * If the role was changed after the token was issued, the new role replaces the one in the token.
+     * @param claims Verified token claims
+     * @return User details, or null if the token does not carry a subject and role
+     */
+    private UserDetails userDetailsFromClaims(Claims claims) {
+        String email = claims.getSubject();
+        String role = claims.get("role", String.class);
+        if (email == null || role == null) {
+            return null;
+        }
+
+        String changedRole = roleChangeTracker.getRoleChangedSince(email, JwtService.issuedAtMillis(claims));
+        if (changedRole != null) {
+            role = changedRole;
+        }
+
+        return new org.springframework.security.core.userdetails.User(
+            email,
+            "",
+            CustomUserDetailsService.authoritiesFor(role)
+        );
+    }
 }
@@ -1,27 +1,27 @@
 package com.capstone.GrabTrash.config;
 
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
-import org.springframework.context.annotation.Bean;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 
-import java.security.Key;
-
+/**
+ * JWT settings. Signing keys live in {@link JwtKeyRing}.
+ */
 @Configuration
 public class JwtConfig {
-    private final Key key;
-    private final long expiration = 86400000; // 24 hours in milliseconds
-
-    public JwtConfig() {
-        // Generate a secure key for HMAC-SHA256
-        this.key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
-    }
+    private final long expiration;
+    private final long refreshExpiration;
 
-    public Key getKey() {
-        return key;
+    public JwtConfig(@Value("${jwt.expiration:900000}") long expiration,
+                     @Value("${jwt.refresh-expiration:604800000}") long refreshExpiration) {
+        this.expiration = expiration; // Access tokens: 15 minutes in milliseconds by default
+        this.refreshExpiration = refreshExpiration; // Refresh tokens: 7 days in milliseconds by default
     }
 
     public long getExpiration() {
         return expiration;
     }
+
+    public long getRefreshExpiration() {
+        return refreshExpiration;
+    }
 } 
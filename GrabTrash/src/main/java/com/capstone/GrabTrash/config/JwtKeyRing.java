@@ -0,0 +1,319 @@
+package com.capstone.GrabTrash.config;
+
+import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Ring of HMAC keys used to sign and verify JWTs. Tokens carry the ID of their signing key in the
+ * "kid" header, and every key in the ring is accepted for verification, so keys can be rotated without
+ * invalidating sessions and every instance sharing the ring accepts every other instance's tokens.
+ *
+ * Keys come from configuration (jwt.keys / jwt.secret) and from a PKCS12 keystore file (jwt.keystore.path).
+ * The keystore is re-read on a schedule; with rotation enabled, this instance also adds a new signing key
+ * to it once the current one is older than the rotation interval and drops keys no token can still use.
+ */
+@Component
+public class JwtKeyRing {
+
+    private static final Logger log = LoggerFactory.getLogger(JwtKeyRing.class);
+
+    private static final String SECRET_KEY_ID = "default";
+    private static final String EPHEMERAL_KEY_ID = "ephemeral";
+    private static final String KEYSTORE_TYPE = "PKCS12";
+
+    private final JwtConfig jwtConfig;
+    private final String configuredKeys;
+    private final String configuredSecret;
+    private final String configuredSigningKeyId;
+    private final String keystorePath;
+    private final char[] keystorePassword;
+    private final boolean rotationEnabled;
+    private final long rotationInterval;
+
+    // Replaced wholesale on every reload, so readers never see a half-built ring
+    private volatile Ring ring;
+    private volatile long lastUnknownKeyReload = 0;
+
+    public JwtKeyRing(JwtConfig jwtConfig,
+                      @Value("${jwt.keys:}") String configuredKeys,
+                      @Value("${jwt.secret:}") String configuredSecret,
+                      @Value("${jwt.signing-key-id:}") String configuredSigningKeyId,
+                      @Value("${jwt.keystore.path:}") String keystorePath,
+                      @Value("${jwt.keystore.password:}") String keystorePassword,
+                      @Value("${jwt.keys.rotation.enabled:false}") boolean rotationEnabled,
+                      @Value("${jwt.keys.rotation-interval:604800000}") long rotationInterval) {
+        this.jwtConfig = jwtConfig;
+        this.configuredKeys = configuredKeys;
+        this.configuredSecret = configuredSecret;
+        this.configuredSigningKeyId = configuredSigningKeyId;
+        this.keystorePath = keystorePath;
+        if (hasKeystore() && (keystorePassword == null || keystorePassword.isEmpty())) {
+            throw new IllegalStateException("A JWT keystore is configured but no password is set. Set JWT_KEYSTORE_PASSWORD.");
+        }
+        this.keystorePassword = keystorePassword != null ? keystorePassword.toCharArray() : new char[0];
+        this.rotationEnabled = rotationEnabled;
+        this.rotationInterval = rotationInterval;
+
+        if (rotationEnabled && !hasKeystore()) {
+            log.warn("JWT key rotation is enabled but no keystore is configured; rotation is disabled");
+        }
+        if (hasKeystore() && !Files.exists(Paths.get(keystorePath))) {
+            createKeystore();
+        }
+        reload();
+    }
+
+    /**
+     * Get the ID of the key new tokens are signed with
+     * @return Key ID for the "kid" header
+     */
+    public String getSigningKeyId() {
+        return ring.signingKeyId;
+    }
+
+    /**
+     * Get the key new tokens are signed with
+     * @return Signing key
+     */
+    public Key getSigningKey() {
+        return ring.keys.get(ring.signingKeyId);
+    }
+
+    /**
+     * Get the key that verifies a token
+     * @param keyId "kid" header of the token, or null for tokens issued without one
+     * @return Verification key, or null if the key is not in the ring
+     */
+    public Key getVerificationKey(String keyId) {
+        if (keyId == null) {
+            return getSigningKey();
+        }
+        Key key = ring.keys.get(keyId);
+        if (key == null && hasKeystore()) {
+            // Another instance may have just rotated; re-read the keystore, at most once per second
+            long now = System.currentTimeMillis();
+            if (now - lastUnknownKeyReload > 1000) {
+                lastUnknownKeyReload = now;
+                reload();
+                key = ring.keys.get(keyId);
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Re-read the keystore so keys added or removed by other instances take effect
+     */
+    @Scheduled(fixedDelayString = "${jwt.keys.reload-interval:60000}", initialDelayString = "${jwt.keys.reload-interval:60000}")
+    public void scheduledReload() {
+        if (!hasKeystore()) {
+            return;
+        }
+        if (rotationEnabled) {
+            rotateIfDue();
+        }
+        reload();
+    }
+
+    /**
+     * Rebuild the ring from configuration and the keystore
+     */
+    public synchronized void reload() {
+        Map<String, SecretKey> keys = new LinkedHashMap<>();
+        String newestKeystoreKeyId = null;
+        String lastConfiguredKeyId = null;
+
+        if (configuredSecret != null && !configuredSecret.isEmpty()) {
+            keys.put(SECRET_KEY_ID, Keys.hmacShaKeyFor(configuredSecret.getBytes(StandardCharsets.UTF_8)));
+            lastConfiguredKeyId = SECRET_KEY_ID;
+        }
+
+        if (configuredKeys != null && !configuredKeys.isEmpty()) {
+            for (String entry : configuredKeys.split(",")) {
+                String[] parts = entry.trim().split(":", 2);
+                if (parts.length != 2 || parts[0].isEmpty()) {
+                    log.warn("Ignoring malformed jwt.keys entry (expected kid:base64-secret)");
+                    continue;
+                }
+                keys.put(parts[0], Keys.hmacShaKeyFor(Base64.getDecoder().decode(parts[1].trim())));
+                lastConfiguredKeyId = parts[0];
+            }
+        }
+
+        if (hasKeystore()) {
+            try {
+                KeyStore keyStore = loadKeystore();
+                Date newest = null;
+                Enumeration<String> aliases = keyStore.aliases();
+                while (aliases.hasMoreElements()) {
+                    String alias = aliases.nextElement();
+                    Key key = keyStore.getKey(alias, keystorePassword);
+                    if (key instanceof SecretKey) {
+                        keys.put(alias, (SecretKey) key);
+                        Date created = keyStore.getCreationDate(alias);
+                        if (newest == null || (created != null && created.after(newest))) {
+                            newest = created;
+                            newestKeystoreKeyId = alias;
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Failed to load JWT keystore {}: {}", keystorePath, e.getMessage());
+                if (ring != null) {
+                    // Keep serving with the keys we already have
+                    return;
+                }
+            }
+        }
+
+        String signingKeyId;
+        if (configuredSigningKeyId != null && !configuredSigningKeyId.isEmpty() && keys.containsKey(configuredSigningKeyId)) {
+            signingKeyId = configuredSigningKeyId;
+        } else if (newestKeystoreKeyId != null) {
+            signingKeyId = newestKeystoreKeyId;
+        } else {
+            signingKeyId = lastConfiguredKeyId;
+        }
+
+        if (signingKeyId == null) {
+            if (ring != null && ring.keys.containsKey(EPHEMERAL_KEY_ID)) {
+                return;
+            }
+            log.warn("No JWT signing keys configured; using a random key. Tokens will not survive a restart " +
+                    "or work across instances. Set JWT_SECRET, JWT_KEYS or JWT_KEYSTORE_PATH.");
+            keys.put(EPHEMERAL_KEY_ID, generateKey());
+            signingKeyId = EPHEMERAL_KEY_ID;
+        }
+
+        Ring previous = ring;
+        ring = new Ring(Collections.unmodifiableMap(keys), signingKeyId);
+        if (previous == null || !previous.signingKeyId.equals(signingKeyId) || !previous.keys.keySet().equals(keys.keySet())) {
+            log.info("JWT key ring loaded with {} keys, signing with key {}", keys.size(), signingKeyId);
+        }
+    }
+
+    /**
+     * Add a new signing key to the keystore when the current one is older than the rotation interval,
+     * and drop keys that have been retired for longer than the token lifetime
+     */
+    private synchronized void rotateIfDue() {
+        try {
+            KeyStore keyStore = loadKeystore();
+            long now = System.currentTimeMillis();
+
+            Date newest = null;
+            Enumeration<String> aliases = keyStore.aliases();
+            while (aliases.hasMoreElements()) {
+                Date created = keyStore.getCreationDate(aliases.nextElement());
+                if (created != null && (newest == null || created.after(newest))) {
+                    newest = created;
+                }
+            }
+            if (newest != null && now - newest.getTime() < rotationInterval) {
+                return;
+            }
+
+            String keyId = UUID.randomUUID().toString();
+            keyStore.setEntry(keyId, new KeyStore.SecretKeyEntry(generateKey()),
+                    new KeyStore.PasswordProtection(keystorePassword));
+
+            // A key stops signing when its successor is created, so it is needed for one more token lifetime
+            long retainFor = rotationInterval + Math.max(jwtConfig.getExpiration(), jwtConfig.getRefreshExpiration());
+            for (String alias : Collections.list(keyStore.aliases())) {
+                Date created = keyStore.getCreationDate(alias);
+                if (!alias.equals(keyId) && created != null && now - created.getTime() > retainFor) {
+                    keyStore.deleteEntry(alias);
+                    log.info("Removed retired JWT key {}", alias);
+                }
+            }
+
+            storeKeystore(keyStore);
+            log.info("Rotated JWT signing key, new key ID {}", keyId);
+        } catch (Exception e) {
+            log.error("Failed to rotate JWT signing key: {}", e.getMessage());
+        }
+    }
+
+    private void createKeystore() {
+        try {
+            KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+            keyStore.load(null, keystorePassword);
+            keyStore.setEntry(UUID.randomUUID().toString(), new KeyStore.SecretKeyEntry(generateKey()),
+                    new KeyStore.PasswordProtection(keystorePassword));
+            storeKeystore(keyStore);
+            log.info("Created JWT keystore {}", keystorePath);
+        } catch (Exception e) {
+            log.error("Failed to create JWT keystore {}: {}", keystorePath, e.getMessage());
+        }
+    }
+
+    private KeyStore loadKeystore() throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KEYSTORE_TYPE);
+        try (InputStream in = Files.newInputStream(Paths.get(keystorePath))) {
+            keyStore.load(in, keystorePassword);
+        }
+        return keyStore;
+    }
+
+    /**
+     * Write to a temporary file and move it into place, so other instances never read a partial keystore
+     */
+    private void storeKeystore(KeyStore keyStore) throws Exception {
+        Path target = Paths.get(keystorePath).toAbsolutePath();
+        if (target.getParent() != null) {
+            Files.createDirectories(target.getParent());
+        }
+        Path temp = Files.createTempFile(target.getParent(), "jwt-keys", ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            keyStore.store(out, keystorePassword);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean hasKeystore() {
+        return keystorePath != null && !keystorePath.isEmpty();
+    }
+
+    private SecretKey generateKey() {
+        try {
+            KeyGenerator generator = KeyGenerator.getInstance("HmacSHA256");
+            generator.init(256);
+            return generator.generateKey();
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 not available", e);
+        }
+    }
+
+    private static class Ring {
+        private final Map<String, SecretKey> keys;
+        private final String signingKeyId;
+
+        private Ring(Map<String, SecretKey> keys, String signingKeyId) {
+            this.keys = keys;
+            this.signingKeyId = signingKeyId;
+        }
+    }
+}
@@ -8,6 +8,10 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.capstone.GrabTrash.service.CollectionScheduleService;
+import com.capstone.GrabTrash.service.DashboardAggregates;
+import com.capstone.GrabTrash.service.ScheduledJobRunner;
+
+import jakarta.annotation.PostConstruct;
 
 @Configuration
 @EnableScheduling
@@ -15,16 +19,44 @@ public class SchedulingConfig {
 
     private static final Logger log = LoggerFactory.getLogger(SchedulingConfig.class);
 
+    public static final String DAILY_COLLECTION_REMINDERS = "daily-collection-reminders";
+    private static final String DAILY_COLLECTION_REMINDERS_CRON = "0 0 6 * * *";
+    public static final String DASHBOARD_AGGREGATES_CHECK = "dashboard-aggregates-check";
+    private static final String DASHBOARD_AGGREGATES_CHECK_CRON = "0 30 3 * * *";
+
     @Autowired
     private CollectionScheduleService collectionScheduleService;
 
+    @Autowired
+    private DashboardAggregates dashboardAggregates;
+
+    @Autowired
+    private ScheduledJobRunner scheduledJobRunner;
+
+    @PostConstruct
+    public void registerJobs() {
+        scheduledJobRunner.register(DAILY_COLLECTION_REMINDERS, DAILY_COLLECTION_REMINDERS_CRON,
+            collectionScheduleService::sendTodayCollectionReminders);
+        scheduledJobRunner.register(DASHBOARD_AGGREGATES_CHECK, DASHBOARD_AGGREGATES_CHECK_CRON,
+            dashboardAggregates::verify);
+    }
+
     /**
-     * Send daily collection reminders at 6:00 AM every day
+     * Send daily collection reminders at 6:00 AM every day, from one replica only
      * cron format: second minute hour day-of-month month day-of-week
      */
-    @Scheduled(cron = "0 0 6 * * *")
+    @Scheduled(cron = DAILY_COLLECTION_REMINDERS_CRON)
     public void sendDailyCollectionReminders() {
         log.info("Running scheduled task: sending daily collection reminders");
-        collectionScheduleService.sendTodayCollectionReminders();
+        scheduledJobRunner.trigger(DAILY_COLLECTION_REMINDERS);
+    }
+
+    /**
+     * Compare the dashboard aggregates with the payments at 3:30 AM every day, from one replica only
+     */
+    @Scheduled(cron = DASHBOARD_AGGREGATES_CHECK_CRON)
+    public void checkDashboardAggregates() {
+        log.info("Running scheduled task: checking dashboard aggregates");
+        scheduledJobRunner.trigger(DASHBOARD_AGGREGATES_CHECK);
     }
-} 
\ No newline at end of file
+}
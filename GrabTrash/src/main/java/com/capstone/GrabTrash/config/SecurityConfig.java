@@ -1,4 +1,5 @@
 package com.capstone.GrabTrash.config;
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -38,7 +39,9 @@ public class SecurityConfig {
             .cors(cors -> cors.configurationSource(corsConfigurationSource()))
             .csrf(csrf -> csrf.disable())
             .authorizeHttpRequests(auth -> auth
-                .requestMatchers("/api/users/register", "/api/users/login", "/api/users/security-questions",
+                // Async endpoints complete on a second dispatch; the original request was already authorized
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                .requestMatchers("/api/users/register", "/api/users/login", "/api/users/refresh-token", "/api/users/security-questions",
                                "/api/users/forgot-password/reset", "/api/users/forgot-password/question",
                                "/api/pickup-locations", "api/barangays").permitAll()
                 // Allow unrestricted access to notification test endpoints
@@ -47,6 +50,7 @@ public class SecurityConfig {
                                "/api/notifications/test-role", "/api/notifications/test-collection-reminders",
                                "/api/notifications/test-token-validity", "/api/notifications/send-compat").permitAll()
                 .requestMatchers("/error").permitAll()
+                .requestMatchers("/api/notifications/outbox/**", "/api/notifications/dedup/**").hasRole("ADMIN")
                 .requestMatchers(HttpMethod.GET, "/api/pickup-locations/**").permitAll()
                 .requestMatchers(HttpMethod.POST, "/api/pickup-locations").authenticated()
                 .requestMatchers(HttpMethod.PUT, "/api/pickup-locations/**").authenticated()
@@ -0,0 +1,112 @@
+package com.capstone.GrabTrash.controller;
+
+import com.capstone.GrabTrash.service.AnalyticsRollups;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.LocalDate;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * REST Controller for revenue, pickup and collection analytics over time
+ */
+@RestController
+@RequestMapping("/api/analytics")
+public class AnalyticsController {
+
+    private final AnalyticsRollups analyticsRollups;
+
+    @Autowired
+    public AnalyticsController(AnalyticsRollups analyticsRollups) {
+        this.analyticsRollups = analyticsRollups;
+    }
+
+    /**
+     * Sum of a metric per dimension value over a date range, e.g. revenue per barangay for the last 90 days
+     * @param metric orders, revenue, completedJobs, pickupWeight, collections or collectionWeight
+     * @param dimension barangay, wasteType, driver, truck or total
+     * @param days Length of the range ending today, used when from is not given
+     * @param from First day, inclusive (yyyy-MM-dd)
+     * @param to Last day, inclusive (yyyy-MM-dd); defaults to today
+     * @return Totals per dimension value
+     */
+    @GetMapping("/totals")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getTotals(
+            @RequestParam(defaultValue = "revenue") String metric,
+            @RequestParam(defaultValue = "total") String dimension,
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            LocalDate end = to != null ? to : LocalDate.now(analyticsRollups.getZone());
+            LocalDate start = from != null ? from : end.minusDays(Math.max(days, 1) - 1L);
+            return ResponseEntity.ok(analyticsRollups.totals(metric, dimension, start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to read analytics: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * A metric per day, week or month over a date range, for charting
+     * @param metric orders, revenue, completedJobs, pickupWeight, collections or collectionWeight
+     * @param dimension barangay, wasteType, driver, truck or total
+     * @param granularity day, week or month
+     * @param days Length of the range ending today, used when from is not given
+     * @param from First day, inclusive (yyyy-MM-dd)
+     * @param to Last day, inclusive (yyyy-MM-dd); defaults to today
+     * @return One point per period
+     */
+    @GetMapping("/series")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> getSeries(
+            @RequestParam(defaultValue = "revenue") String metric,
+            @RequestParam(defaultValue = "total") String dimension,
+            @RequestParam(defaultValue = "day") String granularity,
+            @RequestParam(defaultValue = "30") int days,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            LocalDate end = to != null ? to : LocalDate.now(analyticsRollups.getZone());
+            LocalDate start = from != null ? from : end.minusDays(Math.max(days, 1) - 1L);
+            return ResponseEntity.ok(analyticsRollups.series(metric, dimension, granularity, start, end));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to read analytics: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Recompute the analytics buckets for a date range from the payments and collection records
+     * @param from First day, inclusive (yyyy-MM-dd)
+     * @param to Last day, inclusive (yyyy-MM-dd)
+     * @return The rewritten range and bucket count
+     */
+    @PostMapping("/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuild(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            if (from.isAfter(to)) {
+                throw new IllegalArgumentException("from must not be after to");
+            }
+            return ResponseEntity.ok(analyticsRollups.rebuild(from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.internalServerError().body(Map.of("error", "Failed to rebuild analytics: " + e.getMessage()));
+        }
+    }
+}
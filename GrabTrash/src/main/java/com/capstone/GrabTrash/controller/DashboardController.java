@@ -1,11 +1,14 @@
 package com.capstone.GrabTrash.controller;
 
+import com.capstone.GrabTrash.model.CollectionRecord;
 import com.capstone.GrabTrash.service.CollectionService;
 import org.apache.http.HttpStatus;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Date;
+import java.time.LocalDate;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
 
@@ -19,15 +22,29 @@ public class DashboardController {
         this.collectionService = collectionService;
     }
 
-    // Get driver's daily collection statistics
+    // Record a collection; drivers record their own, admins any driver's
+    @PostMapping("/collections")
+    @PreAuthorize("hasAnyRole('ADMIN', 'DRIVER')")
+    public ResponseEntity<?> recordCollection(@RequestBody CollectionRecord record) {
+        try {
+            return ResponseEntity.ok(collectionService.recordCollection(record));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                    .body("Error recording collection: " + e.getMessage());
+        }
+    }
+
+    // Get driver's daily collection statistics; date is yyyy-MM-dd in the stats time zone, today if omitted
     @GetMapping("/driver/{driverId}/daily")
     public ResponseEntity<?> getDriverDailyStats(
             @PathVariable String driverId,
-            @RequestParam(required = false) Date date) {
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
         try {
             // If no date provided, use current date
             if (date == null) {
-                date = new Date();
+                date = collectionService.today();
             }
 
             Map<String, Object> stats = collectionService.getDriverDailyStats(driverId, date);
@@ -38,6 +55,39 @@ public class DashboardController {
         }
     }
 
+    // Get driver's collection statistics over a range of days, with one entry per day
+    @GetMapping("/driver/{driverId}/range")
+    public ResponseEntity<?> getDriverStats(
+            @PathVariable String driverId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            Map<String, Object> stats = collectionService.getDriverStats(driverId, from, to != null ? to : collectionService.today());
+            return ResponseEntity.ok(stats);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                    .body("Error fetching driver statistics: " + e.getMessage());
+        }
+    }
+
+    // Recompute the driver stats documents for a range of days from the collection records and payments
+    @PostMapping("/driver-stats/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<?> rebuildDriverStats(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        try {
+            return ResponseEntity.ok(collectionService.rebuildDriverStats(from, to));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (ExecutionException | InterruptedException e) {
+            return ResponseEntity.status(HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                    .body("Error rebuilding driver statistics: " + e.getMessage());
+        }
+    }
+
     // Get barangay collection statistics
     @GetMapping("/barangay/{barangay}")
     public ResponseEntity<?> getBarangayStats(@PathVariable String barangay) {
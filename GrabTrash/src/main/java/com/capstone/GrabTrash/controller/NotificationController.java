@@ -2,6 +2,8 @@ package com.capstone.GrabTrash.controller;
 
 import com.capstone.GrabTrash.dto.FcmTokenRequest;
 import com.capstone.GrabTrash.dto.NotificationRequest;
+import com.capstone.GrabTrash.service.NotificationDedupCache;
+import com.capstone.GrabTrash.service.NotificationOutbox;
 import com.capstone.GrabTrash.service.NotificationService;
 import com.capstone.GrabTrash.service.UserService;
 import com.capstone.GrabTrash.service.CollectionScheduleService;
@@ -25,15 +27,21 @@ public class NotificationController {
     private final NotificationService notificationService;
     private final UserService userService;
     private final CollectionScheduleService collectionScheduleService;
+    private final NotificationOutbox notificationOutbox;
+    private final NotificationDedupCache notificationDedup;
 
     @Autowired
     public NotificationController(
             NotificationService notificationService, 
             UserService userService,
-            CollectionScheduleService collectionScheduleService) {
+            CollectionScheduleService collectionScheduleService,
+            NotificationOutbox notificationOutbox,
+            NotificationDedupCache notificationDedup) {
         this.notificationService = notificationService;
         this.userService = userService;
         this.collectionScheduleService = collectionScheduleService;
+        this.notificationOutbox = notificationOutbox;
+        this.notificationDedup = notificationDedup;
     }
 
     @PostMapping("/register-token")
@@ -331,4 +339,23 @@ public class NotificationController {
             ));
         }
     }
-} 
\ No newline at end of file
+
+    // Outbox queue depth and delivery counters (admin only)
+    @GetMapping("/outbox/metrics")
+    public ResponseEntity<?> getOutboxMetrics() {
+        try {
+            return ResponseEntity.ok(notificationOutbox.getMetrics());
+        } catch (Exception e) {
+            log.error("Failed to read notification outbox metrics", e);
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Failed to read outbox metrics: " + e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
+    // Dedup cache hit, miss and size counters (admin only)
+    @GetMapping("/dedup/metrics")
+    public ResponseEntity<?> getDedupMetrics() {
+        return ResponseEntity.ok(notificationDedup.getMetrics());
+    }
+}
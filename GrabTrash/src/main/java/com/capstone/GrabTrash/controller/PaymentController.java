@@ -12,12 +12,14 @@ import com.capstone.GrabTrash.dto.ImageConfirmationDTO;
 import com.capstone.GrabTrash.dto.ServiceRatingUpdateDTO;
 import com.capstone.GrabTrash.service.PaymentService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * REST Controller for handling payment-related endpoints
@@ -70,6 +72,16 @@ public class PaymentController {
         return ResponseEntity.ok(payments);
     }
 
+    /**
+     * Get all payments without holding a request thread while Firestore responds
+     * Requires JWT authentication in the Authorization header
+     * @return List of all payments
+     */
+    @GetMapping("/async")
+    public CompletableFuture<ResponseEntity<List<PaymentResponseDTO>>> getAllPaymentsAsync() {
+        return paymentService.getAllPaymentsAsync().thenApply(ResponseEntity::ok);
+    }
+
     /**
      * Get payment by ID
      * Requires JWT authentication in the Authorization header
@@ -105,6 +117,17 @@ public class PaymentController {
         List<PaymentResponseDTO> payments = paymentService.getPaymentsByCustomerEmail(email);
         return ResponseEntity.ok(payments);
     }
+
+    /**
+     * Get payments by customer email without holding a request thread while Firestore responds
+     * Requires JWT authentication in the Authorization header
+     * @param email Customer email
+     * @return List of payments for the customer
+     */
+    @GetMapping("/customer/async")
+    public CompletableFuture<ResponseEntity<List<PaymentResponseDTO>>> getPaymentsByCustomerEmailAsync(@RequestParam String email) {
+        return paymentService.getPaymentsByCustomerEmailAsync(email).thenApply(ResponseEntity::ok);
+    }
     
     /**
      * Get dashboard statistics including total pickup trash ordered
@@ -118,12 +141,71 @@ public class PaymentController {
     }
 
     /**
-     * Get top 3 barangays by pickup frequency
+     * Get dashboard statistics without holding a request thread while Firestore responds
+     * Requires JWT authentication in the Authorization header
+     * @return Dashboard statistics including total pickup trash ordered
+     */
+    @GetMapping("/dashboard/stats/async")
+    public CompletableFuture<ResponseEntity<DashboardStatsDTO>> getDashboardStatsAsync() {
+        return paymentService.getDashboardStatsAsync().thenApply(ResponseEntity::ok);
+    }
+
+    /**
+     * Recompute the dashboard aggregates from every completed payment (admin only)
+     * @return Recomputed totals
+     */
+    @PostMapping("/dashboard/aggregates/rebuild")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> rebuildDashboardAggregates() {
+        try {
+            return ResponseEntity.ok(paymentService.rebuildDashboardAggregates());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Compare the dashboard aggregates with a full scan of the completed payments (admin only)
+     * @return Consistency report
+     */
+    @GetMapping("/dashboard/aggregates/check")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> checkDashboardAggregates() {
+        return ResponseEntity.ok(paymentService.checkDashboardAggregates());
+    }
+
+    /**
+     * Get the top barangays by pickup frequency, over all time or over the last days
+     * @param limit Number of barangays to return (default 3)
+     * @param days Window length, e.g. 7 or 30; all time when omitted
      */
     @GetMapping("/top-barangays")
-    public ResponseEntity<List<Map<String, Object>>> getTopBarangays() {
-        List<Map<String, Object>> topBarangays = paymentService.getTopBarangaysByPickupFrequency(3);
-        return ResponseEntity.ok(topBarangays);
+    public ResponseEntity<?> getTopBarangays(
+            @RequestParam(defaultValue = "3") int limit,
+            @RequestParam(required = false) Integer days) {
+        if (limit < 1) {
+            return ResponseEntity.badRequest().body(Map.of("error", "limit must be at least 1"));
+        }
+        if (days == null) {
+            return ResponseEntity.ok(paymentService.getTopBarangaysByPickupFrequency(limit));
+        }
+        try {
+            return ResponseEntity.ok(paymentService.getTopBarangaysByPickupFrequency(limit, days));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            // The first windowed request computes the ranking from the payments, which can fail
+            return ResponseEntity.internalServerError().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    /**
+     * Recompute the windowed top-barangay ranking exactly from the payments
+     */
+    @PostMapping("/top-barangays/recompute")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> recomputeTopBarangays() {
+        return ResponseEntity.ok(paymentService.recomputeBarangayRanking());
     }
 
     /**
@@ -232,4 +314,15 @@ public class PaymentController {
         
         return ResponseEntity.ok(updatedPayment);
     }
-}
\ No newline at end of file
+
+    /**
+     * Get payments listener metrics: queued changes, backpressure and processing lag
+     * Requires JWT authentication with admin role
+     * @return Listener metrics
+     */
+    @GetMapping("/listener/metrics")
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<Map<String, Object>> getListenerMetrics() {
+        return ResponseEntity.ok(paymentService.getListenerMetrics());
+    }
+}
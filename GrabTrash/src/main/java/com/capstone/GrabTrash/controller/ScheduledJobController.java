@@ -0,0 +1,37 @@
+package com.capstone.GrabTrash.controller;
+
+import com.capstone.GrabTrash.service.ScheduledJobRunner;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * REST Controller for the scheduled job registry
+ */
+@RestController
+@RequestMapping("/api/scheduled-jobs")
+public class ScheduledJobController {
+
+    private final ScheduledJobRunner scheduledJobRunner;
+
+    @Autowired
+    public ScheduledJobController(ScheduledJobRunner scheduledJobRunner) {
+        this.scheduledJobRunner = scheduledJobRunner;
+    }
+
+    /**
+     * Get every scheduled job with its last run, duration and outcome
+     * @return List of jobs
+     */
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public ResponseEntity<List<Map<String, Object>>> getScheduledJobs() {
+        return ResponseEntity.ok(scheduledJobRunner.getJobs());
+    }
+}
@@ -12,6 +12,7 @@ import com.capstone.GrabTrash.dto.SecurityQuestionRequest;
 import com.capstone.GrabTrash.dto.RegisterRequest;
 import com.capstone.GrabTrash.dto.LocationUpdateRequest;
 import com.capstone.GrabTrash.dto.ProfileImageUpdateDTO;
+import com.capstone.GrabTrash.dto.RefreshTokenRequest;
 import com.capstone.GrabTrash.service.UserService;
 
 import java.util.HashMap;
@@ -38,6 +39,11 @@ public class UserController {
         return userService.loginUser(user);
     }
 
+    @PostMapping("/refresh-token")
+    public ResponseEntity<?> refreshToken(@RequestBody RefreshTokenRequest request) {
+        return userService.refreshToken(request.getRefreshToken());
+    }
+
     @GetMapping("/profile/{userId}")
     public ResponseEntity<?> getUserProfile(@PathVariable String userId) {
         return userService.getUserProfile(userId);
@@ -0,0 +1,39 @@
+package com.capstone.GrabTrash.model;
+
+import java.util.Date;
+import java.util.Map;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Model class for a push notification waiting in the outbox.
+ * The entry is written together with the business change that caused it and delivered by the outbox workers.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NotificationOutboxEntry {
+    public static final String PENDING = "PENDING";
+    public static final String PROCESSING = "PROCESSING";
+    public static final String SENT = "SENT";
+    public static final String SKIPPED = "SKIPPED";
+    public static final String DEAD = "DEAD";
+
+    private String id;
+    private String dedupKey; // Same key, same notification: delivered at most once per key
+    private String recipientUserId;
+    private String recipientEmail; // Used when the user ID is not known when the entry is written
+    private String title;
+    private String body;
+    private Map<String, String> data;
+    private String status; // PENDING, PROCESSING, SENT, SKIPPED, DEAD
+    private Integer attempts;
+    private Date nextAttemptAt;
+    private Date leaseExpiresAt; // A PROCESSING entry whose lease expired is claimed again
+    private String lastError;
+    private Date createdAt;
+    private Date updatedAt;
+}
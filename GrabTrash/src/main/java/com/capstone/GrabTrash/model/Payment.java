@@ -42,6 +42,8 @@ public class Payment {
     private String customerConfirmation;  // Customer confirmation proof image URL
     private String driverConfirmation;  // Driver confirmation proof image URL
     private Integer serviceRating;  // Customer service rating (1-5 stars)
+    private Boolean truckReleased;  // Whether the assigned truck has been handed back to the fleet
+    private Date jobCompletedAt;  // When the job order was marked Completed
     
     // Pre-persist hook to set dates
     public void prePersist() {
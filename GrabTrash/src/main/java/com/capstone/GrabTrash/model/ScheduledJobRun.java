@@ -0,0 +1,33 @@
+package com.capstone.GrabTrash.model;
+
+import java.util.Date;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Model class for the registry entry of a scheduled job: how and where it last ran.
+ * One document per job, updated by whichever instance held the job's lease.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ScheduledJobRun {
+    public static final String RUNNING = "RUNNING";
+    public static final String SUCCEEDED = "SUCCEEDED";
+    public static final String FAILED = "FAILED";
+
+    private String jobName;
+    private String cron;
+    private Date lastScheduledFor; // Trigger time the last run was for
+    private Date lastStartedAt;
+    private Date lastFinishedAt;
+    private Long lastDurationMs;
+    private String lastOutcome; // RUNNING, SUCCEEDED, FAILED
+    private String lastError;
+    private String lastNode;
+    private Boolean lastCatchUp; // Whether the last run made up for a missed trigger
+    private Date lastSucceededFor; // Trigger time of the last successful run; later triggers are still due
+}
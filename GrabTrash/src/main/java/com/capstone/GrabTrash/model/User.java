@@ -23,6 +23,7 @@ public class User {
     private String barangayName;
     private String fcmToken;
     private String profileImage;  // URL or base64 encoded profile image
+    private Long tokenVersion;  // Tokens carrying an older version are revoked
 
     // Default constructor
     public User() {
@@ -190,6 +191,16 @@ public class User {
         this.profileImage = profileImage;
     }
 
+    @PropertyName("tokenVersion")
+    public Long getTokenVersion() {
+        return tokenVersion;
+    }
+
+    @PropertyName("tokenVersion")
+    public void setTokenVersion(Long tokenVersion) {
+        this.tokenVersion = tokenVersion;
+    }
+
     @Override
     public String toString() {
         return "User{" +
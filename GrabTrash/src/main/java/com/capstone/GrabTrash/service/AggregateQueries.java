@@ -0,0 +1,55 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Counts and sums over a collection, computed by the database instead of by downloading the documents.
+ * Filters are field equalities. The Firestore implementation runs count()/sum() aggregation queries and
+ * is the default; aggregation.store=memory swaps in an in-memory implementation for tests.
+ */
+public interface AggregateQueries {
+
+    /**
+     * Count the documents of a collection
+     * @param collection Collection name
+     * @param equalTo Field values the documents must have; empty for the whole collection
+     * @return Number of matching documents
+     */
+    long count(String collection, Map<String, Object> equalTo);
+
+    /**
+     * Count the documents of a collection and sum one of their fields, in one query
+     * @param collection Collection name
+     * @param sumField Numeric field to sum; documents without it still count
+     * @param equalTo Field values the documents must have; empty for the whole collection
+     * @return Count and sum
+     */
+    CountAndSum countAndSum(String collection, String sumField, Map<String, Object> equalTo);
+
+    /**
+     * {@link #countAndSum} without blocking the calling thread
+     */
+    CompletableFuture<CountAndSum> countAndSumAsync(String collection, String sumField, Map<String, Object> equalTo);
+
+    /**
+     * Result of a count and sum
+     */
+    class CountAndSum {
+        private final long count;
+        private final double sum;
+
+        public CountAndSum(long count, double sum) {
+            this.count = count;
+            this.sum = sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getSum() {
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.CollectionRecord;
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.UpdateBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Revenue, pickup and collection rollups per day, week and month, broken down by barangay, waste type,
+ * driver and truck.
+ *
+ * Each bucket is one document in analyticsBuckets (e.g. day_2026-10-17, week_2026-10-12 for the week
+ * starting that Monday, month_2026-10) holding the totals and a map per dimension. Every payment,
+ * completed job and collection record increments its day, week and month buckets in the same batch or
+ * transaction as the write that caused it. A range query reads the fewest buckets that cover the range
+ * (whole months, then whole weeks, then days), so its cost depends on the length of the range and not
+ * on the number of payments. Periods are cut in the configured time zone.
+ */
+@Service
+@Slf4j
+public class AnalyticsRollups {
+
+    private static final String COLLECTION_NAME = "analyticsBuckets";
+    private static final int MAX_BUCKETS = 400;
+
+    public static final String DAY = "day";
+    public static final String WEEK = "week";
+    public static final String MONTH = "month";
+    public static final String TOTAL = "total";
+
+    public static final String ORDERS = "orders";
+    public static final String REVENUE = "revenue";
+    public static final String COMPLETED_JOBS = "completedJobs";
+    public static final String PICKUP_WEIGHT = "pickupWeight";
+    public static final String COLLECTIONS = "collections";
+    public static final String COLLECTION_WEIGHT = "collectionWeight";
+
+    static final List<String> GRANULARITIES = List.of(DAY, WEEK, MONTH);
+    static final List<String> DIMENSIONS = List.of("barangay", "wasteType", "driver", "truck");
+    static final List<String> METRICS = List.of(ORDERS, REVENUE, COMPLETED_JOBS, PICKUP_WEIGHT, COLLECTIONS, COLLECTION_WEIGHT);
+    private static final Set<String> COUNT_METRICS = Set.of(ORDERS, COMPLETED_JOBS, COLLECTIONS);
+
+    private final Firestore firestore;
+    private final ZoneId zone;
+
+    @Autowired
+    public AnalyticsRollups(Firestore firestore, @Value("${analytics.time-zone:Asia/Manila}") String timeZone) {
+        this.firestore = firestore;
+        this.zone = ZoneId.of(timeZone);
+    }
+
+    /**
+     * Time zone that days, weeks and months are cut in
+     */
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    /**
+     * Stage the rollup increments for a completed payment (an order and its revenue)
+     * @param writes Batch or transaction that also writes the payment
+     * @param payment The payment
+     */
+    public void recordPayment(UpdateBuilder<?> writes, Payment payment) {
+        Event event = paymentEvent(payment);
+        if (event != null) {
+            stage(writes, event);
+        }
+    }
+
+    /**
+     * Stage the rollup increments for a job order that has just been completed
+     * @param writes Batch or transaction that also writes the payment
+     * @param payment The payment, with jobCompletedAt set
+     */
+    public void recordJobCompleted(UpdateBuilder<?> writes, Payment payment) {
+        Event event = jobEvent(payment);
+        if (event != null) {
+            stage(writes, event);
+        }
+    }
+
+    /**
+     * Stage the rollup increments for a completed collection record
+     * @param writes Batch that also writes the record
+     * @param record The collection record
+     */
+    public void recordCollection(UpdateBuilder<?> writes, CollectionRecord record) {
+        Event event = collectionEvent(record);
+        if (event != null) {
+            stage(writes, event);
+        }
+    }
+
+    /**
+     * Sum of a metric per dimension value over a date range, e.g. revenue per barangay for the last 90 days
+     * @param metric One of {@link #METRICS}
+     * @param dimension One of {@link #DIMENSIONS}, or "total"
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     * @return Totals per dimension value, largest first, and the number of buckets read
+     */
+    public Map<String, Object> totals(String metric, String dimension, LocalDate from, LocalDate to)
+            throws ExecutionException, InterruptedException {
+        validate(metric, dimension, from, to);
+
+        List<DocumentReference> buckets = new ArrayList<>();
+        for (String bucketId : cover(from, to)) {
+            buckets.add(firestore.collection(COLLECTION_NAME).document(bucketId));
+        }
+
+        Map<String, Double> values = new HashMap<>();
+        double total = 0;
+        for (DocumentSnapshot snapshot : firestore.getAll(buckets.toArray(new DocumentReference[0])).get()) {
+            if (!snapshot.exists()) {
+                continue;
+            }
+            total += metricOf(snapshot.get(TOTAL), metric);
+            if (!TOTAL.equals(dimension)) {
+                Object section = snapshot.get(dimension);
+                if (section instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) section).entrySet()) {
+                        values.merge(String.valueOf(entry.getKey()), metricOf(entry.getValue(), metric), Double::sum);
+                    }
+                }
+            }
+        }
+
+        Map<String, Object> sorted = new LinkedHashMap<>();
+        values.entrySet().stream()
+            .sorted((e1, e2) -> Double.compare(e2.getValue(), e1.getValue()))
+            .forEach(entry -> sorted.put(entry.getKey(), entry.getValue()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("metric", metric);
+        result.put("dimension", dimension);
+        result.put("from", from.toString());
+        result.put("to", to.toString());
+        result.put("timeZone", zone.getId());
+        result.put("bucketsRead", buckets.size());
+        result.put("total", total);
+        if (!TOTAL.equals(dimension)) {
+            result.put("values", sorted);
+        }
+        return result;
+    }
+
+    /**
+     * A metric per period over a date range, for charting
+     * @param metric One of {@link #METRICS}
+     * @param dimension One of {@link #DIMENSIONS}, or "total"
+     * @param granularity day, week or month
+     * @param from First day, inclusive; widened to the start of its period
+     * @param to Last day, inclusive
+     * @return One point per period, with the total or the value per dimension value
+     */
+    public List<Map<String, Object>> series(String metric, String dimension, String granularity, LocalDate from, LocalDate to)
+            throws ExecutionException, InterruptedException {
+        validate(metric, dimension, from, to);
+        if (!GRANULARITIES.contains(granularity)) {
+            throw new IllegalArgumentException("Unknown granularity: " + granularity + " (expected one of " + GRANULARITIES + ")");
+        }
+
+        List<LocalDate> periods = new ArrayList<>();
+        for (LocalDate start = periodStart(granularity, from); !start.isAfter(to); start = periodEnd(granularity, start).plusDays(1)) {
+            periods.add(start);
+        }
+        if (periods.size() > MAX_BUCKETS) {
+            throw new IllegalArgumentException("Range too long for " + granularity + " buckets; use a coarser granularity");
+        }
+
+        List<DocumentReference> buckets = new ArrayList<>();
+        for (LocalDate start : periods) {
+            buckets.add(bucket(granularity, start));
+        }
+        List<DocumentSnapshot> snapshots = firestore.getAll(buckets.toArray(new DocumentReference[0])).get();
+
+        List<Map<String, Object>> points = new ArrayList<>();
+        for (int i = 0; i < periods.size(); i++) {
+            DocumentSnapshot snapshot = snapshots.get(i);
+            Map<String, Object> point = new LinkedHashMap<>();
+            point.put("period", periodKey(granularity, periods.get(i)));
+            point.put("start", periods.get(i).toString());
+            if (TOTAL.equals(dimension)) {
+                point.put("value", snapshot.exists() ? metricOf(snapshot.get(TOTAL), metric) : 0.0);
+            } else {
+                Map<String, Double> values = new HashMap<>();
+                Object section = snapshot.exists() ? snapshot.get(dimension) : null;
+                if (section instanceof Map) {
+                    for (Map.Entry<?, ?> entry : ((Map<?, ?>) section).entrySet()) {
+                        values.put(String.valueOf(entry.getKey()), metricOf(entry.getValue(), metric));
+                    }
+                }
+                point.put("values", values);
+            }
+            points.add(point);
+        }
+        return points;
+    }
+
+    /**
+     * Recompute the buckets covering a date range from the payments and collection records.
+     * The range is widened to whole months and weeks so every rewritten bucket is complete.
+     * Increments landing while it runs can be lost, so run it when writes are quiet.
+     * @return The rewritten range and bucket count
+     */
+    public Map<String, Object> rebuild(LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        LocalDate monthStart = from.withDayOfMonth(1);
+        LocalDate monthEnd = to.with(TemporalAdjusters.lastDayOfMonth());
+        LocalDate start = periodStart(WEEK, monthStart);
+        LocalDate end = periodEnd(WEEK, monthEnd);
+        Date startAt = Date.from(start.atStartOfDay(zone).toInstant());
+        Date endBefore = Date.from(end.plusDays(1).atStartOfDay(zone).toInstant());
+        log.info("Rebuilding analytics buckets from {} to {}", start, end);
+
+        List<Event> events = new ArrayList<>();
+        for (QueryDocumentSnapshot document : firestore.collection("payments")
+                .whereGreaterThanOrEqualTo("createdAt", startAt).whereLessThan("createdAt", endBefore)
+                .get().get().getDocuments()) {
+            addIfPresent(events, paymentEvent(document.toObject(Payment.class)));
+        }
+        for (Payment payment : CompletedJobs.between(firestore, startAt, endBefore)) {
+            addIfPresent(events, jobEvent(payment));
+        }
+        for (QueryDocumentSnapshot document : firestore.collection("collections")
+                .whereGreaterThanOrEqualTo("collectionDate", Timestamp.of(startAt))
+                .whereLessThan("collectionDate", Timestamp.of(endBefore))
+                .get().get().getDocuments()) {
+            addIfPresent(events, collectionEvent(document.toObject(CollectionRecord.class)));
+        }
+
+        // Sum the events into every bucket that lies wholly inside the range
+        Map<String, Map<String, Object>> buckets = new LinkedHashMap<>();
+        for (LocalDate day = start; !day.isAfter(end); day = day.plusDays(1)) {
+            for (String granularity : GRANULARITIES) {
+                LocalDate periodStart = periodStart(granularity, day);
+                if (!periodStart.isBefore(start) && !periodEnd(granularity, day).isAfter(end)) {
+                    buckets.computeIfAbsent(bucketId(granularity, periodStart), id -> header(granularity, periodStart));
+                }
+            }
+        }
+        for (Event event : events) {
+            LocalDate day = LocalDate.ofInstant(event.at.toInstant(), zone);
+            for (String granularity : GRANULARITIES) {
+                Map<String, Object> bucket = buckets.get(bucketId(granularity, day));
+                if (bucket != null) {
+                    add(section(bucket, TOTAL), event.metrics);
+                    for (Map.Entry<String, String> dimension : event.dimensions.entrySet()) {
+                        add(section(section(bucket, dimension.getKey()), dimension.getValue()), event.metrics);
+                    }
+                }
+            }
+        }
+
+        BatchWriter writer = new BatchWriter(firestore);
+        for (Map.Entry<String, Map<String, Object>> bucket : buckets.entrySet()) {
+            writer.set(firestore.collection(COLLECTION_NAME).document(bucket.getKey()), bucket.getValue());
+        }
+        writer.commit();
+        log.info("Rebuilt {} analytics buckets from {} events", buckets.size(), events.size());
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", start.toString());
+        result.put("to", end.toString());
+        result.put("events", events.size());
+        result.put("buckets", buckets.size());
+        return result;
+    }
+
+    private Event paymentEvent(Payment payment) {
+        if (!DashboardAggregates.counts(payment) || payment.getCreatedAt() == null) {
+            return null;
+        }
+        Event event = new Event(payment.getCreatedAt());
+        event.metrics.put(ORDERS, 1L);
+        event.metrics.put(REVENUE, DashboardAggregates.revenueOf(payment));
+        addPaymentDimensions(event, payment);
+        return event;
+    }
+
+    private Event jobEvent(Payment payment) {
+        Date completedAt = CompletedJobs.completedAt(payment);
+        if (completedAt == null) {
+            return null;
+        }
+        Event event = new Event(completedAt);
+        event.metrics.put(COMPLETED_JOBS, 1L);
+        event.metrics.put(PICKUP_WEIGHT, payment.getTrashWeight() != null ? payment.getTrashWeight() : 0.0);
+        addPaymentDimensions(event, payment);
+        return event;
+    }
+
+    private Event collectionEvent(CollectionRecord record) {
+        if (record == null || !"COMPLETED".equals(record.getStatus()) || record.getCollectionDate() == null) {
+            return null;
+        }
+        Event event = new Event(record.getCollectionDate().toDate());
+        event.metrics.put(COLLECTIONS, 1L);
+        event.metrics.put(COLLECTION_WEIGHT, record.getWeight());
+        event.dimension("barangay", record.getBarangay());
+        event.dimension("driver", record.getDriverId());
+        return event;
+    }
+
+    private static void addPaymentDimensions(Event event, Payment payment) {
+        event.dimension("barangay", payment.getBarangayId());
+        event.dimension("wasteType", payment.getWasteType());
+        event.dimension("driver", payment.getDriverId());
+        event.dimension("truck", payment.getTruckId());
+    }
+
+    private void stage(UpdateBuilder<?> writes, Event event) {
+        LocalDate day = LocalDate.ofInstant(event.at.toInstant(), zone);
+        for (String granularity : GRANULARITIES) {
+            Map<String, Object> data = header(granularity, day);
+            data.put(TOTAL, increments(event.metrics));
+            for (Map.Entry<String, String> dimension : event.dimensions.entrySet()) {
+                Map<String, Object> section = new HashMap<>();
+                section.put(dimension.getValue(), increments(event.metrics));
+                data.put(dimension.getKey(), section);
+            }
+            writes.set(firestore.collection(COLLECTION_NAME).document(bucketId(granularity, day)), data, SetOptions.merge());
+        }
+    }
+
+    private static Map<String, Object> increments(Map<String, Number> metrics) {
+        Map<String, Object> increments = new HashMap<>();
+        for (Map.Entry<String, Number> metric : metrics.entrySet()) {
+            increments.put(metric.getKey(), COUNT_METRICS.contains(metric.getKey())
+                ? FieldValue.increment(metric.getValue().longValue())
+                : FieldValue.increment(metric.getValue().doubleValue()));
+        }
+        return increments;
+    }
+
+    private static void add(Map<String, Object> target, Map<String, Number> metrics) {
+        for (Map.Entry<String, Number> metric : metrics.entrySet()) {
+            if (COUNT_METRICS.contains(metric.getKey())) {
+                target.merge(metric.getKey(), metric.getValue().longValue(), (a, b) -> (Long) a + (Long) b);
+            } else {
+                target.merge(metric.getKey(), metric.getValue().doubleValue(), (a, b) -> (Double) a + (Double) b);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> section(Map<String, Object> parent, String key) {
+        return (Map<String, Object>) parent.computeIfAbsent(key, k -> new HashMap<String, Object>());
+    }
+
+    private static double metricOf(Object metrics, String metric) {
+        if (metrics instanceof Map) {
+            Object value = ((Map<?, ?>) metrics).get(metric);
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+        }
+        return 0.0;
+    }
+
+    private Map<String, Object> header(String granularity, LocalDate day) {
+        LocalDate start = periodStart(granularity, day);
+        Map<String, Object> data = new HashMap<>();
+        data.put("granularity", granularity);
+        data.put("period", periodKey(granularity, start));
+        data.put("start", Date.from(start.atStartOfDay(zone).toInstant()));
+        data.put("timeZone", zone.getId());
+        return data;
+    }
+
+    private DocumentReference bucket(String granularity, LocalDate day) {
+        return firestore.collection(COLLECTION_NAME).document(bucketId(granularity, day));
+    }
+
+    private static String bucketId(String granularity, LocalDate day) {
+        return granularity + "_" + periodKey(granularity, periodStart(granularity, day));
+    }
+
+    private static String periodKey(String granularity, LocalDate start) {
+        return MONTH.equals(granularity) ? YearMonth.from(start).toString() : start.toString();
+    }
+
+    private static LocalDate periodStart(String granularity, LocalDate day) {
+        switch (granularity) {
+            case WEEK:
+                return day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+            case MONTH:
+                return day.withDayOfMonth(1);
+            default:
+                return day;
+        }
+    }
+
+    private static LocalDate periodEnd(String granularity, LocalDate day) {
+        switch (granularity) {
+            case WEEK:
+                return periodStart(WEEK, day).plusDays(6);
+            case MONTH:
+                return day.with(TemporalAdjusters.lastDayOfMonth());
+            default:
+                return day;
+        }
+    }
+
+    /**
+     * IDs of the fewest buckets that cover a range exactly, each day once: whole months and weeks where
+     * they fit, days elsewhere
+     */
+    static List<String> cover(LocalDate from, LocalDate to) {
+        List<String> bucketIds = new ArrayList<>();
+        LocalDate day = from;
+        while (!day.isAfter(to)) {
+            String granularity = coarsestFitting(day, to);
+            bucketIds.add(bucketId(granularity, day));
+            day = periodEnd(granularity, day).plusDays(1);
+        }
+        return bucketIds;
+    }
+
+    /**
+     * Largest bucket starting on a day that does not run past the end of the range
+     */
+    private static String coarsestFitting(LocalDate day, LocalDate to) {
+        if (day.getDayOfMonth() == 1 && !periodEnd(MONTH, day).isAfter(to)) {
+            return MONTH;
+        }
+        if (day.getDayOfWeek() == DayOfWeek.MONDAY && !periodEnd(WEEK, day).isAfter(to)) {
+            return WEEK;
+        }
+        return DAY;
+    }
+
+    private static void validate(String metric, String dimension, LocalDate from, LocalDate to) {
+        if (!METRICS.contains(metric)) {
+            throw new IllegalArgumentException("Unknown metric: " + metric + " (expected one of " + METRICS + ")");
+        }
+        if (!TOTAL.equals(dimension) && !DIMENSIONS.contains(dimension)) {
+            throw new IllegalArgumentException("Unknown dimension: " + dimension + " (expected total or one of " + DIMENSIONS + ")");
+        }
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) > 366L * 5) {
+            throw new IllegalArgumentException("Range must not exceed five years");
+        }
+    }
+
+    private static void addIfPresent(List<Event> events, Event event) {
+        if (event != null) {
+            events.add(event);
+        }
+    }
+
+    private static class Event {
+        private final Date at;
+        private final Map<String, Number> metrics = new HashMap<>();
+        private final Map<String, String> dimensions = new HashMap<>();
+
+        private Event(Date at) {
+            this.at = at;
+        }
+
+        private void dimension(String name, String value) {
+            if (value != null && !value.isEmpty()) {
+                dimensions.put(name, value);
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Top barangays by completed payments over the last few days (7 and 30 by default), kept in memory.
+ *
+ * Each day has a bounded Space-Saving counter, and each window a counter holding the sum of its days,
+ * ordered by count so the top N are read in O(N). Completed payments are added as this instance writes
+ * them; when a day leaves a window its counts are subtracted. Payments written by other instances are
+ * picked up by an exact recompute from the payments, run periodically and on demand. Days are cut in the
+ * analytics time zone, by the payment's creation date.
+ */
+@Service
+@Slf4j
+public class BarangayRanking {
+
+    private static final String COLLECTION_NAME = "payments";
+
+    private final Firestore firestore;
+    private final ZoneId zone;
+    private final int capacity;
+    private final TreeSet<Integer> windows = new TreeSet<>();
+
+    // Guarded by this
+    private LocalDate today;
+    private TreeMap<LocalDate, RankedCounter> days = new TreeMap<>();
+    private Map<Integer, RankedCounter> windowCounters = new HashMap<>();
+    private boolean ready = false;
+    // Payments recorded while a recompute scans, replayed onto its result; null when none is running
+    private List<Payment> recordedDuringRecompute;
+
+    private final Object recomputeLock = new Object();
+
+    @Autowired
+    public BarangayRanking(Firestore firestore, AnalyticsRollups analyticsRollups,
+                           @Value("${rankings.barangays.windows:7,30}") List<Integer> windows,
+                           @Value("${rankings.barangays.capacity:1000}") int capacity) {
+        this.firestore = firestore;
+        this.zone = analyticsRollups.getZone();
+        this.capacity = capacity;
+        for (Integer window : windows) {
+            if (window == null || window < 1) {
+                throw new IllegalArgumentException("Ranking windows must be at least one day: " + windows);
+            }
+            this.windows.add(window);
+        }
+        if (this.windows.isEmpty()) {
+            throw new IllegalArgumentException("At least one ranking window is required");
+        }
+    }
+
+    /**
+     * Count a payment that has just been written as completed
+     * @param payment The payment as committed
+     */
+    public void record(Payment payment) {
+        record(payment, LocalDate.now(zone));
+    }
+
+    void record(Payment payment, LocalDate now) {
+        if (!DashboardAggregates.counts(payment) || payment.getBarangayId() == null || payment.getCreatedAt() == null) {
+            return;
+        }
+        LocalDate day = LocalDate.ofInstant(payment.getCreatedAt().toInstant(), zone);
+        synchronized (this) {
+            advance(now);
+            add(day, payment.getBarangayId());
+            if (recordedDuringRecompute != null) {
+                recordedDuringRecompute.add(payment);
+            }
+        }
+    }
+
+    /**
+     * The barangays with the most completed payments over the last days
+     * @param windowDays One of the configured windows
+     * @param topN Number of barangays to return
+     * @return barangayId and count per barangay, largest first; error is the most a count may be over
+     */
+    public List<Map<String, Object>> top(int windowDays, int topN) {
+        if (!windows.contains(windowDays)) {
+            throw new IllegalArgumentException("Unsupported window: " + windowDays + " days (expected one of " + windows + ")");
+        }
+        if (!isReady()) {
+            recompute();
+        }
+        return top(windowDays, topN, LocalDate.now(zone));
+    }
+
+    List<Map<String, Object>> top(int windowDays, int topN, LocalDate now) {
+        List<RankedCounter.Entry> entries;
+        synchronized (this) {
+            advance(now);
+            entries = windowCounters.get(windowDays).top(topN);
+        }
+        List<Map<String, Object>> top = new ArrayList<>(entries.size());
+        for (RankedCounter.Entry entry : entries) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("barangayId", entry.getKey());
+            map.put("count", entry.getCount());
+            if (entry.getError() > 0) {
+                map.put("error", entry.getError());
+            }
+            top.add(map);
+        }
+        return top;
+    }
+
+    /**
+     * Replace the in-memory counts with exact counts from the payments of the longest window.
+     * Payments recorded while the scan runs are replayed onto the new counts unless the scan already
+     * saw them; payments written by other instances meanwhile are picked up by the next recompute.
+     * @return The scanned range and the number of payments counted
+     */
+    public Map<String, Object> recompute() {
+        synchronized (recomputeLock) {
+            synchronized (this) {
+                recordedDuringRecompute = new ArrayList<>();
+            }
+            try {
+                return scanAndSwap();
+            } finally {
+                synchronized (this) {
+                    recordedDuringRecompute = null;
+                }
+            }
+        }
+    }
+
+    private Map<String, Object> scanAndSwap() {
+        LocalDate now = LocalDate.now(zone);
+        LocalDate from = now.minusDays(windows.last() - 1L);
+        Date startAt = Date.from(from.atStartOfDay(zone).toInstant());
+
+        TreeMap<LocalDate, RankedCounter> freshDays = new TreeMap<>();
+        Map<Integer, RankedCounter> freshWindows = newWindowCounters();
+        Set<String> scanned = new HashSet<>();
+        try {
+            for (QueryDocumentSnapshot document : firestore.collection(COLLECTION_NAME)
+                    .whereGreaterThanOrEqualTo("createdAt", startAt)
+                    .get().get().getDocuments()) {
+                Payment payment = document.toObject(Payment.class);
+                if (!DashboardAggregates.counts(payment) || payment.getBarangayId() == null || payment.getCreatedAt() == null) {
+                    continue;
+                }
+                LocalDate day = LocalDate.ofInstant(payment.getCreatedAt().toInstant(), zone);
+                add(freshDays, freshWindows, now, day, payment.getBarangayId());
+                scanned.add(document.getId());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to recompute barangay ranking: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to recompute barangay ranking: " + e.getMessage(), e);
+        }
+
+        int replayed = 0;
+        synchronized (this) {
+            days = freshDays;
+            windowCounters = freshWindows;
+            today = now;
+            ready = true;
+            advance(LocalDate.now(zone));
+            for (Payment payment : recordedDuringRecompute) {
+                if (payment.getId() == null || !scanned.contains(payment.getId())) {
+                    add(LocalDate.ofInstant(payment.getCreatedAt().toInstant(), zone), payment.getBarangayId());
+                    replayed++;
+                }
+            }
+        }
+        log.info("Recomputed barangay ranking from {} completed payments since {}, replayed {} recorded meanwhile",
+            scanned.size(), from, replayed);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", from.toString());
+        result.put("to", now.toString());
+        result.put("timeZone", zone.getId());
+        result.put("windows", new ArrayList<>(windows));
+        result.put("payments", scanned.size());
+        return result;
+    }
+
+    /**
+     * Periodic exact recompute, so payments written by other instances are counted
+     */
+    @Scheduled(fixedDelayString = "${rankings.barangays.refresh-interval-ms:600000}",
+               initialDelayString = "${rankings.barangays.refresh-initial-delay-ms:30000}")
+    public void refresh() {
+        try {
+            recompute();
+        } catch (Exception e) {
+            log.error("Error refreshing barangay ranking: {}", e.getMessage(), e);
+        }
+    }
+
+    private synchronized boolean isReady() {
+        return ready;
+    }
+
+    private void add(LocalDate day, String barangayId) {
+        add(days, windowCounters, today, day, barangayId);
+    }
+
+    private void add(TreeMap<LocalDate, RankedCounter> days, Map<Integer, RankedCounter> windowCounters,
+                     LocalDate today, LocalDate day, String barangayId) {
+        // A payment dated in the future (clock skew) counts for today
+        if (day.isAfter(today)) {
+            day = today;
+        }
+        if (day.isBefore(today.minusDays(windows.last() - 1L))) {
+            return;
+        }
+        days.computeIfAbsent(day, d -> new RankedCounter(capacity)).add(barangayId, 1);
+        for (Integer window : windows) {
+            if (!day.isBefore(today.minusDays(window - 1L))) {
+                windowCounters.get(window).add(barangayId, 1);
+            }
+        }
+    }
+
+    /**
+     * Move the windows forward to a new day, subtracting the days that fell out of each
+     */
+    private void advance(LocalDate now) {
+        if (today == null) {
+            today = now;
+            windowCounters = newWindowCounters();
+            return;
+        }
+        if (!now.isAfter(today)) {
+            return;
+        }
+        for (Integer window : windows) {
+            LocalDate oldStart = today.minusDays(window - 1L);
+            LocalDate newStart = now.minusDays(window - 1L);
+            RankedCounter counter = windowCounters.get(window);
+            for (RankedCounter expired : days.subMap(oldStart, true, newStart, false).values()) {
+                counter.subtractAll(expired);
+            }
+        }
+        days.headMap(now.minusDays(windows.last() - 1L), false).clear();
+        today = now;
+    }
+
+    private Map<Integer, RankedCounter> newWindowCounters() {
+        Map<Integer, RankedCounter> counters = new HashMap<>();
+        for (Integer window : windows) {
+            counters.put(window, new RankedCounter(capacity));
+        }
+        return counters;
+    }
+}
@@ -0,0 +1,55 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Splits a large rewrite into batches under Firestore's 500-write limit. Each batch is atomic on its
+ * own, the rewrite as a whole is not.
+ */
+class BatchWriter {
+
+    private static final int BATCH_LIMIT = 450;
+
+    private final Firestore firestore;
+    private final List<WriteBatch> batches = new ArrayList<>();
+    private int writesInBatch = BATCH_LIMIT;
+
+    BatchWriter(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    void set(DocumentReference reference, Map<String, Object> data) {
+        batch().set(reference, data);
+    }
+
+    void set(DocumentReference reference, Map<String, Object> data, SetOptions options) {
+        batch().set(reference, data, options);
+    }
+
+    void delete(DocumentReference reference) {
+        batch().delete(reference);
+    }
+
+    void commit() throws ExecutionException, InterruptedException {
+        for (WriteBatch batch : batches) {
+            batch.commit().get();
+        }
+    }
+
+    private WriteBatch batch() {
+        if (writesInBatch >= BATCH_LIMIT) {
+            batches.add(firestore.batch());
+            writesInBatch = 0;
+        }
+        writesInBatch++;
+        return batches.get(batches.size() - 1);
+    }
+}
@@ -3,8 +3,6 @@ package com.capstone.GrabTrash.service;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 
 import com.capstone.GrabTrash.model.CollectionSchedule;
@@ -44,6 +42,9 @@ public class CollectionScheduleService {
     @Autowired
     private NotificationService notificationService;
 
+    @Autowired
+    private CurrentUserContext currentUserContext;
+
     private String generateShortId() {
         long timestamp = System.currentTimeMillis();
         String timestampStr = Long.toString(timestamp, 36);
@@ -59,15 +60,7 @@ public class CollectionScheduleService {
     }
 
     private boolean isAdminUser() {
-        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        if (authentication == null || !authentication.isAuthenticated()) {
-            return false;
-        }
-
-        String userEmail = authentication.getName();
-        User currentUser = userService.getUserByEmailOrUsername(userEmail);
-        
-        return currentUser != null && "admin".equalsIgnoreCase(currentUser.getRole());
+        return currentUserContext.isAdmin();
     }
 
     private Timestamp parseDateTime(String dateTimeStr) throws DateTimeParseException {
@@ -579,41 +572,55 @@ public class CollectionScheduleService {
             
             log.info("Total schedules for today: {}", allTodaySchedules.size());
             
-            // Send notifications for each schedule
-            for (CollectionSchedule schedule : allTodaySchedules) {
-                log.debug("Preparing notification for schedule: {}, barangay: {}", 
-                    schedule.getScheduleId(), schedule.getBarangayId());
+            // Group by barangay so each barangay topic gets a single reminder, even with several schedules
+            Map<String, List<CollectionSchedule>> schedulesByBarangay = allTodaySchedules.stream()
+                .filter(schedule -> schedule.getBarangayId() != null)
+                .collect(Collectors.groupingBy(CollectionSchedule::getBarangayId, LinkedHashMap::new, Collectors.toList()));
+
+            for (Map.Entry<String, List<CollectionSchedule>> entry : schedulesByBarangay.entrySet()) {
+                String barangayId = entry.getKey();
+                List<CollectionSchedule> schedules = entry.getValue();
+                log.debug("Preparing notification for {} schedules in barangay: {}", schedules.size(), barangayId);
                 
                 String notificationTitle = "Garbage Collection Today";
-                String notificationBody = schedule.getWasteType() + " collection is scheduled for today";
-                
-                if (schedule.isRecurring() && schedule.getRecurringTime() != null) {
-                    notificationBody += " at " + schedule.getRecurringTime();
-                }
-                
-                if (schedule.getNotes() != null && !schedule.getNotes().isEmpty()) {
-                    notificationBody += ". Note: " + schedule.getNotes();
+                List<String> descriptions = new ArrayList<>();
+                for (CollectionSchedule schedule : schedules) {
+                    String description = schedule.getWasteType() + " collection is scheduled for today";
+                    
+                    if (schedule.isRecurring() && schedule.getRecurringTime() != null) {
+                        description += " at " + schedule.getRecurringTime();
+                    }
+                    
+                    if (schedule.getNotes() != null && !schedule.getNotes().isEmpty()) {
+                        description += ". Note: " + schedule.getNotes();
+                    }
+                    descriptions.add(description);
                 }
+                String notificationBody = String.join("\n", descriptions);
                 
                 Map<String, String> data = new HashMap<>();
-                data.put("scheduleId", schedule.getScheduleId());
+                data.put("scheduleId", schedules.get(0).getScheduleId());
+                data.put("scheduleIds", schedules.stream()
+                    .map(CollectionSchedule::getScheduleId)
+                    .collect(Collectors.joining(",")));
                 data.put("type", "TODAY_COLLECTION_REMINDER");
                 
                 int sentCount = notificationService.sendNotificationToBarangay(
-                    schedule.getBarangayId(),
+                    barangayId,
                     notificationTitle,
                     notificationBody,
                     data
                 );
                 
-                log.info("Sent {} notifications for schedule: {} in barangay: {}", 
-                    sentCount, schedule.getScheduleId(), schedule.getBarangayId());
+                log.info("Sent {} notifications for {} schedules in barangay: {}", 
+                    sentCount, schedules.size(), barangayId);
             }
             
             log.info("Completed sending today's collection reminders");
         } catch (Exception e) {
-            // Log error but don't throw exception to prevent disrupting scheduled tasks
+            // Rethrow so the scheduled job registry records the run as failed
             log.error("Error sending collection reminders: {}", e.getMessage(), e);
+            throw new RuntimeException("Failed to send collection reminders: " + e.getMessage(), e);
         }
     }
 } 
\ No newline at end of file
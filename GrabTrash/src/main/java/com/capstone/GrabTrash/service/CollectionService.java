@@ -5,8 +5,10 @@ import com.google.api.core.ApiFuture;
 import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
 
+import java.time.LocalDate;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 
@@ -14,59 +16,85 @@ import java.util.concurrent.ExecutionException;
 public class CollectionService {
 
     private final Firestore firestore;
+    private final AnalyticsRollups analyticsRollups;
+    private final DriverDailyStats driverDailyStats;
+    private final CurrentUserContext currentUserContext;
+
+    private static final List<String> COLLECTION_STATUSES = Arrays.asList("COMPLETED", "PENDING", "CANCELLED");
+    private static final List<String> COLLECTION_TYPES = Arrays.asList("PRIVATE", "PUBLIC");
+    // Allowance for clock skew between the client and the server on an admin-supplied collection date
+    private static final long MAX_CLOCK_SKEW_MILLIS = 5 * 60 * 1000L;
 
     @Autowired
-    public CollectionService(Firestore firestore) {
+    public CollectionService(Firestore firestore, AnalyticsRollups analyticsRollups, DriverDailyStats driverDailyStats,
+                             CurrentUserContext currentUserContext) {
         this.firestore = firestore;
+        this.analyticsRollups = analyticsRollups;
+        this.driverDailyStats = driverDailyStats;
+        this.currentUserContext = currentUserContext;
     }
 
-    // Get daily collection statistics for a driver
-    public Map<String, Object> getDriverDailyStats(String driverId, Date date) throws ExecutionException, InterruptedException {
-        CollectionReference collections = firestore.collection("collections");
-        
-        // Create start and end of day timestamps
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTime(date);
-        calendar.set(Calendar.HOUR_OF_DAY, 0);
-        calendar.set(Calendar.MINUTE, 0);
-        calendar.set(Calendar.SECOND, 0);
-        Timestamp startOfDay = Timestamp.of(calendar.getTime());
-        
-        calendar.set(Calendar.HOUR_OF_DAY, 23);
-        calendar.set(Calendar.MINUTE, 59);
-        calendar.set(Calendar.SECOND, 59);
-        Timestamp endOfDay = Timestamp.of(calendar.getTime());
+    // Record a collection, updating the analytics rollups and driver stats in the same batch.
+    // Drivers record their own collections, dated now; admins may record for any driver and backdate.
+    public CollectionRecord recordCollection(CollectionRecord record) throws ExecutionException, InterruptedException {
+        if (!currentUserContext.isAdmin()) {
+            String driverId = currentUserContext.getUserId();
+            if (driverId == null || !currentUserContext.hasRole("driver")) {
+                throw new AccessDeniedException("Only drivers and admins can record collections");
+            }
+            record.setDriverId(driverId);
+            record.setCollectionDate(Timestamp.now());
+        }
 
-        // Query collections for the driver on the specified date
-        Query query = collections
-                .whereEqualTo("driverId", driverId)
-                .whereEqualTo("collectionType", "PRIVATE")
-                .whereEqualTo("status", "COMPLETED")
-                .whereGreaterThanOrEqualTo("collectionDate", startOfDay)
-                .whereLessThanOrEqualTo("collectionDate", endOfDay);
+        if (record.getDriverId() == null || record.getDriverId().isEmpty()) {
+            throw new IllegalArgumentException("driverId is required");
+        }
+        if (record.getCollectionDate() == null) {
+            record.setCollectionDate(Timestamp.now());
+        } else if (record.getCollectionDate().toDate().getTime() > System.currentTimeMillis() + MAX_CLOCK_SKEW_MILLIS) {
+            throw new IllegalArgumentException("collectionDate must not be in the future");
+        }
+        if (record.getStatus() == null) {
+            record.setStatus("COMPLETED");
+        } else if (!COLLECTION_STATUSES.contains(record.getStatus())) {
+            throw new IllegalArgumentException("status must be one of " + COLLECTION_STATUSES);
+        }
+        if (!COLLECTION_TYPES.contains(record.getCollectionType())) {
+            throw new IllegalArgumentException("collectionType must be one of " + COLLECTION_TYPES);
+        }
+        if (!Double.isFinite(record.getWeight()) || record.getWeight() < 0) {
+            throw new IllegalArgumentException("weight must be a non-negative number");
+        }
 
-        ApiFuture<QuerySnapshot> future = query.get();
-        List<QueryDocumentSnapshot> documents = future.get().getDocuments();
+        DocumentReference document = firestore.collection("collections").document();
+        record.setRecordId(document.getId());
 
-        // Calculate statistics
-        int totalCollections = documents.size();
-        double totalWeight = 0.0;
-        Map<String, Integer> barangayCounts = new HashMap<>();
+        WriteBatch batch = firestore.batch();
+        batch.set(document, record);
+        analyticsRollups.recordCollection(batch, record);
+        driverDailyStats.recordCollection(batch, record);
+        batch.commit().get();
+        return record;
+    }
 
-        for (QueryDocumentSnapshot document : documents) {
-            CollectionRecord record = document.toObject(CollectionRecord.class);
-            totalWeight += record.getWeight();
-            barangayCounts.merge(record.getBarangay(), 1, Integer::sum);
-        }
+    // Get daily collection statistics for a driver, from the driver's stats document for that day
+    public Map<String, Object> getDriverDailyStats(String driverId, LocalDate date) throws ExecutionException, InterruptedException {
+        return driverDailyStats.getDay(driverId, date);
+    }
 
-        // Prepare response
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalCollections", totalCollections);
-        stats.put("totalWeight", totalWeight);
-        stats.put("barangayBreakdown", barangayCounts);
-        stats.put("date", date);
+    // Get collection statistics for a driver over a range of days
+    public Map<String, Object> getDriverStats(String driverId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        return driverDailyStats.getRange(driverId, from, to);
+    }
 
-        return stats;
+    // Recompute the driver stats documents for a range of days
+    public Map<String, Object> rebuildDriverStats(LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        return driverDailyStats.rebuild(from, to);
+    }
+
+    // Today in the time zone the driver stats are cut in
+    public LocalDate today() {
+        return driverDailyStats.today();
     }
 
     // Get barangay-wide collection statistics
@@ -0,0 +1,56 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Finds the job orders completed in a time range, for the rebuilds of the rollups kept per completion.
+ * Older payments have no jobCompletedAt; their last update stands in for the completion time.
+ */
+final class CompletedJobs {
+
+    private static final String PAYMENTS_COLLECTION = "payments";
+
+    private CompletedJobs() {
+    }
+
+    /**
+     * When a job order was completed, or null if it is not completed
+     */
+    static Date completedAt(Payment payment) {
+        if (!"Completed".equalsIgnoreCase(payment.getJobOrderStatus())) {
+            return null;
+        }
+        return payment.getJobCompletedAt() != null ? payment.getJobCompletedAt() : payment.getUpdatedAt();
+    }
+
+    /**
+     * The completed job orders whose completion time lies in [startAt, endBefore)
+     */
+    static List<Payment> between(Firestore firestore, Date startAt, Date endBefore) throws ExecutionException, InterruptedException {
+        List<Payment> payments = new ArrayList<>();
+        for (QueryDocumentSnapshot document : firestore.collection(PAYMENTS_COLLECTION)
+                .whereGreaterThanOrEqualTo("updatedAt", startAt).whereLessThan("updatedAt", endBefore)
+                .get().get().getDocuments()) {
+            Payment payment = document.toObject(Payment.class);
+            if (payment.getJobCompletedAt() == null && completedAt(payment) != null) {
+                payments.add(payment);
+            }
+        }
+        for (QueryDocumentSnapshot document : firestore.collection(PAYMENTS_COLLECTION)
+                .whereGreaterThanOrEqualTo("jobCompletedAt", startAt).whereLessThan("jobCompletedAt", endBefore)
+                .get().get().getDocuments()) {
+            Payment payment = document.toObject(Payment.class);
+            if (completedAt(payment) != null) {
+                payments.add(payment);
+            }
+        }
+        return payments;
+    }
+}
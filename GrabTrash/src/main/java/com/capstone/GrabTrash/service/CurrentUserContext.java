@@ -0,0 +1,172 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+
+/**
+ * The authenticated user of the current request.
+ * Email and role come from the authentication the JWT filter set up, so checking them costs nothing;
+ * the user document is only loaded when a caller needs it, and then at most once per request.
+ * Outside a request (listeners, scheduled jobs) nothing is cached and every call resolves again.
+ */
+@Component
+@Slf4j
+public class CurrentUserContext {
+
+    /**
+     * Request attribute the JWT filter stores the token's userId claim in
+     */
+    public static final String USER_ID_ATTRIBUTE = CurrentUserContext.class.getName() + ".userId";
+
+    private static final String USER_ATTRIBUTE = CurrentUserContext.class.getName() + ".user";
+    private static final String ROLE_PREFIX = "ROLE_";
+
+    private final UserService userService;
+
+    @Autowired
+    public CurrentUserContext(@Lazy UserService userService) {
+        this.userService = userService;
+    }
+
+    /**
+     * Get the authentication of the current request
+     * @return Authentication, or null if the request is anonymous
+     */
+    public Authentication getAuthentication() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()
+                || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return authentication;
+    }
+
+    /**
+     * Whether the current request is authenticated
+     */
+    public boolean isAuthenticated() {
+        return getAuthentication() != null;
+    }
+
+    /**
+     * Get the email of the current user (the token subject)
+     * @return Email, or null if the request is anonymous
+     */
+    public String getEmail() {
+        Authentication authentication = getAuthentication();
+        return authentication != null ? authentication.getName() : null;
+    }
+
+    /**
+     * Get the role of the current user from the granted authorities
+     * @return Upper-case role without the ROLE_ prefix, or null if there is none
+     */
+    public String getRole() {
+        Authentication authentication = getAuthentication();
+        if (authentication == null) {
+            return null;
+        }
+        String fallback = null;
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name.startsWith(ROLE_PREFIX)) {
+                return name.substring(ROLE_PREFIX.length());
+            }
+            if (fallback == null) {
+                fallback = name;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Check the current user's role, without reading the user document
+     * @param role Role in any case, with or without the ROLE_ prefix
+     * @return true if the current user has the role
+     */
+    public boolean hasRole(String role) {
+        Authentication authentication = getAuthentication();
+        if (authentication == null || role == null) {
+            return false;
+        }
+        String expected = role.toUpperCase();
+        if (!expected.startsWith(ROLE_PREFIX)) {
+            expected = ROLE_PREFIX + expected;
+        }
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            if (expected.equals(authority.getAuthority())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the current user is an admin
+     */
+    public boolean isAdmin() {
+        return hasRole("admin");
+    }
+
+    /**
+     * Get the ID of the current user, from the token when it carries one
+     * @return User ID, or null if the request is anonymous or the user does not exist
+     */
+    public String getUserId() {
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes != null && isAuthenticated()) {
+            Object userId = attributes.getAttribute(USER_ID_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+            if (userId instanceof String) {
+                return (String) userId;
+            }
+        }
+        User user = getUser();
+        return user != null ? user.getUserId() : null;
+    }
+
+    /**
+     * Get the current user's document, loaded on first use and reused for the rest of the request
+     * @return User, or null if the request is anonymous or the user does not exist
+     */
+    public User getUser() {
+        String email = getEmail();
+        if (email == null) {
+            return null;
+        }
+
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes == null) {
+            return userService.getUserByEmailOrUsername(email);
+        }
+
+        Object cached = attributes.getAttribute(USER_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (cached instanceof ResolvedUser && email.equals(((ResolvedUser) cached).email)) {
+            return ((ResolvedUser) cached).user;
+        }
+
+        User user = userService.getUserByEmailOrUsername(email);
+        // A missing user is cached too, so repeated checks in one request stay free
+        attributes.setAttribute(USER_ATTRIBUTE, new ResolvedUser(email, user), RequestAttributes.SCOPE_REQUEST);
+        log.debug("Resolved current user {} for this request", email);
+        return user;
+    }
+
+    private static class ResolvedUser {
+        private final String email;
+        private final User user;
+
+        private ResolvedUser(String email, User user) {
+            this.email = email;
+            this.user = user;
+        }
+    }
+}
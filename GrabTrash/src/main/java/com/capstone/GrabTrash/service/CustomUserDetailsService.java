@@ -1,9 +1,6 @@
 package com.capstone.GrabTrash.service;
 
 import com.capstone.GrabTrash.model.User;
-import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.Query;
-import com.google.cloud.firestore.QuerySnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -12,7 +9,6 @@ import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 
@@ -20,30 +16,14 @@ import java.util.concurrent.ExecutionException;
 public class CustomUserDetailsService implements UserDetailsService {
 
     @Autowired
-    private Firestore firestore;
+    private UserIdentifierIndex identifierIndex;
 
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
         try {
-            // Try to find user by email first
-            Query query = firestore.collection("users")
-                    .whereEqualTo("email", username)
-                    .limit(1);
-            
-            QuerySnapshot snapshot = query.get().get();
-            if (!snapshot.isEmpty()) {
-                User user = snapshot.getDocuments().get(0).toObject(User.class);
-                return createUserDetails(user);
-            }
-
-            // If not found by email, try username
-            query = firestore.collection("users")
-                    .whereEqualTo("username", username)
-                    .limit(1);
-            
-            snapshot = query.get().get();
-            if (!snapshot.isEmpty()) {
-                User user = snapshot.getDocuments().get(0).toObject(User.class);
+            // Email or username, resolved through the identifier index
+            User user = identifierIndex.resolveUser(username);
+            if (user != null) {
                 return createUserDetails(user);
             }
 
@@ -54,13 +34,26 @@ public class CustomUserDetailsService implements UserDetailsService {
     }
 
     private UserDetails createUserDetails(User user) {
+        return new org.springframework.security.core.userdetails.User(
+            user.getEmail(), // Using email as the principal
+            user.getPassword(),
+            authoritiesFor(user.getRole())
+        );
+    }
+
+    /**
+     * Build the granted authorities for a role
+     * @param userRole Role as stored on the user (any case)
+     * @return Authorities for the role, empty if there is no role
+     */
+    public static List<SimpleGrantedAuthority> authoritiesFor(String userRole) {
         // Create list of authorities
         List<SimpleGrantedAuthority> authorities = new ArrayList<>();
         
         // Add the user role with both formats (with and without ROLE_ prefix)
         // This ensures authorities work with both hasRole() and hasAuthority()
-        if (user.getRole() != null && !user.getRole().isEmpty()) {
-            String role = user.getRole().toUpperCase(); // Convert to uppercase for consistency
+        if (userRole != null && !userRole.isEmpty()) {
+            String role = userRole.toUpperCase(); // Convert to uppercase for consistency
             
             // Add the role with ROLE_ prefix (for hasRole)
             authorities.add(new SimpleGrantedAuthority("ROLE_" + role));
@@ -69,10 +62,6 @@ public class CustomUserDetailsService implements UserDetailsService {
             authorities.add(new SimpleGrantedAuthority(role));
         }
         
-        return new org.springframework.security.core.userdetails.User(
-            user.getEmail(), // Using email as the principal
-            user.getPassword(),
-            authorities
-        );
+        return authorities;
     }
 } 
\ No newline at end of file
@@ -0,0 +1,442 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.TransactionOptions;
+import com.google.cloud.firestore.UpdateBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Dashboard totals over completed payments, kept up to date as payments are written instead of
+ * being recounted from the whole payments collection on every dashboard load.
+ *
+ * The order count and revenue are spread over sharded counter documents so concurrent payments do
+ * not contend on one document; reading the totals sums the shards. Each barangay has its own count
+ * document, so the top barangays are a limit query. PaymentService stages the increments in the same
+ * batch or transaction as the payment write.
+ *
+ * Until the first backfill finishes, callers fall back to scanning. {@link #rebuild} corrects the
+ * aggregates from the payments by writing only the difference as increments, so it is safe to run
+ * under live traffic, and {@link #checkConsistency} compares the aggregates with a full scan.
+ */
+@Service
+@Slf4j
+public class DashboardAggregates {
+
+    private static final String PAYMENTS_COLLECTION = "payments";
+    private static final String AGGREGATES_COLLECTION = "dashboardAggregates";
+    private static final String AGGREGATES_DOCUMENT = "payments";
+    private static final String STATUS_COLLECTION = "indexStatus";
+    private static final String STATUS_DOCUMENT = "dashboardAggregates";
+    private static final String REBUILD_LEASE = "dashboard-aggregates-rebuild";
+    private static final long REBUILD_LEASE_MILLIS = 10 * 60 * 1000L;
+
+    static final String COMPLETED = "COMPLETED";
+
+    private final Firestore firestore;
+    private final FirestoreAsync firestoreAsync;
+    private final LeaseStore leaseStore;
+    private final String nodeId;
+    private final int shards;
+    private final boolean repairOnDrift;
+    private volatile boolean complete = false;
+
+    @Autowired
+    public DashboardAggregates(Firestore firestore, FirestoreAsync firestoreAsync, LeaseStore leaseStore, NodeIdentity nodeIdentity,
+                               @Value("${dashboard.aggregates.shards:10}") int shards,
+                               @Value("${dashboard.aggregates.repair-on-drift:true}") boolean repairOnDrift) {
+        this.firestore = firestore;
+        this.firestoreAsync = firestoreAsync;
+        this.leaseStore = leaseStore;
+        this.nodeId = nodeIdentity.getId();
+        this.shards = Math.max(1, shards);
+        this.repairOnDrift = repairOnDrift;
+    }
+
+    /**
+     * Backfill the aggregates once, in the background, on one instance
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                if (refreshStatus()) {
+                    log.info("Dashboard aggregates are complete");
+                    return;
+                }
+                if (!leaseStore.tryAcquire(REBUILD_LEASE, nodeId, REBUILD_LEASE_MILLIS)) {
+                    log.info("Dashboard aggregates are being backfilled by another instance");
+                    return;
+                }
+                try {
+                    applyScan();
+                } finally {
+                    leaseStore.release(REBUILD_LEASE, nodeId);
+                }
+            } catch (Exception e) {
+                log.error("Failed to backfill dashboard aggregates: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Whether the aggregates can be read instead of scanning payments. Re-reads the status marker while
+     * not complete, so instances notice a backfill done by another one.
+     */
+    public boolean isComplete() {
+        if (!complete) {
+            try {
+                refreshStatus();
+            } catch (Exception e) {
+                log.debug("Failed to read dashboard aggregates status: {}", e.getMessage());
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Whether a payment counts toward the dashboard
+     */
+    public static boolean counts(Payment payment) {
+        return payment != null && COMPLETED.equals(payment.getStatus());
+    }
+
+    /**
+     * Stage the increments for a payment that has just become completed
+     * @param writes Batch or transaction that also writes the payment
+     * @param payment The completed payment
+     */
+    public void recordCompleted(UpdateBuilder<?> writes, Payment payment) {
+        double revenue = revenueOf(payment);
+        Map<String, Object> shard = new HashMap<>();
+        shard.put("orderCount", FieldValue.increment(1));
+        shard.put("revenue", FieldValue.increment(revenue));
+        writes.set(shards().document(String.valueOf(ThreadLocalRandom.current().nextInt(shards))), shard, SetOptions.merge());
+
+        if (payment.getBarangayId() != null) {
+            Map<String, Object> barangay = new HashMap<>();
+            barangay.put("barangayId", payment.getBarangayId());
+            barangay.put("count", FieldValue.increment(1));
+            barangay.put("revenue", FieldValue.increment(revenue));
+            writes.set(barangays().document(payment.getBarangayId()), barangay, SetOptions.merge());
+        }
+    }
+
+    /**
+     * Read the totals by summing the counter shards
+     */
+    public Totals readTotals() throws ExecutionException, InterruptedException {
+        return sumShards(shards().get().get());
+    }
+
+    /**
+     * Read the totals without blocking the calling thread
+     */
+    public CompletableFuture<Totals> readTotalsAsync() {
+        return firestoreAsync.query(shards()).thenApply(DashboardAggregates::sumShards);
+    }
+
+    /**
+     * Barangays with the most completed payments, reading only topN documents
+     */
+    public List<Map<String, Object>> readTopBarangays(int topN) throws ExecutionException, InterruptedException {
+        List<Map<String, Object>> top = new ArrayList<>();
+        // A rebuild leaves barangays without completed payments at zero instead of deleting them
+        List<QueryDocumentSnapshot> documents = barangays()
+                .whereGreaterThan("count", 0)
+                .orderBy("count", Query.Direction.DESCENDING)
+                .limit(topN)
+                .get().get().getDocuments();
+        for (QueryDocumentSnapshot document : documents) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put("barangayId", document.getId());
+            entry.put("count", longValue(document, "count"));
+            top.add(entry);
+        }
+        return top;
+    }
+
+    /**
+     * Bring the aggregates in line with every completed payment and mark them complete. The payments and
+     * the stored aggregates are read at one snapshot and only the difference is written, as increments,
+     * so payments completed while this runs keep their own increments and nothing is lost. Runs on one
+     * instance at a time, since two overlapping runs would both apply the same difference.
+     * @return The recomputed totals and barangay count
+     */
+    public Map<String, Object> rebuild() throws ExecutionException, InterruptedException {
+        if (!leaseStore.tryAcquire(REBUILD_LEASE, nodeId, REBUILD_LEASE_MILLIS)) {
+            throw new IllegalStateException("Dashboard aggregates are already being rebuilt");
+        }
+        try {
+            return applyScan();
+        } finally {
+            leaseStore.release(REBUILD_LEASE, nodeId);
+        }
+    }
+
+    private Map<String, Object> applyScan() throws ExecutionException, InterruptedException {
+        log.info("Rebuilding dashboard aggregates from payments");
+        Snapshot snapshot = readSnapshot();
+        Scan scan = snapshot.scan;
+
+        BatchWriter writer = new BatchWriter(firestore);
+        long orderCountDelta = scan.totals.getOrderCount() - snapshot.stored.getOrderCount();
+        double revenueDelta = scan.totals.getRevenue() - snapshot.stored.getRevenue();
+        if (orderCountDelta != 0 || revenueDelta != 0) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("orderCount", FieldValue.increment(orderCountDelta));
+            data.put("revenue", FieldValue.increment(revenueDelta));
+            writer.set(shards().document("0"), data, SetOptions.merge());
+        }
+        // Shards beyond the configured count are not incremented any more, and would otherwise still be summed
+        for (DocumentReference reference : snapshot.unconfiguredShards) {
+            writer.delete(reference);
+        }
+        Set<String> barangayIds = new HashSet<>(scan.barangayCounts.keySet());
+        barangayIds.addAll(snapshot.storedCounts.keySet());
+        for (String barangayId : barangayIds) {
+            long countDelta = scan.barangayCounts.getOrDefault(barangayId, 0L) - snapshot.storedCounts.getOrDefault(barangayId, 0L);
+            double barangayRevenueDelta = scan.barangayRevenue.getOrDefault(barangayId, 0.0)
+                - snapshot.storedRevenue.getOrDefault(barangayId, 0.0);
+            if (countDelta == 0 && barangayRevenueDelta == 0) {
+                continue;
+            }
+            // Barangays left at zero are kept rather than deleted, so a concurrent increment is not lost
+            Map<String, Object> data = new HashMap<>();
+            data.put("barangayId", barangayId);
+            data.put("count", FieldValue.increment(countDelta));
+            data.put("revenue", FieldValue.increment(barangayRevenueDelta));
+            writer.set(barangays().document(barangayId), data, SetOptions.merge());
+        }
+        writer.commit();
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("complete", true);
+        status.put("completedAt", new Date());
+        firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).set(status).get();
+        complete = true;
+
+        log.info("Dashboard aggregates rebuilt: {} completed payments, revenue {}, {} barangays",
+            scan.totals.getOrderCount(), scan.totals.getRevenue(), scan.barangayCounts.size());
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("orderCount", scan.totals.getOrderCount());
+        result.put("revenue", scan.totals.getRevenue());
+        result.put("barangays", scan.barangayCounts.size());
+        result.put("orderCountAdjustment", orderCountDelta);
+        result.put("rebuiltAt", status.get("completedAt"));
+        return result;
+    }
+
+    /**
+     * Compare the aggregates with a full scan of the completed payments, both read at one snapshot
+     * @return Report with expected and stored totals and the barangays that differ
+     */
+    public Map<String, Object> checkConsistency() throws ExecutionException, InterruptedException {
+        Snapshot snapshot = readSnapshot();
+        Scan scan = snapshot.scan;
+        Totals stored = snapshot.stored;
+
+        Map<String, Object> barangayMismatches = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : scan.barangayCounts.entrySet()) {
+            long actual = snapshot.storedCounts.getOrDefault(entry.getKey(), 0L);
+            if (actual != entry.getValue()) {
+                barangayMismatches.put(entry.getKey(), Map.of("expected", entry.getValue(), "stored", actual));
+            }
+        }
+        for (Map.Entry<String, Long> entry : snapshot.storedCounts.entrySet()) {
+            if (!scan.barangayCounts.containsKey(entry.getKey()) && entry.getValue() != 0) {
+                barangayMismatches.put(entry.getKey(), Map.of("expected", 0L, "stored", entry.getValue()));
+            }
+        }
+
+        // Revenue is summed in floating point in a different order, so allow rounding differences
+        boolean consistent = stored.getOrderCount() == scan.totals.getOrderCount()
+            && Math.abs(stored.getRevenue() - scan.totals.getRevenue()) < 0.01
+            && barangayMismatches.isEmpty();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("consistent", consistent);
+        report.put("expectedOrderCount", scan.totals.getOrderCount());
+        report.put("storedOrderCount", stored.getOrderCount());
+        report.put("expectedRevenue", scan.totals.getRevenue());
+        report.put("storedRevenue", stored.getRevenue());
+        report.put("barangayMismatches", barangayMismatches);
+        report.put("checkedAt", new Date());
+        if (consistent) {
+            log.info("Dashboard aggregates are consistent with payments");
+        } else {
+            log.warn("Dashboard aggregates drifted from payments: {}", report);
+        }
+        return report;
+    }
+
+    /**
+     * Scheduled consistency check; rebuilds the aggregates when they drifted and repair is enabled
+     */
+    public void verify() {
+        try {
+            Map<String, Object> report = checkConsistency();
+            if (!Boolean.TRUE.equals(report.get("consistent")) && repairOnDrift) {
+                rebuild();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to verify dashboard aggregates: " + e.getMessage());
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to verify dashboard aggregates: " + e.getMessage());
+        }
+    }
+
+    static double revenueOf(Payment payment) {
+        return payment.getTotalAmount() != null ? payment.getTotalAmount() : 0.0;
+    }
+
+    private boolean refreshStatus() throws ExecutionException, InterruptedException {
+        DocumentSnapshot status = firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).get().get();
+        complete = status.exists() && Boolean.TRUE.equals(status.getBoolean("complete"));
+        return complete;
+    }
+
+    /**
+     * Read the completed payments and the stored aggregates in one read-only transaction, so the two
+     * agree on which payments have been counted
+     */
+    private Snapshot readSnapshot() throws ExecutionException, InterruptedException {
+        Query completedPayments = firestore.collection(PAYMENTS_COLLECTION).whereEqualTo("status", COMPLETED);
+        return firestore.runTransaction(transaction -> {
+            Snapshot snapshot = new Snapshot();
+            snapshot.scan = scan(transaction.get(completedPayments).get());
+
+            long orderCount = 0;
+            double revenue = 0;
+            for (QueryDocumentSnapshot document : transaction.get(shards()).get().getDocuments()) {
+                if (!isConfiguredShard(document.getId())) {
+                    snapshot.unconfiguredShards.add(document.getReference());
+                    continue;
+                }
+                orderCount += longValue(document, "orderCount");
+                revenue += doubleValue(document, "revenue");
+            }
+            snapshot.stored = new Totals(orderCount, revenue);
+
+            for (QueryDocumentSnapshot document : transaction.get(barangays()).get().getDocuments()) {
+                snapshot.storedCounts.put(document.getId(), longValue(document, "count"));
+                snapshot.storedRevenue.put(document.getId(), doubleValue(document, "revenue"));
+            }
+            return snapshot;
+        }, TransactionOptions.createReadOnlyOptionsBuilder().build()).get();
+    }
+
+    private static Scan scan(QuerySnapshot completedPayments) {
+        Scan scan = new Scan();
+        long orderCount = 0;
+        double revenue = 0;
+        for (Payment payment : completedPayments.toObjects(Payment.class)) {
+            orderCount++;
+            revenue += revenueOf(payment);
+            if (payment.getBarangayId() != null) {
+                scan.barangayCounts.merge(payment.getBarangayId(), 1L, Long::sum);
+                scan.barangayRevenue.merge(payment.getBarangayId(), revenueOf(payment), Double::sum);
+            }
+        }
+        scan.totals = new Totals(orderCount, revenue);
+        return scan;
+    }
+
+    private boolean isConfiguredShard(String id) {
+        try {
+            int shard = Integer.parseInt(id);
+            return shard >= 0 && shard < shards;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static Totals sumShards(QuerySnapshot snapshot) {
+        long orderCount = 0;
+        double revenue = 0;
+        for (QueryDocumentSnapshot document : snapshot.getDocuments()) {
+            orderCount += longValue(document, "orderCount");
+            revenue += doubleValue(document, "revenue");
+        }
+        return new Totals(orderCount, revenue);
+    }
+
+    private static long longValue(DocumentSnapshot document, String field) {
+        Long value = document.getLong(field);
+        return value != null ? value : 0L;
+    }
+
+    private static double doubleValue(DocumentSnapshot document, String field) {
+        Double value = document.getDouble(field);
+        return value != null ? value : 0.0;
+    }
+
+    private CollectionReference shards() {
+        return firestore.collection(AGGREGATES_COLLECTION).document(AGGREGATES_DOCUMENT).collection("shards");
+    }
+
+    private CollectionReference barangays() {
+        return firestore.collection(AGGREGATES_COLLECTION).document(AGGREGATES_DOCUMENT).collection("barangays");
+    }
+
+    /**
+     * Order count and revenue of completed payments
+     */
+    public static class Totals {
+        private final long orderCount;
+        private final double revenue;
+
+        public Totals(long orderCount, double revenue) {
+            this.orderCount = orderCount;
+            this.revenue = revenue;
+        }
+
+        public long getOrderCount() {
+            return orderCount;
+        }
+
+        public double getRevenue() {
+            return revenue;
+        }
+    }
+
+    private static class Scan {
+        private Totals totals;
+        private final Map<String, Long> barangayCounts = new HashMap<>();
+        private final Map<String, Double> barangayRevenue = new HashMap<>();
+    }
+
+    private static class Snapshot {
+        private Scan scan;
+        private Totals stored;
+        private final List<DocumentReference> unconfiguredShards = new ArrayList<>();
+        private final Map<String, Long> storedCounts = new HashMap<>();
+        private final Map<String, Double> storedRevenue = new HashMap<>();
+    }
+}
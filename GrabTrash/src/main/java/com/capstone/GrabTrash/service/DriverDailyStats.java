@@ -0,0 +1,298 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.CollectionRecord;
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.UpdateBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * One document per driver per day in driverDailyStats (e.g. driver123_2026-10-17), holding the day's
+ * completed private collections (count, weight, count per barangay) and completed job orders (count,
+ * pickup weight, count per barangay). Collection records and job completions increment it in the same
+ * batch as the write that caused them, so a day's stats are one document read and a range is one read
+ * per day. Days are cut in the analytics time zone.
+ */
+@Service
+@Slf4j
+public class DriverDailyStats {
+
+    private static final String COLLECTION_NAME = "driverDailyStats";
+    private static final int MAX_DAYS = 92;
+
+    private final Firestore firestore;
+    private final ZoneId zone;
+
+    @Autowired
+    public DriverDailyStats(Firestore firestore, AnalyticsRollups analyticsRollups) {
+        this.firestore = firestore;
+        this.zone = analyticsRollups.getZone();
+    }
+
+    /**
+     * Today in the time zone the stats are cut in
+     */
+    public LocalDate today() {
+        return LocalDate.now(zone);
+    }
+
+    /**
+     * Stage the increments for a collection record, if it is a completed private collection
+     * @param writes Batch that also writes the record
+     * @param record The collection record
+     */
+    public void recordCollection(UpdateBuilder<?> writes, CollectionRecord record) {
+        if (!countsCollection(record)) {
+            return;
+        }
+        LocalDate day = day(record.getCollectionDate().toDate());
+        Map<String, Object> data = header(record.getDriverId(), day);
+        data.put("totalCollections", FieldValue.increment(1));
+        data.put("totalWeight", FieldValue.increment(record.getWeight()));
+        if (record.getBarangay() != null) {
+            data.put("barangayBreakdown", Map.of(record.getBarangay(), FieldValue.increment(1)));
+        }
+        writes.set(document(record.getDriverId(), day), data, SetOptions.merge());
+    }
+
+    /**
+     * Stage the increments for a job order that has just been completed for the first time; the caller
+     * only calls this while jobCompletedAt is still unset, so reopening a job cannot count it twice
+     * @param writes Batch that also writes the payment
+     * @param payment The payment, with jobCompletedAt set
+     */
+    public void recordJobCompleted(UpdateBuilder<?> writes, Payment payment) {
+        Date completedAt = CompletedJobs.completedAt(payment);
+        if (payment.getDriverId() == null || completedAt == null) {
+            return;
+        }
+        LocalDate day = day(completedAt);
+        Map<String, Object> data = header(payment.getDriverId(), day);
+        data.put("completedJobs", FieldValue.increment(1));
+        data.put("pickupWeight", FieldValue.increment(payment.getTrashWeight() != null ? payment.getTrashWeight() : 0.0));
+        if (payment.getBarangayId() != null) {
+            data.put("jobBarangayBreakdown", Map.of(payment.getBarangayId(), FieldValue.increment(1)));
+        }
+        writes.set(document(payment.getDriverId(), day), data, SetOptions.merge());
+    }
+
+    /**
+     * A driver's stats for one day, from a single document read
+     */
+    public Map<String, Object> getDay(String driverId, LocalDate date) throws ExecutionException, InterruptedException {
+        Map<String, Object> stats = emptyStats();
+        add(stats, document(driverId, date).get().get());
+        stats.put("driverId", driverId);
+        stats.put("date", date.toString());
+        stats.put("timeZone", zone.getId());
+        return stats;
+    }
+
+    /**
+     * A driver's stats summed over a range of days, with one entry per day
+     * @param from First day, inclusive
+     * @param to Last day, inclusive
+     */
+    public Map<String, Object> getRange(String driverId, LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        checkRange(from, to);
+
+        List<DocumentReference> documents = new ArrayList<>();
+        for (LocalDate day = from; !day.isAfter(to); day = day.plusDays(1)) {
+            documents.add(document(driverId, day));
+        }
+
+        Map<String, Object> total = emptyStats();
+        List<Map<String, Object>> days = new ArrayList<>();
+        LocalDate day = from;
+        for (DocumentSnapshot snapshot : firestore.getAll(documents.toArray(new DocumentReference[0])).get()) {
+            Map<String, Object> stats = emptyStats();
+            add(stats, snapshot);
+            add(total, snapshot);
+            stats.put("date", day.toString());
+            days.add(stats);
+            day = day.plusDays(1);
+        }
+
+        total.put("driverId", driverId);
+        total.put("from", from.toString());
+        total.put("to", to.toString());
+        total.put("timeZone", zone.getId());
+        total.put("days", days);
+        return total;
+    }
+
+    /**
+     * Recompute the stats documents for a range of days from the collection records and payments.
+     * The range is capped like {@link #getRange}. Increments landing while it runs can be lost, so run
+     * it when writes are quiet.
+     * @return The rewritten range and document count
+     */
+    public Map<String, Object> rebuild(LocalDate from, LocalDate to) throws ExecutionException, InterruptedException {
+        checkRange(from, to);
+        Date startAt = Date.from(from.atStartOfDay(zone).toInstant());
+        Date endBefore = Date.from(to.plusDays(1).atStartOfDay(zone).toInstant());
+        log.info("Rebuilding driver daily stats from {} to {}", from, to);
+
+        Map<String, Map<String, Object>> documents = new HashMap<>();
+        for (QueryDocumentSnapshot document : firestore.collection("collections")
+                .whereGreaterThanOrEqualTo("collectionDate", Timestamp.of(startAt))
+                .whereLessThan("collectionDate", Timestamp.of(endBefore))
+                .get().get().getDocuments()) {
+            CollectionRecord record = document.toObject(CollectionRecord.class);
+            if (countsCollection(record)) {
+                Map<String, Object> stats = rebuilt(documents, record.getDriverId(), day(record.getCollectionDate().toDate()));
+                increment(stats, "totalCollections", 1L);
+                increment(stats, "totalWeight", record.getWeight());
+                if (record.getBarangay() != null) {
+                    increment(breakdown(stats, "barangayBreakdown"), record.getBarangay(), 1L);
+                }
+            }
+        }
+        for (Payment payment : CompletedJobs.between(firestore, startAt, endBefore)) {
+            Date completedAt = CompletedJobs.completedAt(payment);
+            if (payment.getDriverId() != null && completedAt != null) {
+                Map<String, Object> stats = rebuilt(documents, payment.getDriverId(), day(completedAt));
+                increment(stats, "completedJobs", 1L);
+                increment(stats, "pickupWeight", payment.getTrashWeight() != null ? payment.getTrashWeight() : 0.0);
+                if (payment.getBarangayId() != null) {
+                    increment(breakdown(stats, "jobBarangayBreakdown"), payment.getBarangayId(), 1L);
+                }
+            }
+        }
+
+        BatchWriter writer = new BatchWriter(firestore);
+        int stale = 0;
+        for (QueryDocumentSnapshot document : firestore.collection(COLLECTION_NAME)
+                .whereGreaterThanOrEqualTo("date", from.toString())
+                .whereLessThanOrEqualTo("date", to.toString())
+                .get().get().getDocuments()) {
+            if (!documents.containsKey(document.getId())) {
+                writer.delete(document.getReference());
+                stale++;
+            }
+        }
+        for (Map.Entry<String, Map<String, Object>> document : documents.entrySet()) {
+            writer.set(firestore.collection(COLLECTION_NAME).document(document.getKey()), document.getValue());
+        }
+        writer.commit();
+        log.info("Rebuilt {} driver daily stats documents, removed {}", documents.size(), stale);
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("from", from.toString());
+        result.put("to", to.toString());
+        result.put("documents", documents.size());
+        result.put("removed", stale);
+        return result;
+    }
+
+    private static void checkRange(LocalDate from, LocalDate to) {
+        if (from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        if (ChronoUnit.DAYS.between(from, to) >= MAX_DAYS) {
+            throw new IllegalArgumentException("Range must not exceed " + MAX_DAYS + " days");
+        }
+    }
+
+    private static boolean countsCollection(CollectionRecord record) {
+        return record != null && record.getDriverId() != null && record.getCollectionDate() != null
+            && "PRIVATE".equals(record.getCollectionType()) && "COMPLETED".equals(record.getStatus());
+    }
+
+    private LocalDate day(Date at) {
+        return LocalDate.ofInstant(at.toInstant(), zone);
+    }
+
+    private DocumentReference document(String driverId, LocalDate day) {
+        return firestore.collection(COLLECTION_NAME).document(driverId + "_" + day);
+    }
+
+    private Map<String, Object> header(String driverId, LocalDate day) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("driverId", driverId);
+        data.put("date", day.toString());
+        data.put("start", Date.from(day.atStartOfDay(zone).toInstant()));
+        data.put("timeZone", zone.getId());
+        return data;
+    }
+
+    private Map<String, Object> rebuilt(Map<String, Map<String, Object>> documents, String driverId, LocalDate day) {
+        return documents.computeIfAbsent(driverId + "_" + day, id -> {
+            Map<String, Object> stats = header(driverId, day);
+            stats.putAll(emptyStats());
+            return stats;
+        });
+    }
+
+    private static Map<String, Object> emptyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalCollections", 0L);
+        stats.put("totalWeight", 0.0);
+        stats.put("barangayBreakdown", new HashMap<String, Object>());
+        stats.put("completedJobs", 0L);
+        stats.put("pickupWeight", 0.0);
+        stats.put("jobBarangayBreakdown", new HashMap<String, Object>());
+        return stats;
+    }
+
+    /**
+     * Add a stats document's values into a running total
+     */
+    private static void add(Map<String, Object> stats, DocumentSnapshot snapshot) {
+        if (!snapshot.exists()) {
+            return;
+        }
+        increment(stats, "totalCollections", longValue(snapshot.get("totalCollections")));
+        increment(stats, "totalWeight", doubleValue(snapshot.get("totalWeight")));
+        increment(stats, "completedJobs", longValue(snapshot.get("completedJobs")));
+        increment(stats, "pickupWeight", doubleValue(snapshot.get("pickupWeight")));
+        for (String field : List.of("barangayBreakdown", "jobBarangayBreakdown")) {
+            Object counts = snapshot.get(field);
+            if (counts instanceof Map) {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) counts).entrySet()) {
+                    increment(breakdown(stats, field), String.valueOf(entry.getKey()), longValue(entry.getValue()));
+                }
+            }
+        }
+    }
+
+    private static void increment(Map<String, Object> target, String key, long delta) {
+        target.merge(key, delta, (a, b) -> (Long) a + (Long) b);
+    }
+
+    private static void increment(Map<String, Object> target, String key, double delta) {
+        target.merge(key, delta, (a, b) -> (Double) a + (Double) b);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> breakdown(Map<String, Object> stats, String field) {
+        return (Map<String, Object>) stats.computeIfAbsent(field, f -> new HashMap<String, Object>());
+    }
+
+    private static long longValue(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static double doubleValue(Object value) {
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,67 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Sorts FCM send failures into what the sender should do about them:
+ * retry later, drop the device token, or give up on the message.
+ */
+final class FcmErrorClassifier {
+
+    enum Category {
+        /** Worth another attempt after a backoff */
+        TRANSIENT,
+        /** The token will never work again; remove it from the user */
+        INVALID_TOKEN,
+        /** Neither retrying nor dropping the token helps, e.g. a credentials problem */
+        PERMANENT
+    }
+
+    private static final Set<String> TRANSIENT_ERRORS = Set.of(
+            "UNAVAILABLE", "INTERNAL", "QUOTA_EXCEEDED", "DEADLINE_EXCEEDED", "ABORTED", "RESOURCE_EXHAUSTED", "UNKNOWN");
+
+    private static final Set<String> INVALID_TOKEN_ERRORS = Set.of("UNREGISTERED", "SENDER_ID_MISMATCH");
+
+    private FcmErrorClassifier() {
+    }
+
+    /**
+     * Classify a failed send
+     * @param errorCode Error code of the result
+     * @param errorMessage Error message of the result, or null
+     * @return What to do about the failure
+     */
+    static Category classify(String errorCode, String errorMessage) {
+        if (errorCode == null || TRANSIENT_ERRORS.contains(errorCode)) {
+            return Category.TRANSIENT;
+        }
+        if (INVALID_TOKEN_ERRORS.contains(errorCode)) {
+            return Category.INVALID_TOKEN;
+        }
+        // INVALID_ARGUMENT also covers malformed payloads; only a rejected token makes the token dead
+        if ("INVALID_ARGUMENT".equals(errorCode) && errorMessage != null
+                && errorMessage.toLowerCase(Locale.ROOT).contains("registration token")) {
+            return Category.INVALID_TOKEN;
+        }
+        return Category.PERMANENT;
+    }
+
+    static Category classify(FcmSendResult result) {
+        return classify(result.getErrorCode(), result.getErrorMessage());
+    }
+
+    /**
+     * Whether a failure is worth another attempt
+     */
+    static boolean isTransient(FcmSendResult result) {
+        return !result.isSuccess() && classify(result) == Category.TRANSIENT;
+    }
+
+    /**
+     * Whether a failure means the token is dead
+     */
+    static boolean isInvalidToken(FcmSendResult result) {
+        return !result.isSuccess() && classify(result) == Category.INVALID_TOKEN;
+    }
+}
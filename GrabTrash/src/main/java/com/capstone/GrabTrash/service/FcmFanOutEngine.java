@@ -0,0 +1,165 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends one notification to many devices. Tokens are split into FCM batches of up to 500, and at most
+ * notifications.fanout.parallelism batches are in flight at once. Tokens that fail with a transient error
+ * are retried with exponential backoff and jitter; the wait happens on a scheduler, so no thread sleeps.
+ */
+@Service
+@Slf4j
+public class FcmFanOutEngine {
+
+    private final FcmGateway gateway;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService retryScheduler;
+
+    @Autowired
+    public FcmFanOutEngine(FcmGateway gateway,
+                           @Value("${notifications.fanout.parallelism:4}") int parallelism,
+                           @Value("${notifications.fanout.batch-size:500}") int batchSize,
+                           @Value("${notifications.fanout.max-attempts:3}") int maxAttempts,
+                           @Value("${notifications.fanout.initial-backoff-ms:1000}") long initialBackoffMillis,
+                           @Value("${notifications.fanout.max-backoff-ms:30000}") long maxBackoffMillis) {
+        this.gateway = gateway;
+        this.batchSize = Math.max(1, Math.min(batchSize, FcmGateway.MAX_BATCH_SIZE));
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, parallelism), daemonThreads("fcm-fanout-"));
+        this.retryScheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("fcm-retry-"));
+    }
+
+    /**
+     * Shut down the send and retry threads when the engine is destroyed
+     */
+    @PreDestroy
+    public void cleanup() {
+        log.info("Shutting down FCM fan-out executors");
+        retryScheduler.shutdownNow();
+        senders.shutdown();
+    }
+
+    /**
+     * Send a notification to every token
+     * @param tokens Registration tokens; blanks and duplicates are dropped
+     * @param payload Notification content
+     * @return Future of the per-token outcomes, completed once every token is delivered or given up on
+     */
+    public CompletableFuture<FcmFanOutResult> send(Collection<String> tokens, FcmPayload payload) {
+        Set<String> distinct = new LinkedHashSet<>();
+        for (String token : tokens) {
+            if (token != null && !token.trim().isEmpty()) {
+                distinct.add(token.trim());
+            }
+        }
+
+        Map<String, FcmFanOutResult.TokenOutcome> outcomes = new ConcurrentHashMap<>();
+        List<String> all = new ArrayList<>(distinct);
+        List<CompletableFuture<Void>> batches = new ArrayList<>();
+        for (int start = 0; start < all.size(); start += batchSize) {
+            List<String> batch = new ArrayList<>(all.subList(start, Math.min(start + batchSize, all.size())));
+            batches.add(sendBatch(batch, payload, 1, outcomes));
+        }
+        log.debug("Fanning out to {} tokens in {} batches", all.size(), batches.size());
+
+        return CompletableFuture.allOf(batches.toArray(CompletableFuture<?>[]::new))
+                .thenApply(v -> new FcmFanOutResult(outcomes));
+    }
+
+    private CompletableFuture<Void> sendBatch(List<String> tokens, FcmPayload payload, int attempt,
+                                              Map<String, FcmFanOutResult.TokenOutcome> outcomes) {
+        return CompletableFuture.supplyAsync(() -> gateway.sendEach(tokens, payload), senders)
+                .exceptionally(e -> {
+                    // A gateway should not throw, but a bug must not lose the batch
+                    log.error("FCM batch send failed unexpectedly: {}", e.getMessage(), e);
+                    List<FcmSendResult> failures = new ArrayList<>();
+                    for (String token : tokens) {
+                        failures.add(FcmSendResult.failure(token, "UNKNOWN", e.getMessage()));
+                    }
+                    return failures;
+                })
+                .thenCompose(results -> {
+                    List<String> retry = new ArrayList<>();
+                    for (FcmSendResult result : results) {
+                        // Only transient errors are retried; a dead token fails straight away
+                        if (FcmErrorClassifier.isTransient(result) && attempt < maxAttempts) {
+                            retry.add(result.getToken());
+                        } else {
+                            outcomes.put(result.getToken(), new FcmFanOutResult.TokenOutcome(result, attempt));
+                        }
+                    }
+                    if (retry.isEmpty()) {
+                        return CompletableFuture.completedFuture(null);
+                    }
+                    return retryLater(retry, payload, attempt, outcomes);
+                });
+    }
+
+    private CompletableFuture<Void> retryLater(List<String> tokens, FcmPayload payload, int attempt,
+                                               Map<String, FcmFanOutResult.TokenOutcome> outcomes) {
+        long delay = backoffMillis(attempt);
+        log.debug("Retrying {} tokens in {} ms (attempt {} of {})", tokens.size(), delay, attempt + 1, maxAttempts);
+
+        CompletableFuture<Void> retried = new CompletableFuture<>();
+        retryScheduler.schedule(() -> {
+            sendBatch(tokens, payload, attempt + 1, outcomes).whenComplete((v, e) -> {
+                if (e != null) {
+                    retried.completeExceptionally(e);
+                } else {
+                    retried.complete(null);
+                }
+            });
+        }, delay, TimeUnit.MILLISECONDS);
+        return retried;
+    }
+
+    private long backoffMillis(int attempt) {
+        return backoffMillis(attempt, initialBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * Exponential backoff with jitter: a random delay between half and all of initial * 2^(attempt-1),
+     * capped at the maximum, so retries of many batches do not hit FCM at the same moment
+     */
+    static long backoffMillis(int attempt, long initialBackoffMillis, long maxBackoffMillis) {
+        long exponential = initialBackoffMillis << Math.min(attempt - 1, 20);
+        long capped = Math.min(Math.max(exponential, 1), maxBackoffMillis);
+        long half = capped / 2;
+        return half + ThreadLocalRandom.current().nextLong(capped - half + 1);
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,98 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-token outcomes of a fan-out send
+ */
+public class FcmFanOutResult {
+
+    private final Map<String, TokenOutcome> outcomes;
+
+    FcmFanOutResult(Map<String, TokenOutcome> outcomes) {
+        this.outcomes = Collections.unmodifiableMap(outcomes);
+    }
+
+    /**
+     * @return Outcome of every token, keyed by token
+     */
+    public Map<String, TokenOutcome> getOutcomes() {
+        return outcomes;
+    }
+
+    public int getTokenCount() {
+        return outcomes.size();
+    }
+
+    public int getSuccessCount() {
+        return (int) outcomes.values().stream().filter(TokenOutcome::isDelivered).count();
+    }
+
+    public int getFailureCount() {
+        return getTokenCount() - getSuccessCount();
+    }
+
+    /**
+     * @return Outcomes of the tokens that could not be delivered to
+     */
+    public List<TokenOutcome> getFailures() {
+        List<TokenOutcome> failures = new ArrayList<>();
+        for (TokenOutcome outcome : outcomes.values()) {
+            if (!outcome.isDelivered()) {
+                failures.add(outcome);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Final outcome of one token after all attempts
+     */
+    public static class TokenOutcome {
+        private final String token;
+        private final boolean delivered;
+        private final String messageId;
+        private final String errorCode;
+        private final String errorMessage;
+        private final int attempts;
+
+        TokenOutcome(FcmSendResult result, int attempts) {
+            this.token = result.getToken();
+            this.delivered = result.isSuccess();
+            this.messageId = result.getMessageId();
+            this.errorCode = result.getErrorCode();
+            this.errorMessage = result.getErrorMessage();
+            this.attempts = attempts;
+        }
+
+        public String getToken() {
+            return token;
+        }
+
+        public boolean isDelivered() {
+            return delivered;
+        }
+
+        public String getMessageId() {
+            return messageId;
+        }
+
+        /**
+         * @return Error code of the last attempt, or null if delivered
+         */
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+    }
+}
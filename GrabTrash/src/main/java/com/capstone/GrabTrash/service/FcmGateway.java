@@ -0,0 +1,63 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Transport for FCM sends. The Firebase implementation is used unless notifications.fcm.stub=true,
+ * which swaps in a local stub for tests and load benchmarks.
+ */
+public interface FcmGateway {
+
+    /**
+     * Largest number of messages FCM accepts in one batch
+     */
+    int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Largest number of tokens FCM accepts in one topic subscription request
+     */
+    int MAX_TOPIC_BATCH_SIZE = 1000;
+
+    /**
+     * Send the same payload to a batch of devices
+     * @param tokens Up to MAX_BATCH_SIZE registration tokens
+     * @param payload Notification content
+     * @return One result per token, in the same order; never throws
+     */
+    List<FcmSendResult> sendEach(List<String> tokens, FcmPayload payload);
+
+    /**
+     * Send a payload to a single device
+     * @param token Registration token
+     * @param payload Notification content
+     * @return Result of the send; never throws
+     */
+    default FcmSendResult send(String token, FcmPayload payload) {
+        return sendEach(Collections.singletonList(token), payload).get(0);
+    }
+
+    /**
+     * Send a payload to every device subscribed to a topic
+     * @param topic Topic name, without the /topics/ prefix
+     * @param payload Notification content
+     * @return Result of the send (the token field holds the topic); never throws
+     */
+    FcmSendResult sendToTopic(String topic, FcmPayload payload);
+
+    /**
+     * Subscribe devices to a topic
+     * @param tokens Up to MAX_TOPIC_BATCH_SIZE registration tokens
+     * @param topic Topic name
+     * @return Number of tokens subscribed; never throws
+     */
+    int subscribeToTopic(List<String> tokens, String topic);
+
+    /**
+     * Unsubscribe devices from a topic
+     * @param tokens Up to MAX_TOPIC_BATCH_SIZE registration tokens
+     * @param topic Topic name
+     * @return Number of tokens unsubscribed; never throws
+     */
+    int unsubscribeFromTopic(List<String> tokens, String topic);
+}
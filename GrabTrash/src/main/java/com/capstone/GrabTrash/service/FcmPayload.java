@@ -0,0 +1,86 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.firebase.messaging.AndroidConfig;
+import com.google.firebase.messaging.AndroidNotification;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.Notification;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Content of a push notification, independent of who receives it.
+ * Builds the FCM message for a token with the high-priority Android settings every notification uses.
+ */
+public class FcmPayload {
+
+    private final String title;
+    private final String body;
+    private final Map<String, String> data;
+
+    public FcmPayload(String title, String body, Map<String, String> data) {
+        this.title = title;
+        this.body = body;
+        this.data = data != null ? Collections.unmodifiableMap(new HashMap<>(data)) : Collections.emptyMap();
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getBody() {
+        return body;
+    }
+
+    public Map<String, String> getData() {
+        return data;
+    }
+
+    /**
+     * Build the FCM message for one device
+     * @param token FCM registration token
+     * @return Message addressed to the token
+     */
+    public Message toMessage(String token) {
+        return builder().setToken(token).build();
+    }
+
+    /**
+     * Build the FCM message for every device subscribed to a topic
+     * @param topic Topic name, without the /topics/ prefix
+     * @return Message addressed to the topic
+     */
+    public Message toTopicMessage(String topic) {
+        return builder().setTopic(topic).build();
+    }
+
+    private Message.Builder builder() {
+        Notification notification = Notification.builder()
+                .setTitle(title)
+                .setBody(body)
+                .build();
+
+        // Configure Android specific options
+        AndroidNotification androidNotification = AndroidNotification.builder()
+                .setTitle(title)
+                .setBody(body)
+                .setPriority(AndroidNotification.Priority.HIGH)
+                .setDefaultSound(true)
+                .setDefaultVibrateTimings(true)
+                .build();
+
+        AndroidConfig androidConfig = AndroidConfig.builder()
+                .setPriority(AndroidConfig.Priority.HIGH)
+                .setNotification(androidNotification)
+                .build();
+
+        Message.Builder builder = Message.builder()
+                .setNotification(notification)
+                .setAndroidConfig(androidConfig);
+        if (!data.isEmpty()) {
+            builder.putAllData(data);
+        }
+        return builder;
+    }
+}
@@ -0,0 +1,50 @@
+package com.capstone.GrabTrash.service;
+
+/**
+ * Outcome of sending one FCM message
+ */
+public class FcmSendResult {
+
+    private final String token;
+    private final String messageId;
+    private final String errorCode;
+    private final String errorMessage;
+
+    private FcmSendResult(String token, String messageId, String errorCode, String errorMessage) {
+        this.token = token;
+        this.messageId = messageId;
+        this.errorCode = errorCode;
+        this.errorMessage = errorMessage;
+    }
+
+    public static FcmSendResult success(String token, String messageId) {
+        return new FcmSendResult(token, messageId, null, null);
+    }
+
+    /**
+     * @param errorCode FCM messaging error code (e.g. UNREGISTERED) or platform error code (e.g. UNAVAILABLE)
+     */
+    public static FcmSendResult failure(String token, String errorCode, String errorMessage) {
+        return new FcmSendResult(token, null, errorCode != null ? errorCode : "UNKNOWN", errorMessage);
+    }
+
+    public boolean isSuccess() {
+        return errorCode == null;
+    }
+
+    public String getToken() {
+        return token;
+    }
+
+    public String getMessageId() {
+        return messageId;
+    }
+
+    public String getErrorCode() {
+        return errorCode;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+}
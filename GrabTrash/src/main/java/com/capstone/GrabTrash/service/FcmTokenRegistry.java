@@ -0,0 +1,243 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.User;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Device tokens of users, cached per user so sends to a user skip the users read, and the place
+ * dead tokens are reported to. A token FCM rejected as unregistered or invalid is dropped from the
+ * cache straight away and removed from the users collection by a batch write on the next prune run.
+ * A user without a token is only remembered for a few seconds, since a token registered through
+ * another instance does not reach this cache.
+ */
+@Service
+@Slf4j
+public class FcmTokenRegistry {
+
+    private static final String USERS_COLLECTION = "users";
+    // Firestore allows up to 30 values in an "in" filter
+    private static final int MAX_IN_VALUES = 30;
+
+    private final Firestore firestore;
+    private final long cacheTtlMillis;
+    private final long absentTtlMillis;
+    private final int cacheMaxSize;
+    private final Map<String, CachedToken> tokens = new ConcurrentHashMap<>();
+    private final Set<String> deadTokens = ConcurrentHashMap.newKeySet();
+    private final ScheduledExecutorService pruner;
+    private final AtomicLong prunedTokens = new AtomicLong();
+
+    @Autowired
+    public FcmTokenRegistry(Firestore firestore,
+                            @Value("${notifications.tokens.cache-ttl-ms:600000}") long cacheTtlMillis,
+                            @Value("${notifications.tokens.absent-ttl-ms:5000}") long absentTtlMillis,
+                            @Value("${notifications.tokens.cache-max-size:10000}") int cacheMaxSize,
+                            @Value("${notifications.tokens.prune-interval-ms:5000}") long pruneIntervalMillis) {
+        this.firestore = firestore;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.absentTtlMillis = Math.min(absentTtlMillis, cacheTtlMillis);
+        this.cacheMaxSize = cacheMaxSize;
+        this.pruner = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fcm-token-pruner");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long interval = Math.max(1000, pruneIntervalMillis);
+        pruner.scheduleWithFixedDelay(this::pruneDeadTokens, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Prune what is already reported, then stop the pruner
+     */
+    @PreDestroy
+    public void cleanup() {
+        log.info("Shutting down FCM token pruner");
+        pruner.shutdown();
+        pruneDeadTokens();
+    }
+
+    /**
+     * Get a user's device token, from the cache when possible
+     * @param userId User ID
+     * @return Sanitized token, or null if the user does not exist, has no token or their token is dead
+     */
+    public String getToken(String userId) throws ExecutionException, InterruptedException {
+        if (userId == null || userId.isEmpty()) {
+            return null;
+        }
+        CachedToken cached = tokens.get(userId);
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.token;
+        }
+
+        DocumentSnapshot snapshot = firestore.collection(USERS_COLLECTION).document(userId).get().get();
+        User user = snapshot.exists() ? snapshot.toObject(User.class) : null;
+        String token = user != null ? sanitize(user.getFcmToken()) : null;
+        if (token != null && deadTokens.contains(token)) {
+            token = null;
+        }
+        put(userId, token);
+        return token;
+    }
+
+    /**
+     * Whether a user has a token that looks like an FCM registration token
+     * @param userId User ID
+     * @return true if a send to the user can be attempted
+     */
+    public boolean hasValidToken(String userId) throws ExecutionException, InterruptedException {
+        String token = getToken(userId);
+        return token != null && token.contains(":");
+    }
+
+    /**
+     * Record a token the user just registered
+     * @param userId User ID
+     * @param token New token
+     */
+    public void update(String userId, String token) {
+        String sanitized = sanitize(token);
+        if (sanitized != null) {
+            deadTokens.remove(sanitized);
+        }
+        put(userId, sanitized);
+    }
+
+    /**
+     * Report a token FCM rejected for good. It stops being used now and is removed from its user soon.
+     * @param token Dead token
+     */
+    public void reportInvalid(String token) {
+        String sanitized = sanitize(token);
+        if (sanitized == null || !deadTokens.add(sanitized)) {
+            return;
+        }
+        tokens.values().removeIf(cached -> sanitized.equals(cached.token));
+        log.info("FCM token reported invalid, queued for removal: {}", sanitized);
+    }
+
+    /**
+     * Report several dead tokens at once
+     * @param deadTokens Tokens FCM rejected for good
+     */
+    public void reportInvalid(Collection<String> deadTokens) {
+        for (String token : deadTokens) {
+            reportInvalid(token);
+        }
+    }
+
+    /**
+     * Number of dead tokens removed from users since startup
+     */
+    public long getPrunedTokenCount() {
+        return prunedTokens.get();
+    }
+
+    /**
+     * Remove reported tokens from the users that hold them, one batch write per group of tokens.
+     * Each update is conditional on the user not having changed since it was read, so a user who
+     * registered a new token in the meantime keeps it.
+     */
+    void pruneDeadTokens() {
+        if (deadTokens.isEmpty()) {
+            return;
+        }
+        List<String> pending = new ArrayList<>(deadTokens);
+        for (int start = 0; start < pending.size(); start += MAX_IN_VALUES) {
+            List<String> group = pending.subList(start, Math.min(start + MAX_IN_VALUES, pending.size()));
+            try {
+                List<QueryDocumentSnapshot> holders = firestore.collection(USERS_COLLECTION)
+                        .whereIn("fcmToken", new ArrayList<>(group))
+                        .limit(500)
+                        .get().get().getDocuments();
+                if (!holders.isEmpty()) {
+                    WriteBatch batch = firestore.batch();
+                    for (QueryDocumentSnapshot holder : holders) {
+                        batch.update(holder.getReference(), Precondition.updatedAt(holder.getUpdateTime()),
+                                "fcmToken", FieldValue.delete());
+                    }
+                    batch.commit().get();
+                    prunedTokens.addAndGet(holders.size());
+                    log.info("Removed {} dead FCM tokens from users", holders.size());
+                }
+                group.forEach(deadTokens::remove);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // Usually a user changed after the query; the tokens stay queued for the next run
+                log.warn("Failed to remove dead FCM tokens, will retry: {}", e.getMessage());
+            } catch (Exception e) {
+                log.error("Unexpected error removing dead FCM tokens: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private void put(String userId, String token) {
+        if (cacheMaxSize <= 0) {
+            return;
+        }
+        if (tokens.size() >= cacheMaxSize) {
+            evict();
+        }
+        long ttl = token != null ? cacheTtlMillis : absentTtlMillis;
+        tokens.put(userId, new CachedToken(token, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Remove expired entries first; if the cache is still full, drop arbitrary entries
+     * down to three quarters of the limit so eviction does not run on every insert
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        tokens.values().removeIf(cached -> cached.expiresAt <= now);
+
+        int target = cacheMaxSize * 3 / 4;
+        Iterator<String> keys = tokens.keySet().iterator();
+        while (tokens.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String sanitize(String token) {
+        if (token == null) {
+            return null;
+        }
+        String sanitized = token.trim().replace("\"", "").replace("'", "");
+        return sanitized.isEmpty() ? null : sanitized;
+    }
+
+    private static class CachedToken {
+        private final String token;
+        private final long expiresAt;
+
+        private CachedToken(String token, long expiresAt) {
+            this.token = token;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.firebase.messaging.BatchResponse;
+import com.google.firebase.messaging.FirebaseMessaging;
+import com.google.firebase.messaging.FirebaseMessagingException;
+import com.google.firebase.messaging.Message;
+import com.google.firebase.messaging.SendResponse;
+import com.google.firebase.messaging.TopicManagementResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * FCM gateway backed by the Firebase Admin SDK
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.fcm.stub", havingValue = "false", matchIfMissing = true)
+@Slf4j
+public class FirebaseFcmGateway implements FcmGateway {
+
+    private final FirebaseMessaging firebaseMessaging;
+
+    @Autowired
+    public FirebaseFcmGateway(FirebaseMessaging firebaseMessaging) {
+        this.firebaseMessaging = firebaseMessaging;
+    }
+
+    @Override
+    public List<FcmSendResult> sendEach(List<String> tokens, FcmPayload payload) {
+        List<Message> messages = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            messages.add(payload.toMessage(token));
+        }
+
+        List<FcmSendResult> results = new ArrayList<>(tokens.size());
+        try {
+            BatchResponse response = firebaseMessaging.sendEach(messages);
+            List<SendResponse> responses = response.getResponses();
+            for (int i = 0; i < tokens.size(); i++) {
+                SendResponse sendResponse = responses.get(i);
+                if (sendResponse.isSuccessful()) {
+                    results.add(FcmSendResult.success(tokens.get(i), sendResponse.getMessageId()));
+                } else {
+                    FirebaseMessagingException e = sendResponse.getException();
+                    results.add(FcmSendResult.failure(tokens.get(i), errorCode(e), e != null ? e.getMessage() : null));
+                }
+            }
+        } catch (FirebaseMessagingException e) {
+            // The whole batch failed (e.g. auth or network); report it against every token
+            log.warn("FCM batch of {} messages failed: {}", tokens.size(), e.getMessage());
+            String code = errorCode(e);
+            for (String token : tokens) {
+                results.add(FcmSendResult.failure(token, code, e.getMessage()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public FcmSendResult sendToTopic(String topic, FcmPayload payload) {
+        try {
+            String messageId = firebaseMessaging.send(payload.toTopicMessage(topic));
+            return FcmSendResult.success(topic, messageId);
+        } catch (FirebaseMessagingException e) {
+            log.warn("FCM send to topic {} failed: {}", topic, e.getMessage());
+            return FcmSendResult.failure(topic, errorCode(e), e.getMessage());
+        }
+    }
+
+    @Override
+    public int subscribeToTopic(List<String> tokens, String topic) {
+        try {
+            TopicManagementResponse response = firebaseMessaging.subscribeToTopic(tokens, topic);
+            logTopicErrors("subscribe to", topic, response);
+            return response.getSuccessCount();
+        } catch (FirebaseMessagingException e) {
+            log.warn("Failed to subscribe {} tokens to topic {}: {}", tokens.size(), topic, e.getMessage());
+            return 0;
+        }
+    }
+
+    @Override
+    public int unsubscribeFromTopic(List<String> tokens, String topic) {
+        try {
+            TopicManagementResponse response = firebaseMessaging.unsubscribeFromTopic(tokens, topic);
+            logTopicErrors("unsubscribe from", topic, response);
+            return response.getSuccessCount();
+        } catch (FirebaseMessagingException e) {
+            log.warn("Failed to unsubscribe {} tokens from topic {}: {}", tokens.size(), topic, e.getMessage());
+            return 0;
+        }
+    }
+
+    private static void logTopicErrors(String action, String topic, TopicManagementResponse response) {
+        if (response.getFailureCount() > 0) {
+            log.warn("{} tokens failed to {} topic {}, first reason: {}", response.getFailureCount(), action, topic,
+                    response.getErrors().get(0).getReason());
+        }
+    }
+
+    private static String errorCode(FirebaseMessagingException e) {
+        if (e == null) {
+            return null;
+        }
+        if (e.getMessagingErrorCode() != null) {
+            return e.getMessagingErrorCode().name();
+        }
+        return e.getErrorCode() != null ? e.getErrorCode().name() : null;
+    }
+}
@@ -0,0 +1,77 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.cloud.firestore.AggregateField;
+import com.google.cloud.firestore.AggregateQuerySnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Counts and sums with Firestore aggregation queries: one round trip, billed per batch of index entries
+ * scanned rather than per document, and nothing is downloaded
+ */
+@Component
+@ConditionalOnProperty(name = "aggregation.store", havingValue = "firestore", matchIfMissing = true)
+public class FirestoreAggregateQueries implements AggregateQueries {
+
+    private final Firestore firestore;
+
+    @Autowired
+    public FirestoreAggregateQueries(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public long count(String collection, Map<String, Object> equalTo) {
+        try {
+            return query(collection, equalTo).count().get().get().getCount();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to count " + collection + ": " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = FirestoreAsync.unwrap(e);
+            throw new RuntimeException("Failed to count " + collection + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public CountAndSum countAndSum(String collection, String sumField, Map<String, Object> equalTo) {
+        try {
+            return countAndSumAsync(collection, sumField, equalTo).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to sum " + collection + "." + sumField + ": " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            Throwable cause = FirestoreAsync.unwrap(e);
+            throw new RuntimeException("Failed to sum " + collection + "." + sumField + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    @Override
+    public CompletableFuture<CountAndSum> countAndSumAsync(String collection, String sumField, Map<String, Object> equalTo) {
+        AggregateField sum = AggregateField.sum(sumField);
+        return FirestoreAsync.toCompletableFuture(
+                query(collection, equalTo).aggregate(AggregateField.count(), sum).get())
+            .thenApply(snapshot -> new CountAndSum(snapshot.getCount(), sumOf(snapshot, sum)));
+    }
+
+    private Query query(String collection, Map<String, Object> equalTo) {
+        Query query = firestore.collection(collection);
+        for (Map.Entry<String, Object> filter : equalTo.entrySet()) {
+            query = query.whereEqualTo(filter.getKey(), filter.getValue());
+        }
+        return query;
+    }
+
+    private static double sumOf(AggregateQuerySnapshot snapshot, AggregateField sum) {
+        // A sum of integers comes back as a long, anything else as a double
+        Object value = snapshot.get(sum);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+}
@@ -0,0 +1,127 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Non-blocking Firestore access. Each call adapts the Firestore ApiFuture to a CompletableFuture
+ * that completes on the Firestore client's own callback thread, so no extra threads are needed and
+ * independent reads can be started together and joined once.
+ * Continuations run on that callback thread and must not block.
+ */
+@Component
+public class FirestoreAsync {
+
+    private final Firestore firestore;
+
+    @Autowired
+    public FirestoreAsync(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    /**
+     * Adapt a Firestore ApiFuture to a CompletableFuture
+     * @param apiFuture Future returned by the Firestore client
+     * @return CompletableFuture completed with the same result or failure
+     */
+    public static <T> CompletableFuture<T> toCompletableFuture(ApiFuture<T> apiFuture) {
+        CompletableFuture<T> future = new CompletableFuture<T>() {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                apiFuture.cancel(mayInterruptIfRunning);
+                return super.cancel(mayInterruptIfRunning);
+            }
+        };
+        ApiFutures.addCallback(apiFuture, new ApiFutureCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                future.complete(result);
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }, MoreExecutors.directExecutor());
+        return future;
+    }
+
+    /**
+     * Strip the CompletionException wrapper added by dependent stages, or the ExecutionException
+     * thrown by a blocking get()
+     * @param error Failure seen by a continuation or a blocking caller
+     * @return The underlying cause
+     */
+    public static Throwable unwrap(Throwable error) {
+        if ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            return error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * Get a document snapshot
+     * @param collection Collection name
+     * @param documentId Document ID
+     * @return Future of the snapshot (which may not exist)
+     */
+    public CompletableFuture<DocumentSnapshot> getDocument(String collection, String documentId) {
+        return toCompletableFuture(firestore.collection(collection).document(documentId).get());
+    }
+
+    /**
+     * Get a document mapped to a model class
+     * @param collection Collection name
+     * @param documentId Document ID
+     * @param type Model class
+     * @return Future of the object, or of null if the document does not exist
+     */
+    public <T> CompletableFuture<T> getDocument(String collection, String documentId, Class<T> type) {
+        return getDocument(collection, documentId)
+                .thenApply(snapshot -> snapshot.exists() ? snapshot.toObject(type) : null);
+    }
+
+    /**
+     * Run a query and map the results to a model class
+     * @param query Firestore query
+     * @param type Model class
+     * @return Future of the matching objects
+     */
+    public <T> CompletableFuture<List<T>> query(Query query, Class<T> type) {
+        return toCompletableFuture(query.get()).thenApply(snapshot -> snapshot.toObjects(type));
+    }
+
+    /**
+     * Run a query and keep the raw snapshot
+     * @param query Firestore query
+     * @return Future of the query snapshot
+     */
+    public CompletableFuture<QuerySnapshot> query(Query query) {
+        return toCompletableFuture(query.get());
+    }
+
+    /**
+     * Write a document
+     * @param collection Collection name
+     * @param documentId Document ID
+     * @param data Object to store
+     * @return Future of the write result
+     */
+    public CompletableFuture<WriteResult> set(String collection, String documentId, Object data) {
+        return toCompletableFuture(firestore.collection(collection).document(documentId).set(data));
+    }
+}
@@ -0,0 +1,145 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Leases kept in the leases collection, one document per lease. Taking a lease is a transaction that
+ * re-reads the document, so two instances can never both succeed.
+ */
+@Component
+@ConditionalOnProperty(name = "leases.store", havingValue = "firestore", matchIfMissing = true)
+@Slf4j
+public class FirestoreLeaseStore implements LeaseStore {
+
+    private static final String COLLECTION_NAME = "leases";
+
+    private final Firestore firestore;
+
+    @Autowired
+    public FirestoreLeaseStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    @Override
+    public boolean tryAcquire(String name, String owner, long ttlMillis) {
+        DocumentReference reference = firestore.collection(COLLECTION_NAME).document(name);
+        try {
+            return firestore.runTransaction(transaction -> {
+                DocumentSnapshot snapshot = transaction.get(reference).get();
+                Date now = new Date();
+                if (snapshot.exists() && !owner.equals(snapshot.getString("owner"))) {
+                    Date expiresAt = snapshot.getDate("expiresAt");
+                    if (expiresAt != null && expiresAt.after(now)) {
+                        return false;
+                    }
+                }
+                Map<String, Object> lease = new HashMap<>();
+                lease.put("name", name);
+                lease.put("owner", owner);
+                lease.put("expiresAt", new Date(now.getTime() + ttlMillis));
+                lease.put("renewedAt", now);
+                transaction.set(reference, lease);
+                return true;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            log.warn("Failed to acquire lease {}: {}", name, e.getMessage());
+            return false;
+        }
+    }
+
+    @Override
+    public void release(String name, String owner) {
+        DocumentReference reference = firestore.collection(COLLECTION_NAME).document(name);
+        try {
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot snapshot = transaction.get(reference).get();
+                if (snapshot.exists() && owner.equals(snapshot.getString("owner"))) {
+                    transaction.delete(reference);
+                }
+                return null;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The lease expires on its own
+            log.warn("Failed to release lease {}: {}", name, e.getMessage());
+        }
+    }
+
+    @Override
+    public List<Lease> list(String prefix) {
+        List<Lease> leases = new ArrayList<>();
+        try {
+            Date now = new Date();
+            List<QueryDocumentSnapshot> documents = firestore.collection(COLLECTION_NAME)
+                    .whereGreaterThanOrEqualTo("name", prefix)
+                    .whereLessThan("name", prefix + "\uf8ff")
+                    .get().get().getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                Date expiresAt = document.getDate("expiresAt");
+                if (expiresAt != null && expiresAt.after(now)) {
+                    leases.add(new Lease(document.getString("name"), document.getString("owner"), expiresAt));
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Failed to list leases {}*: {}", prefix, e.getMessage());
+        }
+        return leases;
+    }
+
+    @Override
+    public int deleteExpired(String prefix) {
+        int deleted = 0;
+        try {
+            Date now = new Date();
+            List<QueryDocumentSnapshot> documents = firestore.collection(COLLECTION_NAME)
+                    .whereGreaterThanOrEqualTo("name", prefix)
+                    .whereLessThan("name", prefix + "\uf8ff")
+                    .get().get().getDocuments();
+            for (QueryDocumentSnapshot document : documents) {
+                Date expiresAt = document.getDate("expiresAt");
+                if (expiresAt != null && expiresAt.after(now)) {
+                    continue;
+                }
+                // Re-check inside a transaction, in case the lease was taken again meanwhile
+                DocumentReference reference = document.getReference();
+                boolean removed = firestore.runTransaction(transaction -> {
+                    DocumentSnapshot snapshot = transaction.get(reference).get();
+                    Date current = snapshot.getDate("expiresAt");
+                    if (!snapshot.exists() || (current != null && current.after(new Date()))) {
+                        return false;
+                    }
+                    transaction.delete(reference);
+                    return true;
+                }).get();
+                if (removed) {
+                    deleted++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Failed to delete expired leases {}*: {}", prefix, e.getMessage());
+        }
+        return deleted;
+    }
+}
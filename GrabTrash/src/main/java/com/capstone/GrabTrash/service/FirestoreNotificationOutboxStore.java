@@ -0,0 +1,178 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Outbox kept in the notificationOutbox collection. Entries are claimed in a transaction each, so two
+ * instances polling at once never lease the same entry. Delivered dedup keys are kept in
+ * notificationDeliveries with an expireAt field, for a Firestore TTL policy to clean up.
+ *
+ * The claim queries need composite indexes on (status, nextAttemptAt) and (status, leaseExpiresAt).
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.outbox.store", havingValue = "firestore", matchIfMissing = true)
+@Slf4j
+public class FirestoreNotificationOutboxStore implements NotificationOutboxStore {
+
+    private static final String COLLECTION_NAME = "notificationOutbox";
+    private static final String DELIVERIES_COLLECTION = "notificationDeliveries";
+
+    private final Firestore firestore;
+    private final long dedupRetentionMillis;
+
+    @Autowired
+    public FirestoreNotificationOutboxStore(Firestore firestore,
+                                            @Value("${notifications.outbox.dedup-retention-ms:604800000}") long dedupRetentionMillis) {
+        this.firestore = firestore;
+        this.dedupRetentionMillis = dedupRetentionMillis;
+    }
+
+    @Override
+    public void stage(UpdateBuilder<?> writes, NotificationOutboxEntry entry) {
+        writes.set(outbox().document(entry.getId()), entry);
+    }
+
+    @Override
+    public void save(NotificationOutboxEntry entry) {
+        try {
+            outbox().document(entry.getId()).set(entry).get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to save outbox entry: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<NotificationOutboxEntry> claimDue(int limit, long leaseMillis) {
+        List<NotificationOutboxEntry> claimed = new ArrayList<>();
+        if (limit <= 0) {
+            return claimed;
+        }
+        try {
+            Date now = new Date();
+            List<QueryDocumentSnapshot> candidates = new ArrayList<>(outbox()
+                    .whereEqualTo("status", NotificationOutboxEntry.PENDING)
+                    .whereLessThanOrEqualTo("nextAttemptAt", now)
+                    .orderBy("nextAttemptAt")
+                    .limit(limit)
+                    .get().get().getDocuments());
+            if (candidates.size() < limit) {
+                // Entries of a worker that died mid-send
+                candidates.addAll(outbox()
+                        .whereEqualTo("status", NotificationOutboxEntry.PROCESSING)
+                        .whereLessThanOrEqualTo("leaseExpiresAt", now)
+                        .limit(limit - candidates.size())
+                        .get().get().getDocuments());
+            }
+
+            for (QueryDocumentSnapshot candidate : candidates) {
+                try {
+                    NotificationOutboxEntry entry = claim(candidate.getReference(), leaseMillis);
+                    if (entry != null) {
+                        claimed.add(entry);
+                    }
+                } catch (ExecutionException e) {
+                    // Another instance claimed it first
+                    log.debug("Could not claim outbox entry {}: {}", candidate.getId(), e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.error("Failed to query due outbox entries: {}", e.getMessage(), e);
+        }
+        return claimed;
+    }
+
+    private NotificationOutboxEntry claim(DocumentReference reference, long leaseMillis)
+            throws ExecutionException, InterruptedException {
+        return firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(reference).get();
+            NotificationOutboxEntry entry = snapshot.exists() ? snapshot.toObject(NotificationOutboxEntry.class) : null;
+            Date now = new Date();
+            if (entry == null || !NotificationOutboxStore.isDue(entry, now)) {
+                return null;
+            }
+            entry.setId(reference.getId());
+            entry.setStatus(NotificationOutboxEntry.PROCESSING);
+            entry.setLeaseExpiresAt(new Date(now.getTime() + leaseMillis));
+            entry.setUpdatedAt(now);
+            transaction.set(reference, entry);
+            return entry;
+        }).get();
+    }
+
+    @Override
+    public boolean isDelivered(String dedupKey) {
+        if (dedupKey == null) {
+            return false;
+        }
+        try {
+            return deliveries().document(NotificationOutboxStore.documentId(dedupKey)).get().get().exists();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to check notification delivery: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void complete(NotificationOutboxEntry entry) {
+        try {
+            WriteBatch batch = firestore.batch();
+            if (entry.getDedupKey() != null) {
+                Date now = new Date();
+                Map<String, Object> delivery = new HashMap<>();
+                delivery.put("dedupKey", entry.getDedupKey());
+                delivery.put("status", entry.getStatus());
+                delivery.put("recipientUserId", entry.getRecipientUserId());
+                delivery.put("completedAt", now);
+                delivery.put("expireAt", new Date(now.getTime() + dedupRetentionMillis));
+                batch.set(deliveries().document(NotificationOutboxStore.documentId(entry.getDedupKey())), delivery);
+            }
+            batch.delete(outbox().document(entry.getId()));
+            batch.commit().get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new RuntimeException("Failed to complete outbox entry: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public Map<String, Long> countByStatus() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (String status : new String[] {NotificationOutboxEntry.PENDING, NotificationOutboxEntry.PROCESSING, NotificationOutboxEntry.DEAD}) {
+            try {
+                counts.put(status, outbox().whereEqualTo("status", status).count().get().get().getCount());
+            } catch (InterruptedException | ExecutionException e) {
+                log.warn("Failed to count {} outbox entries: {}", status, e.getMessage());
+                counts.put(status, -1L);
+            }
+        }
+        return counts;
+    }
+
+    private CollectionReference outbox() {
+        return firestore.collection(COLLECTION_NAME);
+    }
+
+    private CollectionReference deliveries() {
+        return firestore.collection(DELIVERIES_COLLECTION);
+    }
+}
@@ -0,0 +1,80 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts and sums over documents held in process memory, enabled with aggregation.store=memory.
+ * Tests put the documents they need with {@link #put}; nothing is read from Firestore.
+ */
+@Component
+@ConditionalOnProperty(name = "aggregation.store", havingValue = "memory")
+@Slf4j
+public class InMemoryAggregateQueries implements AggregateQueries {
+
+    private final Map<String, Map<String, Map<String, Object>>> collections = new ConcurrentHashMap<>();
+
+    public InMemoryAggregateQueries() {
+        log.warn("Using in-memory aggregate queries; counts and sums do not reflect Firestore");
+    }
+
+    /**
+     * Add or replace a document
+     */
+    public void put(String collection, String documentId, Map<String, Object> fields) {
+        collections.computeIfAbsent(collection, name -> new ConcurrentHashMap<>()).put(documentId, new HashMap<>(fields));
+    }
+
+    /**
+     * Remove a document
+     */
+    public void remove(String collection, String documentId) {
+        Map<String, Map<String, Object>> documents = collections.get(collection);
+        if (documents != null) {
+            documents.remove(documentId);
+        }
+    }
+
+    @Override
+    public long count(String collection, Map<String, Object> equalTo) {
+        return countAndSum(collection, null, equalTo).getCount();
+    }
+
+    @Override
+    public CountAndSum countAndSum(String collection, String sumField, Map<String, Object> equalTo) {
+        long count = 0;
+        double sum = 0;
+        for (Map<String, Object> document : collections.getOrDefault(collection, Map.of()).values()) {
+            if (!matches(document, equalTo)) {
+                continue;
+            }
+            count++;
+            Object value = sumField != null ? document.get(sumField) : null;
+            if (value instanceof Number) {
+                sum += ((Number) value).doubleValue();
+            }
+        }
+        return new CountAndSum(count, sum);
+    }
+
+    @Override
+    public CompletableFuture<CountAndSum> countAndSumAsync(String collection, String sumField, Map<String, Object> equalTo) {
+        return CompletableFuture.completedFuture(countAndSum(collection, sumField, equalTo));
+    }
+
+    private static boolean matches(Map<String, Object> document, Map<String, Object> equalTo) {
+        for (Map.Entry<String, Object> filter : equalTo.entrySet()) {
+            if (!Objects.equals(document.get(filter.getKey()), filter.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,66 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leases kept in process memory, enabled with leases.store=memory. Only instances sharing this JVM see
+ * them, which is what tests and single-node runs need.
+ */
+@Component
+@ConditionalOnProperty(name = "leases.store", havingValue = "memory")
+@Slf4j
+public class InMemoryLeaseStore implements LeaseStore {
+
+    private final Map<String, Lease> leases = new HashMap<>();
+
+    public InMemoryLeaseStore() {
+        log.warn("Using the in-memory lease store; leases are not shared with other instances");
+    }
+
+    @Override
+    public synchronized boolean tryAcquire(String name, String owner, long ttlMillis) {
+        Date now = new Date();
+        Lease current = leases.get(name);
+        if (current != null && !owner.equals(current.getOwner()) && current.getExpiresAt().after(now)) {
+            return false;
+        }
+        leases.put(name, new Lease(name, owner, new Date(now.getTime() + ttlMillis)));
+        return true;
+    }
+
+    @Override
+    public synchronized void release(String name, String owner) {
+        Lease current = leases.get(name);
+        if (current != null && owner.equals(current.getOwner())) {
+            leases.remove(name);
+        }
+    }
+
+    @Override
+    public synchronized List<Lease> list(String prefix) {
+        Date now = new Date();
+        List<Lease> live = new ArrayList<>();
+        for (Lease lease : leases.values()) {
+            if (lease.getName().startsWith(prefix) && lease.getExpiresAt().after(now)) {
+                live.add(lease);
+            }
+        }
+        return live;
+    }
+
+    @Override
+    public synchronized int deleteExpired(String prefix) {
+        Date now = new Date();
+        int before = leases.size();
+        leases.values().removeIf(lease -> lease.getName().startsWith(prefix) && !lease.getExpiresAt().after(now));
+        return before - leases.size();
+    }
+}
@@ -0,0 +1,124 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import com.google.cloud.firestore.UpdateBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Outbox kept in process memory, enabled with notifications.outbox.store=memory for tests and local runs.
+ * Entries do not survive a restart, and staged entries are stored right away rather than with the
+ * transaction or batch they were staged on.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.outbox.store", havingValue = "memory")
+@Slf4j
+public class InMemoryNotificationOutboxStore implements NotificationOutboxStore {
+
+    private final Map<String, NotificationOutboxEntry> entries = new ConcurrentHashMap<>();
+    private final Set<String> delivered = ConcurrentHashMap.newKeySet();
+
+    public InMemoryNotificationOutboxStore() {
+        log.warn("Using the in-memory notification outbox; queued notifications are lost on restart");
+    }
+
+    @Override
+    public void stage(UpdateBuilder<?> writes, NotificationOutboxEntry entry) {
+        save(entry);
+    }
+
+    @Override
+    public void save(NotificationOutboxEntry entry) {
+        entries.put(entry.getId(), copy(entry));
+    }
+
+    @Override
+    public synchronized List<NotificationOutboxEntry> claimDue(int limit, long leaseMillis) {
+        Date now = new Date();
+        List<NotificationOutboxEntry> due = new ArrayList<>();
+        for (NotificationOutboxEntry entry : entries.values()) {
+            if (NotificationOutboxStore.isDue(entry, now)) {
+                due.add(entry);
+            }
+        }
+        due.sort(Comparator.comparing(NotificationOutboxEntry::getCreatedAt, Comparator.nullsFirst(Comparator.naturalOrder())));
+
+        List<NotificationOutboxEntry> claimed = new ArrayList<>();
+        for (NotificationOutboxEntry entry : due.subList(0, Math.min(limit, due.size()))) {
+            entry.setStatus(NotificationOutboxEntry.PROCESSING);
+            entry.setLeaseExpiresAt(new Date(now.getTime() + leaseMillis));
+            entry.setUpdatedAt(now);
+            claimed.add(copy(entry));
+        }
+        return claimed;
+    }
+
+    @Override
+    public boolean isDelivered(String dedupKey) {
+        return dedupKey != null && delivered.contains(dedupKey);
+    }
+
+    @Override
+    public void complete(NotificationOutboxEntry entry) {
+        if (entry.getDedupKey() != null) {
+            delivered.add(entry.getDedupKey());
+        }
+        entries.remove(entry.getId());
+    }
+
+    @Override
+    public Map<String, Long> countByStatus() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        counts.put(NotificationOutboxEntry.PENDING, 0L);
+        counts.put(NotificationOutboxEntry.PROCESSING, 0L);
+        counts.put(NotificationOutboxEntry.DEAD, 0L);
+        for (NotificationOutboxEntry entry : entries.values()) {
+            counts.merge(entry.getStatus(), 1L, Long::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Entries currently in the outbox, for tests
+     */
+    public List<NotificationOutboxEntry> getEntries() {
+        List<NotificationOutboxEntry> copies = new ArrayList<>();
+        for (NotificationOutboxEntry entry : entries.values()) {
+            copies.add(copy(entry));
+        }
+        return copies;
+    }
+
+    /**
+     * Callers mutate the entries they get back, so the store hands out and keeps its own copies
+     */
+    private static NotificationOutboxEntry copy(NotificationOutboxEntry entry) {
+        return NotificationOutboxEntry.builder()
+                .id(entry.getId())
+                .dedupKey(entry.getDedupKey())
+                .recipientUserId(entry.getRecipientUserId())
+                .recipientEmail(entry.getRecipientEmail())
+                .title(entry.getTitle())
+                .body(entry.getBody())
+                .data(entry.getData() != null ? new HashMap<>(entry.getData()) : null)
+                .status(entry.getStatus())
+                .attempts(entry.getAttempts())
+                .nextAttemptAt(entry.getNextAttemptAt())
+                .leaseExpiresAt(entry.getLeaseExpiresAt())
+                .lastError(entry.getLastError())
+                .createdAt(entry.getCreatedAt())
+                .updatedAt(entry.getUpdatedAt())
+                .build();
+    }
+}
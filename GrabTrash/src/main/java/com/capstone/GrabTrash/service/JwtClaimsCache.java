@@ -0,0 +1,118 @@
+package com.capstone.GrabTrash.service;
+
+import io.jsonwebtoken.Claims;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bounded cache of verified token claims, keyed by the SHA-256 hash of the token.
+ * Entries are only served until the token expires, so a hit never extends a token's life.
+ * Tokens themselves are not kept in memory.
+ */
+class JwtClaimsCache {
+
+    private final int maxSize;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    JwtClaimsCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Get the verified claims for a token
+     * @param token Signed JWT
+     * @return Claims, or null if the token is not cached or has expired
+     */
+    Claims get(String token) {
+        if (maxSize <= 0) {
+            return null;
+        }
+        String key = hash(token);
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt <= System.currentTimeMillis()) {
+            entries.remove(key, entry);
+            return null;
+        }
+        return entry.claims;
+    }
+
+    /**
+     * Cache the claims of a token whose signature has just been verified
+     * @param token Signed JWT
+     * @param claims Verified claims
+     */
+    void put(String token, Claims claims) {
+        if (maxSize <= 0 || claims.getExpiration() == null) {
+            return;
+        }
+        if (entries.size() >= maxSize) {
+            evict();
+        }
+        entries.put(hash(token), new Entry(claims, claims.getExpiration().getTime()));
+    }
+
+    /**
+     * Drop a token, e.g. after it has been revoked
+     * @param token Signed JWT
+     */
+    void remove(String token) {
+        entries.remove(hash(token));
+    }
+
+    /**
+     * Drop every cached token
+     */
+    void clear() {
+        entries.clear();
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    /**
+     * Remove expired entries first; if the cache is still full, drop arbitrary entries
+     * down to three quarters of the limit so eviction does not run on every insert
+     */
+    private void evict() {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.expiresAt <= now);
+
+        int target = maxSize * 3 / 4;
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hashed = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hashed);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to provide SHA-256
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static class Entry {
+        private final Claims claims;
+        private final long expiresAt;
+
+        private Entry(Claims claims, long expiresAt) {
+            this.claims = claims;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
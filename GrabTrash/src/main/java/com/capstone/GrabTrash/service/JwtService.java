@@ -1,61 +1,164 @@
 package com.capstone.GrabTrash.service;
 
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.SignatureAlgorithm;
-import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.SigningKeyResolverAdapter;
+import io.jsonwebtoken.security.SignatureException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import com.capstone.GrabTrash.config.JwtConfig;
+import com.capstone.GrabTrash.config.JwtKeyRing;
 import com.capstone.GrabTrash.model.User;
 
 import java.security.Key;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.UUID;
 import java.util.function.Function;
 
 @Service
 public class JwtService {
-    private final Key key;
+    public static final String TOKEN_TYPE_CLAIM = "type";
+    public static final String ACCESS_TOKEN = "access";
+    public static final String REFRESH_TOKEN = "refresh";
+    // Version of the user's tokens when this one was issued; revoking all of a user's tokens increments it
+    public static final String TOKEN_VERSION_CLAIM = "tver";
+    // The standard iat claim only has second precision; role changes need to order tokens within a second
+    private static final String ISSUED_AT_MILLIS_CLAIM = "iatMs";
+
+    private final JwtKeyRing keyRing;
     private final JwtConfig jwtConfig;
+    // Parsers are immutable and thread-safe, so one instance serves every request
+    private final JwtParser parser;
+    private final JwtClaimsCache claimsCache;
+    private final TokenRevocationService tokenRevocationService;
 
-    public JwtService(JwtConfig jwtConfig) {
+    public JwtService(JwtConfig jwtConfig, JwtKeyRing keyRing, TokenRevocationService tokenRevocationService,
+                      @Value("${jwt.claims-cache.max-size:10000}") int claimsCacheMaxSize) {
         this.jwtConfig = jwtConfig;
-        this.key = Keys.secretKeyFor(SignatureAlgorithm.HS256);
+        this.keyRing = keyRing;
+        this.tokenRevocationService = tokenRevocationService;
+        // Pick the verification key from the token's "kid" header
+        this.parser = Jwts.parserBuilder()
+                .setSigningKeyResolver(new SigningKeyResolverAdapter() {
+                    // jjwt 0.11 declares this with a raw JwsHeader, so a parameterized override would not compile
+                    @Override
+                    @SuppressWarnings("rawtypes")
+                    public Key resolveSigningKey(JwsHeader header, Claims claims) {
+                        Key key = keyRing.getVerificationKey(header.getKeyId());
+                        if (key == null) {
+                            throw new SignatureException("Unknown signing key: " + header.getKeyId());
+                        }
+                        return key;
+                    }
+                })
+                .build();
+        this.claimsCache = new JwtClaimsCache(claimsCacheMaxSize);
     }
 
+    /**
+     * Generate a short-lived access token carrying the user's ID, email and role
+     * @param user Authenticated user
+     * @return Signed access token
+     */
     public String generateToken(User user) {
         Map<String, Object> claims = new HashMap<>();
         claims.put("userId", user.getUserId());
         claims.put("email", user.getEmail());
         claims.put("role", user.getRole());
+        claims.put(TOKEN_TYPE_CLAIM, ACCESS_TOKEN);
+        claims.put(TOKEN_VERSION_CLAIM, tokenRevocationService.currentVersion(user));
         
+        return buildToken(claims, user.getEmail(), jwtConfig.getExpiration());
+    }
+
+    /**
+     * Generate a long-lived refresh token, only accepted by the refresh endpoint
+     * @param user Authenticated user
+     * @return Signed refresh token
+     */
+    public String generateRefreshToken(User user) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("userId", user.getUserId());
+        claims.put(TOKEN_TYPE_CLAIM, REFRESH_TOKEN);
+        claims.put(TOKEN_VERSION_CLAIM, tokenRevocationService.currentVersion(user));
+
+        return buildToken(claims, user.getEmail(), jwtConfig.getRefreshExpiration());
+    }
+
+    private String buildToken(Map<String, Object> claims, String subject, long lifetime) {
+        long now = System.currentTimeMillis();
+        claims.put(ISSUED_AT_MILLIS_CLAIM, now);
+
         return Jwts.builder()
+                .setHeaderParam(JwsHeader.KEY_ID, keyRing.getSigningKeyId())
                 .setClaims(claims)
-                .setSubject(user.getEmail())
-                .setIssuedAt(new Date(System.currentTimeMillis()))
-                .setExpiration(new Date(System.currentTimeMillis() + jwtConfig.getExpiration()))
-                .signWith(key)
+                .setId(UUID.randomUUID().toString())
+                .setSubject(subject)
+                .setIssuedAt(new Date(now))
+                .setExpiration(new Date(now + lifetime))
+                .signWith(keyRing.getSigningKey())
                 .compact();
     }
 
+    /**
+     * Check whether verified claims belong to a refresh token
+     * @param claims Verified claims
+     * @return true for refresh tokens
+     */
+    public boolean isRefreshToken(Claims claims) {
+        return REFRESH_TOKEN.equals(claims.get(TOKEN_TYPE_CLAIM, String.class));
+    }
+
+    /**
+     * Get the issue time of a token in milliseconds
+     * @param claims Verified claims
+     * @return Issue time, or 0 if the token has none
+     */
+    public static long issuedAtMillis(Claims claims) {
+        Object millis = claims.get(ISSUED_AT_MILLIS_CLAIM);
+        if (millis instanceof Number) {
+            return ((Number) millis).longValue();
+        }
+        return claims.getIssuedAt() != null ? claims.getIssuedAt().getTime() : 0L;
+    }
+
+    /**
+     * Get the user's token version a token was issued at
+     * @param claims Verified claims
+     * @return Token version, or 0 for tokens issued before versions existed
+     */
+    public static long tokenVersion(Claims claims) {
+        Object version = claims.get(TOKEN_VERSION_CLAIM);
+        return version instanceof Number ? ((Number) version).longValue() : 0L;
+    }
+
     public String extractUsername(String token) {
         return extractClaim(token, Claims::getSubject);
     }
 
     public boolean isTokenValid(String token, UserDetails userDetails) {
-        final String username = extractUsername(token);
-        return (username.equals(userDetails.getUsername())) && !isTokenExpired(token);
+        return isTokenValid(extractAllClaims(token), userDetails);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    /**
+     * Check already verified claims against a user, without parsing the token again
+     * @param claims Verified claims
+     * @param userDetails User the token should belong to
+     * @return true if the token belongs to the user and has not expired
+     */
+    public boolean isTokenValid(Claims claims, UserDetails userDetails) {
+        final String username = claims.getSubject();
+        return username != null && username.equals(userDetails.getUsername()) && !isTokenExpired(claims);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    private boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     private <T> T extractClaim(String token, Function<Claims, T> claimsResolver) {
@@ -63,11 +166,19 @@ public class JwtService {
         return claimsResolver.apply(claims);
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(key)
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+    /**
+     * Verify a token and return all of its claims.
+     * The signature is checked once per token; later calls are served from the cache until the token expires.
+     * @param token Signed JWT
+     * @return Verified claims
+     */
+    public Claims extractAllClaims(String token) {
+        Claims claims = claimsCache.get(token);
+        if (claims != null) {
+            return claims;
+        }
+        claims = parser.parseClaimsJws(token).getBody();
+        claimsCache.put(token, claims);
+        return claims;
     }
 } 
\ No newline at end of file
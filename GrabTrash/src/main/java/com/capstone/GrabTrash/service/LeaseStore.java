@@ -0,0 +1,64 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Time-limited leases that let one instance at a time own something (a partition, a scheduled job).
+ * An owner keeps its lease by acquiring it again before it expires; a dead owner's lease simply runs out.
+ * The Firestore store is the default; leases.store=memory swaps in an in-memory store for tests and single-node runs.
+ */
+public interface LeaseStore {
+
+    /**
+     * Take a lease that is free, expired or already held by this owner, and extend it
+     * @param name Lease name
+     * @param owner ID of the caller
+     * @param ttlMillis How long the lease lasts from now
+     * @return true if the caller holds the lease now
+     */
+    boolean tryAcquire(String name, String owner, long ttlMillis);
+
+    /**
+     * Give up a lease held by this owner; does nothing if someone else holds it
+     */
+    void release(String name, String owner);
+
+    /**
+     * Leases whose names start with a prefix and that have not expired
+     */
+    List<Lease> list(String prefix);
+
+    /**
+     * Delete leases whose names start with a prefix and that have expired, e.g. those of dead members
+     * @return How many were deleted
+     */
+    int deleteExpired(String prefix);
+
+    /**
+     * A held lease
+     */
+    class Lease {
+        private final String name;
+        private final String owner;
+        private final Date expiresAt;
+
+        public Lease(String name, String owner, Date expiresAt) {
+            this.name = name;
+            this.owner = owner;
+            this.expiresAt = expiresAt;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getOwner() {
+            return owner;
+        }
+
+        public Date getExpiresAt() {
+            return expiresAt;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Takes work off a Firestore snapshot-listener callback. Tasks run on a fixed set of lanes, each a single
+ * thread, and a key always maps to the same lane, so changes to one document are handled in order while
+ * different documents are handled in parallel.
+ *
+ * At most "capacity" tasks wait at once. When the lanes fall that far behind, {@link #submit} blocks the
+ * callback until a slot frees up, which holds back further snapshots instead of queueing without bound.
+ */
+@Slf4j
+class ListenerDispatcher {
+
+    private final String name;
+    private final int capacity;
+    private final List<ExecutorService> lanes;
+    private final Semaphore slots;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong backpressureWaits = new AtomicLong();
+    private final AtomicLong backpressureMillis = new AtomicLong();
+    private final AtomicLong totalLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private volatile long lastLagMillis = 0;
+
+    /**
+     * @param name Name for threads and logs
+     * @param lanes Number of worker threads
+     * @param capacity Maximum number of waiting tasks before the callback is held back
+     */
+    ListenerDispatcher(String name, int lanes, int capacity) {
+        this.name = name;
+        this.capacity = Math.max(1, capacity);
+        this.slots = new Semaphore(this.capacity);
+        this.lanes = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, lanes); i++) {
+            String threadName = name + "-" + (i + 1);
+            this.lanes.add(Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            }));
+        }
+    }
+
+    /**
+     * Queue a task behind earlier tasks with the same key; blocks while the dispatcher is full
+     * @param key Ordering key, e.g. the document ID
+     * @param updateTime When the document changed, for the lag metric; null if unknown
+     * @param task Work to run
+     */
+    void submit(String key, Date updateTime, Runnable task) {
+        if (!slots.tryAcquire()) {
+            long started = System.currentTimeMillis();
+            backpressureWaits.incrementAndGet();
+            log.warn("{} is full ({} tasks waiting), holding back the listener", name, capacity);
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            backpressureMillis.addAndGet(System.currentTimeMillis() - started);
+        }
+
+        submitted.incrementAndGet();
+        ExecutorService lane = lanes.get(Math.floorMod(key.hashCode(), lanes.size()));
+        try {
+            lane.execute(() -> {
+                try {
+                    recordLag(updateTime);
+                    task.run();
+                    processed.incrementAndGet();
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.error("{} task for {} failed: {}", name, key, e.getMessage(), e);
+                } finally {
+                    slots.release();
+                }
+            });
+        } catch (Exception e) {
+            // Shutting down
+            slots.release();
+            log.warn("{} rejected a task for {}: {}", name, key, e.getMessage());
+        }
+    }
+
+    /**
+     * Stop accepting tasks and give the waiting ones a moment to finish
+     */
+    void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for (ExecutorService lane : lanes) {
+                lane.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queue and lag figures: lag is the time from a document's updateTime to the start of its processing
+     */
+    Map<String, Object> getMetrics() {
+        long done = processed.get() + failed.get();
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("lanes", lanes.size());
+        metrics.put("capacity", capacity);
+        metrics.put("pending", capacity - slots.availablePermits());
+        metrics.put("submitted", submitted.get());
+        metrics.put("processed", processed.get());
+        metrics.put("failed", failed.get());
+        metrics.put("backpressureWaits", backpressureWaits.get());
+        metrics.put("backpressureMillis", backpressureMillis.get());
+        metrics.put("lastLagMillis", lastLagMillis);
+        metrics.put("maxLagMillis", maxLagMillis.get());
+        metrics.put("averageLagMillis", done > 0 ? totalLagMillis.get() / done : 0);
+        return metrics;
+    }
+
+    private void recordLag(Date updateTime) {
+        if (updateTime == null) {
+            return;
+        }
+        long lag = Math.max(0, System.currentTimeMillis() - updateTime.getTime());
+        lastLagMillis = lag;
+        totalLagMillis.addAndGet(lag);
+        maxLagMillis.accumulateAndGet(lag, Math::max);
+    }
+}
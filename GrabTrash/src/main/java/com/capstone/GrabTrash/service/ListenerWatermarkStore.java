@@ -0,0 +1,66 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Where snapshot listeners record how far they got, one document per listener in listenerWatermarks,
+ * so a restarted listener only asks for documents changed since then
+ */
+@Component
+@Slf4j
+public class ListenerWatermarkStore {
+
+    private static final String COLLECTION_NAME = "listenerWatermarks";
+
+    private final Firestore firestore;
+
+    @Autowired
+    public ListenerWatermarkStore(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    /**
+     * Get the saved watermark of a listener
+     * @param name Listener name
+     * @return Watermark, or null if the listener never saved one
+     */
+    public Date load(String name) {
+        try {
+            DocumentSnapshot snapshot = firestore.collection(COLLECTION_NAME).document(name).get().get();
+            return snapshot.exists() ? snapshot.getDate("watermark") : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            log.error("Failed to load watermark of listener {}: {}", name, e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Save a listener's watermark
+     * @param name Listener name
+     * @param watermark Every change up to this time has been processed
+     */
+    public void save(String name, Date watermark) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("watermark", watermark);
+        data.put("savedAt", new Date());
+        try {
+            firestore.collection(COLLECTION_NAME).document(name).set(data).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("Failed to save watermark of listener {}: {}", name, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.UUID;
+
+/**
+ * Identifies this running instance when it takes leases. The configured node ID (the pod hostname by
+ * default) is suffixed with a per-start random part, so a restarted pod never mistakes its predecessor's
+ * leases for its own.
+ */
+@Component
+@Slf4j
+public class NodeIdentity {
+
+    private final String id;
+
+    public NodeIdentity(@Value("${node.id:${HOSTNAME:node}}") String nodeId) {
+        String base = nodeId == null || nodeId.trim().isEmpty() ? "node" : nodeId.trim();
+        this.id = base + "-" + UUID.randomUUID().toString().substring(0, 8);
+        log.info("Running as node {}", id);
+    }
+
+    public String getId() {
+        return id;
+    }
+}
@@ -0,0 +1,172 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers which notifications were already sent, so a repeated snapshot or another node does not send
+ * them again. Keys live in memory for a TTL, bounded in size. With persistence on, the first sender of a
+ * key also creates a document in notificationDedup; create() fails for everyone else, which makes the
+ * claim hold across restarts and nodes. The documents carry an expireAt field for a Firestore TTL policy.
+ */
+@Component
+@Slf4j
+public class NotificationDedupCache {
+
+    private static final String COLLECTION_NAME = "notificationDedup";
+
+    private final Firestore firestore;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final boolean persistent;
+    private final Map<String, Long> entries = new ConcurrentHashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong persistedHits = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public NotificationDedupCache(Firestore firestore,
+                                  @Value("${notifications.dedup.max-size:10000}") int maxSize,
+                                  @Value("${notifications.dedup.ttl-ms:604800000}") long ttlMillis,
+                                  @Value("${notifications.dedup.persistent:true}") boolean persistent) {
+        this.firestore = firestore;
+        this.maxSize = Math.max(1, maxSize);
+        this.ttlMillis = ttlMillis;
+        this.persistent = persistent;
+    }
+
+    /**
+     * Claim a notification key. Only the first caller within the TTL gets true and should send.
+     * If the persisted claim cannot be checked, the caller gets true: a duplicate beats a lost notification.
+     * @param key Notification key, e.g. "payment-{id}-accepted"
+     * @return true if the notification has not been sent yet
+     */
+    public boolean claim(String key) {
+        long now = System.currentTimeMillis();
+        Long expiresAt = entries.get(key);
+        if (expiresAt != null && expiresAt > now) {
+            hits.incrementAndGet();
+            return false;
+        }
+
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+        // Only one thread of this node may go on to the persisted claim
+        Long previous = entries.put(key, now + ttlMillis);
+        if (previous != null && previous > now) {
+            hits.incrementAndGet();
+            return false;
+        }
+
+        if (persistent && !claimPersisted(key, now)) {
+            persistedHits.incrementAndGet();
+            return false;
+        }
+        misses.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Forget a key, so the notification can be sent again
+     */
+    public void release(String key) {
+        entries.remove(key);
+        if (persistent) {
+            document(key).delete();
+        }
+    }
+
+    /**
+     * Hit, miss and size counters since startup
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("size", entries.size());
+        metrics.put("maxSize", maxSize);
+        metrics.put("hits", hits.get());
+        metrics.put("persistedHits", persistedHits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("persistent", persistent);
+        return metrics;
+    }
+
+    private boolean claimPersisted(String key, long now) {
+        DocumentReference document = document(key);
+        Map<String, Object> data = new HashMap<>();
+        data.put("key", key);
+        data.put("createdAt", new Date(now));
+        data.put("expireAt", new Date(now + ttlMillis));
+        try {
+            document.create(data).get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return true;
+        } catch (ExecutionException e) {
+            // Usually the key was claimed before; a claim past its expireAt (not yet deleted by TTL) is taken over
+            try {
+                DocumentSnapshot existing = document.get().get();
+                if (!existing.exists()) {
+                    log.warn("Failed to persist notification key {}: {}", key, e.getMessage());
+                    return true;
+                }
+                Date expireAt = existing.getDate("expireAt");
+                if (expireAt != null && expireAt.getTime() <= now) {
+                    document.set(data).get();
+                    return true;
+                }
+                return false;
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                return true;
+            } catch (ExecutionException ee) {
+                log.warn("Failed to check notification key {}: {}", key, ee.getMessage());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Remove expired entries first; if the cache is still full, drop arbitrary entries
+     * down to three quarters of the limit so eviction does not run on every insert.
+     * With persistence on, an evicted key is still caught by its document.
+     */
+    private void evict(long now) {
+        int before = entries.size();
+        entries.values().removeIf(expiresAt -> expiresAt <= now);
+
+        int target = maxSize * 3 / 4;
+        Iterator<String> keys = entries.keySet().iterator();
+        while (entries.size() > target && keys.hasNext()) {
+            keys.next();
+            keys.remove();
+        }
+        evictions.addAndGet(Math.max(0, before - entries.size()));
+    }
+
+    private DocumentReference document(String key) {
+        // Document IDs cannot contain "/" or look like "__name__"
+        String documentId = URLEncoder.encode(key, StandardCharsets.UTF_8).replace("_", "%5F");
+        return firestore.collection(COLLECTION_NAME).document(documentId);
+    }
+}
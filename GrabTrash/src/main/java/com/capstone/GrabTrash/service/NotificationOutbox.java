@@ -0,0 +1,325 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import com.google.cloud.firestore.UpdateBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable outbox for push notifications. Request handlers stage an entry in the same transaction or batch
+ * as the change that caused it and return; a poller leases due entries and a pool of workers sends them.
+ *
+ * Delivery is at least once: an entry is only removed after FCM accepted it, and the lease of a worker
+ * that dies mid-send expires so another worker picks the entry up. Entries with the same dedup key collapse
+ * into one, and a key that was already delivered is not sent again. Transient FCM errors are retried with
+ * backoff; permanent errors and entries out of attempts are dead-lettered (kept with status DEAD).
+ */
+@Service
+@Slf4j
+public class NotificationOutbox {
+
+    private final NotificationOutboxStore store;
+    private final NotificationService notificationService;
+    private final UserIdentifierIndex identifierIndex;
+    private final int workers;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long pollIntervalMillis;
+    private final long leaseMillis;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final ExecutorService workerPool;
+    private final ScheduledExecutorService poller;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong enqueued = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    @Autowired
+    public NotificationOutbox(NotificationOutboxStore store, NotificationService notificationService,
+                              UserIdentifierIndex identifierIndex,
+                              @Value("${notifications.outbox.workers:4}") int workers,
+                              @Value("${notifications.outbox.batch-size:50}") int batchSize,
+                              @Value("${notifications.outbox.max-attempts:8}") int maxAttempts,
+                              @Value("${notifications.outbox.poll-interval-ms:1000}") long pollIntervalMillis,
+                              @Value("${notifications.outbox.lease-ms:60000}") long leaseMillis,
+                              @Value("${notifications.outbox.initial-backoff-ms:2000}") long initialBackoffMillis,
+                              @Value("${notifications.outbox.max-backoff-ms:600000}") long maxBackoffMillis) {
+        this.store = store;
+        this.notificationService = notificationService;
+        this.identifierIndex = identifierIndex;
+        this.workers = Math.max(1, workers);
+        this.batchSize = Math.max(1, batchSize);
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.pollIntervalMillis = Math.max(100, pollIntervalMillis);
+        this.leaseMillis = leaseMillis;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.workerPool = Executors.newFixedThreadPool(this.workers, daemonThreads("notification-outbox-"));
+        this.poller = Executors.newSingleThreadScheduledExecutor(daemonThreads("notification-outbox-poller-"));
+    }
+
+    /**
+     * Start draining the outbox once the application is up
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        poller.scheduleWithFixedDelay(this::poll, 0, pollIntervalMillis, TimeUnit.MILLISECONDS);
+        log.info("Notification outbox started with {} workers", workers);
+    }
+
+    /**
+     * Stop polling and let the workers finish; unfinished entries are picked up again after a restart
+     */
+    @PreDestroy
+    public void cleanup() {
+        log.info("Shutting down notification outbox");
+        poller.shutdownNow();
+        workerPool.shutdown();
+    }
+
+    /**
+     * Build an entry for a user
+     * @param dedupKey Key identifying the notification, e.g. "payment-{id}-accepted"; null for no dedup
+     * @param userId Recipient user ID
+     * @return Pending entry, ready to stage or enqueue
+     */
+    public NotificationOutboxEntry toUser(String dedupKey, String userId, String title, String body, Map<String, String> data) {
+        return newEntry(dedupKey, userId, null, title, body, data);
+    }
+
+    /**
+     * Build an entry for a user known by email; the worker resolves the user when it sends
+     * @param dedupKey Key identifying the notification; null for no dedup
+     * @param email Recipient email or username
+     * @return Pending entry, ready to stage or enqueue
+     */
+    public NotificationOutboxEntry toEmail(String dedupKey, String email, String title, String body, Map<String, String> data) {
+        return newEntry(dedupKey, null, email, title, body, data);
+    }
+
+    /**
+     * Add an entry to a transaction or batch, so it commits with the business change.
+     * Call {@link #wakeUp()} after the commit to send it without waiting for the next poll.
+     * @param writes Transaction or WriteBatch carrying the business change
+     * @param entry Entry built with {@link #toUser} or {@link #toEmail}
+     */
+    public void stage(UpdateBuilder<?> writes, NotificationOutboxEntry entry) {
+        store.stage(writes, entry);
+        enqueued.incrementAndGet();
+    }
+
+    /**
+     * Write an entry on its own and send it soon
+     * @param entry Entry built with {@link #toUser} or {@link #toEmail}
+     */
+    public void enqueue(NotificationOutboxEntry entry) {
+        store.save(entry);
+        enqueued.incrementAndGet();
+        wakeUp();
+    }
+
+    /**
+     * Poll now instead of at the next interval
+     */
+    public void wakeUp() {
+        try {
+            poller.execute(this::poll);
+        } catch (Exception e) {
+            // Shutting down; the entry stays in the outbox
+            log.debug("Could not wake up the notification outbox: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Queue depth by status plus delivery counters since startup
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("depth", store.countByStatus());
+        metrics.put("inFlight", inFlight.get());
+        metrics.put("workers", workers);
+        metrics.put("enqueued", enqueued.get());
+        metrics.put("sent", sent.get());
+        metrics.put("skipped", skipped.get());
+        metrics.put("duplicates", duplicates.get());
+        metrics.put("retried", retried.get());
+        metrics.put("deadLettered", deadLettered.get());
+        return metrics;
+    }
+
+    private void poll() {
+        try {
+            // Claim no more than the workers can start on soon, so leases do not run out in the queue
+            int capacity = Math.min(batchSize, workers * 2 - inFlight.get());
+            if (capacity <= 0) {
+                return;
+            }
+            List<NotificationOutboxEntry> claimed = store.claimDue(capacity, leaseMillis);
+            for (NotificationOutboxEntry entry : claimed) {
+                inFlight.incrementAndGet();
+                workerPool.execute(() -> {
+                    try {
+                        process(entry);
+                    } finally {
+                        inFlight.decrementAndGet();
+                    }
+                });
+            }
+            if (!claimed.isEmpty()) {
+                log.debug("Claimed {} outbox entries", claimed.size());
+            }
+        } catch (Exception e) {
+            // A failed poll must not cancel the schedule
+            log.error("Failed to poll the notification outbox: {}", e.getMessage(), e);
+        }
+    }
+
+    private void process(NotificationOutboxEntry entry) {
+        try {
+            if (store.isDelivered(entry.getDedupKey())) {
+                entry.setStatus(NotificationOutboxEntry.SENT);
+                store.complete(entry);
+                duplicates.incrementAndGet();
+                log.debug("Outbox entry {} was already delivered, dropping it", entry.getId());
+                return;
+            }
+
+            entry.setAttempts((entry.getAttempts() != null ? entry.getAttempts() : 0) + 1);
+            String userId = entry.getRecipientUserId();
+            if (userId == null && entry.getRecipientEmail() != null) {
+                userId = identifierIndex.resolveUserId(entry.getRecipientEmail());
+                entry.setRecipientUserId(userId);
+            }
+            if (userId == null) {
+                deadLetter(entry, "RECIPIENT_NOT_FOUND");
+                return;
+            }
+
+            FcmSendResult result = notificationService.deliverToUser(userId,
+                    new FcmPayload(entry.getTitle(), entry.getBody(), entry.getData()));
+            if (result.isSuccess()) {
+                entry.setStatus(NotificationOutboxEntry.SENT);
+                entry.setLastError(null);
+                store.complete(entry);
+                sent.incrementAndGet();
+                log.info("Delivered outbox notification {} to user {}: {}", entry.getId(), userId, result.getMessageId());
+            } else if ("NO_TOKEN".equals(result.getErrorCode()) || FcmErrorClassifier.isInvalidToken(result)) {
+                // Nothing to deliver to (a dead token has been reported for removal); retrying cannot help
+                entry.setStatus(NotificationOutboxEntry.SKIPPED);
+                entry.setLastError(result.getErrorCode());
+                store.complete(entry);
+                skipped.incrementAndGet();
+                log.info("Skipped outbox notification {}: user {} has no usable FCM token ({})",
+                        entry.getId(), userId, result.getErrorCode());
+            } else if (FcmErrorClassifier.isTransient(result)) {
+                retryLater(entry, result.getErrorCode() + ": " + result.getErrorMessage());
+            } else {
+                deadLetter(entry, result.getErrorCode() + ": " + result.getErrorMessage());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // Storage errors are usually temporary; the lease covers the case where even this fails
+            log.warn("Failed to process outbox entry {}: {}", entry.getId(), e.getMessage());
+            retryLater(entry, e.getMessage());
+        }
+    }
+
+    private void retryLater(NotificationOutboxEntry entry, String error) {
+        int attempts = entry.getAttempts() != null ? entry.getAttempts() : 0;
+        if (attempts >= maxAttempts) {
+            deadLetter(entry, error);
+            return;
+        }
+        long delay = FcmFanOutEngine.backoffMillis(Math.max(1, attempts), initialBackoffMillis, maxBackoffMillis);
+        Date now = new Date();
+        entry.setStatus(NotificationOutboxEntry.PENDING);
+        entry.setNextAttemptAt(new Date(now.getTime() + delay));
+        entry.setLeaseExpiresAt(null);
+        entry.setLastError(error);
+        entry.setUpdatedAt(now);
+        if (save(entry)) {
+            retried.incrementAndGet();
+            log.info("Outbox notification {} failed ({}), retrying in {} ms (attempt {} of {})",
+                    entry.getId(), error, delay, attempts, maxAttempts);
+        }
+    }
+
+    private void deadLetter(NotificationOutboxEntry entry, String error) {
+        entry.setStatus(NotificationOutboxEntry.DEAD);
+        entry.setLeaseExpiresAt(null);
+        entry.setLastError(error);
+        entry.setUpdatedAt(new Date());
+        if (save(entry)) {
+            deadLettered.incrementAndGet();
+            log.error("Dead-lettered outbox notification {} for {} after {} attempts: {}", entry.getId(),
+                    entry.getRecipientUserId() != null ? entry.getRecipientUserId() : entry.getRecipientEmail(),
+                    entry.getAttempts(), error);
+        }
+    }
+
+    private boolean save(NotificationOutboxEntry entry) {
+        try {
+            store.save(entry);
+            return true;
+        } catch (Exception e) {
+            // The lease expires and the entry is claimed again
+            log.error("Failed to update outbox entry {}: {}", entry.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    private NotificationOutboxEntry newEntry(String dedupKey, String userId, String email, String title, String body,
+                                             Map<String, String> data) {
+        Date now = new Date();
+        // Entries with the same dedup key share a document, so staging one twice leaves a single entry
+        String id = dedupKey != null ? NotificationOutboxStore.documentId(dedupKey) : UUID.randomUUID().toString();
+        return NotificationOutboxEntry.builder()
+                .id(id)
+                .dedupKey(dedupKey)
+                .recipientUserId(userId)
+                .recipientEmail(email)
+                .title(title)
+                .body(body)
+                .data(data != null ? new HashMap<>(data) : new HashMap<>())
+                .status(NotificationOutboxEntry.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
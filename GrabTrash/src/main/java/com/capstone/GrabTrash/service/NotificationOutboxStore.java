@@ -0,0 +1,75 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import com.google.cloud.firestore.UpdateBuilder;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Storage behind the notification outbox. The Firestore store is the default;
+ * notifications.outbox.store=memory swaps in an in-memory store for tests and local runs.
+ */
+public interface NotificationOutboxStore {
+
+    /**
+     * Add an entry to a transaction or batch, so it is committed together with the business change
+     * @param writes Transaction or WriteBatch that carries the business change
+     * @param entry Entry with its ID set
+     */
+    void stage(UpdateBuilder<?> writes, NotificationOutboxEntry entry);
+
+    /**
+     * Write an entry on its own
+     * @param entry Entry with its ID set
+     */
+    void save(NotificationOutboxEntry entry);
+
+    /**
+     * Lease entries that are due: pending entries whose next attempt has come, and entries whose
+     * worker lease expired. A leased entry is not handed to another worker until the lease runs out.
+     * @param limit Maximum number of entries to claim
+     * @param leaseMillis How long the caller has to finish each entry
+     * @return Claimed entries, in PROCESSING status
+     */
+    List<NotificationOutboxEntry> claimDue(int limit, long leaseMillis);
+
+    /**
+     * Whether a notification with this dedup key has already been delivered
+     */
+    boolean isDelivered(String dedupKey);
+
+    /**
+     * Remove a finished entry from the outbox and remember its dedup key
+     * @param entry Entry in SENT or SKIPPED status
+     */
+    void complete(NotificationOutboxEntry entry);
+
+    /**
+     * Number of entries still in the outbox, by status (PENDING, PROCESSING, DEAD)
+     */
+    Map<String, Long> countByStatus();
+
+    /**
+     * Whether a worker may claim the entry now
+     */
+    static boolean isDue(NotificationOutboxEntry entry, Date now) {
+        if (NotificationOutboxEntry.PENDING.equals(entry.getStatus())) {
+            return entry.getNextAttemptAt() == null || !entry.getNextAttemptAt().after(now);
+        }
+        if (NotificationOutboxEntry.PROCESSING.equals(entry.getStatus())) {
+            return entry.getLeaseExpiresAt() == null || !entry.getLeaseExpiresAt().after(now);
+        }
+        return false;
+    }
+
+    /**
+     * Document ID for a dedup key; document IDs cannot contain "/" or look like "__name__"
+     */
+    static String documentId(String dedupKey) {
+        return URLEncoder.encode(dedupKey, StandardCharsets.UTF_8).replace("_", "%5F");
+    }
+}
@@ -1,14 +1,6 @@
 package com.capstone.GrabTrash.service;
 
 import com.capstone.GrabTrash.model.User;
-import com.google.firebase.messaging.FirebaseMessaging;
-import com.google.firebase.messaging.FirebaseMessagingException;
-import com.google.firebase.messaging.Message;
-import com.google.firebase.messaging.Notification;
-import com.google.firebase.messaging.MulticastMessage;
-import com.google.firebase.messaging.BatchResponse;
-import com.google.firebase.messaging.AndroidConfig;
-import com.google.firebase.messaging.AndroidNotification;
 import com.google.cloud.firestore.Firestore;
 import com.google.cloud.firestore.QuerySnapshot;
 import com.google.api.core.ApiFuture;
@@ -31,13 +23,20 @@ public class NotificationService {
 
     private static final Logger log = LoggerFactory.getLogger(NotificationService.class);
     private final Firestore firestore;
-    private final FirebaseMessaging firebaseMessaging;
+    private final FcmGateway fcmGateway;
+    private final FcmFanOutEngine fanOutEngine;
+    private final NotificationTopicService topicService;
+    private final FcmTokenRegistry tokenRegistry;
 
     @Autowired
-    public NotificationService(Firestore firestore, FirebaseMessaging firebaseMessaging) {
+    public NotificationService(Firestore firestore, FcmGateway fcmGateway, FcmFanOutEngine fanOutEngine,
+                               NotificationTopicService topicService, FcmTokenRegistry tokenRegistry) {
         this.firestore = firestore;
-        this.firebaseMessaging = firebaseMessaging;
-        log.info("NotificationService initialized with FirebaseMessaging instance");
+        this.fcmGateway = fcmGateway;
+        this.fanOutEngine = fanOutEngine;
+        this.topicService = topicService;
+        this.tokenRegistry = tokenRegistry;
+        log.info("NotificationService initialized with {}", fcmGateway.getClass().getSimpleName());
     }
 
     /**
@@ -54,12 +53,20 @@ public class NotificationService {
                 return ResponseEntity.badRequest().body(error);
             }
             
+            User before = firestore.collection("users").document(userId).get().get().toObject(User.class);
+
             Map<String, Object> updates = new HashMap<>();
             updates.put("fcmToken", fcmToken);
 
             firestore.collection("users").document(userId).update(updates).get();
+            tokenRegistry.update(userId, fcmToken);
             log.info("FCM token registered successfully for user: {}", userId);
 
+            // Move the device's topic subscriptions to the new token
+            if (before != null) {
+                topicService.moveToken(before, before.getFcmToken(), fcmToken);
+            }
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "FCM token registered successfully");
             return ResponseEntity.ok(response);
@@ -117,52 +124,14 @@ public class NotificationService {
                 // Continue anyway as Firebase will validate it
             }
             
-            Notification notification = Notification.builder()
-                    .setTitle(title)
-                    .setBody(body)
-                    .build();
-            
-            // Configure Android specific options
-            AndroidNotification androidNotification = AndroidNotification.builder()
-                    .setTitle(title)
-                    .setBody(body)
-                    .setPriority(AndroidNotification.Priority.HIGH)
-                    .setDefaultSound(true)
-                    .setDefaultVibrateTimings(true)
-                    .build();
-            
-            AndroidConfig androidConfig = AndroidConfig.builder()
-                    .setPriority(AndroidConfig.Priority.HIGH)
-                    .setNotification(androidNotification)
-                    .build();
-
-            Message.Builder messageBuilder = Message.builder()
-                    .setToken(fcmToken)
-                    .setNotification(notification)
-                    .setAndroidConfig(androidConfig);
-
-            if (data != null && !data.isEmpty()) {
-                messageBuilder.putAllData(data);
+            FcmSendResult result = fcmGateway.send(fcmToken, new FcmPayload(title, body, data));
+            if (result.isSuccess()) {
+                log.info("Successfully sent notification: {}", result.getMessageId());
+                return result.getMessageId();
             }
-            
-            Message message = messageBuilder.build();
-            log.debug("Message built: {}", message);
 
-            try {
-                String response = firebaseMessaging.send(message);
-                log.info("Successfully sent notification: {}", response);
-                return response;
-            } catch (FirebaseMessagingException e) {
-                if (e.getMessage().contains("not a valid FCM registration token")) {
-                    log.error("Invalid FCM token format: {}", fcmToken);
-                } else if (e.getMessage().contains("registration-token-not-registered")) {
-                    log.error("FCM token is no longer valid (app uninstalled or token expired): {}", fcmToken);
-                } else {
-                    log.error("Firebase messaging error: {}", e.getMessage());
-                }
-                log.error("Failed to send notification to token: {}, error: {}", fcmToken, e.getMessage(), e);
-                return null;
-            }
+            handleFailure(fcmToken, result);
+            return null;
         } catch (Exception e) {
             log.error("Unexpected error when sending notification: {}", e.getMessage(), e);
             return null;
@@ -170,7 +139,9 @@ public class NotificationService {
     }
 
     /**
-     * Send notification to users with specific roles
+     * Send notification to users with specific roles.
+     * Once topic subscriptions are complete this is a single send to the role's topic.
+     * @return Number of devices sent to, or 1 for a topic broadcast; 0 on failure
      */
     public int sendNotificationToRole(String role, String title, String body, Map<String, String> data) {
         try {
@@ -180,6 +151,10 @@ public class NotificationService {
                 log.error("Role cannot be null or empty");
                 return 0;
             }
+
+            if (topicService.isReady()) {
+                return topicService.broadcast(NotificationTopicService.roleTopic(role), new FcmPayload(title, body, data)) ? 1 : 0;
+            }
             
             ApiFuture<QuerySnapshot> future = firestore.collection("users")
                     .whereEqualTo("role", role)
@@ -221,7 +196,9 @@ public class NotificationService {
     }
 
     /**
-     * Send notification to users in a specific barangay
+     * Send notification to the customers in a specific barangay.
+     * Once topic subscriptions are complete this is a single send to the barangay's topic.
+     * @return Number of devices sent to, or 1 for a topic broadcast; 0 on failure
      */
     public int sendNotificationToBarangay(String barangayId, String title, String body, Map<String, String> data) {
         try {
@@ -231,6 +208,10 @@ public class NotificationService {
                 log.error("BarangayId cannot be null or empty");
                 return 0;
             }
+
+            if (topicService.isReady()) {
+                return topicService.broadcast(NotificationTopicService.barangayTopic(barangayId), new FcmPayload(title, body, data)) ? 1 : 0;
+            }
             
             ApiFuture<QuerySnapshot> future = firestore.collection("users")
                     .whereEqualTo("barangayId", barangayId)
@@ -276,60 +257,33 @@ public class NotificationService {
     }
 
     /**
-     * Send notification to multiple devices using their FCM tokens
+     * Send notification to multiple devices using their FCM tokens.
+     * Sends in parallel batches through the fan-out engine and waits for the per-token outcomes.
      */
     private int sendMulticastNotification(List<String> tokens, String title, String body, Map<String, String> data) {
-        int maxRetries = 3;
-        int successCount = 0;
-        
-        log.info("Sending notifications to {} devices individually (avoiding batch API)", tokens.size());
-        
-        // Send to each token individually instead of using batch API
+        List<String> sanitized = new ArrayList<>(tokens.size());
         for (String token : tokens) {
-            int retryCount = 0;
-            boolean success = false;
-            
-            while (retryCount < maxRetries && !success) {
-                try {
-                    log.debug("Sending to token: {} (attempt {})", token, retryCount + 1);
-                    
-                    // Sanitize token
-                    token = validateAndSanitizeToken(token);
-                    if (token == null || token.isEmpty()) {
-                        log.warn("Invalid token, skipping");
-                        break;
-                    }
-                    
-                    String response = sendNotification(token, title, body, data);
-                    if (response != null) {
-                        success = true;
-                        successCount++;
-                        log.debug("Successfully sent notification to token: {}", token);
-                    } else {
-                        log.warn("Failed to send notification to token: {}, retrying...", token);
-                        retryCount++;
-                        if (retryCount < maxRetries) {
-                            // Add delay between retries
-                            Thread.sleep(1000);
-                        }
-                    }
-                } catch (Exception e) {
-                    log.warn("Error sending notification to token: {}, error: {}", token, e.getMessage());
-                    retryCount++;
-                    if (retryCount < maxRetries) {
-                        try {
-                            // Add delay between retries
-                            Thread.sleep(1000);
-                        } catch (InterruptedException ie) {
-                            Thread.currentThread().interrupt();
-                        }
-                    }
-                }
+            sanitized.add(validateAndSanitizeToken(token));
+        }
+
+        log.info("Sending notifications to {} devices in batches", sanitized.size());
+        FcmFanOutResult result = fanOutEngine.send(sanitized, new FcmPayload(title, body, data)).join();
+
+        List<String> deadTokens = new ArrayList<>();
+        for (FcmFanOutResult.TokenOutcome failure : result.getFailures()) {
+            if (FcmErrorClassifier.classify(failure.getErrorCode(), failure.getErrorMessage()) == FcmErrorClassifier.Category.INVALID_TOKEN) {
+                deadTokens.add(failure.getToken());
+            } else {
+                log.warn("Failed to send notification to token: {} after {} attempts, error: {}",
+                        failure.getToken(), failure.getAttempts(), failure.getErrorCode());
             }
         }
-        
-        log.info("Completed sending individual notifications. Success count: {}/{}", successCount, tokens.size());
-        return successCount;
+        if (!deadTokens.isEmpty()) {
+            log.info("{} tokens are no longer registered and will be removed", deadTokens.size());
+            tokenRegistry.reportInvalid(deadTokens);
+        }
+        log.info("Completed sending notifications. Success count: {}/{}", result.getSuccessCount(), result.getTokenCount());
+        return result.getSuccessCount();
     }
 
     /**
@@ -339,20 +293,14 @@ public class NotificationService {
         try {
             log.info("Sending notification to user: {}", userId);
             
-            User user = firestore.collection("users").document(userId).get().get().toObject(User.class);
-            
-            if (user == null) {
-                log.warn("User not found: {}", userId);
-                return false;
-            }
-            
-            if (user.getFcmToken() == null || user.getFcmToken().isEmpty()) {
-                log.warn("User has no FCM token: {}", userId);
+            String token = tokenRegistry.getToken(userId);
+            if (token == null) {
+                log.warn("User {} not found or has no FCM token", userId);
                 return false;
             }
             
             log.debug("Found FCM token for user: {}", userId);
-            String result = sendNotification(user.getFcmToken(), title, body, data);
+            String result = sendNotification(token, title, body, data);
             return result != null;
         } catch (InterruptedException | ExecutionException e) {
             log.error("Failed to send notification to user: {}", userId, e);
@@ -361,7 +309,43 @@ public class NotificationService {
     }
 
     /**
-     * Check if a user has a valid FCM token
+     * Send a notification to a user and report the FCM outcome, for callers that retry on their own
+     * @param userId User ID
+     * @param payload Notification content
+     * @return Send result; fails with USER_NOT_FOUND or NO_TOKEN when there is nothing to send to
+     */
+    public FcmSendResult deliverToUser(String userId, FcmPayload payload) throws ExecutionException, InterruptedException {
+        String token = tokenRegistry.getToken(userId);
+        if (token == null) {
+            return FcmSendResult.failure(null, "NO_TOKEN", "User not found or has no FCM token: " + userId);
+        }
+        FcmSendResult result = fcmGateway.send(token, payload);
+        if (!result.isSuccess()) {
+            handleFailure(token, result);
+        }
+        return result;
+    }
+
+    /**
+     * Log a failed send and report the token if FCM says it is dead, so it is not tried again
+     */
+    private void handleFailure(String fcmToken, FcmSendResult result) {
+        switch (FcmErrorClassifier.classify(result)) {
+            case INVALID_TOKEN:
+                log.warn("FCM token is no longer valid (app uninstalled, token expired or malformed), removing it: {}", fcmToken);
+                tokenRegistry.reportInvalid(fcmToken);
+                break;
+            case TRANSIENT:
+                log.warn("Transient FCM error for token {}: {} {}", fcmToken, result.getErrorCode(), result.getErrorMessage());
+                break;
+            default:
+                log.error("Failed to send notification to token: {}, error: {} {}", fcmToken, result.getErrorCode(), result.getErrorMessage());
+        }
+    }
+
+    /**
+     * Check if a user has a valid FCM token.
+     * Served from the token cache, so checking right before a send does not cost an extra users read.
      * @param userId User ID to check
      * @return true if the user has a valid FCM token, false otherwise
      */
@@ -374,31 +358,14 @@ public class NotificationService {
                 return false;
             }
             
-            User user = firestore.collection("users").document(userId).get().get().toObject(User.class);
-            
-            if (user == null) {
-                log.warn("User not found with ID: {}", userId);
-                return false;
-            }
-            
-            String fcmToken = user.getFcmToken();
-            
-            if (fcmToken == null || fcmToken.isEmpty()) {
-                log.warn("User {} does not have an FCM token", userId);
-                return false;
-            }
-            
-            // Validate token format - basic check
-            if (!fcmToken.contains(":")) {
-                log.warn("User {} has an invalid FCM token format: {}", userId, fcmToken);
-                return false;
+            boolean valid = tokenRegistry.hasValidToken(userId);
+            if (!valid) {
+                log.warn("User {} does not have a valid FCM token", userId);
             }
-            
-            log.debug("User {} has a valid FCM token", userId);
-            return true;
+            return valid;
         } catch (Exception e) {
             log.error("Error checking FCM token for user {}: {}", userId, e.getMessage(), e);
             return false;
         }
     }
-} 
\ No newline at end of file
+}
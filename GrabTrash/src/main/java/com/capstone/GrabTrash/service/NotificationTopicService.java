@@ -0,0 +1,296 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.User;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps device tokens subscribed to FCM topics so broadcasts are one send per topic:
+ * "role-{role}" for every user with a token, and "barangay-{id}" for customers (the audience of
+ * barangay broadcasts). Subscriptions follow token registration, role changes and barangay changes.
+ *
+ * Existing users are subscribed once on startup; a marker document in indexStatus records completion.
+ * Until then {@link #isReady()} is false and broadcasts fall back to per-token sends. A backfill in
+ * which any token failed to subscribe leaves the marker unwritten and is retried periodically.
+ */
+@Service
+@Slf4j
+public class NotificationTopicService {
+
+    private static final String BARANGAY_PREFIX = "barangay-";
+    private static final String ROLE_PREFIX = "role-";
+    private static final String STATUS_COLLECTION = "indexStatus";
+    private static final String STATUS_DOCUMENT = "notificationTopics";
+
+    private final Firestore firestore;
+    private final FcmGateway fcmGateway;
+    private volatile boolean ready = false;
+    private final AtomicBoolean backfilling = new AtomicBoolean(false);
+
+    @Autowired
+    public NotificationTopicService(Firestore firestore, FcmGateway fcmGateway) {
+        this.firestore = firestore;
+        this.fcmGateway = fcmGateway;
+    }
+
+    /**
+     * Subscribe existing users' tokens once, in the background
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                DocumentSnapshot status = firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).get().get();
+                if (status.exists() && Boolean.TRUE.equals(status.getBoolean("complete"))) {
+                    ready = true;
+                    log.info("Notification topic subscriptions are complete");
+                    return;
+                }
+                backfill();
+            } catch (Exception e) {
+                log.error("Failed to backfill notification topic subscriptions: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Retry the backfill until every token has been subscribed once
+     */
+    @Scheduled(fixedDelayString = "${notifications.topics.backfill-retry-ms:900000}",
+               initialDelayString = "${notifications.topics.backfill-retry-ms:900000}")
+    public void retryBackfill() {
+        if (ready) {
+            return;
+        }
+        try {
+            backfill();
+        } catch (Exception e) {
+            log.error("Failed to backfill notification topic subscriptions: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Subscribe the token of every user to their topics. Only when every token was subscribed are the
+     * subscriptions marked complete; otherwise broadcasts keep using per-token sends.
+     * @return true if the subscriptions are now complete
+     */
+    public boolean backfill() throws Exception {
+        if (!backfilling.compareAndSet(false, true)) {
+            log.debug("Notification topic backfill already running");
+            return false;
+        }
+        try {
+            return subscribeAll();
+        } finally {
+            backfilling.set(false);
+        }
+    }
+
+    private boolean subscribeAll() throws Exception {
+        log.info("Subscribing existing users to notification topics");
+        List<User> users = firestore.collection("users").get().get().toObjects(User.class);
+
+        Map<String, List<String>> tokensByTopic = new HashMap<>();
+        for (User user : users) {
+            String token = tokenOf(user);
+            if (token == null) {
+                continue;
+            }
+            for (String topic : topicsFor(user)) {
+                tokensByTopic.computeIfAbsent(topic, t -> new ArrayList<>()).add(token);
+            }
+        }
+
+        int expected = 0;
+        int subscribed = 0;
+        for (Map.Entry<String, List<String>> entry : tokensByTopic.entrySet()) {
+            expected += entry.getValue().size();
+            subscribed += subscribe(entry.getValue(), entry.getKey());
+        }
+        if (subscribed < expected) {
+            log.warn("Subscribed only {} of {} tokens to notification topics; broadcasts stay per-token until a retry succeeds",
+                subscribed, expected);
+            return false;
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("complete", true);
+        status.put("completedAt", new Date());
+        firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).set(status).get();
+        ready = true;
+        log.info("Subscribed {} tokens across {} notification topics", subscribed, tokensByTopic.size());
+        return true;
+    }
+
+    /**
+     * Whether every user's token has been subscribed, so topic broadcasts reach everyone
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Move a user's subscriptions after their token, role or barangay changed
+     * @param before User as it was, or null for a new user
+     * @param after User as it is now, or null for a deleted user
+     */
+    public void syncSubscriptions(User before, User after) {
+        String oldToken = tokenOf(before);
+        String newToken = tokenOf(after);
+        Set<String> oldTopics = topicsFor(before);
+        Set<String> newTopics = topicsFor(after);
+        boolean sameToken = oldToken != null && oldToken.equals(newToken);
+
+        if (oldToken != null) {
+            for (String topic : oldTopics) {
+                if (!sameToken || !newTopics.contains(topic)) {
+                    subscribeOrUnsubscribe(false, oldToken, topic);
+                }
+            }
+        }
+        if (newToken != null) {
+            for (String topic : newTopics) {
+                if (!sameToken || !oldTopics.contains(topic)) {
+                    subscribeOrUnsubscribe(true, newToken, topic);
+                }
+            }
+        }
+    }
+
+    /**
+     * Move a user's subscriptions from their old device token to a new one
+     * @param user User (role and barangay decide the topics)
+     * @param oldToken Previous token, or null
+     * @param newToken New token
+     */
+    public void moveToken(User user, String oldToken, String newToken) {
+        String from = sanitize(oldToken);
+        String to = sanitize(newToken);
+        for (String topic : topicsFor(user)) {
+            if (from != null && !from.equals(to)) {
+                subscribeOrUnsubscribe(false, from, topic);
+            }
+            if (to != null) {
+                subscribeOrUnsubscribe(true, to, topic);
+            }
+        }
+    }
+
+    /**
+     * Make sure a user's token is subscribed to all of their topics; subscribing again is harmless
+     * @param user User
+     */
+    public void ensureSubscribed(User user) {
+        String token = tokenOf(user);
+        if (token == null) {
+            return;
+        }
+        for (String topic : topicsFor(user)) {
+            subscribeOrUnsubscribe(true, token, topic);
+        }
+    }
+
+    /**
+     * Send a notification to everyone subscribed to a topic
+     * @param topic Topic name
+     * @param payload Notification content
+     * @return true if FCM accepted the message
+     */
+    public boolean broadcast(String topic, FcmPayload payload) {
+        FcmSendResult result = fcmGateway.sendToTopic(topic, payload);
+        if (result.isSuccess()) {
+            log.info("Broadcast to topic {}: {}", topic, result.getMessageId());
+            return true;
+        }
+        log.error("Failed to broadcast to topic {}: {} {}", topic, result.getErrorCode(), result.getErrorMessage());
+        return false;
+    }
+
+    /**
+     * Topic of the customers in a barangay
+     */
+    public static String barangayTopic(String barangayId) {
+        return BARANGAY_PREFIX + topicSafe(barangayId);
+    }
+
+    /**
+     * Topic of the users with a role
+     */
+    public static String roleTopic(String role) {
+        return ROLE_PREFIX + topicSafe(role.toLowerCase());
+    }
+
+    /**
+     * Topics a user should be subscribed to
+     * @param user User, or null
+     * @return Topic names; empty for null
+     */
+    public static Set<String> topicsFor(User user) {
+        if (user == null) {
+            return Collections.emptySet();
+        }
+        Set<String> topics = new LinkedHashSet<>();
+        if (user.getRole() != null && !user.getRole().isEmpty()) {
+            topics.add(roleTopic(user.getRole()));
+        }
+        if ("customer".equalsIgnoreCase(user.getRole()) && user.getBarangayId() != null && !user.getBarangayId().isEmpty()) {
+            topics.add(barangayTopic(user.getBarangayId()));
+        }
+        return topics;
+    }
+
+    private int subscribe(List<String> tokens, String topic) {
+        int subscribed = 0;
+        for (int start = 0; start < tokens.size(); start += FcmGateway.MAX_TOPIC_BATCH_SIZE) {
+            List<String> batch = tokens.subList(start, Math.min(start + FcmGateway.MAX_TOPIC_BATCH_SIZE, tokens.size()));
+            subscribed += fcmGateway.subscribeToTopic(batch, topic);
+        }
+        return subscribed;
+    }
+
+    private void subscribeOrUnsubscribe(boolean subscribe, String token, String topic) {
+        List<String> tokens = Collections.singletonList(token);
+        int changed = subscribe ? fcmGateway.subscribeToTopic(tokens, topic) : fcmGateway.unsubscribeFromTopic(tokens, topic);
+        if (changed == 0) {
+            log.warn("Failed to {} topic {}", subscribe ? "subscribe to" : "unsubscribe from", topic);
+        } else {
+            log.debug("{} topic {}", subscribe ? "Subscribed to" : "Unsubscribed from", topic);
+        }
+    }
+
+    private static String tokenOf(User user) {
+        return user != null ? sanitize(user.getFcmToken()) : null;
+    }
+
+    private static String sanitize(String token) {
+        if (token == null) {
+            return null;
+        }
+        String sanitized = token.trim().replace("\"", "").replace("'", "");
+        return sanitized.isEmpty() ? null : sanitized;
+    }
+
+    /**
+     * FCM topic names may only contain letters, digits and -_.~%
+     */
+    private static String topicSafe(String value) {
+        return value.replaceAll("[^a-zA-Z0-9\\-_.~%]", "_");
+    }
+}
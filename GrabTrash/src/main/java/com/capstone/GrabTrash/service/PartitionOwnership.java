@@ -0,0 +1,165 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Splits a key space into partitions (contiguous ranges of the key hash) and shares them between
+ * instances through leases. Each instance heartbeats a member lease; the live members, sorted, divide
+ * the partitions into equal ranges, and each instance takes a lease per partition in its range. When a
+ * node dies its member lease runs out, the others take over its range as soon as its partition leases
+ * expire, and a partition is only ever held by one node at a time. Expired member leases are deleted
+ * by the first member.
+ *
+ * Not thread-safe for {@link #refresh}; call it from a single scheduler thread.
+ */
+@Slf4j
+class PartitionOwnership {
+
+    /**
+     * Told when this instance starts or stops owning a partition
+     */
+    interface Listener {
+        void acquired(Set<Integer> partitions);
+
+        void released(int partition);
+    }
+
+    private final String group;
+    private final int partitions;
+    private final LeaseStore leaseStore;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final Listener listener;
+    // Owned partition -> local time its lease is known to last until
+    private final Map<Integer, Long> owned = new ConcurrentHashMap<>();
+    private volatile int memberCount;
+
+    PartitionOwnership(String group, int partitions, LeaseStore leaseStore, String nodeId, long leaseMillis, Listener listener) {
+        this.group = group;
+        this.partitions = Math.max(1, partitions);
+        this.leaseStore = leaseStore;
+        this.nodeId = nodeId;
+        this.leaseMillis = leaseMillis;
+        this.listener = listener;
+    }
+
+    /**
+     * Partition of a key: its unsigned hash split into equal contiguous ranges
+     */
+    int partitionOf(String key) {
+        long hash = key.hashCode() & 0xffffffffL;
+        return (int) ((hash * partitions) >>> 32);
+    }
+
+    int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * Whether this instance owns a partition and its lease has not run out
+     */
+    boolean owns(int partition) {
+        Long until = owned.get(partition);
+        return until != null && until > System.currentTimeMillis();
+    }
+
+    /**
+     * Renew the member lease, work out this node's range and take or give up partition leases to match
+     */
+    void refresh() {
+        long start = System.currentTimeMillis();
+        String self = group + "-member-" + nodeId;
+        leaseStore.tryAcquire(self, nodeId, leaseMillis);
+
+        TreeSet<String> members = new TreeSet<>();
+        for (LeaseStore.Lease lease : leaseStore.list(group + "-member-")) {
+            members.add(lease.getOwner());
+        }
+        members.add(nodeId);
+        memberCount = members.size();
+        int index = new ArrayList<>(members).indexOf(nodeId);
+
+        // Node IDs change on every start, so dead members' leases would otherwise pile up; the first
+        // member clears them
+        if (index == 0) {
+            int removed = leaseStore.deleteExpired(group + "-member-");
+            if (removed > 0) {
+                log.info("Removed {} expired {} member leases", removed, group);
+            }
+        }
+
+        Set<Integer> assigned = new HashSet<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            if ((long) partition * members.size() / partitions == index) {
+                assigned.add(partition);
+            }
+        }
+
+        for (Integer partition : new ArrayList<>(owned.keySet())) {
+            if (!assigned.contains(partition)) {
+                drop(partition);
+                leaseStore.release(partitionLease(partition), nodeId);
+                log.info("Handed over {} partition {}", group, partition);
+            }
+        }
+
+        Set<Integer> acquired = new TreeSet<>();
+        for (Integer partition : assigned) {
+            if (leaseStore.tryAcquire(partitionLease(partition), nodeId, leaseMillis)) {
+                if (owned.put(partition, start + leaseMillis) == null) {
+                    acquired.add(partition);
+                }
+            } else if (owned.containsKey(partition)) {
+                // Someone else holds it now, most likely because a renewal was missed
+                drop(partition);
+                log.warn("Lost the lease on {} partition {}", group, partition);
+            }
+        }
+        if (!acquired.isEmpty()) {
+            log.info("Took over {} partitions {} ({} members)", group, acquired, members.size());
+            listener.acquired(acquired);
+        }
+    }
+
+    /**
+     * Give up every partition and leave the group, so the others take over without waiting for expiry
+     */
+    void releaseAll() {
+        for (Integer partition : new ArrayList<>(owned.keySet())) {
+            drop(partition);
+            leaseStore.release(partitionLease(partition), nodeId);
+        }
+        leaseStore.release(group + "-member-" + nodeId, nodeId);
+    }
+
+    Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        List<Integer> ownedPartitions = new ArrayList<>(owned.keySet());
+        Collections.sort(ownedPartitions);
+        metrics.put("nodeId", nodeId);
+        metrics.put("partitions", partitions);
+        metrics.put("members", memberCount);
+        metrics.put("ownedPartitions", ownedPartitions);
+        return metrics;
+    }
+
+    private void drop(int partition) {
+        if (owned.remove(partition) != null) {
+            listener.released(partition);
+        }
+    }
+
+    private String partitionLease(int partition) {
+        return group + "-partition-" + partitions + "-" + partition;
+    }
+}
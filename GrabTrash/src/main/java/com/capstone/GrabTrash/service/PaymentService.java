@@ -6,29 +6,32 @@ import com.capstone.GrabTrash.dto.PaymentResponseDTO;
 import com.capstone.GrabTrash.dto.QuoteRequestDTO;
 import com.capstone.GrabTrash.dto.QuoteResponseDTO;
 import com.capstone.GrabTrash.dto.TruckResponseDTO;
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
 import com.capstone.GrabTrash.model.Payment;
 import com.capstone.GrabTrash.model.User;
 import com.capstone.GrabTrash.model.Truck;
 import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.CollectionReference;
-import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
-import com.google.cloud.firestore.ListenerRegistration;
 import com.google.cloud.firestore.Query;
 import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.UpdateBuilder;
+import com.google.cloud.firestore.WriteBatch;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
-import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import javax.annotation.PreDestroy;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.stream.Collectors;
@@ -45,151 +48,97 @@ public class PaymentService {
     private final Firestore firestore;
     private final UserService userService;
     private final TruckService truckService;
-    private final NotificationService notificationService;
-    private ListenerRegistration paymentsListener;
+    private final TruckAssignmentIndex truckAssignmentIndex;
+    private final TruckReservationService truckReservationService;
+    private final FirestoreAsync firestoreAsync;
+    private final CurrentUserContext currentUserContext;
+    private final NotificationOutbox notificationOutbox;
+    private final NotificationDedupCache notificationDedup;
+    private final PaymentStatusListener paymentStatusListener;
+    private final DashboardAggregates dashboardAggregates;
+    private final AggregateQueries aggregateQueries;
+    private final AnalyticsRollups analyticsRollups;
+    private final BarangayRanking barangayRanking;
+    private final DriverDailyStats driverDailyStats;
 
     @Autowired
-    public PaymentService(Firestore firestore, @Lazy UserService userService, TruckService truckService, NotificationService notificationService) {
+    public PaymentService(Firestore firestore, @Lazy UserService userService, TruckService truckService,
+                          TruckAssignmentIndex truckAssignmentIndex, TruckReservationService truckReservationService,
+                          FirestoreAsync firestoreAsync, CurrentUserContext currentUserContext, NotificationOutbox notificationOutbox,
+                          NotificationDedupCache notificationDedup, PaymentStatusListener paymentStatusListener,
+                          DashboardAggregates dashboardAggregates, AggregateQueries aggregateQueries,
+                          AnalyticsRollups analyticsRollups, BarangayRanking barangayRanking,
+                          DriverDailyStats driverDailyStats) {
         this.firestore = firestore;
         this.userService = userService;
         this.truckService = truckService;
-        this.notificationService = notificationService;
-        
-        // Initialize the Firestore listener for payments collection
-        initializePaymentsListener();
+        this.truckAssignmentIndex = truckAssignmentIndex;
+        this.truckReservationService = truckReservationService;
+        this.firestoreAsync = firestoreAsync;
+        this.currentUserContext = currentUserContext;
+        this.notificationOutbox = notificationOutbox;
+        this.notificationDedup = notificationDedup;
+        this.paymentStatusListener = paymentStatusListener;
+        this.dashboardAggregates = dashboardAggregates;
+        this.aggregateQueries = aggregateQueries;
+        this.analyticsRollups = analyticsRollups;
+        this.barangayRanking = barangayRanking;
+        this.driverDailyStats = driverDailyStats;
     }
 
     /**
-     * Initialize Firestore listener for payments collection to automatically detect status changes
+     * Recompute the dashboard aggregates from every completed payment
+     * @return Recomputed totals
      */
-    private void initializePaymentsListener() {
+    public Map<String, Object> rebuildDashboardAggregates() {
         try {
-            log.info("Initializing Firestore listener for payments collection");
-            
-            // Create a listener for the payments collection
-            paymentsListener = firestore.collection(COLLECTION_NAME)
-                .addSnapshotListener((snapshots, e) -> {
-                    if (e != null) {
-                        log.error("Error listening for payment changes: {}", e.getMessage(), e);
-                        return;
-                    }
-                    
-                    if (snapshots == null || snapshots.isEmpty()) {
-                        log.debug("No payments found in snapshot");
-                        return;
-                    }
-                    
-                    log.debug("Received snapshot with {} changes", snapshots.getDocumentChanges().size());
-                    
-                    // Process each document change
-                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
-                        // We're only interested in modifications (not new documents or deletions)
-                        if (dc.getType() == DocumentChange.Type.MODIFIED) {
-                            Payment payment = dc.getDocument().toObject(Payment.class);
-                            
-                            if (payment != null) {
-                                log.debug("Payment modified: {}, status: {}", payment.getId(), payment.getJobOrderStatus());
-                                
-                                // Check if the status is "Accepted" and handle notification
-                                String normalizedStatus = normalizeStatus(payment.getJobOrderStatus());
-                                if ("Accepted".equals(normalizedStatus)) {
-                                    // Get the previous version of the document to check if status actually changed
-                                    try {
-                                        // Check if we've already sent a notification for this payment acceptance
-                                        String notificationKey = "notification_sent_" + payment.getId();
-                                        String cacheValue = getNotificationCache(notificationKey);
-                                        
-                                        if (cacheValue != null && cacheValue.equals("Accepted")) {
-                                            log.debug("Notification already sent for payment ID: {}, skipping", payment.getId());
-                                            continue;
-                                        }
-                                        
-                                        log.info("Detected job order status change to Accepted for payment ID: {}", payment.getId());
-                                        sendAcceptedNotification(payment);
-                                        
-                                        // Mark this notification as sent to avoid duplicates
-                                        setNotificationCache(notificationKey, "Accepted");
-                                    } catch (Exception ex) {
-                                        log.error("Error processing status change for payment {}: {}", 
-                                            payment.getId(), ex.getMessage(), ex);
-                                    }
-                                }
-                            }
-                        }
-                    }
-                });
-                
-            log.info("Firestore listener for payments collection initialized successfully");
-        } catch (Exception e) {
-            log.error("Failed to initialize Firestore listener: {}", e.getMessage(), e);
+            return dashboardAggregates.rebuild();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Error rebuilding dashboard aggregates", e);
+            throw new RuntimeException("Failed to rebuild dashboard aggregates: " + e.getMessage());
         }
     }
-    
-    // Simple in-memory cache to avoid duplicate notifications
-    private final Map<String, String> notificationCache = new HashMap<>();
-    
-    private String getNotificationCache(String key) {
-        return notificationCache.get(key);
-    }
-    
-    private void setNotificationCache(String key, String value) {
-        notificationCache.put(key, value);
-    }
-    
+
     /**
-     * Send notification for a payment that has been accepted
-     * @param payment The payment that was accepted
+     * Compare the dashboard aggregates with a full scan of the completed payments
+     * @return Consistency report
      */
-    private void sendAcceptedNotification(Payment payment) {
+    public Map<String, Object> checkDashboardAggregates() {
         try {
-            if (payment.getCustomerEmail() == null) {
-                log.warn("No customer email associated with payment: {}", payment.getId());
-                return;
-            }
-            
-            log.debug("Looking up customer by email: {}", payment.getCustomerEmail());
-            User customer = userService.getUserByEmailOrUsername(payment.getCustomerEmail());
-            
-            if (customer == null) {
-                log.warn("Customer not found for email: {}", payment.getCustomerEmail());
-                return;
-            }
-            
-            log.debug("Found customer: {}, userId: {}", customer.getEmail(), customer.getUserId());
-            
-            // Check if customer has a valid FCM token
-            boolean hasValidToken = notificationService.hasValidFcmToken(customer.getUserId());
-            if (!hasValidToken) {
-                log.warn("Customer does not have a valid FCM token, notification will not be sent");
-                return;
-            }
-            
-            Map<String, String> data = new HashMap<>();
-            data.put("paymentId", payment.getId());
-            data.put("type", "JOB_ORDER_ACCEPTED");
-            
-            boolean notificationSent = notificationService.sendNotificationToUser(
-                customer.getUserId(),
-                "Job Order Accepted",
-                "Your job order has been accepted by the driver",
-                data
-            );
-            
-            log.info("Notification sent to customer: {}", notificationSent ? "success" : "failed");
-        } catch (Exception e) {
-            log.error("Error sending accepted notification for payment {}: {}", payment.getId(), e.getMessage(), e);
+            return dashboardAggregates.checkConsistency();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Error checking dashboard aggregates", e);
+            throw new RuntimeException("Failed to check dashboard aggregates: " + e.getMessage());
         }
     }
-    
+
     /**
-     * Cleanup method to close the listener when the service is destroyed
+     * Payments listener queue depth, backpressure, lag between a change and its processing, and watermark
      */
-    @PreDestroy
-    public void cleanup() {
-        if (paymentsListener != null) {
-            log.info("Closing Firestore payments listener");
-            paymentsListener.remove();
-        }
+    public Map<String, Object> getListenerMetrics() {
+        return paymentStatusListener.getMetrics();
+    }
+
+    /**
+     * Dedup key of the customer's "Job Order Accepted" notification for a payment
+     */
+    static String acceptedNotificationKey(String paymentId) {
+        return "payment-" + paymentId + "-accepted";
+    }
+
+    /**
+     * Build the outbox entry that tells the customer their job order was accepted.
+     * The worker resolves the customer by email and skips the send if they have no FCM token.
+     * @param paymentId ID of the payment
+     * @param payment The accepted payment
+     * @return Pending outbox entry
+     */
+    private NotificationOutboxEntry acceptedNotification(String paymentId, Payment payment) {
+        Map<String, String> data = new HashMap<>();
+        data.put("paymentId", paymentId);
+        data.put("type", "JOB_ORDER_ACCEPTED");
+        return notificationOutbox.toEmail(acceptedNotificationKey(paymentId), payment.getCustomerEmail(),
+            "Job Order Accepted", "Your job order has been accepted by the driver", data);
     }
 
     /**
@@ -322,11 +271,21 @@ public class PaymentService {
             // Create a new payment record
             String paymentId = UUID.randomUUID().toString();
 
+            boolean autoAssignmentRequested = paymentRequest.getTrashWeight() != null && paymentRequest.getTrashWeight() > 0;
+
+            // Start the user lookup and the truck lookup together; they do not depend on each other
+            CompletableFuture<User> userLookup = paymentRequest.getCustomerEmail() != null
+                    ? userService.getUserByEmailOrUsernameAsync(paymentRequest.getCustomerEmail())
+                    : CompletableFuture.completedFuture(null);
+            CompletableFuture<List<Truck>> truckLookup = autoAssignmentRequested
+                    ? truckService.findAvailableTrucksByCapacityAsync(paymentRequest.getTrashWeight(), paymentRequest.getWasteType())
+                    : CompletableFuture.completedFuture(new ArrayList<>());
+
             // Fetch user to get barangayId and phoneNumber
             String barangayId = null;
             String phoneNumber = null;
             if (paymentRequest.getCustomerEmail() != null) {
-                User user = userService.getUserByEmailOrUsername(paymentRequest.getCustomerEmail());
+                User user = userLookup.join();
                 if (user != null) {
                     barangayId = user.getBarangayId();
                     phoneNumber = user.getPhoneNumber();
@@ -340,55 +299,39 @@ public class PaymentService {
             }
             
             // AUTOMATED TRUCK AND DRIVER ASSIGNMENT
-            String assignedTruckId = null;
-            String assignedDriverId = null;
-            Double calculatedAmount = paymentRequest.getAmount(); // Default to request amount
-            Double calculatedTotalAmount = paymentRequest.getTotalAmount(); // Default to request total
+            Payment payment = null;
+            final String customerBarangayId = barangayId;
+            final String customerPhoneNumber = phoneNumber;
             
             // Only attempt auto-assignment if trashWeight is provided
-            if (paymentRequest.getTrashWeight() != null && paymentRequest.getTrashWeight() > 0) {
+            if (autoAssignmentRequested) {
                 log.info("Attempting automated truck assignment for weight: {} kg, waste type: {}", 
                     paymentRequest.getTrashWeight(), paymentRequest.getWasteType());
                 
                 try {
-                    // Find available trucks that can handle the weight
-                    List<Truck> availableTrucks = truckService.findAvailableTrucksByCapacity(
-                        paymentRequest.getTrashWeight(), 
-                        paymentRequest.getWasteType()
-                    );
+                    // Available trucks that can handle the weight, looked up alongside the user
+                    List<Truck> availableTrucks = truckLookup.join();
                     
                     log.info("Found {} available trucks for assignment", availableTrucks.size());
                     
                     if (!availableTrucks.isEmpty()) {
-                        // Select the first truck (smallest sufficient capacity due to sorting)
-                        Truck selectedTruck = availableTrucks.get(0);
-                        assignedTruckId = selectedTruck.getTruckId();
-                        assignedDriverId = selectedTruck.getDriverId();
+                        // Claim the truck and create the payment in one transaction (smallest sufficient capacity first).
+                        // If another payment claims a truck first, the next candidate is tried.
+                        // The driver's notification and the dashboard counters are written in the same transaction.
+                        payment = truckReservationService.reserveAndCreatePayment(paymentId, availableTrucks,
+                            truck -> buildPayment(paymentId, paymentRequest, customerBarangayId, customerPhoneNumber, truck),
+                            (transaction, created) -> {
+                                notificationOutbox.stage(transaction, driverAssignmentNotification(paymentId,
+                                    created.getDriverId(), "NEW_JOB_ASSIGNMENT", "You have been automatically assigned to a new pickup order at " + created.getAddress()));
+                                recordIfCompleted(transaction, created);
+                            });
                         
-                        // Calculate amount based on truck price
-                        if (selectedTruck.getTruckPrice() != null && selectedTruck.getTruckPrice() > 0) {
-                            calculatedAmount = selectedTruck.getTruckPrice();
-                            calculatedTotalAmount = selectedTruck.getTruckPrice(); // Use base truck price without service fee
-                            
-                            log.info("Using truck base price - Amount: {}, Total Amount: {} based on truck price: {}", 
-                                calculatedAmount, calculatedTotalAmount, selectedTruck.getTruckPrice());
+                        if (payment != null) {
+                            log.info("Auto-assigned truck: {} (amount: {}) and driver: {} for payment: {}", 
+                                payment.getTruckId(), payment.getAmount(), payment.getDriverId(), paymentId);
                         } else {
-                            log.warn("Selected truck {} has no price set, using request amounts", assignedTruckId);
-                        }
-                        
-                        // UPDATE TRUCK STATUS TO "CURRENTLY_IN_USE"
-                        try {
-                            selectedTruck.setStatus("CURRENTLY_IN_USE");
-                            selectedTruck.setUpdatedAt(new Date());
-                            firestore.collection("trucks").document(assignedTruckId).set(selectedTruck);
-                            log.info("Updated truck {} status to CURRENTLY_IN_USE", assignedTruckId);
-                        } catch (Exception truckUpdateEx) {
-                            log.error("Failed to update truck status for truck {}: {}", assignedTruckId, truckUpdateEx.getMessage());
-                            // Don't fail the payment creation if truck status update fails
+                            log.warn("All candidate trucks were reserved by other payments. Payment will be created without assignment.");
                         }
-                        
-                        log.info("Auto-assigned truck: {} (capacity: {} kg, price: {}) and driver: {} for payment: {}", 
-                            assignedTruckId, selectedTruck.getCapacity(), selectedTruck.getTruckPrice(), assignedDriverId, paymentId);
 
                     } else {
                         log.warn("No available trucks found for weight: {} kg and waste type: {}. Payment will be created without assignment.", 
@@ -416,53 +359,24 @@ public class PaymentService {
                     paymentRequest.getTrashWeight());
             }
 
-            Payment payment = Payment.builder()
-                    .id(paymentId)
-                    .orderId(paymentRequest.getOrderId())
-                    .customerName(paymentRequest.getCustomerName())
-                    .customerEmail(paymentRequest.getCustomerEmail())
-                    .address(paymentRequest.getAddress())
-                    .latitude(paymentRequest.getLatitude())
-                    .longitude(paymentRequest.getLongitude())
-                    .amount(calculatedAmount) // Use calculated amount based on truck price
-                    .totalAmount(calculatedTotalAmount) // Use calculated total amount
-                    .paymentMethod(paymentRequest.getPaymentMethod())
-                    .paymentReference(paymentRequest.getPaymentReference())
-                    .notes(paymentRequest.getNotes())
-                    .status("COMPLETED")
-                    .createdAt(new Date())
-                    .updatedAt(new Date())
-                    .barangayId(barangayId)
-                    .phoneNumber(phoneNumber)
-                    .wasteType(paymentRequest.getWasteType())
-                    .trashWeight(paymentRequest.getTrashWeight())
-                    .truckId(assignedTruckId != null ? assignedTruckId : paymentRequest.getTruckId())
-                    .driverId(assignedDriverId)
-                    .jobOrderStatus(assignedTruckId != null ? "Available" : "Available")
-                    .build();
+            boolean autoAssigned = payment != null;
+            if (!autoAssigned) {
+                payment = buildPayment(paymentId, paymentRequest, barangayId, phoneNumber, null);
 
-            // Save the payment to Firestore
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
+                // Save the payment to Firestore, with its dashboard counters
+                WriteBatch batch = firestore.batch();
+                batch.set(firestore.collection(COLLECTION_NAME).document(paymentId), payment);
+                recordIfCompleted(batch, payment);
+                batch.commit().get();
+                truckAssignmentIndex.apply(payment);
+            }
+            barangayRanking.record(payment);
+            String assignedDriverId = payment.getDriverId();
             
-            // Send notification to assigned driver if auto-assignment was successful
+            // The assigned driver's notification was committed with the reservation; send it now
             if (assignedDriverId != null) {
-                try {
-                    Map<String, String> notificationData = new HashMap<>();
-                    notificationData.put("paymentId", paymentId);
-                    notificationData.put("type", "NEW_JOB_ASSIGNMENT");
-                    
-                    notificationService.sendNotificationToUser(
-                        assignedDriverId,
-                        "New Job Assignment",
-                        "You have been automatically assigned to a new pickup order at " + payment.getAddress(),
-                        notificationData
-                    );
-                    
-                    log.info("Notification sent to assigned driver: {}", assignedDriverId);
-                } catch (Exception e) {
-                    log.error("Failed to send notification to driver: {}", e.getMessage(), e);
-                    // Don't fail the payment creation if notification fails
-                }
+                notificationOutbox.wakeUp();
+                log.info("Notification queued for assigned driver: {}", assignedDriverId);
             }
 
             // Return the response
@@ -488,17 +402,184 @@ public class PaymentService {
                     .truckId(payment.getTruckId())
                     .driverId(payment.getDriverId())
                     .jobOrderStatus(payment.getJobOrderStatus())
-                    .message(assignedTruckId != null ? 
-                        String.format("Payment processed successfully with automated truck and driver assignment. Amount set to truck base price: %.2f", calculatedAmount) : 
+                    .message(autoAssigned ? 
+                        String.format("Payment processed successfully with automated truck and driver assignment. Amount set to truck base price: %.2f", payment.getAmount()) : 
                         "Payment processed successfully")
                     .build();
 
         } catch (Exception e) {
             log.error("Error processing payment", e);
-            throw new RuntimeException("Failed to process payment: " + e.getMessage());
+            throw new RuntimeException("Failed to process payment: " + FirestoreAsync.unwrap(e).getMessage(), e);
         }
     }
 
+    /**
+     * Stage the dashboard counter and analytics increments for a payment, if it counts as completed
+     * @param writes Batch or transaction that also writes the payment
+     * @param payment Payment as written
+     */
+    private void recordIfCompleted(UpdateBuilder<?> writes, Payment payment) {
+        if (DashboardAggregates.counts(payment)) {
+            dashboardAggregates.recordCompleted(writes, payment);
+            analyticsRollups.recordPayment(writes, payment);
+        }
+    }
+
+    /**
+     * Stamp the completion time and stage the analytics and driver stats increments the first time a job
+     * order moves to Completed. A job that is reopened and completed again keeps its first completion and
+     * is not counted twice. Only called from {@link #updatePayment}, so the previous status and completion
+     * time come from the copy read in the same transaction and two updates racing to Completed count once.
+     * @param writes Transaction that also writes the payment
+     * @param payment Payment with its new job order status
+     * @param previousStatus Job order status before the update, as read in the transaction
+     */
+    private void recordIfJobCompleted(Transaction writes, Payment payment, String previousStatus) {
+        if ("Completed".equalsIgnoreCase(payment.getJobOrderStatus()) && !"Completed".equalsIgnoreCase(previousStatus)
+                && payment.getJobCompletedAt() == null) {
+            payment.setJobCompletedAt(payment.getUpdatedAt());
+            analyticsRollups.recordJobCompleted(writes, payment);
+            driverDailyStats.recordJobCompleted(writes, payment);
+        }
+    }
+
+    /**
+     * Apply a change to a stored payment and write it with the dashboard, analytics and driver stats
+     * increments the change causes. The payment is read again in a transaction and the change applied to
+     * that copy, so two updates racing to complete the same payment count it once: Firestore retries the
+     * one that commits second, and the retry finds the payment already completed.
+     * @param paymentId ID of the payment
+     * @param change Change to the payment; runs again on every retry
+     * @param additionalWrites Other writes to commit with the payment, e.g. an outbox entry
+     * @return The payment as committed
+     */
+    private Payment updatePayment(String paymentId, Consumer<Payment> change, Consumer<Transaction> additionalWrites)
+            throws InterruptedException, ExecutionException {
+        DocumentReference paymentRef = firestore.collection(COLLECTION_NAME).document(paymentId);
+        AtomicBoolean newlyCompleted = new AtomicBoolean();
+        Payment updated = firestore.runTransaction(transaction -> {
+            Payment payment = transaction.get(paymentRef).get().toObject(Payment.class);
+            if (payment == null) {
+                throw new IllegalStateException("Payment not found with ID: " + paymentId);
+            }
+            String previousStatus = payment.getJobOrderStatus();
+            boolean wasCompleted = DashboardAggregates.counts(payment);
+            change.accept(payment);
+
+            recordIfJobCompleted(transaction, payment, previousStatus);
+            transaction.set(paymentRef, payment);
+            newlyCompleted.set(!wasCompleted && DashboardAggregates.counts(payment));
+            if (newlyCompleted.get()) {
+                recordIfCompleted(transaction, payment);
+            }
+            additionalWrites.accept(transaction);
+            return payment;
+        }).get();
+
+        // The ranking lives in memory, so it only learns about completions that committed
+        if (newlyCompleted.get()) {
+            barangayRanking.record(updated);
+        }
+        return updated;
+    }
+
+    /**
+     * Set a truck back to AVAILABLE once its job is completed
+     * @param truckId ID of the truck
+     */
+    private void releaseTruck(String truckId) throws InterruptedException, ExecutionException {
+        log.debug("Job marked as Completed, releasing truck: {}", truckId);
+        
+        Truck truck = firestore.collection("trucks").document(truckId).get().get().toObject(Truck.class);
+        
+        if (truck != null) {
+            // Update truck status to AVAILABLE
+            truck.setStatus("AVAILABLE");
+            truck.setUpdatedAt(new Date());
+            firestore.collection("trucks").document(truckId).set(truck);
+            log.debug("Updated truck status to AVAILABLE");
+        }
+    }
+
+    /**
+     * Set a job order status on a payment; a completed job also completes the payment and releases its truck
+     * @param payment Payment to change
+     * @param jobOrderStatus Normalized job order status
+     */
+    private static void applyJobOrderStatus(Payment payment, String jobOrderStatus) {
+        payment.setJobOrderStatus(jobOrderStatus);
+        payment.setUpdatedAt(new Date());
+        if ("Completed".equalsIgnoreCase(jobOrderStatus) && payment.getTruckId() != null) {
+            payment.setStatus("COMPLETED");
+            payment.setTruckReleased(true);
+        }
+    }
+
+    /**
+     * Build the outbox entry that tells a driver about a job assigned to them.
+     * Keyed by payment and driver, so the same assignment is announced once.
+     * @param paymentId ID of the payment
+     * @param driverId ID of the assigned driver
+     * @param type Notification type for the app
+     * @param body Notification text
+     * @return Pending outbox entry
+     */
+    private NotificationOutboxEntry driverAssignmentNotification(String paymentId, String driverId, String type, String body) {
+        Map<String, String> data = new HashMap<>();
+        data.put("paymentId", paymentId);
+        data.put("type", type);
+        return notificationOutbox.toUser("payment-" + paymentId + "-driver-" + driverId, driverId, "New Job Assignment", body, data);
+    }
+
+    /**
+     * Build the payment record for a request
+     * @param paymentId Payment ID
+     * @param paymentRequest Payment information from the mobile app
+     * @param barangayId Customer barangay ID
+     * @param phoneNumber Customer phone number
+     * @param truck Auto-assigned truck, or null if none was assigned
+     * @return Payment ready to be saved
+     */
+    private Payment buildPayment(String paymentId, PaymentRequestDTO paymentRequest, String barangayId, String phoneNumber, Truck truck) {
+        Double calculatedAmount = paymentRequest.getAmount(); // Default to request amount
+        Double calculatedTotalAmount = paymentRequest.getTotalAmount(); // Default to request total
+
+        // Calculate amount based on truck price
+        if (truck != null) {
+            if (truck.getTruckPrice() != null && truck.getTruckPrice() > 0) {
+                calculatedAmount = truck.getTruckPrice();
+                calculatedTotalAmount = truck.getTruckPrice(); // Use base truck price without service fee
+            } else {
+                log.warn("Selected truck {} has no price set, using request amounts", truck.getTruckId());
+            }
+        }
+
+        return Payment.builder()
+                .id(paymentId)
+                .orderId(paymentRequest.getOrderId())
+                .customerName(paymentRequest.getCustomerName())
+                .customerEmail(paymentRequest.getCustomerEmail())
+                .address(paymentRequest.getAddress())
+                .latitude(paymentRequest.getLatitude())
+                .longitude(paymentRequest.getLongitude())
+                .amount(calculatedAmount) // Use calculated amount based on truck price
+                .totalAmount(calculatedTotalAmount) // Use calculated total amount
+                .paymentMethod(paymentRequest.getPaymentMethod())
+                .paymentReference(paymentRequest.getPaymentReference())
+                .notes(paymentRequest.getNotes())
+                .status("COMPLETED")
+                .createdAt(new Date())
+                .updatedAt(new Date())
+                .barangayId(barangayId)
+                .phoneNumber(phoneNumber)
+                .wasteType(paymentRequest.getWasteType())
+                .trashWeight(paymentRequest.getTrashWeight())
+                .truckId(truck != null ? truck.getTruckId() : paymentRequest.getTruckId())
+                .driverId(truck != null ? truck.getDriverId() : null)
+                .jobOrderStatus("Available")
+                .build();
+    }
+
     /**
      * Get all payments
      * @return List of all payments
@@ -518,6 +599,19 @@ public class PaymentService {
         }
     }
 
+    /**
+     * Get all payments without blocking the calling thread
+     * @return Future of all payments
+     */
+    public CompletableFuture<List<PaymentResponseDTO>> getAllPaymentsAsync() {
+        return firestoreAsync.query(firestore.collection(COLLECTION_NAME), Payment.class)
+                .thenApply(this::mapToResponseDTOList)
+                .exceptionally(e -> {
+                    log.error("Error getting all payments", e);
+                    throw new RuntimeException("Failed to get payments: " + FirestoreAsync.unwrap(e).getMessage());
+                });
+    }
+
     /**
      * Get payment by ID
      * @param id Payment ID
@@ -585,37 +679,33 @@ public class PaymentService {
         }
     }
 
+    /**
+     * Get payments by customer email without blocking the calling thread
+     * @param email Customer email
+     * @return Future of the payments for the customer
+     */
+    public CompletableFuture<List<PaymentResponseDTO>> getPaymentsByCustomerEmailAsync(String email) {
+        Query query = firestore.collection(COLLECTION_NAME).whereEqualTo("customerEmail", email);
+        return firestoreAsync.query(query, Payment.class)
+                .thenApply(this::mapToResponseDTOList)
+                .exceptionally(e -> {
+                    log.error("Error getting payments by customer email", e);
+                    throw new RuntimeException("Failed to get payments: " + FirestoreAsync.unwrap(e).getMessage());
+                });
+    }
+
     /**
      * Get dashboard statistics including total pickup trash ordered
      * @return Dashboard statistics
      */
     public DashboardStatsDTO getDashboardStats() {
         try {
-            CollectionReference paymentsCollection = firestore.collection(COLLECTION_NAME);
-            
-            // Get all completed payments
-            Query query = paymentsCollection.whereEqualTo("status", "COMPLETED");
-            ApiFuture<QuerySnapshot> future = query.get();
-            List<Payment> payments = future.get().toObjects(Payment.class);
-            
-            // Calculate total pickup trash ordered (count of completed orders)
-            int totalPickupTrashOrdered = payments.size();
-            
-            // Calculate total revenue from all completed orders
-            double totalRevenue = payments.stream()
-                    .mapToDouble(Payment::getTotalAmount)
-                    .sum();
-            
-            // Count of completed orders is the same as totalPickupTrashOrdered in this case
-            int totalCompletedOrders = totalPickupTrashOrdered;
-            
-            // Create and return the dashboard stats DTO
-            return DashboardStatsDTO.builder()
-                    .totalPickupTrashOrdered(totalPickupTrashOrdered)
-                    .totalRevenue(totalRevenue)
-                    .totalCompletedOrders(totalCompletedOrders)
-                    .message("Dashboard statistics retrieved successfully")
-                    .build();
+            if (dashboardAggregates.isComplete()) {
+                return buildDashboardStats(dashboardAggregates.readTotals());
+            }
+
+            // Aggregates not backfilled yet: count and sum the completed payments server-side
+            return buildDashboardStats(aggregateQueries.countAndSum(COLLECTION_NAME, "totalAmount", Map.of("status", "COMPLETED")));
             
         } catch (InterruptedException | ExecutionException e) {
             log.error("Error getting dashboard statistics", e);
@@ -623,6 +713,58 @@ public class PaymentService {
         }
     }
 
+    /**
+     * Get dashboard statistics without blocking the calling thread
+     * @return Future of the dashboard statistics
+     */
+    public CompletableFuture<DashboardStatsDTO> getDashboardStatsAsync() {
+        CompletableFuture<DashboardStatsDTO> stats;
+        if (dashboardAggregates.isComplete()) {
+            stats = dashboardAggregates.readTotalsAsync().thenApply(this::buildDashboardStats);
+        } else {
+            stats = aggregateQueries.countAndSumAsync(COLLECTION_NAME, "totalAmount", Map.of("status", "COMPLETED"))
+                    .thenApply(this::buildDashboardStats);
+        }
+        return stats
+                .exceptionally(e -> {
+                    log.error("Error getting dashboard statistics", e);
+                    throw new RuntimeException("Failed to get dashboard statistics: " + FirestoreAsync.unwrap(e).getMessage());
+                });
+    }
+
+    /**
+     * Build dashboard statistics from an aggregation query over the completed payments
+     * @param completed Count and totalAmount sum of completed payments
+     * @return Dashboard statistics
+     */
+    private DashboardStatsDTO buildDashboardStats(AggregateQueries.CountAndSum completed) {
+        return buildDashboardStats(new DashboardAggregates.Totals(completed.getCount(), completed.getSum()));
+    }
+
+    /**
+     * Build dashboard statistics from the completed payment totals
+     * @param totals Count and revenue of completed payments
+     * @return Dashboard statistics
+     */
+    private DashboardStatsDTO buildDashboardStats(DashboardAggregates.Totals totals) {
+        // Calculate total pickup trash ordered (count of completed orders)
+        int totalPickupTrashOrdered = (int) totals.getOrderCount();
+        
+        // Calculate total revenue from all completed orders
+        double totalRevenue = totals.getRevenue();
+        
+        // Count of completed orders is the same as totalPickupTrashOrdered in this case
+        int totalCompletedOrders = totalPickupTrashOrdered;
+        
+        // Create and return the dashboard stats DTO
+        return DashboardStatsDTO.builder()
+                .totalPickupTrashOrdered(totalPickupTrashOrdered)
+                .totalRevenue(totalRevenue)
+                .totalCompletedOrders(totalCompletedOrders)
+                .message("Dashboard statistics retrieved successfully")
+                .build();
+    }
+
     /**
      * Map a Payment entity to a PaymentResponseDTO
      * @param payment Payment entity
@@ -674,8 +816,29 @@ public class PaymentService {
     
 
 
+    /**
+     * Top barangays by completed payments over the last days, from the in-memory ranking
+     * @param topN Number of barangays to return
+     * @param days Window length; one of rankings.barangays.windows
+     * @return barangayId and count per barangay, largest first
+     */
+    public List<Map<String, Object>> getTopBarangaysByPickupFrequency(int topN, int days) {
+        return barangayRanking.top(days, topN);
+    }
+
+    /**
+     * Recompute the windowed barangay ranking exactly from the payments
+     */
+    public Map<String, Object> recomputeBarangayRanking() {
+        return barangayRanking.recompute();
+    }
+
     public List<Map<String, Object>> getTopBarangaysByPickupFrequency(int topN) {
         try {
+            if (dashboardAggregates.isComplete()) {
+                return dashboardAggregates.readTopBarangays(topN);
+            }
+
             CollectionReference paymentsCollection = firestore.collection(COLLECTION_NAME);
             Query query = paymentsCollection.whereEqualTo("status", "COMPLETED");
             ApiFuture<QuerySnapshot> future = query.get();
@@ -732,20 +895,13 @@ public class PaymentService {
             payment.setDriverId(driverId);
             payment.setUpdatedAt(new Date());
 
-            // Save the updated payment
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
-
-            // Send notification to the driver
-            Map<String, String> data = new HashMap<>();
-            data.put("paymentId", paymentId);
-            data.put("type", "DRIVER_ASSIGNMENT");
-            
-            notificationService.sendNotificationToUser(
-                driverId,
-                "New Job Assignment",
-                "You have been assigned to a new job order at " + payment.getAddress(),
-                data
-            );
+            // Save the updated payment and queue the driver's notification together
+            WriteBatch batch = firestore.batch();
+            batch.set(firestore.collection(COLLECTION_NAME).document(paymentId), payment);
+            notificationOutbox.stage(batch, driverAssignmentNotification(paymentId, driverId,
+                "DRIVER_ASSIGNMENT", "You have been assigned to a new job order at " + payment.getAddress()));
+            batch.commit().get();
+            notificationOutbox.wakeUp();
 
             // Return the updated payment information
             return mapToResponseDTO(payment);
@@ -801,6 +957,7 @@ public class PaymentService {
             
             // Update the payment with the truck ID
             payment.setTruckId(truckId);
+            payment.setTruckReleased(false);
             payment.setUpdatedAt(new Date());
             
             // Update job order status to IN_PROGRESS if currently NEW
@@ -810,6 +967,7 @@ public class PaymentService {
             
             // Save the updated payment to Firestore
             firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
+            truckAssignmentIndex.apply(payment);
             
             // Update the truck status to "CURRENTLY_IN_USE"
             truck.setStatus("CURRENTLY_IN_USE");
@@ -858,12 +1016,13 @@ public class PaymentService {
             // Save the updated truck to Firestore
             firestore.collection("trucks").document(truckId).set(truck);
             
-            // Mark payment as COMPLETED
-            payment.setStatus("COMPLETED");
-            payment.setUpdatedAt(new Date());
-            
-            // Save the updated payment
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
+            // Mark payment as COMPLETED and save it, with its dashboard counters
+            payment = updatePayment(paymentId, completed -> {
+                completed.setStatus("COMPLETED");
+                completed.setTruckReleased(true);
+                completed.setUpdatedAt(new Date());
+            }, transaction -> { });
+            truckAssignmentIndex.release(paymentId);
             
             return mapToResponseDTO(payment);
             
@@ -911,72 +1070,46 @@ public class PaymentService {
             String normalizedStatus = normalizeStatus(jobOrderStatus);
             log.debug("Normalized new status: {}", normalizedStatus);
             
-            // Update job order status
-            payment.setJobOrderStatus(normalizedStatus);
-            payment.setUpdatedAt(new Date());
-            
             // If job is marked as Completed, release the truck (set to available)
             if ("Completed".equalsIgnoreCase(normalizedStatus) && payment.getTruckId() != null) {
-                String truckId = payment.getTruckId();
-                log.debug("Job marked as Completed, releasing truck: {}", truckId);
-                
-                Truck truck = firestore.collection("trucks").document(truckId).get().get().toObject(Truck.class);
-                
-                if (truck != null) {
-                    // Update truck status to AVAILABLE
-                    truck.setStatus("AVAILABLE");
-                    truck.setUpdatedAt(new Date());
-                    firestore.collection("trucks").document(truckId).set(truck);
-                    log.debug("Updated truck status to AVAILABLE");
-                }
-                
-                // Also update payment status
-                payment.setStatus("COMPLETED");
+                releaseTruck(payment.getTruckId());
             }
             
-            // Save the updated payment
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
-            log.info("Successfully updated job order status to: {} for payment ID: {}", normalizedStatus, paymentId);
-            
-            // Send notification to the customer if the status changed to Accepted
+            // Notify the customer if the status changed to Accepted
             log.debug("Checking if notification should be sent. New status: {}, Previous status: {}, Equal: {}", 
                 normalizedStatus, previousStatus, normalizedStatus.equalsIgnoreCase(previousStatus));
-                
-            if ("Accepted".equalsIgnoreCase(normalizedStatus) && !normalizedStatus.equalsIgnoreCase(previousStatus)) {
-                log.info("Status changed to Accepted, sending notification to customer");
-                
-                if (payment.getCustomerEmail() != null) {
-                    log.debug("Looking up customer by email: {}", payment.getCustomerEmail());
-                    User customer = userService.getUserByEmailOrUsername(payment.getCustomerEmail());
-                    
-                    if (customer != null) {
-                        log.debug("Found customer: {}, userId: {}", customer.getEmail(), customer.getUserId());
-                        
-                        // Check if customer has a valid FCM token
-                        boolean hasValidToken = notificationService.hasValidFcmToken(customer.getUserId());
-                        if (!hasValidToken) {
-                            log.warn("Customer does not have a valid FCM token, notification will not be sent");
-                            return mapToResponseDTO(payment);
-                        }
-                        
-                        Map<String, String> data = new HashMap<>();
-                        data.put("paymentId", paymentId);
-                        data.put("type", "JOB_ORDER_ACCEPTED");
-                        
-                        boolean notificationSent = notificationService.sendNotificationToUser(
-                            customer.getUserId(),
-                            "Job Order Accepted",
-                            "Your job order has been accepted by the driver",
-                            data
-                        );
-                        
-                        log.info("Notification sent to customer: {}", notificationSent ? "success" : "failed");
-                    } else {
-                        log.warn("Customer not found for email: {}", payment.getCustomerEmail());
+            boolean notifyCustomer = "Accepted".equalsIgnoreCase(normalizedStatus) && 
+                !normalizedStatus.equalsIgnoreCase(previousStatus);
+            if (notifyCustomer && payment.getCustomerEmail() == null) {
+                log.warn("No customer email associated with payment: {}", paymentId);
+                notifyCustomer = false;
+            }
+            // Claim the notification so the payments listener does not send it a second time
+            if (notifyCustomer && !notificationDedup.claim(acceptedNotificationKey(paymentId))) {
+                log.debug("Accepted notification already sent for payment ID: {}", paymentId);
+                notifyCustomer = false;
+            }
+            
+            // Save the updated payment, with the customer's notification and dashboard counters in the same transaction
+            NotificationOutboxEntry accepted = notifyCustomer ? acceptedNotification(paymentId, payment) : null;
+            try {
+                payment = updatePayment(paymentId, updated -> applyJobOrderStatus(updated, normalizedStatus), transaction -> {
+                    if (accepted != null) {
+                        notificationOutbox.stage(transaction, accepted);
                     }
-                } else {
-                    log.warn("No customer email associated with payment: {}", paymentId);
+                });
+            } catch (ExecutionException e) {
+                if (notifyCustomer) {
+                    notificationDedup.release(acceptedNotificationKey(paymentId));
                 }
+                throw e;
+            }
+            truckAssignmentIndex.apply(payment);
+            log.info("Successfully updated job order status to: {} for payment ID: {}", normalizedStatus, paymentId);
+            
+            if (notifyCustomer) {
+                notificationOutbox.wakeUp();
+                log.info("Status changed to Accepted, notification queued for customer: {}", payment.getCustomerEmail());
             } else {
                 log.debug("No notification needed. Status: {}, Previous: {}", normalizedStatus, previousStatus);
             }
@@ -1066,10 +1199,12 @@ public class PaymentService {
                     log.error("Failed to update truck status for truck {}: {}", truckId, truckUpdateEx.getMessage());
                     // Don't fail the delivery status update if truck status update fails
                 }
+                payment.setTruckReleased(true);
             }
             
             // Save the updated payment
             firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
+            truckAssignmentIndex.apply(payment);
             log.info("Successfully updated delivery status to: {} for payment ID: {}", isDelivered, paymentId);
             
             return mapToResponseDTO(payment);
@@ -1127,12 +1262,12 @@ public class PaymentService {
             String normalizedStatus = normalizeStatus(jobOrderStatus);
             log.debug("Normalized new status: {}", normalizedStatus);
             
-            // Update job order status
-            payment.setJobOrderStatus(normalizedStatus);
-            payment.setUpdatedAt(new Date());
-            
-            // Save the updated payment
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
+            // Update job order status and save the payment, with the analytics increments if the job was just completed
+            payment = updatePayment(paymentId, updated -> {
+                updated.setJobOrderStatus(normalizedStatus);
+                updated.setUpdatedAt(new Date());
+            }, transaction -> { });
+            truckAssignmentIndex.apply(payment);
             log.info("Successfully updated job order status to: {} for payment ID: {} by customer: {}", 
                 normalizedStatus, paymentId, currentUserEmail);
             
@@ -1209,75 +1344,48 @@ public class PaymentService {
             String normalizedStatus = normalizeStatus(jobOrderStatus);
             log.debug("Normalized new status: {}", normalizedStatus);
             
-            // Update job order status
-            payment.setJobOrderStatus(normalizedStatus);
-            payment.setUpdatedAt(new Date());
-            
             // If job is marked as Completed, release the truck (set to available)
             if ("Completed".equalsIgnoreCase(normalizedStatus) && payment.getTruckId() != null) {
-                String truckId = payment.getTruckId();
-                log.debug("Job marked as Completed, releasing truck: {}", truckId);
-                
-                Truck truck = firestore.collection("trucks").document(truckId).get().get().toObject(Truck.class);
-                
-                if (truck != null) {
-                    // Update truck status to AVAILABLE
-                    truck.setStatus("AVAILABLE");
-                    truck.setUpdatedAt(new Date());
-                    firestore.collection("trucks").document(truckId).set(truck);
-                    log.debug("Updated truck status to AVAILABLE");
-                }
-                
-                // Also update payment status
-                payment.setStatus("COMPLETED");
+                releaseTruck(payment.getTruckId());
             }
             
-            // Save the updated payment
-            firestore.collection(COLLECTION_NAME).document(paymentId).set(payment);
-            log.info("Successfully updated job order status to: {} for payment ID: {} by {} ({})", 
-                normalizedStatus, paymentId, currentUserEmail, currentUserRole);
-            
-            // Send notification to the customer if the status changed to Accepted by driver
+            // Notify the customer if the status changed to Accepted by the driver
             log.debug("Checking if notification should be sent. New status: {}, Previous status: {}, Role: {}", 
                 normalizedStatus, previousStatus, currentUserRole);
-                
-            if ("Accepted".equalsIgnoreCase(normalizedStatus) && 
+            boolean notifyCustomer = "Accepted".equalsIgnoreCase(normalizedStatus) && 
                 !normalizedStatus.equalsIgnoreCase(previousStatus) && 
-                "DRIVER".equalsIgnoreCase(currentUserRole)) {
-                log.info("Status changed to Accepted by driver, sending notification to customer");
-                
-                if (payment.getCustomerEmail() != null) {
-                    log.debug("Looking up customer by email: {}", payment.getCustomerEmail());
-                    User customer = userService.getUserByEmailOrUsername(payment.getCustomerEmail());
-                    
-                    if (customer != null) {
-                        log.debug("Found customer: {}, userId: {}", customer.getEmail(), customer.getUserId());
-                        
-                        // Check if customer has a valid FCM token
-                        boolean hasValidToken = notificationService.hasValidFcmToken(customer.getUserId());
-                        if (!hasValidToken) {
-                            log.warn("Customer does not have a valid FCM token, notification will not be sent");
-                            return mapToResponseDTO(payment);
-                        }
-                        
-                        Map<String, String> data = new HashMap<>();
-                        data.put("paymentId", paymentId);
-                        data.put("type", "JOB_ORDER_ACCEPTED");
-                        
-                        boolean notificationSent = notificationService.sendNotificationToUser(
-                            customer.getUserId(),
-                            "Job Order Accepted",
-                            "Your job order has been accepted by the driver",
-                            data
-                        );
-                        
-                        log.info("Notification sent to customer: {}", notificationSent ? "success" : "failed");
-                    } else {
-                        log.warn("Customer not found for email: {}", payment.getCustomerEmail());
+                "DRIVER".equalsIgnoreCase(currentUserRole);
+            if (notifyCustomer && payment.getCustomerEmail() == null) {
+                log.warn("No customer email associated with payment: {}", paymentId);
+                notifyCustomer = false;
+            }
+            // Claim the notification so the payments listener does not send it a second time
+            if (notifyCustomer && !notificationDedup.claim(acceptedNotificationKey(paymentId))) {
+                log.debug("Accepted notification already sent for payment ID: {}", paymentId);
+                notifyCustomer = false;
+            }
+            
+            // Save the updated payment, with the customer's notification and dashboard counters in the same transaction
+            NotificationOutboxEntry accepted = notifyCustomer ? acceptedNotification(paymentId, payment) : null;
+            try {
+                payment = updatePayment(paymentId, updated -> applyJobOrderStatus(updated, normalizedStatus), transaction -> {
+                    if (accepted != null) {
+                        notificationOutbox.stage(transaction, accepted);
                     }
-                } else {
-                    log.warn("No customer email associated with payment: {}", paymentId);
+                });
+            } catch (ExecutionException e) {
+                if (notifyCustomer) {
+                    notificationDedup.release(acceptedNotificationKey(paymentId));
                 }
+                throw e;
+            }
+            truckAssignmentIndex.apply(payment);
+            log.info("Successfully updated job order status to: {} for payment ID: {} by {} ({})", 
+                normalizedStatus, paymentId, currentUserEmail, currentUserRole);
+            
+            if (notifyCustomer) {
+                notificationOutbox.wakeUp();
+                log.info("Status changed to Accepted by driver, notification queued for customer: {}", payment.getCustomerEmail());
             } else {
                 log.debug("No notification needed. Status: {}, Previous: {}, Role: {}", 
                     normalizedStatus, previousStatus, currentUserRole);
@@ -1296,35 +1404,15 @@ public class PaymentService {
      * @return Current user's email or null if not found
      */
     private String getCurrentUserEmail() {
-        try {
-            Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
-            if (principal instanceof UserDetails) {
-                return ((UserDetails) principal).getUsername();
-            } else if (principal instanceof String) {
-                return (String) principal;
-            }
-            return null;
-        } catch (Exception e) {
-            log.error("Error getting current user from security context", e);
-            return null;
-        }
+        return currentUserContext.getEmail();
     }
     
     /**
-     * Get the current user's role from the security context
+     * Get the current user's role from the granted authorities
      * @return Current user's role or null if not found
      */
     private String getCurrentUserRole() {
-        try {
-            return SecurityContextHolder.getContext().getAuthentication().getAuthorities()
-                .stream()
-                .findFirst()
-                .map(authority -> authority.getAuthority().replace("ROLE_", ""))
-                .orElse(null);
-        } catch (Exception e) {
-            log.error("Error getting current user role from security context", e);
-            return null;
-        }
+        return currentUserContext.getRole();
     }
 
     /**
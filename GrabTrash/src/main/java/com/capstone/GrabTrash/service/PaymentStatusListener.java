@@ -0,0 +1,382 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.capstone.GrabTrash.model.User;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Listens for payment changes and notifies the customer when a job order is accepted.
+ *
+ * The listener only asks for payments with updatedAt after a watermark, so startup does not stream the
+ * whole payment history. The watermark is saved every few seconds; after a restart the listener resumes
+ * from it (minus an overlap for clock skew between instances) and catches up on what it missed. On the
+ * very first start there is no watermark and the listener starts from now. The query is re-anchored at
+ * the current watermark periodically, so the listened set does not grow with uptime either.
+ *
+ * With several instances running, payment IDs are split into hash-range partitions owned through leases
+ * (see {@link PartitionOwnership}); each instance only handles the payments in its own partitions, and
+ * keeps a watermark per partition. When it takes over a partition it replays that partition from the
+ * previous owner's watermark, so changes are not lost while a dead node's range is reassigned.
+ */
+@Service
+@Slf4j
+public class PaymentStatusListener {
+
+    private static final String COLLECTION_NAME = "payments";
+    private static final String WATERMARK_NAME = "payments";
+    private static final String LEASE_GROUP = "payments-listener";
+
+    private final Firestore firestore;
+    private final UserService userService;
+    private final NotificationService notificationService;
+    private final NotificationDedupCache notificationDedup;
+    private final ListenerWatermarkStore watermarkStore;
+    private final long overlapMillis;
+    private final ListenerDispatcher dispatcher;
+    private final PartitionOwnership ownership;
+    // Owned partition -> its watermark; a change is only handled while its partition has an entry here
+    private final Map<Integer, WatermarkTracker> watermarks = new ConcurrentHashMap<>();
+    private final Map<Integer, Date> savedWatermarks = new ConcurrentHashMap<>();
+    private final AtomicLong skippedChanges = new AtomicLong();
+    private final ScheduledExecutorService scheduler;
+    private volatile ListenerRegistration registration;
+    private volatile Date anchoredAt;
+
+    @Autowired
+    public PaymentStatusListener(Firestore firestore, @Lazy UserService userService, NotificationService notificationService,
+                                 NotificationDedupCache notificationDedup, ListenerWatermarkStore watermarkStore,
+                                 LeaseStore leaseStore, NodeIdentity nodeIdentity,
+                                 @Value("${payments.listener.lanes:4}") int lanes,
+                                 @Value("${payments.listener.capacity:1000}") int capacity,
+                                 @Value("${payments.listener.overlap-ms:60000}") long overlapMillis,
+                                 @Value("${payments.listener.checkpoint-interval-ms:10000}") long checkpointIntervalMillis,
+                                 @Value("${payments.listener.reanchor-interval-ms:3600000}") long reanchorIntervalMillis,
+                                 @Value("${payments.listener.partitions:16}") int partitions,
+                                 @Value("${payments.listener.lease-ms:30000}") long leaseMillis,
+                                 @Value("${payments.listener.lease-renew-interval-ms:10000}") long leaseRenewIntervalMillis) {
+        this.firestore = firestore;
+        this.userService = userService;
+        this.notificationService = notificationService;
+        this.notificationDedup = notificationDedup;
+        this.watermarkStore = watermarkStore;
+        this.overlapMillis = overlapMillis;
+        this.dispatcher = new ListenerDispatcher("payments-listener", lanes, capacity);
+        this.ownership = new PartitionOwnership(LEASE_GROUP, partitions, leaseStore, nodeIdentity.getId(), leaseMillis,
+            new PartitionOwnership.Listener() {
+                @Override
+                public void acquired(Set<Integer> acquired) {
+                    takeOver(acquired);
+                }
+
+                @Override
+                public void released(int partition) {
+                    handOver(partition);
+                }
+            });
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "payments-listener-watermark");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long checkpointInterval = Math.max(1000, checkpointIntervalMillis);
+        scheduler.scheduleWithFixedDelay(this::checkpoint, checkpointInterval, checkpointInterval, TimeUnit.MILLISECONDS);
+        long reanchorInterval = Math.max(60000, reanchorIntervalMillis);
+        scheduler.scheduleWithFixedDelay(this::reanchor, reanchorInterval, reanchorInterval, TimeUnit.MILLISECONDS);
+        long renewInterval = Math.max(1000, Math.min(leaseRenewIntervalMillis, leaseMillis / 2));
+        scheduler.scheduleWithFixedDelay(this::refreshOwnership, 0, renewInterval, TimeUnit.MILLISECONDS);
+
+        // Live changes from now on; partitions replay their own history as they are taken over
+        listenFrom(new Date());
+    }
+
+    /**
+     * Close the listener, let queued changes finish, save how far they got and hand the partitions back
+     */
+    @PreDestroy
+    public void cleanup() {
+        ListenerRegistration current = registration;
+        if (current != null) {
+            log.info("Closing Firestore payments listener");
+            current.remove();
+        }
+        scheduler.shutdownNow();
+        dispatcher.shutdown();
+        checkpoint();
+        ownership.releaseAll();
+    }
+
+    /**
+     * Dispatcher queue, backpressure and lag figures, owned partitions and their watermarks
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<>(dispatcher.getMetrics());
+        metrics.putAll(ownership.getMetrics());
+        metrics.put("skippedChanges", skippedChanges.get());
+        Map<Integer, Date> current = new TreeMap<>();
+        watermarks.forEach((partition, tracker) -> current.put(partition, tracker.current()));
+        metrics.put("watermarks", current);
+        metrics.put("anchoredAt", anchoredAt);
+        return metrics;
+    }
+
+    /**
+     * Register the listener for payments updated after a point in time
+     */
+    private synchronized void listenFrom(Date from) {
+        try {
+            Date since = new Date(from.getTime() - overlapMillis);
+            log.info("Listening for payments updated after {}", since);
+
+            ListenerRegistration previous = registration;
+            registration = firestore.collection(COLLECTION_NAME)
+                .whereGreaterThan("updatedAt", since)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        log.error("Error listening for payment changes: {}", e.getMessage(), e);
+                        return;
+                    }
+                    if (snapshots == null || snapshots.getDocumentChanges().isEmpty()) {
+                        return;
+                    }
+                    log.debug("Received snapshot with {} changes", snapshots.getDocumentChanges().size());
+
+                    // A payment updated after the anchor enters the query as ADDED, later changes are MODIFIED
+                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
+                        if (dc.getType() != DocumentChange.Type.REMOVED) {
+                            submit(dc.getDocument());
+                        }
+                    }
+                });
+            anchoredAt = from;
+            if (previous != null) {
+                previous.remove();
+            }
+        } catch (Exception e) {
+            log.error("Failed to initialize Firestore listener: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Hand a change in an owned partition to the dispatcher; lookups and sends must not stall the callback thread
+     */
+    private void submit(QueryDocumentSnapshot document) {
+        int partition = ownership.partitionOf(document.getId());
+        WatermarkTracker watermark = watermarks.get(partition);
+        if (watermark == null || !ownership.owns(partition)) {
+            skippedChanges.incrementAndGet();
+            return;
+        }
+        Payment payment = document.toObject(Payment.class);
+        if (payment == null) {
+            return;
+        }
+        if (payment.getId() == null) {
+            payment.setId(document.getId());
+        }
+        long ticket = watermark.begin(payment.getUpdatedAt());
+        dispatcher.submit(payment.getId(), document.getUpdateTime().toDate(), () -> {
+            try {
+                handlePaymentChange(payment);
+            } finally {
+                watermark.complete(ticket);
+            }
+        });
+    }
+
+    /**
+     * React to a changed payment; runs on a dispatcher lane, in order with other changes to the same payment
+     * @param payment Payment as changed
+     */
+    private void handlePaymentChange(Payment payment) {
+        log.debug("Payment changed: {}, status: {}", payment.getId(), payment.getJobOrderStatus());
+        // Legacy documents may carry "accepted" or "ACCEPTED"
+        if (!"Accepted".equalsIgnoreCase(payment.getJobOrderStatus())) {
+            return;
+        }
+        try {
+            // Skip if this acceptance was already notified, here, by the request or by another node
+            if (!notificationDedup.claim(PaymentService.acceptedNotificationKey(payment.getId()))) {
+                log.debug("Notification already sent for payment ID: {}, skipping", payment.getId());
+                return;
+            }
+
+            log.info("Detected job order status change to Accepted for payment ID: {}", payment.getId());
+            if (!sendAcceptedNotification(payment)) {
+                // Give the key back so a replay, the request path or another node can try again
+                notificationDedup.release(PaymentService.acceptedNotificationKey(payment.getId()));
+            }
+        } catch (Exception ex) {
+            log.error("Error processing status change for payment {}: {}",
+                payment.getId(), ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * Send notification for a payment that has been accepted
+     * @param payment The payment that was accepted
+     * @return false if the send failed and should be retried; true if it was sent or there is no one to send to
+     */
+    private boolean sendAcceptedNotification(Payment payment) {
+        try {
+            if (payment.getCustomerEmail() == null) {
+                log.warn("No customer email associated with payment: {}", payment.getId());
+                return true;
+            }
+
+            log.debug("Looking up customer by email: {}", payment.getCustomerEmail());
+            User customer = userService.getUserByEmailOrUsername(payment.getCustomerEmail());
+
+            if (customer == null) {
+                log.warn("Customer not found for email: {}", payment.getCustomerEmail());
+                return true;
+            }
+
+            log.debug("Found customer: {}, userId: {}", customer.getEmail(), customer.getUserId());
+
+            // Check if customer has a valid FCM token
+            boolean hasValidToken = notificationService.hasValidFcmToken(customer.getUserId());
+            if (!hasValidToken) {
+                log.warn("Customer does not have a valid FCM token, notification will not be sent");
+                return true;
+            }
+
+            Map<String, String> data = new HashMap<>();
+            data.put("paymentId", payment.getId());
+            data.put("type", "JOB_ORDER_ACCEPTED");
+
+            boolean notificationSent = notificationService.sendNotificationToUser(
+                customer.getUserId(),
+                "Job Order Accepted",
+                "Your job order has been accepted by the driver",
+                data
+            );
+
+            log.info("Notification sent to customer: {}", notificationSent ? "success" : "failed");
+            return notificationSent;
+        } catch (Exception e) {
+            log.error("Error sending accepted notification for payment {}: {}", payment.getId(), e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private void refreshOwnership() {
+        try {
+            ownership.refresh();
+        } catch (Exception e) {
+            log.warn("Failed to refresh payments listener partitions: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Start tracking newly owned partitions and replay what changed in them since their saved watermarks
+     */
+    private void takeOver(Set<Integer> partitions) {
+        Date legacy = null;
+        Date replayFrom = null;
+        for (Integer partition : partitions) {
+            Date from = watermarkStore.load(watermarkName(partition));
+            if (from == null) {
+                // Fall back to the single watermark saved before the listener was partitioned
+                if (legacy == null) {
+                    legacy = watermarkStore.load(WATERMARK_NAME);
+                    legacy = legacy != null ? legacy : new Date();
+                }
+                from = legacy;
+            }
+            watermarks.put(partition, new WatermarkTracker(from));
+            savedWatermarks.put(partition, from);
+            replayFrom = replayFrom == null || from.before(replayFrom) ? from : replayFrom;
+        }
+        if (replayFrom == null) {
+            return;
+        }
+
+        try {
+            Date since = new Date(replayFrom.getTime() - overlapMillis);
+            List<QueryDocumentSnapshot> documents = firestore.collection(COLLECTION_NAME)
+                .whereGreaterThan("updatedAt", since)
+                .get().get().getDocuments();
+            int replayed = 0;
+            for (QueryDocumentSnapshot document : documents) {
+                if (partitions.contains(ownership.partitionOf(document.getId()))) {
+                    submit(document);
+                    replayed++;
+                }
+            }
+            log.info("Replayed {} payment changes since {} for partitions {}", replayed, since, partitions);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Failed to replay payment changes for partitions {}: {}", partitions, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stop handling a partition and save its watermark so the next owner resumes from it
+     */
+    private void handOver(int partition) {
+        WatermarkTracker tracker = watermarks.remove(partition);
+        if (tracker != null) {
+            save(partition, tracker.current());
+        }
+        savedWatermarks.remove(partition);
+    }
+
+    private void checkpoint() {
+        watermarks.forEach((partition, tracker) -> save(partition, tracker.current()));
+    }
+
+    private void save(int partition, Date current) {
+        try {
+            Date saved = savedWatermarks.get(partition);
+            if (saved == null || current.after(saved)) {
+                watermarkStore.save(watermarkName(partition), current);
+                savedWatermarks.put(partition, current);
+                log.debug("Saved payments listener watermark {} for partition {}", current, partition);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to checkpoint payments listener partition {}: {}", partition, e.getMessage());
+        }
+    }
+
+    /**
+     * Move the query to the oldest owned watermark, dropping payments that changed long ago from the listened set
+     */
+    private void reanchor() {
+        Date current = new Date();
+        for (WatermarkTracker tracker : watermarks.values()) {
+            Date watermark = tracker.current();
+            current = watermark.before(current) ? watermark : current;
+        }
+        if (anchoredAt == null || current.after(anchoredAt)) {
+            listenFrom(current);
+        }
+    }
+
+    private String watermarkName(int partition) {
+        return WATERMARK_NAME + "-" + ownership.getPartitions() + "-" + partition;
+    }
+}
@@ -6,8 +6,6 @@ import com.google.cloud.firestore.*;
 import com.google.cloud.Timestamp;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
@@ -20,12 +18,14 @@ import java.util.concurrent.ExecutionException;
 @Service
 public class PickupRequestService {
     private final Firestore firestore;
-    private final UserService userService;
+    private final CurrentUserContext currentUserContext;
+    private final AggregateQueries aggregateQueries;
 
     @Autowired
-    public PickupRequestService(Firestore firestore, UserService userService) {
+    public PickupRequestService(Firestore firestore, CurrentUserContext currentUserContext, AggregateQueries aggregateQueries) {
         this.firestore = firestore;
-        this.userService = userService;
+        this.currentUserContext = currentUserContext;
+        this.aggregateQueries = aggregateQueries;
     }
 
     /**
@@ -34,17 +34,15 @@ public class PickupRequestService {
     public ResponseEntity<?> createPickupRequest(PickupRequestDTO requestDTO) {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            com.capstone.GrabTrash.model.User user = userService.getUserByEmailOrUsername(userEmail);
-            
-            if (user == null) {
+            // The user ID comes from the token; no user lookup needed
+            String userId = currentUserContext.getUserId();
+            if (userId == null) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not found");
                 return ResponseEntity.badRequest().body(error);
@@ -52,7 +50,7 @@ public class PickupRequestService {
 
             // Create a new pickup request
             PickupRequest pickupRequest = new PickupRequest();
-            pickupRequest.setUserId(user.getUserId());
+            pickupRequest.setUserId(userId);
             pickupRequest.setStatus("PENDING");
             pickupRequest.setLocation(requestDTO.getLocation());
             pickupRequest.setAddress(requestDTO.getAddress());
@@ -83,17 +81,15 @@ public class PickupRequestService {
     public ResponseEntity<?> getUserPickupRequests() {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            com.capstone.GrabTrash.model.User user = userService.getUserByEmailOrUsername(userEmail);
-            
-            if (user == null) {
+            // The user ID comes from the token; no user lookup needed
+            String userId = currentUserContext.getUserId();
+            if (userId == null) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not found");
                 return ResponseEntity.badRequest().body(error);
@@ -101,7 +97,7 @@ public class PickupRequestService {
 
             // Get all pickup requests for the user
             Query query = firestore.collection("pickup_requests")
-                .whereEqualTo("userId", user.getUserId());
+                .whereEqualTo("userId", userId);
             QuerySnapshot querySnapshot = query.get().get();
             
             List<PickupRequest> requests = new ArrayList<>();
@@ -125,17 +121,15 @@ public class PickupRequestService {
     public ResponseEntity<?> getPickupRequest(String requestId) {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            com.capstone.GrabTrash.model.User user = userService.getUserByEmailOrUsername(userEmail);
-            
-            if (user == null) {
+            // The user ID comes from the token; no user lookup needed
+            String userId = currentUserContext.getUserId();
+            if (userId == null) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not found");
                 return ResponseEntity.badRequest().body(error);
@@ -153,7 +147,7 @@ public class PickupRequestService {
             PickupRequest pickupRequest = document.toObject(PickupRequest.class);
             
             // Check if the user is authorized to view this request
-            if (!pickupRequest.getUserId().equals(user.getUserId()) && !"admin".equalsIgnoreCase(user.getRole())) {
+            if (!pickupRequest.getUserId().equals(userId) && !currentUserContext.isAdmin()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Access denied");
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
@@ -173,24 +167,14 @@ public class PickupRequestService {
     public ResponseEntity<?> updatePickupRequestStatus(String requestId, String status, Double trashWeight) {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            com.capstone.GrabTrash.model.User user = userService.getUserByEmailOrUsername(userEmail);
-            
-            if (user == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(user.getRole())) {
+            // Check if the user is an admin, from the token's authorities
+            if (!currentUserContext.isAdmin()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Access denied. Admin role required.");
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
@@ -236,48 +220,26 @@ public class PickupRequestService {
     public ResponseEntity<?> getTotalTrashPickedUp() {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            com.capstone.GrabTrash.model.User user = userService.getUserByEmailOrUsername(userEmail);
-            
-            if (user == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(user.getRole())) {
+            // Check if the user is an admin, from the token's authorities
+            if (!currentUserContext.isAdmin()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Access denied. Admin role required.");
                 return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
             }
 
-            // Get all completed pickup requests
-            Query query = firestore.collection("pickup_requests")
-                .whereEqualTo("status", "COMPLETED");
-            QuerySnapshot querySnapshot = query.get().get();
-            
-            double totalWeight = 0.0;
-            int totalRequests = 0;
-            
-            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
-                PickupRequest pickupRequest = document.toObject(PickupRequest.class);
-                if (pickupRequest.getTrashWeight() != null) {
-                    totalWeight += pickupRequest.getTrashWeight();
-                }
-                totalRequests++;
-            }
+            // Count and sum the completed pickup requests server-side, without downloading them
+            AggregateQueries.CountAndSum completed = aggregateQueries.countAndSum(
+                "pickup_requests", "trashWeight", Map.of("status", "COMPLETED"));
 
             Map<String, Object> response = new HashMap<>();
-            response.put("totalTrashPickedUp", totalWeight);
-            response.put("totalCompletedRequests", totalRequests);
+            response.put("totalTrashPickedUp", completed.getSum());
+            response.put("totalCompletedRequests", (int) completed.getCount());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -0,0 +1,132 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Bounded Space-Saving counter: tracks at most capacity keys, kept ordered by count so the top k are
+ * read in O(k). When a new key arrives while full, it takes over the smallest counter and inherits its
+ * count as the error bound, so a key's true count lies in [count - error, count]. Counts are exact while
+ * there are no more distinct keys than the capacity. Not thread-safe.
+ */
+class RankedCounter {
+
+    private static final Comparator<Entry> BY_COUNT_DESCENDING = Comparator
+        .comparingLong((Entry entry) -> entry.count).reversed()
+        .thenComparing(entry -> entry.key);
+
+    private final int capacity;
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(BY_COUNT_DESCENDING);
+
+    RankedCounter(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be at least 1");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Add to a key's count, evicting the smallest counter if the key is new and the counter is full
+     */
+    void add(String key, long delta) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            ranking.remove(entry);
+            entry.count += delta;
+            ranking.add(entry);
+            return;
+        }
+        if (entries.size() < capacity) {
+            entry = new Entry(key, delta, 0);
+        } else {
+            Entry smallest = ranking.pollLast();
+            entries.remove(smallest.key);
+            entry = new Entry(key, smallest.count + delta, smallest.count);
+        }
+        entries.put(key, entry);
+        ranking.add(entry);
+    }
+
+    /**
+     * Take back counts added earlier, e.g. for a day leaving a window; keys that reach zero are dropped
+     */
+    void subtract(String key, long delta) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        ranking.remove(entry);
+        entry.count -= delta;
+        if (entry.count <= 0) {
+            entries.remove(key);
+        } else {
+            entry.error = Math.min(entry.error, entry.count);
+            ranking.add(entry);
+        }
+    }
+
+    /**
+     * Add every counter of another counter to this one
+     */
+    void addAll(RankedCounter other) {
+        for (Entry entry : other.entries.values()) {
+            add(entry.key, entry.count);
+        }
+    }
+
+    /**
+     * Subtract every counter of another counter from this one
+     */
+    void subtractAll(RankedCounter other) {
+        for (Entry entry : other.entries.values()) {
+            subtract(entry.key, entry.count);
+        }
+    }
+
+    /**
+     * The k largest counters, largest first
+     */
+    List<Entry> top(int k) {
+        List<Entry> top = new ArrayList<>(Math.min(k, entries.size()));
+        Iterator<Entry> iterator = ranking.iterator();
+        while (top.size() < k && iterator.hasNext()) {
+            Entry entry = iterator.next();
+            top.add(new Entry(entry.key, entry.count, entry.error));
+        }
+        return top;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static class Entry {
+        private final String key;
+        private long count;
+        private long error;
+
+        private Entry(String key, long count, long error) {
+            this.key = key;
+            this.count = count;
+            this.error = error;
+        }
+
+        String getKey() {
+            return key;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getError() {
+            return error;
+        }
+    }
+}
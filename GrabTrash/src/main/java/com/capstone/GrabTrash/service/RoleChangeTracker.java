@@ -0,0 +1,156 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.config.JwtConfig;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks recent role changes so claims-only authentication can override the role baked into older tokens.
+ * Changes are written to the roleChanges collection and reach every instance through a snapshot listener.
+ * Entries older than the token lifetime are ignored, since every token issued before them has expired.
+ */
+@Component
+@Slf4j
+public class RoleChangeTracker {
+
+    private static final String COLLECTION_NAME = "roleChanges";
+
+    private final Firestore firestore;
+    private final JwtConfig jwtConfig;
+    private final Map<String, RoleChange> changesByEmail = new ConcurrentHashMap<>();
+    private ListenerRegistration roleChangesListener;
+
+    @Autowired
+    public RoleChangeTracker(Firestore firestore, JwtConfig jwtConfig) {
+        this.firestore = firestore;
+        this.jwtConfig = jwtConfig;
+
+        // Initialize the Firestore listener for role changes
+        initializeRoleChangesListener();
+    }
+
+    /**
+     * Initialize Firestore listener for role changes made within the token lifetime
+     */
+    private void initializeRoleChangesListener() {
+        try {
+            log.info("Initializing Firestore listener for role changes");
+
+            Date since = new Date(System.currentTimeMillis() - jwtConfig.getExpiration());
+            roleChangesListener = firestore.collection(COLLECTION_NAME)
+                .whereGreaterThan("changedAt", since)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        log.error("Error listening for role changes: {}", e.getMessage(), e);
+                        return;
+                    }
+
+                    if (snapshots == null) {
+                        return;
+                    }
+
+                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
+                        if (dc.getType() != DocumentChange.Type.REMOVED) {
+                            apply(dc.getDocument());
+                        }
+                    }
+                });
+
+            log.info("Firestore listener for role changes initialized successfully");
+        } catch (Exception e) {
+            log.error("Failed to initialize role changes listener: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cleanup method to close the listener when the tracker is destroyed
+     */
+    @PreDestroy
+    public void cleanup() {
+        if (roleChangesListener != null) {
+            log.info("Closing Firestore role changes listener");
+            roleChangesListener.remove();
+        }
+    }
+
+    /**
+     * Record a role change and publish it to the other instances
+     * @param userId ID of the user whose role changed
+     * @param email Email of the user (the token subject)
+     * @param role New role
+     */
+    public void recordRoleChange(String userId, String email, String role) {
+        if (email == null) {
+            return;
+        }
+        Date changedAt = new Date();
+        changesByEmail.merge(email, new RoleChange(role, changedAt.getTime()), RoleChange::latest);
+
+        try {
+            Map<String, Object> change = new HashMap<>();
+            change.put("email", email);
+            change.put("role", role);
+            change.put("changedAt", changedAt);
+            firestore.collection(COLLECTION_NAME).document(userId).set(change).get();
+        } catch (Exception e) {
+            log.error("Failed to publish role change for user {}: {}", userId, e.getMessage());
+        }
+    }
+
+    /**
+     * Get the role that replaces the one in a token, if the role changed after the token was issued
+     * @param email Token subject
+     * @param issuedAt Token issue time in milliseconds
+     * @return The current role, or null if the token's role is still current
+     */
+    public String getRoleChangedSince(String email, long issuedAt) {
+        RoleChange change = email != null ? changesByEmail.get(email) : null;
+        if (change == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (change.changedAt < now - jwtConfig.getExpiration()) {
+            // Every token issued before this change has expired
+            changesByEmail.remove(email, change);
+            return null;
+        }
+        if (issuedAt > change.changedAt) {
+            return null;
+        }
+        return change.role;
+    }
+
+    private void apply(DocumentSnapshot document) {
+        String email = document.getString("email");
+        Date changedAt = document.getDate("changedAt");
+        if (email == null || changedAt == null) {
+            return;
+        }
+        changesByEmail.merge(email, new RoleChange(document.getString("role"), changedAt.getTime()), RoleChange::latest);
+    }
+
+    private static class RoleChange {
+        private final String role;
+        private final long changedAt;
+
+        private RoleChange(String role, long changedAt) {
+            this.role = role;
+            this.changedAt = changedAt;
+        }
+
+        private static RoleChange latest(RoleChange a, RoleChange b) {
+            return b.changedAt >= a.changedAt ? b : a;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.ScheduledJobRun;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Last run of each scheduled job, one document per job in scheduledJobs
+ */
+@Component
+public class ScheduledJobRegistry {
+
+    private static final String COLLECTION_NAME = "scheduledJobs";
+
+    private final Firestore firestore;
+
+    @Autowired
+    public ScheduledJobRegistry(Firestore firestore) {
+        this.firestore = firestore;
+    }
+
+    /**
+     * Get the registry entry of a job
+     * @param jobName Job name
+     * @return Entry, or null if the job never ran
+     */
+    public ScheduledJobRun get(String jobName) {
+        try {
+            DocumentSnapshot snapshot = firestore.collection(COLLECTION_NAME).document(jobName).get().get();
+            return snapshot.exists() ? snapshot.toObject(ScheduledJobRun.class) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to read scheduled job " + jobName + ": " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to read scheduled job " + jobName + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Record a change to a job's entry; fields not given are kept
+     * @throws RuntimeException if the entry could not be written, so the runner does not act on a run it
+     * has not recorded
+     */
+    public void update(String jobName, Map<String, Object> fields) {
+        Map<String, Object> data = new HashMap<>(fields);
+        data.put("jobName", jobName);
+        try {
+            firestore.collection(COLLECTION_NAME).document(jobName).set(data, SetOptions.merge()).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to update scheduled job " + jobName + ": " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to update scheduled job " + jobName + ": " + e.getMessage(), e);
+        }
+    }
+}
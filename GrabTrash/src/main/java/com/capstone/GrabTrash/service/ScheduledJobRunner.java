@@ -0,0 +1,258 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.ScheduledJobRun;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs cluster-wide scheduled jobs on one instance only.
+ *
+ * Every replica's @Scheduled trigger calls {@link #trigger}; the first to take the job's lease checks
+ * the registry and runs the job only if nobody has run it for that trigger time yet, so the job runs
+ * once per trigger however many replicas there are. Each run is recorded in the registry with its
+ * duration and outcome; a run whose start cannot be recorded is skipped. If no instance was up at trigger
+ * time, the periodic catch-up check runs the missed trigger late, as long as it is within the catch-up window.
+ * A trigger whose run has started is never run again, whether the run failed, its instance died or its
+ * outcome could not be recorded, since a job may have done part of its work (e.g. sent some reminders).
+ */
+@Service
+@Slf4j
+public class ScheduledJobRunner {
+
+    private static final String LEASE_PREFIX = "scheduled-job-";
+
+    private final LeaseStore leaseStore;
+    private final ScheduledJobRegistry registry;
+    private final String nodeId;
+    private final long leaseMillis;
+    private final long catchUpWindowMillis;
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService renewer;
+
+    @Autowired
+    public ScheduledJobRunner(LeaseStore leaseStore, ScheduledJobRegistry registry, NodeIdentity nodeIdentity,
+                              @Value("${scheduling.jobs.lease-ms:600000}") long leaseMillis,
+                              @Value("${scheduling.jobs.catch-up-window-ms:7200000}") long catchUpWindowMillis) {
+        this.leaseStore = leaseStore;
+        this.registry = registry;
+        this.nodeId = nodeIdentity.getId();
+        this.leaseMillis = Math.max(3000, leaseMillis);
+        this.catchUpWindowMillis = catchUpWindowMillis;
+        this.renewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "scheduled-job-lease");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void cleanup() {
+        renewer.shutdownNow();
+    }
+
+    /**
+     * Register a job so it can be triggered and caught up on
+     * @param name Job name, also its registry document and lease name
+     * @param cron Cron expression the job's @Scheduled trigger uses
+     * @param task The job itself; an exception marks the run as failed
+     */
+    public void register(String name, String cron, Runnable task) {
+        jobs.put(name, new Job(name, cron, task));
+    }
+
+    /**
+     * Run a job for the trigger time that just passed, unless another instance already does
+     * @return true if the job ran here and succeeded
+     */
+    public boolean trigger(String name) {
+        Job job = requireJob(name);
+        ZonedDateTime now = ZonedDateTime.now();
+        ZonedDateTime scheduledFor = latestTrigger(job.cron, now, 24L * 60 * 60 * 1000);
+        return run(job, Date.from((scheduledFor != null ? scheduledFor : now).toInstant()), false);
+    }
+
+    /**
+     * Run any job whose latest trigger, within the catch-up window, was missed
+     */
+    @Scheduled(fixedDelayString = "${scheduling.jobs.catch-up-interval-ms:300000}",
+               initialDelayString = "${scheduling.jobs.catch-up-initial-delay-ms:60000}")
+    public void catchUp() {
+        ZonedDateTime now = ZonedDateTime.now();
+        for (Job job : jobs.values()) {
+            ZonedDateTime missed = latestTrigger(job.cron, now, catchUpWindowMillis);
+            if (missed != null) {
+                run(job, Date.from(missed.toInstant()), true);
+            }
+        }
+    }
+
+    /**
+     * Registered jobs with their last run from the registry
+     */
+    public List<Map<String, Object>> getJobs() {
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("jobName", job.name);
+            entry.put("cron", job.cron.toString());
+            entry.put("runningHere", job.running.get());
+            try {
+                entry.put("lastRun", registry.get(job.name));
+            } catch (Exception e) {
+                entry.put("lastRun", null);
+                entry.put("error", e.getMessage());
+            }
+            result.add(entry);
+        }
+        return result;
+    }
+
+    private boolean run(Job job, Date scheduledFor, boolean catchUp) {
+        if (!job.running.compareAndSet(false, true)) {
+            return false;
+        }
+        String lease = LEASE_PREFIX + job.name;
+        try {
+            if (!leaseStore.tryAcquire(lease, nodeId, leaseMillis)) {
+                log.debug("Scheduled job {} is running on another instance", job.name);
+                return false;
+            }
+            try {
+                ScheduledJobRun last = registry.get(job.name);
+                if (!isDue(last, scheduledFor, catchUp)) {
+                    log.debug("Scheduled job {} already ran for {}", job.name, scheduledFor);
+                    return false;
+                }
+                return execute(job, lease, scheduledFor, catchUp);
+            } finally {
+                leaseStore.release(lease, nodeId);
+            }
+        } catch (Exception e) {
+            log.error("Failed to run scheduled job {}: {}", job.name, e.getMessage(), e);
+            return false;
+        } finally {
+            job.running.set(false);
+        }
+    }
+
+    /**
+     * Record the start, run the job and record the outcome. Throws if the start cannot be recorded, so the
+     * job does not run unrecorded.
+     */
+    private boolean execute(Job job, String lease, Date scheduledFor, boolean catchUp) {
+        if (catchUp) {
+            log.info("Catching up on scheduled job {} missed at {}", job.name, scheduledFor);
+        }
+        Date startedAt = new Date();
+        Map<String, Object> start = new HashMap<>();
+        start.put("cron", job.cron.toString());
+        start.put("lastScheduledFor", scheduledFor);
+        start.put("lastStartedAt", startedAt);
+        start.put("lastFinishedAt", null);
+        start.put("lastDurationMs", null);
+        start.put("lastOutcome", ScheduledJobRun.RUNNING);
+        start.put("lastError", null);
+        start.put("lastNode", nodeId);
+        start.put("lastCatchUp", catchUp);
+        registry.update(job.name, start);
+
+        // Keep the lease while the job runs longer than one lease period
+        long renewInterval = leaseMillis / 3;
+        ScheduledFuture<?> renewal = renewer.scheduleWithFixedDelay(
+            () -> leaseStore.tryAcquire(lease, nodeId, leaseMillis), renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        String error = null;
+        try {
+            job.task.run();
+        } catch (Exception e) {
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+            log.error("Scheduled job {} failed: {}", job.name, error, e);
+        } finally {
+            renewal.cancel(false);
+        }
+
+        Date finishedAt = new Date();
+        Map<String, Object> finish = new HashMap<>();
+        finish.put("lastFinishedAt", finishedAt);
+        finish.put("lastDurationMs", finishedAt.getTime() - startedAt.getTime());
+        finish.put("lastOutcome", error == null ? ScheduledJobRun.SUCCEEDED : ScheduledJobRun.FAILED);
+        finish.put("lastError", error);
+        if (error == null) {
+            finish.put("lastSucceededFor", scheduledFor);
+        }
+        try {
+            registry.update(job.name, finish);
+        } catch (RuntimeException e) {
+            // The entry stays RUNNING for this trigger, which is never run again, so this is not retried
+            log.error("Scheduled job {} for {} ran but its outcome could not be recorded: {}", job.name, scheduledFor,
+                e.getMessage(), e);
+        }
+        log.info("Scheduled job {} for {} finished in {} ms: {}", job.name, scheduledFor,
+            finishedAt.getTime() - startedAt.getTime(), error == null ? "succeeded" : "failed");
+        return error == null;
+    }
+
+    /**
+     * Whether a trigger still needs running: no run has started for it. A run left RUNNING (its instance died,
+     * or its outcome was not recorded) counts as started. Catch-up needs some history, so a first deployment
+     * does not replay the morning's trigger.
+     */
+    private static boolean isDue(ScheduledJobRun last, Date scheduledFor, boolean catchUp) {
+        if (last == null) {
+            return !catchUp;
+        }
+        return last.getLastScheduledFor() == null || last.getLastScheduledFor().before(scheduledFor);
+    }
+
+    /**
+     * Latest time a cron expression fired at or before now, looking back at most windowMillis
+     */
+    private static ZonedDateTime latestTrigger(CronExpression cron, ZonedDateTime now, long windowMillis) {
+        ZonedDateTime latest = null;
+        ZonedDateTime candidate = cron.next(now.minusNanos(windowMillis * 1_000_000L));
+        while (candidate != null && !candidate.isAfter(now)) {
+            latest = candidate;
+            candidate = cron.next(candidate);
+        }
+        return latest;
+    }
+
+    private Job requireJob(String name) {
+        Job job = jobs.get(name);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown scheduled job: " + name);
+        }
+        return job;
+    }
+
+    private static class Job {
+        private final String name;
+        private final CronExpression cron;
+        private final Runnable task;
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Job(String name, String cron, Runnable task) {
+            this.name = name;
+            this.cron = CronExpression.parse(cron);
+            this.task = task;
+        }
+    }
+}
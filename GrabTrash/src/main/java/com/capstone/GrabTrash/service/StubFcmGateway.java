@@ -0,0 +1,126 @@
+package com.capstone.GrabTrash.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for FCM, enabled with notifications.fcm.stub=true. Nothing leaves the process.
+ * Each batch takes a configurable latency, a configurable share of sends fail with a transient error,
+ * and tokens marked unregistered always fail, so fan-out, retries and pruning can be exercised
+ * in tests and load benchmarks without a Firebase project. Topic subscriptions are kept in memory.
+ */
+@Component
+@ConditionalOnProperty(name = "notifications.fcm.stub", havingValue = "true")
+@Slf4j
+public class StubFcmGateway implements FcmGateway {
+
+    private final long latencyMillis;
+    private final double transientFailureRate;
+    private final Set<String> unregisteredTokens = ConcurrentHashMap.newKeySet();
+    private final Map<String, Set<String>> topics = new ConcurrentHashMap<>();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public StubFcmGateway(@Value("${notifications.fcm.stub.latency-ms:50}") long latencyMillis,
+                          @Value("${notifications.fcm.stub.transient-failure-rate:0.0}") double transientFailureRate) {
+        this.latencyMillis = latencyMillis;
+        this.transientFailureRate = transientFailureRate;
+        log.warn("Using the stub FCM gateway; push notifications are not delivered");
+    }
+
+    @Override
+    public List<FcmSendResult> sendEach(List<String> tokens, FcmPayload payload) {
+        batches.incrementAndGet();
+        simulateLatency();
+
+        List<FcmSendResult> results = new ArrayList<>(tokens.size());
+        for (String token : tokens) {
+            if (unregisteredTokens.contains(token)) {
+                failed.incrementAndGet();
+                results.add(FcmSendResult.failure(token, "UNREGISTERED", "Requested entity was not found."));
+            } else if (transientFailureRate > 0 && ThreadLocalRandom.current().nextDouble() < transientFailureRate) {
+                failed.incrementAndGet();
+                results.add(FcmSendResult.failure(token, "UNAVAILABLE", "Stub transient failure"));
+            } else {
+                delivered.incrementAndGet();
+                results.add(FcmSendResult.success(token, "projects/stub/messages/" + UUID.randomUUID()));
+            }
+        }
+        return results;
+    }
+
+    @Override
+    public FcmSendResult sendToTopic(String topic, FcmPayload payload) {
+        batches.incrementAndGet();
+        simulateLatency();
+        Set<String> subscribers = topics.getOrDefault(topic, Collections.emptySet());
+        delivered.addAndGet(subscribers.size());
+        return FcmSendResult.success(topic, "projects/stub/messages/" + UUID.randomUUID());
+    }
+
+    @Override
+    public int subscribeToTopic(List<String> tokens, String topic) {
+        topics.computeIfAbsent(topic, t -> ConcurrentHashMap.newKeySet()).addAll(tokens);
+        return tokens.size();
+    }
+
+    @Override
+    public int unsubscribeFromTopic(List<String> tokens, String topic) {
+        Set<String> subscribers = topics.get(topic);
+        if (subscribers != null) {
+            tokens.forEach(subscribers::remove);
+        }
+        return tokens.size();
+    }
+
+    /**
+     * @return Tokens currently subscribed to a topic
+     */
+    public Set<String> getSubscribers(String topic) {
+        return Collections.unmodifiableSet(topics.getOrDefault(topic, Collections.emptySet()));
+    }
+
+    /**
+     * Make every later send to a token fail as FCM does for an uninstalled app
+     * @param token Registration token
+     */
+    public void markUnregistered(String token) {
+        unregisteredTokens.add(token);
+    }
+
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    private void simulateLatency() {
+        if (latencyMillis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.config.JwtConfig;
+import com.capstone.GrabTrash.model.User;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Service for revoking tokens without a remote call on the request path.
+ * Revocations are stored in the revokedTokens collection and mirrored on every instance through a
+ * snapshot listener. A Bloom filter answers "definitely not revoked" for almost every request; only
+ * filter hits are confirmed against the exact in-memory entries.
+ *
+ * Two kinds of revocation are kept: a single token (by its jti), and every token of a user below a
+ * token version (after a password change, role change or deletion). Each user has a tokenVersion that
+ * new tokens carry; revoking all of a user's tokens increments it, so the check compares counters
+ * instead of issue times taken from different instances' clocks.
+ */
+@Service
+@Slf4j
+public class TokenRevocationService {
+
+    private static final String COLLECTION_NAME = "revokedTokens";
+    private static final String TOKEN_PREFIX = "token:";
+    private static final String USER_PREFIX = "user:";
+    private static final String USERS_COLLECTION = "users";
+    private static final String TOKEN_VERSION_FIELD = "tokenVersion";
+
+    private final Firestore firestore;
+    private final JwtConfig jwtConfig;
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    private final Map<String, Revocation> revocations = new ConcurrentHashMap<>();
+    private volatile BloomFilter<CharSequence> filter;
+    private ListenerRegistration revocationsListener;
+
+    @Autowired
+    public TokenRevocationService(Firestore firestore, JwtConfig jwtConfig,
+                                  @Value("${jwt.revocation.expected-entries:100000}") int expectedEntries,
+                                  @Value("${jwt.revocation.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.firestore = firestore;
+        this.jwtConfig = jwtConfig;
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.filter = newFilter();
+
+        // Initialize the Firestore listener for revocations
+        initializeRevocationsListener();
+    }
+
+    /**
+     * Initialize Firestore listener for revocations that can still affect a live token
+     */
+    private void initializeRevocationsListener() {
+        try {
+            log.info("Initializing Firestore listener for token revocations");
+
+            revocationsListener = firestore.collection(COLLECTION_NAME)
+                .whereGreaterThan("expiresAt", new Date())
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        log.error("Error listening for token revocations: {}", e.getMessage(), e);
+                        return;
+                    }
+
+                    if (snapshots == null) {
+                        return;
+                    }
+
+                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
+                        if (dc.getType() != DocumentChange.Type.REMOVED) {
+                            apply(dc.getDocument());
+                        }
+                    }
+                });
+
+            log.info("Firestore listener for token revocations initialized successfully");
+        } catch (Exception e) {
+            log.error("Failed to initialize token revocations listener: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cleanup method to close the listener when the service is destroyed
+     */
+    @PreDestroy
+    public void cleanup() {
+        if (revocationsListener != null) {
+            log.info("Closing Firestore token revocations listener");
+            revocationsListener.remove();
+        }
+    }
+
+    /**
+     * Check a verified token against the revocations, without any remote call
+     * @param claims Verified claims
+     * @return true if the token, or every token of its user at its version, has been revoked
+     */
+    public boolean isRevoked(Claims claims) {
+        String tokenKey = claims.getId() != null ? TOKEN_PREFIX + claims.getId() : null;
+        if (tokenKey != null && filter.mightContain(tokenKey) && revocations.containsKey(tokenKey)) {
+            return true;
+        }
+
+        String userId = claims.get("userId", String.class);
+        String userKey = userId != null ? USER_PREFIX + userId : null;
+        if (userKey != null && filter.mightContain(userKey)) {
+            Revocation revocation = revocations.get(userKey);
+            return revocation != null && JwtService.tokenVersion(claims) < revocation.tokenVersion;
+        }
+        return false;
+    }
+
+    /**
+     * Revoke a single-use token, e.g. a refresh token being exchanged. The revocation document is
+     * created with create(), which succeeds for exactly one caller across all instances, so two
+     * concurrent exchanges of the same token cannot both win.
+     * @param claims Verified claims of the token
+     * @return true if this call revoked the token, false if it was revoked already
+     */
+    public boolean redeemToken(Claims claims) {
+        if (claims.getId() == null || claims.getExpiration() == null) {
+            return false;
+        }
+        String key = TOKEN_PREFIX + claims.getId();
+        Revocation revocation = new Revocation(System.currentTimeMillis(), 0, claims.getExpiration().getTime());
+        try {
+            firestore.collection(COLLECTION_NAME).document(key).create(toDocument(key, revocation)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to revoke token: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AlreadyExistsException) {
+                record(key, revocation);
+                return false;
+            }
+            log.error("Failed to publish revocation {}: {}", key, e.getMessage());
+            throw new RuntimeException("Failed to revoke token: " + e.getMessage(), e);
+        }
+        record(key, revocation);
+        return true;
+    }
+
+    /**
+     * Revoke every token of a user issued up to now by moving the user to the next token version.
+     * The user's tokenVersion and the revocation are written in one transaction, so tokens issued
+     * afterwards, on any instance, carry the new version.
+     * @param userId User ID
+     * @return The new token version, for tokens issued to the user from now on
+     */
+    public long revokeAllForUser(String userId) {
+        if (userId == null) {
+            return 0;
+        }
+        String key = USER_PREFIX + userId;
+        DocumentReference userRef = firestore.collection(USERS_COLLECTION).document(userId);
+        DocumentReference revocationRef = firestore.collection(COLLECTION_NAME).document(key);
+        long now = System.currentTimeMillis();
+        // The longest-lived token issued just before now expires after one refresh token lifetime
+        long expiresAt = now + Math.max(jwtConfig.getExpiration(), jwtConfig.getRefreshExpiration());
+
+        Revocation revocation;
+        try {
+            revocation = firestore.runTransaction(transaction -> {
+                DocumentSnapshot user = transaction.get(userRef).get();
+                DocumentSnapshot revoked = transaction.get(revocationRef).get();
+                // A user rewritten from a stale copy may have lost its version; the revocation still has it
+                long version = Math.max(storedVersion(user), revokedVersion(revoked)) + 1;
+                Revocation next = new Revocation(now, version, expiresAt);
+                if (user.exists()) {
+                    transaction.update(userRef, TOKEN_VERSION_FIELD, version);
+                }
+                transaction.set(revocationRef, toDocument(key, next));
+                return next;
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Failed to revoke tokens: " + e.getMessage(), e);
+        } catch (ExecutionException e) {
+            log.error("Failed to publish revocation {}: {}", key, e.getMessage());
+            throw new RuntimeException("Failed to revoke tokens: " + e.getMessage(), e);
+        }
+
+        // Apply locally so this instance rejects the old tokens without waiting for the listener
+        record(key, revocation);
+        return revocation.tokenVersion;
+    }
+
+    /**
+     * Token version to put in a new token for a user. Also covers a revocation this instance has seen
+     * but the user object was read before.
+     * @param user User the token is issued to
+     * @return Current token version of the user
+     */
+    public long currentVersion(User user) {
+        long version = user.getTokenVersion() != null ? user.getTokenVersion() : 0;
+        Revocation revocation = user.getUserId() != null ? revocations.get(USER_PREFIX + user.getUserId()) : null;
+        return revocation != null ? Math.max(version, revocation.tokenVersion) : version;
+    }
+
+    /**
+     * Rebuild the Bloom filter without expired revocations, since entries cannot be removed from it
+     */
+    @Scheduled(fixedDelayString = "${jwt.revocation.rebuild-interval:3600000}")
+    public void rebuildFilter() {
+        long now = System.currentTimeMillis();
+        revocations.entrySet().removeIf(entry -> entry.getValue().expiresAt <= now);
+
+        BloomFilter<CharSequence> rebuilt = newFilter();
+        revocations.keySet().forEach(rebuilt::put);
+        filter = rebuilt;
+
+        // Anything revoked while rebuilding may have gone into the old filter only
+        revocations.keySet().forEach(rebuilt::put);
+        log.debug("Rebuilt token revocation filter with {} entries", revocations.size());
+    }
+
+    private static Map<String, Object> toDocument(String key, Revocation revocation) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("key", key);
+        document.put("revokedAt", new Date(revocation.revokedAt));
+        if (key.startsWith(USER_PREFIX)) {
+            document.put(TOKEN_VERSION_FIELD, revocation.tokenVersion);
+        }
+        document.put("expiresAt", new Date(revocation.expiresAt));
+        return document;
+    }
+
+    private void apply(DocumentSnapshot document) {
+        String key = document.getString("key");
+        Revocation revocation = toRevocation(document);
+        if (key == null || revocation == null) {
+            return;
+        }
+        record(key, revocation);
+    }
+
+    private static Revocation toRevocation(DocumentSnapshot document) {
+        Date revokedAt = document.getDate("revokedAt");
+        Date expiresAt = document.getDate("expiresAt");
+        if (revokedAt == null || expiresAt == null) {
+            return null;
+        }
+        // A user revocation written before token versions existed revokes every token without a version
+        Long tokenVersion = document.getLong(TOKEN_VERSION_FIELD);
+        return new Revocation(revokedAt.getTime(), tokenVersion != null ? tokenVersion : 1, expiresAt.getTime());
+    }
+
+    private static long revokedVersion(DocumentSnapshot revocation) {
+        Revocation stored = revocation.exists() ? toRevocation(revocation) : null;
+        return stored != null ? stored.tokenVersion : 0;
+    }
+
+    private static long storedVersion(DocumentSnapshot user) {
+        Long version = user.exists() ? user.getLong(TOKEN_VERSION_FIELD) : null;
+        return version != null ? version : 0;
+    }
+
+    private void record(String key, Revocation revocation) {
+        revocations.merge(key, revocation, Revocation::latest);
+        filter.put(key);
+    }
+
+    private BloomFilter<CharSequence> newFilter() {
+        return BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedEntries, falsePositiveRate);
+    }
+
+    private static class Revocation {
+        private final long revokedAt;
+        // Only used for user revocations: tokens below this version are revoked
+        private final long tokenVersion;
+        private final long expiresAt;
+
+        private Revocation(long revokedAt, long tokenVersion, long expiresAt) {
+            this.revokedAt = revokedAt;
+            this.tokenVersion = tokenVersion;
+            this.expiresAt = expiresAt;
+        }
+
+        private static Revocation latest(Revocation a, Revocation b) {
+            if (a.tokenVersion != b.tokenVersion) {
+                return b.tokenVersion > a.tokenVersion ? b : a;
+            }
+            return b.expiresAt >= a.expiresAt ? b : a;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.api.core.ApiFuture;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.api.gax.rpc.NotFoundException;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.WriteResult;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * In-memory index of which truck is held by which active payment (truckId -> paymentId).
+ * It is fed by a listener on payments whose job order is still open, and PaymentService writes
+ * through to it as payments are created, released and completed, so availability checks are a map lookup.
+ *
+ * Legacy payments with no jobOrderStatus were treated as New, but no query can match a missing field,
+ * so they are backfilled to New once on startup.
+ */
+@Component
+@Slf4j
+public class TruckAssignmentIndex {
+
+    private static final String COLLECTION_NAME = "payments";
+    private static final String STATUS_COLLECTION = "indexStatus";
+    private static final String STATUS_DOCUMENT = "jobOrderStatusBackfill";
+
+    // Job order statuses (raw and normalized) for which the assigned truck is still out
+    static final List<String> OPEN_JOB_ORDER_STATUSES = Arrays.asList(
+        "Available", "New", "NEW", "Accepted", "In-Progress", "IN_PROGRESS");
+
+    private final Firestore firestore;
+    private final Map<String, String> paymentByTruck = new ConcurrentHashMap<>();
+    private final Map<String, String> truckByPayment = new ConcurrentHashMap<>();
+    private ListenerRegistration paymentsListener;
+    private volatile boolean ready = false;
+
+    @Autowired
+    public TruckAssignmentIndex(Firestore firestore) {
+        this.firestore = firestore;
+
+        // Initialize the Firestore listener for open payments
+        initializePaymentsListener();
+    }
+
+    /**
+     * Initialize Firestore listener for payments with an open job order.
+     * A payment leaving the query (e.g. Completed) arrives as a REMOVED change and frees its truck.
+     */
+    private void initializePaymentsListener() {
+        try {
+            log.info("Initializing Firestore listener for truck assignments");
+
+            paymentsListener = firestore.collection(COLLECTION_NAME)
+                .whereIn("jobOrderStatus", OPEN_JOB_ORDER_STATUSES)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        log.error("Error listening for truck assignment changes: {}", e.getMessage(), e);
+                        return;
+                    }
+
+                    if (snapshots == null) {
+                        return;
+                    }
+
+                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
+                        String paymentId = dc.getDocument().getId();
+                        if (dc.getType() == DocumentChange.Type.REMOVED) {
+                            release(paymentId);
+                        } else {
+                            Payment payment = dc.getDocument().toObject(Payment.class);
+                            if (payment != null) {
+                                if (payment.getId() == null) {
+                                    payment.setId(paymentId);
+                                }
+                                apply(payment);
+                            }
+                        }
+                    }
+
+                    if (!ready) {
+                        ready = true;
+                        log.info("Truck assignment index loaded with {} active assignments", paymentByTruck.size());
+                    }
+                });
+
+            log.info("Firestore listener for truck assignments initialized successfully");
+        } catch (Exception e) {
+            log.error("Failed to initialize truck assignments listener: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Set legacy payments that still hold a truck but have no jobOrderStatus to New, once, in the background
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                DocumentSnapshot status = firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).get().get();
+                if (status.exists() && Boolean.TRUE.equals(status.getBoolean("complete"))) {
+                    return;
+                }
+                backfillJobOrderStatus();
+            } catch (Exception e) {
+                log.error("Failed to backfill job order statuses: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Give every active payment without a jobOrderStatus the New status, then mark the backfill complete
+     */
+    public void backfillJobOrderStatus() throws ExecutionException, InterruptedException {
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+        for (QueryDocumentSnapshot document : firestore.collection(COLLECTION_NAME)
+                .whereNotEqualTo("truckId", null)
+                .get().get().getDocuments()) {
+            Payment payment = document.toObject(Payment.class);
+            if (payment.getJobOrderStatus() == null && isActive(payment)) {
+                // Only if untouched since the read, so a concurrent status change wins
+                writes.add(document.getReference().update(
+                    Precondition.updatedAt(document.getUpdateTime()), "jobOrderStatus", "New"));
+            }
+        }
+
+        int changed = 0;
+        int failed = 0;
+        for (ApiFuture<WriteResult> write : writes) {
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof FailedPreconditionException || e.getCause() instanceof NotFoundException) {
+                    // Updated or deleted meanwhile; an update sets the status
+                    changed++;
+                } else {
+                    failed++;
+                    log.warn("Failed to backfill a job order status: {}", e.getMessage());
+                }
+            }
+        }
+        if (failed > 0) {
+            // Not marked complete, so the next start retries
+            throw new RuntimeException("Failed to backfill " + failed + " job order statuses");
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("complete", true);
+        status.put("completedAt", new Date());
+        firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).set(status).get();
+        log.info("Backfilled job order status New on {} legacy payments ({} changed meanwhile)",
+            writes.size() - changed, changed);
+    }
+
+    /**
+     * Cleanup method to close the listener when the index is destroyed
+     */
+    @PreDestroy
+    public void cleanup() {
+        if (paymentsListener != null) {
+            log.info("Closing Firestore truck assignments listener");
+            paymentsListener.remove();
+        }
+    }
+
+    /**
+     * Whether the initial snapshot has been received
+     * @return true once the index reflects the open payments
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Check if a truck is currently held by an active payment
+     * @param truckId Truck ID
+     * @return true if the truck is assigned
+     */
+    public boolean isAssigned(String truckId) {
+        return truckId != null && paymentByTruck.containsKey(truckId);
+    }
+
+    /**
+     * Get the active payment holding a truck
+     * @param truckId Truck ID
+     * @return Payment ID, or null if the truck is free
+     */
+    public String getActivePaymentId(String truckId) {
+        return truckId != null ? paymentByTruck.get(truckId) : null;
+    }
+
+    /**
+     * Record that a payment holds a truck
+     * @param truckId Truck ID
+     * @param paymentId Payment ID
+     */
+    public synchronized void assign(String truckId, String paymentId) {
+        if (truckId == null || truckId.isEmpty() || paymentId == null) {
+            return;
+        }
+        // A payment holds at most one truck
+        String previousTruck = truckByPayment.put(paymentId, truckId);
+        if (previousTruck != null && !previousTruck.equals(truckId)) {
+            paymentByTruck.remove(previousTruck, paymentId);
+        }
+        paymentByTruck.put(truckId, paymentId);
+    }
+
+    /**
+     * Free the truck held by a payment, if any
+     * @param paymentId Payment ID
+     */
+    public synchronized void release(String paymentId) {
+        if (paymentId == null) {
+            return;
+        }
+        String truckId = truckByPayment.remove(paymentId);
+        if (truckId != null) {
+            paymentByTruck.remove(truckId, paymentId);
+        }
+    }
+
+    /**
+     * Bring the index in line with the current state of a payment
+     * @param payment Payment as stored in Firestore
+     */
+    public void apply(Payment payment) {
+        if (payment == null || payment.getId() == null) {
+            return;
+        }
+        if (isActive(payment)) {
+            assign(payment.getTruckId(), payment.getId());
+        } else {
+            release(payment.getId());
+        }
+    }
+
+    /**
+     * A payment holds its truck until the job order is completed or cancelled,
+     * the waste is delivered, or the truck is released explicitly
+     * @param payment Payment to check
+     * @return true if the payment still holds its truck
+     */
+    public static boolean isActive(Payment payment) {
+        if (payment.getTruckId() == null || payment.getTruckId().isEmpty()) {
+            return false;
+        }
+        if (Boolean.TRUE.equals(payment.getTruckReleased()) || Boolean.TRUE.equals(payment.getIsDelivered())) {
+            return false;
+        }
+        String jobOrderStatus = payment.getJobOrderStatus();
+        return !"Completed".equalsIgnoreCase(jobOrderStatus) && !"Cancelled".equalsIgnoreCase(jobOrderStatus);
+    }
+}
@@ -0,0 +1,275 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Truck;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.ListenerRegistration;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * In-memory index of the truck fleet, kept current by a snapshot listener on the trucks collection.
+ * Only trucks that are AVAILABLE and have a driver assigned are kept in the capacity-ordered sets,
+ * so finding the smallest suitable truck is a skip-list lookup instead of a Firestore query.
+ */
+@Component
+@Slf4j
+public class TruckFleetIndex {
+
+    private static final String COLLECTION_NAME = "trucks";
+
+    // Bucket for trucks without a waste type; they are compatible with every request
+    private static final String ANY_WASTE_TYPE = "";
+
+    // Order by capacity (smallest first), then by ID so trucks with equal capacity can coexist
+    private static final Comparator<Truck> BY_CAPACITY = Comparator
+            .comparingDouble((Truck truck) -> truck.getCapacity())
+            .thenComparing(Truck::getTruckId);
+
+    private final Firestore firestore;
+    private final Map<String, Truck> trucksById = new ConcurrentHashMap<>();
+    private final Map<String, NavigableSet<Truck>> availableByWasteType = new ConcurrentHashMap<>();
+    private final NavigableSet<Truck> allAvailable = new ConcurrentSkipListSet<>(BY_CAPACITY);
+    private ListenerRegistration trucksListener;
+    private volatile boolean ready = false;
+
+    @Autowired
+    public TruckFleetIndex(Firestore firestore) {
+        this.firestore = firestore;
+
+        // Initialize the Firestore listener for trucks collection
+        initializeTrucksListener();
+    }
+
+    /**
+     * Initialize Firestore listener for trucks collection to keep the index current
+     */
+    private void initializeTrucksListener() {
+        try {
+            log.info("Initializing Firestore listener for trucks collection");
+
+            trucksListener = firestore.collection(COLLECTION_NAME)
+                .addSnapshotListener((snapshots, e) -> {
+                    if (e != null) {
+                        log.error("Error listening for truck changes: {}", e.getMessage(), e);
+                        return;
+                    }
+
+                    if (snapshots == null) {
+                        return;
+                    }
+
+                    for (DocumentChange dc : snapshots.getDocumentChanges()) {
+                        String truckId = dc.getDocument().getId();
+                        if (dc.getType() == DocumentChange.Type.REMOVED) {
+                            remove(truckId);
+                        } else {
+                            Truck truck = dc.getDocument().toObject(Truck.class);
+                            if (truck != null) {
+                                if (truck.getTruckId() == null) {
+                                    truck.setTruckId(truckId);
+                                }
+                                upsert(truck);
+                            }
+                        }
+                    }
+
+                    if (!ready) {
+                        ready = true;
+                        log.info("Truck fleet index loaded with {} trucks ({} available)",
+                            trucksById.size(), allAvailable.size());
+                    }
+                });
+
+            log.info("Firestore listener for trucks collection initialized successfully");
+        } catch (Exception e) {
+            log.error("Failed to initialize trucks listener: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cleanup method to close the listener when the index is destroyed
+     */
+    @PreDestroy
+    public void cleanup() {
+        if (trucksListener != null) {
+            log.info("Closing Firestore trucks listener");
+            trucksListener.remove();
+        }
+    }
+
+    /**
+     * Whether the initial snapshot has been received
+     * @return true once the index reflects the trucks collection
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Add or replace a truck in the index
+     * @param truck Truck as stored in Firestore
+     */
+    public synchronized void upsert(Truck truck) {
+        if (truck == null || truck.getTruckId() == null) {
+            return;
+        }
+        Truck stored = copyOf(truck);
+        Truck previous = trucksById.put(stored.getTruckId(), stored);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (isEligible(stored)) {
+            allAvailable.add(stored);
+            availableByWasteType
+                .computeIfAbsent(wasteTypeKey(stored.getWasteType()), key -> new ConcurrentSkipListSet<>(BY_CAPACITY))
+                .add(stored);
+        }
+    }
+
+    /**
+     * Remove a truck from the index
+     * @param truckId Truck ID
+     */
+    public synchronized void remove(String truckId) {
+        if (truckId == null) {
+            return;
+        }
+        Truck previous = trucksById.remove(truckId);
+        if (previous != null) {
+            unindex(previous);
+        }
+    }
+
+    /**
+     * Get a truck from the index
+     * @param truckId Truck ID
+     * @return Copy of the indexed truck, or null if it is not known
+     */
+    public Truck getTruck(String truckId) {
+        Truck truck = truckId != null ? trucksById.get(truckId) : null;
+        return truck != null ? copyOf(truck) : null;
+    }
+
+    /**
+     * Find available trucks with at least the required capacity for the waste type, smallest first.
+     * A blank waste type matches every truck, and trucks without a waste type match every request.
+     * @param requiredCapacity Minimum capacity required in kilograms
+     * @param wasteType Type of waste
+     * @param filter Extra condition a truck must pass (e.g. not already assigned)
+     * @param limit Maximum number of trucks to return
+     * @return Copies of the matching trucks ordered by capacity
+     */
+    public List<Truck> findAvailable(double requiredCapacity, String wasteType, Predicate<Truck> filter, int limit) {
+        List<Truck> result = new ArrayList<>();
+        Truck floor = Truck.builder().capacity(requiredCapacity).truckId("").build();
+
+        String key = wasteTypeKey(wasteType);
+        Iterator<Truck> candidates;
+        if (ANY_WASTE_TYPE.equals(key)) {
+            candidates = allAvailable.tailSet(floor, true).iterator();
+        } else {
+            candidates = mergeByCapacity(tailOf(key, floor), tailOf(ANY_WASTE_TYPE, floor));
+        }
+
+        while (candidates.hasNext() && result.size() < limit) {
+            Truck truck = candidates.next();
+            if (filter == null || filter.test(truck)) {
+                result.add(copyOf(truck));
+            }
+        }
+        return result;
+    }
+
+    private Iterator<Truck> tailOf(String key, Truck floor) {
+        NavigableSet<Truck> bucket = availableByWasteType.get(key);
+        return bucket != null ? bucket.tailSet(floor, true).iterator() : Collections.emptyIterator();
+    }
+
+    /**
+     * Merge two capacity-ordered iterators so the combined walk stays smallest-first
+     */
+    private Iterator<Truck> mergeByCapacity(Iterator<Truck> first, Iterator<Truck> second) {
+        return new Iterator<Truck>() {
+            private Truck nextFirst = first.hasNext() ? first.next() : null;
+            private Truck nextSecond = second.hasNext() ? second.next() : null;
+
+            @Override
+            public boolean hasNext() {
+                return nextFirst != null || nextSecond != null;
+            }
+
+            @Override
+            public Truck next() {
+                Truck result;
+                if (nextSecond == null || (nextFirst != null && BY_CAPACITY.compare(nextFirst, nextSecond) <= 0)) {
+                    result = nextFirst;
+                    nextFirst = first.hasNext() ? first.next() : null;
+                } else {
+                    result = nextSecond;
+                    nextSecond = second.hasNext() ? second.next() : null;
+                }
+                if (result == null) {
+                    throw new NoSuchElementException();
+                }
+                return result;
+            }
+        };
+    }
+
+    private void unindex(Truck truck) {
+        // Only eligible trucks are in the sets; the others may lack the capacity the comparator needs
+        if (!isEligible(truck)) {
+            return;
+        }
+        allAvailable.remove(truck);
+        NavigableSet<Truck> bucket = availableByWasteType.get(wasteTypeKey(truck.getWasteType()));
+        if (bucket != null) {
+            bucket.remove(truck);
+        }
+    }
+
+    private boolean isEligible(Truck truck) {
+        return "AVAILABLE".equals(truck.getStatus())
+            && truck.getCapacity() != null
+            && truck.getDriverId() != null && !truck.getDriverId().isEmpty();
+    }
+
+    private String wasteTypeKey(String wasteType) {
+        return wasteType == null ? ANY_WASTE_TYPE : wasteType.trim().toLowerCase();
+    }
+
+    /**
+     * Callers mutate the trucks they get back (e.g. status updates), so the index never hands out its own instances
+     */
+    private Truck copyOf(Truck truck) {
+        return Truck.builder()
+                .truckId(truck.getTruckId())
+                .size(truck.getSize())
+                .wasteType(truck.getWasteType())
+                .status(truck.getStatus())
+                .make(truck.getMake())
+                .model(truck.getModel())
+                .plateNumber(truck.getPlateNumber())
+                .truckPrice(truck.getTruckPrice())
+                .capacity(truck.getCapacity())
+                .driverId(truck.getDriverId())
+                .createdAt(truck.getCreatedAt())
+                .updatedAt(truck.getUpdatedAt())
+                .build();
+    }
+}
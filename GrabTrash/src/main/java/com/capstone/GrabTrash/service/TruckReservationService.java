@@ -0,0 +1,146 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.capstone.GrabTrash.model.Truck;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Service for reserving a truck and creating the payment that holds it in a single Firestore transaction.
+ * The truck is re-read inside the transaction, so two payments racing for the same truck cannot both win;
+ * the loser moves on to the next candidate.
+ */
+@Service
+@Slf4j
+public class TruckReservationService {
+
+    private static final String TRUCKS_COLLECTION = "trucks";
+    private static final String PAYMENTS_COLLECTION = "payments";
+
+    // Candidates tried before giving up and creating the payment without a truck
+    private static final int MAX_CANDIDATES = 5;
+
+    private final Firestore firestore;
+    private final TruckFleetIndex truckFleetIndex;
+    private final TruckAssignmentIndex truckAssignmentIndex;
+
+    @Autowired
+    public TruckReservationService(Firestore firestore, TruckFleetIndex truckFleetIndex, TruckAssignmentIndex truckAssignmentIndex) {
+        this.firestore = firestore;
+        this.truckFleetIndex = truckFleetIndex;
+        this.truckAssignmentIndex = truckAssignmentIndex;
+    }
+
+    /**
+     * Claim the first candidate truck that is still available and create the payment for it.
+     * Candidates are tried in order, so callers should pass them best first.
+     * @param paymentId ID of the payment to create
+     * @param candidates Candidate trucks, best first
+     * @param paymentForTruck Builds the payment to store for a given truck
+     * @return The created payment, or null if every candidate was taken
+     */
+    public Payment reserveAndCreatePayment(String paymentId, List<Truck> candidates, Function<Truck, Payment> paymentForTruck) {
+        return reserveAndCreatePayment(paymentId, candidates, paymentForTruck, (transaction, payment) -> { });
+    }
+
+    /**
+     * Claim the first candidate truck that is still available and create the payment for it,
+     * committing extra writes (such as outbox entries) in the same transaction
+     * @param paymentId ID of the payment to create
+     * @param candidates Candidate trucks, best first
+     * @param paymentForTruck Builds the payment to store for a given truck
+     * @param additionalWrites Adds writes for the created payment to the transaction; must not read
+     * @return The created payment, or null if every candidate was taken
+     */
+    public Payment reserveAndCreatePayment(String paymentId, List<Truck> candidates, Function<Truck, Payment> paymentForTruck,
+                                           BiConsumer<Transaction, Payment> additionalWrites) {
+        int attempts = Math.min(candidates.size(), MAX_CANDIDATES);
+        for (int i = 0; i < attempts; i++) {
+            Truck candidate = candidates.get(i);
+            try {
+                Payment payment = tryReserve(paymentId, candidate.getTruckId(), paymentForTruck, additionalWrites);
+                if (payment != null) {
+                    log.info("Reserved truck {} for payment {} on attempt {}", candidate.getTruckId(), paymentId, i + 1);
+                    return payment;
+                }
+                log.info("Truck {} was taken before payment {} could reserve it, trying next candidate",
+                    candidate.getTruckId(), paymentId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Failed to reserve truck: " + e.getMessage());
+            } catch (ExecutionException e) {
+                log.warn("Reservation of truck {} for payment {} failed: {}", candidate.getTruckId(), paymentId, e.getMessage());
+            }
+        }
+        log.warn("Could not reserve any of {} candidate trucks for payment {}", attempts, paymentId);
+        return null;
+    }
+
+    /**
+     * Run one reservation transaction: the truck must still be AVAILABLE with a driver,
+     * and the payment document must not exist yet
+     * @return The created payment, or null if the truck is no longer available
+     */
+    private Payment tryReserve(String paymentId, String truckId, Function<Truck, Payment> paymentForTruck,
+                               BiConsumer<Transaction, Payment> additionalWrites) throws ExecutionException, InterruptedException {
+        DocumentReference truckRef = firestore.collection(TRUCKS_COLLECTION).document(truckId);
+        DocumentReference paymentRef = firestore.collection(PAYMENTS_COLLECTION).document(paymentId);
+
+        Reservation reservation = firestore.runTransaction(transaction -> {
+            DocumentSnapshot snapshot = transaction.get(truckRef).get();
+            if (!snapshot.exists()) {
+                return null;
+            }
+            Truck truck = snapshot.toObject(Truck.class);
+            if (truck == null
+                    || !"AVAILABLE".equals(truck.getStatus())
+                    || truck.getDriverId() == null || truck.getDriverId().isEmpty()) {
+                return null;
+            }
+            if (truck.getTruckId() == null) {
+                truck.setTruckId(truckId);
+            }
+
+            // Build the payment from the truck as read in this transaction, so the price matches the claim
+            Payment payment = paymentForTruck.apply(truck);
+
+            truck.setStatus("CURRENTLY_IN_USE");
+            truck.setUpdatedAt(new Date());
+            transaction.set(truckRef, truck);
+            // create() fails if the payment already exists, which aborts the claim as well
+            transaction.create(paymentRef, payment);
+            additionalWrites.accept(transaction, payment);
+            return new Reservation(truck, payment);
+        }).get();
+
+        if (reservation == null) {
+            return null;
+        }
+
+        // Reflect the committed claim locally without waiting for the listeners
+        truckFleetIndex.upsert(reservation.truck);
+        truckAssignmentIndex.apply(reservation.payment);
+        return reservation.payment;
+    }
+
+    private static class Reservation {
+        private final Truck truck;
+        private final Payment payment;
+
+        private Reservation(Truck truck, Payment payment) {
+            this.truck = truck;
+            this.payment = payment;
+        }
+    }
+}
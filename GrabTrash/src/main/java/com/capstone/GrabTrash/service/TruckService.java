@@ -2,6 +2,7 @@ package com.capstone.GrabTrash.service;
 
 import com.capstone.GrabTrash.dto.TruckRequestDTO;
 import com.capstone.GrabTrash.dto.TruckResponseDTO;
+import com.capstone.GrabTrash.model.Payment;
 import com.capstone.GrabTrash.model.Truck;
 import com.capstone.GrabTrash.model.User;
 import com.google.api.core.ApiFuture;
@@ -16,8 +17,12 @@ import org.springframework.stereotype.Service;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 /**
  * Service for handling truck-related operations
@@ -30,11 +35,18 @@ public class TruckService {
 
     private final Firestore firestore;
     private final UserService userService;
+    private final TruckFleetIndex truckFleetIndex;
+    private final TruckAssignmentIndex truckAssignmentIndex;
+    private final FirestoreAsync firestoreAsync;
 
     @Autowired
-    public TruckService(Firestore firestore, UserService userService) {
+    public TruckService(Firestore firestore, UserService userService, TruckFleetIndex truckFleetIndex,
+                        TruckAssignmentIndex truckAssignmentIndex, FirestoreAsync firestoreAsync) {
         this.firestore = firestore;
         this.userService = userService;
+        this.truckFleetIndex = truckFleetIndex;
+        this.truckAssignmentIndex = truckAssignmentIndex;
+        this.firestoreAsync = firestoreAsync;
     }
 
     /**
@@ -63,7 +75,8 @@ public class TruckService {
                     .build();
 
             // Save the truck to Firestore
-            firestore.collection(COLLECTION_NAME).document(truckId).set(truck);
+            firestore.collection(COLLECTION_NAME).document(truckId).set(truck).get();
+            truckFleetIndex.upsert(truck);
 
             // Return the response
             return mapToResponseDTO(truck, "Truck created successfully");
@@ -168,7 +181,8 @@ public class TruckService {
             existingTruck.setUpdatedAt(new Date());
 
             // Save the updated truck to Firestore
-            firestore.collection(COLLECTION_NAME).document(truckId).set(existingTruck);
+            firestore.collection(COLLECTION_NAME).document(truckId).set(existingTruck).get();
+            truckFleetIndex.upsert(existingTruck);
 
             return mapToResponseDTO(existingTruck, "Truck updated successfully");
 
@@ -192,7 +206,8 @@ public class TruckService {
             }
 
             // Delete the truck from Firestore
-            firestore.collection(COLLECTION_NAME).document(truckId).delete();
+            firestore.collection(COLLECTION_NAME).document(truckId).delete().get();
+            truckFleetIndex.remove(truckId);
 
             return TruckResponseDTO.builder()
                     .truckId(truckId)
@@ -321,7 +336,8 @@ public class TruckService {
             truck.setUpdatedAt(new Date());
             
             // Save updated truck
-            firestore.collection(COLLECTION_NAME).document(truckId).set(truck);
+            firestore.collection(COLLECTION_NAME).document(truckId).set(truck).get();
+            truckFleetIndex.upsert(truck);
             
             return mapToResponseDTO(truck, "Driver assigned to truck successfully");
             
@@ -354,7 +370,8 @@ public class TruckService {
             truck.setUpdatedAt(new Date());
             
             // Save updated truck
-            firestore.collection(COLLECTION_NAME).document(truckId).set(truck);
+            firestore.collection(COLLECTION_NAME).document(truckId).set(truck).get();
+            truckFleetIndex.upsert(truck);
             
             return mapToResponseDTO(truck, "Driver removed from truck successfully");
             
@@ -416,6 +433,18 @@ public class TruckService {
         try {
             log.info("Looking for trucks with capacity >= {} kg and waste type: {}", requiredCapacity, wasteType);
             
+            // Serve from the in-memory fleet index once it has loaded; it is already ordered by capacity
+            if (truckFleetIndex.isReady()) {
+                List<Truck> suitableTrucks = truckFleetIndex.findAvailable(
+                    requiredCapacity,
+                    wasteType,
+                    truck -> !isTruckAssignedToActivePayment(truck.getTruckId()),
+                    Integer.MAX_VALUE);
+                log.info("Found {} suitable trucks in fleet index", suitableTrucks.size());
+                return suitableTrucks;
+            }
+            
+            log.info("Truck fleet index not loaded yet, querying Firestore");
             CollectionReference trucksCollection = firestore.collection(COLLECTION_NAME);
             
             // First, get trucks with "AVAILABLE" status
@@ -423,64 +452,7 @@ public class TruckService {
             ApiFuture<QuerySnapshot> availableFuture = availableQuery.get();
             List<Truck> availableTrucks = availableFuture.get().toObjects(Truck.class);
             
-            log.info("Found {} trucks with AVAILABLE status", availableTrucks.size());
-            
-            // Debug: Log all available trucks
-            for (Truck truck : availableTrucks) {
-                log.debug("Truck {}: capacity={}, driverId={}, wasteType={}, status={}", 
-                    truck.getTruckId(), truck.getCapacity(), truck.getDriverId(), truck.getWasteType(), truck.getStatus());
-            }
-            
-            // Filter trucks that:
-            // 1. Have sufficient capacity
-            // 2. Are not assigned to any payment/order (no truckId references in payments)
-            // 3. Match the waste type (if specified)
-            // 4. Have an assigned driver
-            List<Truck> suitableTrucks = availableTrucks.stream()
-                .filter(truck -> {
-                    // Check capacity
-                    if (truck.getCapacity() == null || truck.getCapacity() < requiredCapacity) {
-                        log.debug("Truck {} filtered out: insufficient capacity ({} < {})", 
-                            truck.getTruckId(), truck.getCapacity(), requiredCapacity);
-                        return false;
-                    }
-                    
-                    // Check if truck has a driver assigned
-                    if (truck.getDriverId() == null || truck.getDriverId().isEmpty()) {
-                        log.debug("Truck {} filtered out: no driver assigned", truck.getTruckId());
-                        return false;
-                    }
-                    
-                    // Check waste type compatibility (relaxed matching)
-                    if (wasteType != null && !wasteType.isEmpty() && 
-                        truck.getWasteType() != null && !truck.getWasteType().isEmpty()) {
-                        // If both have waste types, they should match (case-insensitive)
-                        if (!truck.getWasteType().equalsIgnoreCase(wasteType)) {
-                            log.debug("Truck {} filtered out: waste type mismatch ({} != {})", 
-                                truck.getTruckId(), truck.getWasteType(), wasteType);
-                            return false;
-                        }
-                    }
-                    
-                    // Check if truck is not currently assigned to any active payment
-                    boolean isAssigned = isTruckAssignedToActivePayment(truck.getTruckId());
-                    if (isAssigned) {
-                        log.debug("Truck {} filtered out: already assigned to an active payment", truck.getTruckId());
-                        return false;
-                    }
-                    
-                    log.info("Truck {} passed all filters: capacity={}, driverId={}, wasteType={}", 
-                        truck.getTruckId(), truck.getCapacity(), truck.getDriverId(), truck.getWasteType());
-                    return true;
-                })
-                .sorted((t1, t2) -> {
-                    // Sort by capacity (smallest sufficient capacity first for optimal assignment)
-                    return Double.compare(t1.getCapacity(), t2.getCapacity());
-                })
-                .collect(java.util.stream.Collectors.toList());
-                
-            log.info("Found {} suitable trucks after filtering", suitableTrucks.size());
-            return suitableTrucks;
+            return filterSuitableTrucks(availableTrucks, requiredCapacity, wasteType, this::isTruckAssignedToActivePayment);
                 
         } catch (InterruptedException | ExecutionException e) {
             log.error("Error finding available trucks by capacity", e);
@@ -488,21 +460,129 @@ public class TruckService {
         }
     }
     
+    /**
+     * Find available trucks by capacity without blocking the calling thread
+     * @param requiredCapacity Minimum capacity required in kilograms
+     * @param wasteType Type of waste
+     * @return Future of the suitable trucks sorted by capacity (smallest first)
+     */
+    public CompletableFuture<List<Truck>> findAvailableTrucksByCapacityAsync(double requiredCapacity, String wasteType) {
+        // The fleet index answers from memory, so there is nothing to wait for
+        if (truckFleetIndex.isReady()) {
+            return CompletableFuture.completedFuture(findAvailableTrucksByCapacity(requiredCapacity, wasteType));
+        }
+        
+        // Fetch the available trucks and the open payments together instead of one payment query per truck
+        Query availableQuery = firestore.collection(COLLECTION_NAME).whereEqualTo("status", "AVAILABLE");
+        CompletableFuture<List<Truck>> availableFuture = firestoreAsync.query(availableQuery, Truck.class);
+        CompletableFuture<Set<String>> assignedFuture;
+        if (truckAssignmentIndex.isReady()) {
+            assignedFuture = CompletableFuture.completedFuture(null);
+        } else {
+            Query openPaymentsQuery = firestore.collection("payments")
+                    .whereIn("jobOrderStatus", TruckAssignmentIndex.OPEN_JOB_ORDER_STATUSES);
+            assignedFuture = firestoreAsync.query(openPaymentsQuery, Payment.class)
+                    .thenApply(payments -> payments.stream()
+                            .filter(TruckAssignmentIndex::isActive)
+                            .map(Payment::getTruckId)
+                            .collect(Collectors.toSet()));
+        }
+        
+        return availableFuture.thenCombine(assignedFuture, (availableTrucks, assignedTruckIds) ->
+                filterSuitableTrucks(availableTrucks, requiredCapacity, wasteType,
+                        truckId -> assignedTruckIds != null
+                                ? assignedTruckIds.contains(truckId)
+                                : truckAssignmentIndex.isAssigned(truckId)));
+    }
+    
+    /**
+     * Filter trucks with AVAILABLE status down to the ones that can take the request
+     * @param availableTrucks Trucks with AVAILABLE status
+     * @param requiredCapacity Minimum capacity required in kilograms
+     * @param wasteType Type of waste
+     * @param isAssigned Whether a truck is already held by an active payment
+     * @return Suitable trucks sorted by capacity (smallest first)
+     */
+    private List<Truck> filterSuitableTrucks(List<Truck> availableTrucks, double requiredCapacity, String wasteType,
+                                             Predicate<String> isAssigned) {
+        log.info("Found {} trucks with AVAILABLE status", availableTrucks.size());
+        
+        // Debug: Log all available trucks
+        for (Truck truck : availableTrucks) {
+            log.debug("Truck {}: capacity={}, driverId={}, wasteType={}, status={}", 
+                truck.getTruckId(), truck.getCapacity(), truck.getDriverId(), truck.getWasteType(), truck.getStatus());
+        }
+        
+        // Filter trucks that:
+        // 1. Have sufficient capacity
+        // 2. Are not assigned to any payment/order (no truckId references in payments)
+        // 3. Match the waste type (if specified)
+        // 4. Have an assigned driver
+        List<Truck> suitableTrucks = availableTrucks.stream()
+            .filter(truck -> {
+                // Check capacity
+                if (truck.getCapacity() == null || truck.getCapacity() < requiredCapacity) {
+                    log.debug("Truck {} filtered out: insufficient capacity ({} < {})", 
+                        truck.getTruckId(), truck.getCapacity(), requiredCapacity);
+                    return false;
+                }
+                
+                // Check if truck has a driver assigned
+                if (truck.getDriverId() == null || truck.getDriverId().isEmpty()) {
+                    log.debug("Truck {} filtered out: no driver assigned", truck.getTruckId());
+                    return false;
+                }
+                
+                // Check waste type compatibility (relaxed matching)
+                if (wasteType != null && !wasteType.isEmpty() && 
+                    truck.getWasteType() != null && !truck.getWasteType().isEmpty()) {
+                    // If both have waste types, they should match (case-insensitive)
+                    if (!truck.getWasteType().equalsIgnoreCase(wasteType)) {
+                        log.debug("Truck {} filtered out: waste type mismatch ({} != {})", 
+                            truck.getTruckId(), truck.getWasteType(), wasteType);
+                        return false;
+                    }
+                }
+                
+                // Check if truck is not currently assigned to any active payment
+                if (isAssigned.test(truck.getTruckId())) {
+                    log.debug("Truck {} filtered out: already assigned to an active payment", truck.getTruckId());
+                    return false;
+                }
+                
+                log.info("Truck {} passed all filters: capacity={}, driverId={}, wasteType={}", 
+                    truck.getTruckId(), truck.getCapacity(), truck.getDriverId(), truck.getWasteType());
+                return true;
+            })
+            .sorted((t1, t2) -> {
+                // Sort by capacity (smallest sufficient capacity first for optimal assignment)
+                return Double.compare(t1.getCapacity(), t2.getCapacity());
+            })
+            .collect(java.util.stream.Collectors.toList());
+            
+        log.info("Found {} suitable trucks after filtering", suitableTrucks.size());
+        return suitableTrucks;
+    }
+    
     /**
      * Check if a truck is currently assigned to any active payment
      * @param truckId Truck ID to check
      * @return true if truck is assigned to an active payment, false otherwise
      */
     private boolean isTruckAssignedToActivePayment(String truckId) {
+        // Answer from the in-memory assignment index once it has loaded
+        if (truckAssignmentIndex.isReady()) {
+            return truckAssignmentIndex.isAssigned(truckId);
+        }
+        
         try {
-            // Query payments collection to see if this truck is assigned to any active payment
+            // Index not loaded yet: look for an active payment holding this truck
             CollectionReference paymentsCollection = firestore.collection("payments");
             Query query = paymentsCollection.whereEqualTo("truckId", truckId);
             ApiFuture<QuerySnapshot> future = query.get();
-            List<Object> payments = future.get().toObjects(Object.class);
+            List<Payment> payments = future.get().toObjects(Payment.class);
             
-            // If there are any payments with this truck ID, it's considered assigned
-            return !payments.isEmpty();
+            return payments.stream().anyMatch(TruckAssignmentIndex::isActive);
             
         } catch (Exception e) {
             log.warn("Error checking truck assignment status for truck: {}", truckId, e);
@@ -510,4 +590,4 @@ public class TruckService {
             return true;
         }
     }
-} 
\ No newline at end of file
+}
\ No newline at end of file
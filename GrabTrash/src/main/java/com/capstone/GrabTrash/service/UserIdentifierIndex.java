@@ -0,0 +1,468 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.User;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Index of user identifiers: one document per normalized email or username in the userIdentifiers
+ * collection, pointing to the userId. Resolving a login identifier is a single document get, and since
+ * the document ID is the identifier itself, claiming one inside a transaction is race-free uniqueness.
+ *
+ * Users created before the index existed are backfilled on startup. Until the backfill has completed
+ * once, a miss falls back to the email and username queries.
+ */
+@Service
+@Slf4j
+public class UserIdentifierIndex {
+
+    private static final String COLLECTION_NAME = "userIdentifiers";
+    private static final String USERS_COLLECTION = "users";
+    private static final String STATUS_COLLECTION = "indexStatus";
+    private static final String STATUS_DOCUMENT = "userIdentifiers";
+    private static final int MAX_RECORDED_CONFLICTS = 100;
+
+    public static final String EMAIL = "email";
+    public static final String USERNAME = "username";
+
+    private final Firestore firestore;
+    private final FirestoreAsync firestoreAsync;
+    private volatile boolean complete = false;
+
+    @Autowired
+    public UserIdentifierIndex(Firestore firestore, FirestoreAsync firestoreAsync) {
+        this.firestore = firestore;
+        this.firestoreAsync = firestoreAsync;
+    }
+
+    /**
+     * Backfill identifiers of existing users once, in the background
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfillOnStartup() {
+        CompletableFuture.runAsync(() -> {
+            try {
+                DocumentSnapshot status = firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).get().get();
+                if (status.exists() && Boolean.TRUE.equals(status.getBoolean("complete"))) {
+                    complete = true;
+                    log.info("User identifier index is complete");
+                    return;
+                }
+                backfill();
+            } catch (Exception e) {
+                log.error("Failed to backfill user identifier index: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    /**
+     * Add index entries for every user that does not have them yet, then mark the index complete.
+     * Identifiers are case-insensitive and emails and usernames share one namespace, so legacy accounts
+     * can collide (e.g. "Ana@x.com" and "ana@x.com", or one user's username equal to another's email).
+     * Each collision goes to one owner, the same on every instance: an email before a username, then the
+     * oldest account. The others keep their remaining identifiers; the collisions are logged and listed
+     * on the status document for an admin to resolve.
+     */
+    public void backfill() throws ExecutionException, InterruptedException {
+        log.info("Backfilling user identifier index");
+        List<QueryDocumentSnapshot> users = firestore.collection(USERS_COLLECTION).get().get().getDocuments();
+
+        Map<String, Claim> claims = new LinkedHashMap<>();
+        List<Map<String, Object>> conflicts = new ArrayList<>();
+        for (QueryDocumentSnapshot document : users) {
+            User user = document.toObject(User.class);
+            claim(claims, conflicts, new Claim(user.getEmail(), document.getId(), EMAIL, user.getCreatedAt()));
+            if (!sameIdentifier(user.getEmail(), user.getUsername())) {
+                claim(claims, conflicts, new Claim(user.getUsername(), document.getId(), USERNAME, user.getCreatedAt()));
+            }
+        }
+
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+        for (Claim claim : claims.values()) {
+            addIfMissing(writes, claim.identifier, claim.userId, claim.type);
+        }
+        int present = 0;
+        int failed = 0;
+        for (ApiFuture<WriteResult> write : writes) {
+            try {
+                write.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof AlreadyExistsException) {
+                    // Indexed already, by a sign-up, a login or an earlier run; that entry stands
+                    present++;
+                } else {
+                    failed++;
+                    log.warn("Failed to write user identifier entry: {}", e.getMessage());
+                }
+            }
+        }
+        if (failed > 0) {
+            // Not marked complete, so lookups keep their fallback and the next start retries
+            throw new RuntimeException("Failed to backfill " + failed + " user identifier entries");
+        }
+
+        Map<String, Object> status = new HashMap<>();
+        status.put("complete", true);
+        status.put("completedAt", new Date());
+        status.put("conflictCount", conflicts.size());
+        status.put("conflicts", conflicts.subList(0, Math.min(conflicts.size(), MAX_RECORDED_CONFLICTS)));
+        firestore.collection(STATUS_COLLECTION).document(STATUS_DOCUMENT).set(status).get();
+        complete = true;
+        log.info("User identifier index backfilled for {} users ({} entries already present, {} conflicts)",
+            users.size(), present, conflicts.size());
+    }
+
+    /**
+     * Resolve an email or username to a user ID
+     * @param identifier Email or username
+     * @return User ID, or null if no user has the identifier
+     */
+    public String resolveUserId(String identifier) throws ExecutionException, InterruptedException {
+        DocumentReference entry = entry(identifier);
+        if (entry == null) {
+            return null;
+        }
+        DocumentSnapshot snapshot = entry.get().get();
+        if (snapshot.exists()) {
+            return snapshot.getString("userId");
+        }
+        if (complete) {
+            return null;
+        }
+
+        // Not backfilled yet: look the user up the old way and index them
+        CollectionReference users = firestore.collection(USERS_COLLECTION);
+        List<QueryDocumentSnapshot> documents = users.whereEqualTo(EMAIL, identifier).limit(1).get().get().getDocuments();
+        if (documents.isEmpty()) {
+            documents = users.whereEqualTo(USERNAME, identifier).limit(1).get().get().getDocuments();
+        }
+        if (documents.isEmpty()) {
+            return null;
+        }
+        String userId = documents.get(0).getId();
+        indexLegacyUser(documents.get(0).toObject(User.class), userId);
+        return userId;
+    }
+
+    /**
+     * Resolve an email or username to a user ID without blocking the calling thread
+     * @param identifier Email or username
+     * @return Future of the user ID, or of null if no user has the identifier
+     */
+    public CompletableFuture<String> resolveUserIdAsync(String identifier) {
+        String documentId = documentId(identifier);
+        if (documentId == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return firestoreAsync.getDocument(COLLECTION_NAME, documentId).thenCompose(snapshot -> {
+            if (snapshot.exists()) {
+                return CompletableFuture.completedFuture(snapshot.getString("userId"));
+            }
+            if (complete) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // Not backfilled yet: send the email and username queries together; an email match wins
+            CollectionReference users = firestore.collection(USERS_COLLECTION);
+            CompletableFuture<QuerySnapshot> byEmail = firestoreAsync.query(users.whereEqualTo(EMAIL, identifier).limit(1));
+            CompletableFuture<QuerySnapshot> byUsername = firestoreAsync.query(users.whereEqualTo(USERNAME, identifier).limit(1));
+            return byEmail.thenCombine(byUsername, (emailMatches, usernameMatches) -> {
+                QuerySnapshot matches = !emailMatches.isEmpty() ? emailMatches : usernameMatches;
+                return matches.isEmpty() ? null : matches.getDocuments().get(0).getId();
+            });
+        });
+    }
+
+    /**
+     * Resolve an email or username to a user
+     * @param identifier Email or username
+     * @return User, or null if no user has the identifier
+     */
+    public User resolveUser(String identifier) throws ExecutionException, InterruptedException {
+        String userId = resolveUserId(identifier);
+        if (userId == null) {
+            return null;
+        }
+        DocumentSnapshot user = firestore.collection(USERS_COLLECTION).document(userId).get().get();
+        return user.exists() ? user.toObject(User.class) : null;
+    }
+
+    /**
+     * Read phase of moving a user from one identifier to another inside a transaction.
+     * Fails if the new identifier belongs to another user; call {@link IdentifierChange#apply}
+     * after the transaction's other reads to write the change.
+     * @param transaction Running transaction
+     * @param userId User that claims the identifier
+     * @param type EMAIL or USERNAME
+     * @param oldValue Identifier the user has now, or null
+     * @param newValue Identifier the user should have, or null
+     * @return Pending change to apply in the write phase
+     * @throws IdentifierInUseException if another user holds the new identifier
+     */
+    public IdentifierChange prepareChange(Transaction transaction, String userId, String type, String oldValue, String newValue)
+            throws ExecutionException, InterruptedException {
+        DocumentReference newEntry = entry(newValue);
+        DocumentReference oldEntry = entry(oldValue);
+        if (newEntry != null && oldEntry != null && newEntry.getId().equals(oldEntry.getId())) {
+            // Same identifier after normalization; keep the entry as it is
+            return new IdentifierChange(null, null, null);
+        }
+
+        if (newEntry != null) {
+            DocumentSnapshot existing = transaction.get(newEntry).get();
+            if (existing.exists() && !userId.equals(existing.getString("userId"))) {
+                throw new IdentifierInUseException(type, newValue);
+            }
+            if (!existing.exists() && !complete && heldByLegacyUser(transaction, newValue, userId)) {
+                throw new IdentifierInUseException(type, newValue);
+            }
+        }
+
+        DocumentReference releasable = null;
+        if (oldEntry != null) {
+            DocumentSnapshot existing = transaction.get(oldEntry).get();
+            if (existing.exists() && userId.equals(existing.getString("userId"))) {
+                releasable = oldEntry;
+            }
+        }
+
+        Map<String, Object> data = null;
+        if (newEntry != null) {
+            data = new HashMap<>();
+            data.put("userId", userId);
+            data.put("type", type);
+            data.put("value", normalize(newValue));
+        }
+        return new IdentifierChange(newEntry, data, releasable);
+    }
+
+    /**
+     * Normalize an identifier: trimmed and lower-cased
+     * @param identifier Email or username
+     * @return Normalized identifier, or null if blank
+     */
+    public static String normalize(String identifier) {
+        if (identifier == null || identifier.trim().isEmpty()) {
+            return null;
+        }
+        return identifier.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Whether two identifiers map to the same index entry
+     */
+    public static boolean sameIdentifier(String first, String second) {
+        String a = normalize(first);
+        return a != null && a.equals(normalize(second));
+    }
+
+    private boolean heldByLegacyUser(Transaction transaction, String identifier, String userId)
+            throws ExecutionException, InterruptedException {
+        CollectionReference users = firestore.collection(USERS_COLLECTION);
+        for (String field : new String[] {EMAIL, USERNAME}) {
+            QuerySnapshot matches = transaction.get(users.whereEqualTo(field, identifier).limit(1)).get();
+            if (!matches.isEmpty() && !matches.getDocuments().get(0).getId().equals(userId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Index a user found by the fallback queries. Lookups do not wait for it; failures are logged.
+     * @return Future completed once every entry exists, or exceptionally if one could not be written
+     */
+    CompletableFuture<Void> indexLegacyUser(User user, String userId) {
+        List<ApiFuture<WriteResult>> writes = new ArrayList<>();
+        addIfMissing(writes, user.getEmail(), userId, EMAIL);
+        if (!sameIdentifier(user.getEmail(), user.getUsername())) {
+            addIfMissing(writes, user.getUsername(), userId, USERNAME);
+        }
+
+        List<CompletableFuture<Void>> indexed = new ArrayList<>();
+        for (ApiFuture<WriteResult> write : writes) {
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            ApiFutures.addCallback(write, new ApiFutureCallback<WriteResult>() {
+                @Override
+                public void onSuccess(WriteResult result) {
+                    done.complete(null);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    if (t instanceof AlreadyExistsException) {
+                        // Indexed already, possibly for another user; the backfill records such conflicts
+                        done.complete(null);
+                    } else {
+                        log.warn("Failed to index identifiers of user {}: {}", userId, t.getMessage(), t);
+                        done.completeExceptionally(t);
+                    }
+                }
+            }, MoreExecutors.directExecutor());
+            indexed.add(done);
+        }
+        return CompletableFuture.allOf(indexed.toArray(CompletableFuture<?>[]::new));
+    }
+
+    /**
+     * Give a normalized identifier to the better of two claims, recording the one that loses
+     */
+    private static void claim(Map<String, Claim> claims, List<Map<String, Object>> conflicts, Claim claim) {
+        String documentId = documentId(claim.identifier);
+        if (documentId == null) {
+            return;
+        }
+        Claim current = claims.get(documentId);
+        if (current == null) {
+            claims.put(documentId, claim);
+            return;
+        }
+        Claim kept = current.precedes(claim) ? current : claim;
+        Claim dropped = kept == current ? claim : current;
+        claims.put(documentId, kept);
+
+        Map<String, Object> conflict = new HashMap<>();
+        conflict.put("identifier", normalize(claim.identifier));
+        conflict.put("keptUserId", kept.userId);
+        conflict.put("keptType", kept.type);
+        conflict.put("droppedUserId", dropped.userId);
+        conflict.put("droppedType", dropped.type);
+        conflicts.add(conflict);
+        log.warn("User identifier {} is claimed by {} {} and {} {}; kept for user {}",
+            normalize(claim.identifier), current.type, current.userId, claim.type, claim.userId, kept.userId);
+    }
+
+    private void addIfMissing(List<ApiFuture<WriteResult>> writes, String identifier, String userId, String type) {
+        DocumentReference entry = entry(identifier);
+        if (entry == null) {
+            return;
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", userId);
+        data.put("type", type);
+        data.put("value", normalize(identifier));
+        writes.add(entry.create(data));
+    }
+
+    private DocumentReference entry(String identifier) {
+        String documentId = documentId(identifier);
+        return documentId != null ? firestore.collection(COLLECTION_NAME).document(documentId) : null;
+    }
+
+    /**
+     * Document IDs cannot contain "/" or look like "__name__", so the normalized identifier is URL-encoded
+     */
+    private static String documentId(String identifier) {
+        String normalized = normalize(identifier);
+        if (normalized == null) {
+            return null;
+        }
+        return URLEncoder.encode(normalized, StandardCharsets.UTF_8).replace("_", "%5F");
+    }
+
+    /**
+     * A user's claim on an identifier during the backfill
+     */
+    private static class Claim {
+        private final String identifier;
+        private final String userId;
+        private final String type;
+        private final Timestamp createdAt;
+
+        private Claim(String identifier, String userId, String type, Timestamp createdAt) {
+            this.identifier = identifier;
+            this.userId = userId;
+            this.type = type;
+            this.createdAt = createdAt;
+        }
+
+        /**
+         * Emails win over usernames, then older accounts (unknown age last), then the lower user ID
+         */
+        private boolean precedes(Claim other) {
+            if (!type.equals(other.type)) {
+                return EMAIL.equals(type);
+            }
+            if (createdAt != null && other.createdAt != null && !createdAt.equals(other.createdAt)) {
+                return createdAt.compareTo(other.createdAt) < 0;
+            }
+            if ((createdAt == null) != (other.createdAt == null)) {
+                return createdAt != null;
+            }
+            return userId.compareTo(other.userId) < 0;
+        }
+    }
+
+    /**
+     * Write phase of an identifier change prepared with {@link #prepareChange}
+     */
+    public static class IdentifierChange {
+        private final DocumentReference claim;
+        private final Map<String, Object> claimData;
+        private final DocumentReference release;
+
+        private IdentifierChange(DocumentReference claim, Map<String, Object> claimData, DocumentReference release) {
+            this.claim = claim;
+            this.claimData = claimData;
+            this.release = release;
+        }
+
+        /**
+         * Write the new entry and remove the old one
+         * @param transaction The transaction the change was prepared in
+         */
+        public void apply(Transaction transaction) {
+            if (release != null) {
+                transaction.delete(release);
+            }
+            if (claim != null) {
+                transaction.set(claim, claimData);
+            }
+        }
+    }
+
+    /**
+     * Thrown when an email or username already belongs to another user
+     */
+    public static class IdentifierInUseException extends RuntimeException {
+        private final String type;
+
+        public IdentifierInUseException(String type, String identifier) {
+            super((EMAIL.equals(type) ? "Email " : "Username ") + identifier + " is already in use by another user");
+            this.type = type;
+        }
+
+        public String getType() {
+            return type;
+        }
+    }
+}
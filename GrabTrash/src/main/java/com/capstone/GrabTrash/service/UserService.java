@@ -11,12 +11,12 @@ import com.google.api.core.ApiFuture;
 import com.google.cloud.firestore.*;
 import com.google.cloud.Timestamp;
 import com.google.firebase.auth.*;
+import io.jsonwebtoken.Claims;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.http.HttpStatus;
 import org.springframework.context.annotation.Lazy;
 
@@ -24,10 +24,12 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.UUID;
 
 @Service
+@Slf4j
 public class UserService {
     private final Firestore firestore;
     private final FirebaseAuth firebaseAuth;
@@ -35,15 +37,29 @@ public class UserService {
     private final AuthService authService;
     private final JwtService jwtService;
     private final BarangayService barangayService;
+    private final FirestoreAsync firestoreAsync;
+    private final RoleChangeTracker roleChangeTracker;
+    private final TokenRevocationService tokenRevocationService;
+    private final UserIdentifierIndex identifierIndex;
+    private final CurrentUserContext currentUserContext;
+    private final NotificationTopicService topicService;
+    private final AggregateQueries aggregateQueries;
 
     @Autowired
-    public UserService(Firestore firestore, FirebaseAuth firebaseAuth, PasswordEncoder passwordEncoder, AuthService authService, JwtService jwtService, @Lazy BarangayService barangayService) {
+    public UserService(Firestore firestore, FirebaseAuth firebaseAuth, PasswordEncoder passwordEncoder, AuthService authService, JwtService jwtService, @Lazy BarangayService barangayService, FirestoreAsync firestoreAsync, RoleChangeTracker roleChangeTracker, TokenRevocationService tokenRevocationService, UserIdentifierIndex identifierIndex, CurrentUserContext currentUserContext, NotificationTopicService topicService, AggregateQueries aggregateQueries) {
         this.firestore = firestore;
         this.firebaseAuth = firebaseAuth;
         this.passwordEncoder = passwordEncoder;
         this.authService = authService;
         this.jwtService = jwtService;
         this.barangayService = barangayService;
+        this.firestoreAsync = firestoreAsync;
+        this.roleChangeTracker = roleChangeTracker;
+        this.tokenRevocationService = tokenRevocationService;
+        this.identifierIndex = identifierIndex;
+        this.currentUserContext = currentUserContext;
+        this.topicService = topicService;
+        this.aggregateQueries = aggregateQueries;
     }
     
    
@@ -52,12 +68,8 @@ public class UserService {
      */
     public ResponseEntity<?> registerUser(RegisterRequest request) {
         try {
-            // Check if user already exists
-            Query query = firestore.collection("users")
-                .whereEqualTo("email", request.getEmail());
-            QuerySnapshot querySnapshot = query.get().get();
-
-            if (!querySnapshot.isEmpty()) {
+            // Check if user already exists (re-checked atomically when the user is saved)
+            if (identifierIndex.resolveUserId(request.getEmail()) != null) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User with this email already exists");
                 return ResponseEntity.badRequest().body(error);
@@ -121,10 +133,38 @@ public class UserService {
             user.setBarangayName(barangay.getName());
             user.setCreatedAt(Timestamp.now());
 
-            // Save user to Firestore
-            String userId = firestore.collection("users").document().getId();
+            // Save user to Firestore, claiming the email and username in the same transaction
+            DocumentReference userRef = firestore.collection("users").document();
+            String userId = userRef.getId();
             user.setUserId(userId);
-            firestore.collection("users").document(userId).set(user).get();
+            try {
+                firestore.runTransaction(transaction -> {
+                    UserIdentifierIndex.IdentifierChange emailClaim = identifierIndex.prepareChange(
+                        transaction, userId, UserIdentifierIndex.EMAIL, null, user.getEmail());
+                    UserIdentifierIndex.IdentifierChange usernameClaim = null;
+                    if (!UserIdentifierIndex.sameIdentifier(user.getEmail(), user.getUsername())) {
+                        usernameClaim = identifierIndex.prepareChange(
+                            transaction, userId, UserIdentifierIndex.USERNAME, null, user.getUsername());
+                    }
+
+                    emailClaim.apply(transaction);
+                    if (usernameClaim != null) {
+                        usernameClaim.apply(transaction);
+                    }
+                    transaction.create(userRef, user);
+                    return null;
+                }).get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UserIdentifierIndex.IdentifierInUseException) {
+                    UserIdentifierIndex.IdentifierInUseException inUse = (UserIdentifierIndex.IdentifierInUseException) e.getCause();
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", UserIdentifierIndex.EMAIL.equals(inUse.getType())
+                        ? "User with this email already exists"
+                        : "Username is already taken");
+                    return ResponseEntity.badRequest().body(error);
+                }
+                throw e;
+            }
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "User registered successfully");
@@ -141,19 +181,16 @@ public class UserService {
         try {
             System.out.println("Login attempt for email: " + user.getEmail());
             
-            // Find user by email
-            Query query = firestore.collection("users")
-                .whereEqualTo("email", user.getEmail());
-            QuerySnapshot querySnapshot = query.get().get();
+            // Find user through the identifier index
+            User foundUser = identifierIndex.resolveUser(user.getEmail());
 
-            if (querySnapshot.isEmpty()) {
+            if (foundUser == null) {
                 System.out.println("User not found for email: " + user.getEmail());
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not found");
                 return ResponseEntity.badRequest().body(error);
             }
 
-            User foundUser = querySnapshot.getDocuments().get(0).toObject(User.class);
             System.out.println("User found, verifying password");
 
             // Verify password
@@ -170,6 +207,7 @@ public class UserService {
 
             Map<String, Object> response = new HashMap<>();
             response.put("token", token);
+            response.put("refreshToken", jwtService.generateRefreshToken(foundUser));
             response.put("userId", foundUser.getUserId());
             
             // If user is a private entity, include the entityId in the response
@@ -201,6 +239,61 @@ public class UserService {
         }
     }
 
+    /**
+     * Exchange a refresh token for a new access token and refresh token.
+     * The old refresh token is revoked, and the user is re-read so the new token carries the current role.
+     */
+    public ResponseEntity<?> refreshToken(String refreshToken) {
+        try {
+            if (refreshToken == null || refreshToken.isEmpty()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Refresh token is required");
+                return ResponseEntity.badRequest().body(error);
+            }
+
+            Claims claims;
+            try {
+                claims = jwtService.extractAllClaims(refreshToken);
+            } catch (Exception e) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Invalid or expired refresh token");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+            }
+
+            if (!jwtService.isRefreshToken(claims) || tokenRevocationService.isRevoked(claims)) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Invalid or expired refresh token");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+            }
+
+            String userId = claims.get("userId", String.class);
+            DocumentSnapshot userDoc = userId != null ? firestore.collection("users").document(userId).get().get() : null;
+            if (userDoc == null || !userDoc.exists()) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "User not found");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+            }
+            User user = userDoc.toObject(User.class);
+
+            // Each refresh token can be exchanged once; of two concurrent exchanges only one revokes it
+            if (!tokenRevocationService.redeemToken(claims)) {
+                Map<String, String> error = new HashMap<>();
+                error.put("error", "Invalid or expired refresh token");
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+            }
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("token", jwtService.generateToken(user));
+            response.put("refreshToken", jwtService.generateRefreshToken(user));
+            response.put("userId", user.getUserId());
+            return ResponseEntity.ok(response);
+        } catch (Exception e) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", e.getMessage());
+            return ResponseEntity.internalServerError().body(error);
+        }
+    }
+
     public ResponseEntity<?> getUserProfile(String userId) {
         try {
             User user = firestore.collection("users").document(userId).get().get().toObject(User.class);
@@ -233,21 +326,16 @@ public class UserService {
 
     public ResponseEntity<?> updateUserProfile(String userId, User user) {
         try {
-            User existingUser = firestore.collection("users").document(userId).get().get().toObject(User.class);
+            DocumentSnapshot existingDoc = firestore.collection("users").document(userId).get().get();
+            User existingUser = existingDoc.toObject(User.class);
             if (existingUser == null) {
                 return ResponseEntity.notFound().build();
             }
+            User before = existingDoc.toObject(User.class);
 
-            // Check if new email is already in use by another user
-            QuerySnapshot emailCheck = firestore.collection("users")
-                .whereEqualTo("email", user.getEmail())
-                .get()
-                .get();
-
-            boolean emailInUseByOtherUser = emailCheck.getDocuments().stream()
-                .anyMatch(doc -> !doc.getId().equals(userId));
-
-            if (emailInUseByOtherUser) {
+            // Check if new email is already in use by another user (re-checked atomically when saving)
+            String emailOwner = identifierIndex.resolveUserId(user.getEmail());
+            if (emailOwner != null && !emailOwner.equals(userId)) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "Email is already in use by another user");
                 return ResponseEntity.badRequest().body(error);
@@ -273,7 +361,19 @@ public class UserService {
             existingUser.setPhoneNumber(user.getPhoneNumber());
 
             // Update Firestore
-            firestore.collection("users").document(userId).set(existingUser).get();
+            try {
+                saveWithEmail(userId, existingUser);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UserIdentifierIndex.IdentifierInUseException) {
+                    Map<String, String> error = new HashMap<>();
+                    error.put("error", "Email is already in use by another user");
+                    return ResponseEntity.badRequest().body(error);
+                }
+                throw e;
+            }
+
+            // A new barangay means a different barangay topic
+            topicService.syncSubscriptions(before, existingUser);
 
             // Update Firebase Auth
             try {
@@ -313,8 +413,13 @@ public class UserService {
             existingUser.setPassword(passwordEncoder.encode(request.getNewPassword()));
             firestore.collection("users").document(userId).set(existingUser).get();
 
+            // Sign out every session, then give this client fresh tokens at the new token version
+            existingUser.setTokenVersion(tokenRevocationService.revokeAllForUser(userId));
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "Password updated successfully");
+            response.put("token", jwtService.generateToken(existingUser));
+            response.put("refreshToken", jwtService.generateRefreshToken(existingUser));
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -338,27 +443,8 @@ public class UserService {
     }
 
     public User getUserByEmailOrUsername(String identifier) {
-        // Use the injected Firestore instance
-        CollectionReference users = firestore.collection("users");
-
         try {
-            // Try fetching user by email
-            Query query = users.whereEqualTo("email", identifier).limit(1);
-            ApiFuture<QuerySnapshot> future = query.get();
-            List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-            
-            if (!documents.isEmpty()) {
-                return documents.get(0).toObject(User.class);
-            }
-
-            // If not found by email, search by username
-            query = users.whereEqualTo("username", identifier).limit(1);
-            future = query.get();
-            documents = future.get().getDocuments();
-            
-            if (!documents.isEmpty()) {
-                return documents.get(0).toObject(User.class);
-            }
+            return identifierIndex.resolveUser(identifier);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -366,23 +452,31 @@ public class UserService {
         return null; // User not found
     }
 
+    /**
+     * Non-blocking variant of getUserByEmailOrUsername
+     * @param identifier Email or username
+     * @return Future of the user, or of null if not found; completed exceptionally if the lookup failed,
+     * so an outage is not mistaken for an unknown user
+     */
+    public CompletableFuture<User> getUserByEmailOrUsernameAsync(String identifier) {
+        return identifierIndex.resolveUserIdAsync(identifier)
+            .thenCompose(userId -> userId == null
+                ? CompletableFuture.<User>completedFuture(null)
+                : firestoreAsync.getDocument("users", userId, User.class))
+            .whenComplete((user, e) -> {
+                if (e != null) {
+                    log.error("Failed to look up user by email or username: {}", FirestoreAsync.unwrap(e).getMessage(), e);
+                }
+            });
+    }
+
     public boolean validatePassword(User user, String password) {
         return passwordEncoder.matches(password, user.getPassword()); // Replace with hashed password validation
     }
 
     // 🔹 Authenticate User (Login)
     public User authenticateUser(String email) throws ExecutionException, InterruptedException {
-        CollectionReference usersRef = firestore.collection("users");
-        Query query = usersRef.whereEqualTo("email", email).limit(1);
-        ApiFuture<QuerySnapshot> future = query.get();
-
-        QuerySnapshot snapshot = future.get();
-        if (!snapshot.isEmpty()) {
-            DocumentSnapshot document = snapshot.getDocuments().get(0);
-            return document.toObject(User.class);
-        }
-
-        return null; // User not found
+        return identifierIndex.resolveUser(email);
     }
 
     //  Get User by ID
@@ -427,22 +521,22 @@ public class UserService {
                 throw new Exception("User data is invalid");
             }
 
-            // Check if new email is already in use by another user
-            QuerySnapshot emailCheck = firestore.collection("users")
-                .whereEqualTo("email", newEmail)
-                .get()
-                .get();
-
-            boolean emailInUseByOtherUser = emailCheck.getDocuments().stream()
-                .anyMatch(doc -> !doc.getId().equals(userId));
-
-            if (emailInUseByOtherUser) {
+            // Check if new email is already in use by another user (re-checked atomically when saving)
+            String emailOwner = identifierIndex.resolveUserId(newEmail);
+            if (emailOwner != null && !emailOwner.equals(userId)) {
                 throw new Exception("Email is already in use by another user");
             }
 
             // Update Firestore first
             user.setEmail(newEmail);
-            userDoc.set(user).get();
+            try {
+                saveWithEmail(userId, user);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UserIdentifierIndex.IdentifierInUseException) {
+                    throw new Exception("Email is already in use by another user");
+                }
+                throw e;
+            }
 
             // Then try to update or create Firebase Auth user
             try {
@@ -479,6 +573,44 @@ public class UserService {
         }
     }
 
+    /**
+     * Save a user document and move its email index entry in one transaction
+     * @param userId User ID
+     * @param user User data with the new email
+     * @throws ExecutionException with an IdentifierInUseException cause if another user holds the email
+     */
+    private void saveWithEmail(String userId, User user) throws ExecutionException, InterruptedException {
+        DocumentReference userRef = firestore.collection("users").document(userId);
+        firestore.runTransaction(transaction -> {
+            DocumentSnapshot current = transaction.get(userRef).get();
+            String currentEmail = current.exists() ? current.getString("email") : null;
+            UserIdentifierIndex.IdentifierChange emailChange = identifierIndex.prepareChange(
+                transaction, userId, UserIdentifierIndex.EMAIL, currentEmail, user.getEmail());
+
+            transaction.set(userRef, user);
+            emailChange.apply(transaction);
+            return null;
+        }).get();
+    }
+
+    /**
+     * Check that the current user is an admin, from the authorities in their token
+     * @return Error response if not, or null if the user is an admin
+     */
+    private ResponseEntity<?> requireAdmin() {
+        if (!currentUserContext.isAuthenticated()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "User not authenticated");
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
+        }
+        if (!currentUserContext.isAdmin()) {
+            Map<String, String> error = new HashMap<>();
+            error.put("error", "Access denied. Admin role required.");
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+        }
+        return null;
+    }
+
     // Update User Password
     public void updatePassword(String userId, String oldPassword, String newPassword) throws Exception {
         // First, get the user from Firestore
@@ -567,15 +699,13 @@ public class UserService {
     public ResponseEntity<?> getUserSecurityQuestions() {
         try {
             // Get the current authenticated user from SecurityContext
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            User user = getUserByEmailOrUsername(userEmail);
+            User user = currentUserContext.getUser();
             
             if (user == null) {
                 Map<String, String> error = new HashMap<>();
@@ -636,6 +766,9 @@ public class UserService {
             user.setPassword(passwordEncoder.encode(request.getNewPassword()));
             firestore.collection("users").document(user.getUserId()).set(user).get();
 
+            // Sign out every session that used the old password
+            tokenRevocationService.revokeAllForUser(user.getUserId());
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "Password reset successfully");
             return ResponseEntity.ok(response);
@@ -651,29 +784,10 @@ public class UserService {
      */
     public ResponseEntity<?> getAllUsers() {
         try {
-            // Get the current authenticated user from SecurityContext
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            // Get the current user's email
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
-            
-            if (currentUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(currentUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
             // Get all users from Firestore
@@ -702,34 +816,14 @@ public class UserService {
      */
     public ResponseEntity<?> getTotalActiveUsers() {
         try {
-            // Get the current authenticated user from SecurityContext
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            // Get the current user's email
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
-            
-            if (currentUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(currentUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
-            // Get all users from Firestore
-            QuerySnapshot querySnapshot = firestore.collection("users").get().get();
-            long totalUsers = querySnapshot.size();
+            // Count users server-side instead of downloading the collection
+            long totalUsers = aggregateQueries.count("users", Map.of());
 
             Map<String, Object> response = new HashMap<>();
             response.put("totalActiveUsers", totalUsers);
@@ -746,28 +840,10 @@ public class UserService {
      */
     public ResponseEntity<?> deleteUser(String userId) {
         try {
-            // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            String adminEmail = authentication.getName();
-            User adminUser = getUserByEmailOrUsername(adminEmail);
-            
-            if (adminUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Admin user not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(adminUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
             // Check if the user to be deleted exists
@@ -786,8 +862,31 @@ public class UserService {
                 // Continue with Firestore deletion even if Firebase Auth deletion fails
             }
 
-            // Delete the user from Firestore
-            firestore.collection("users").document(userId).delete().get();
+            // Delete the user from Firestore, releasing their email and username
+            DocumentReference userRef = firestore.collection("users").document(userId);
+            firestore.runTransaction(transaction -> {
+                DocumentSnapshot current = transaction.get(userRef).get();
+                UserIdentifierIndex.IdentifierChange emailRelease = identifierIndex.prepareChange(
+                    transaction, userId, UserIdentifierIndex.EMAIL, current.getString("email"), null);
+                UserIdentifierIndex.IdentifierChange usernameRelease = null;
+                if (!UserIdentifierIndex.sameIdentifier(current.getString("email"), current.getString("username"))) {
+                    usernameRelease = identifierIndex.prepareChange(
+                        transaction, userId, UserIdentifierIndex.USERNAME, current.getString("username"), null);
+                }
+
+                transaction.delete(userRef);
+                emailRelease.apply(transaction);
+                if (usernameRelease != null) {
+                    usernameRelease.apply(transaction);
+                }
+                return null;
+            }).get();
+
+            // Tokens are not checked against Firestore, so revoke them explicitly
+            tokenRevocationService.revokeAllForUser(userId);
+
+            // Stop broadcasts to the deleted user's device
+            topicService.syncSubscriptions(userDoc.toObject(User.class), null);
 
             Map<String, String> response = new HashMap<>();
             response.put("message", "User deleted successfully");
@@ -804,28 +903,10 @@ public class UserService {
      */
     public ResponseEntity<?> updateUserRole(String userId, String newRole) {
         try {
-            // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            String adminEmail = authentication.getName();
-            User adminUser = getUserByEmailOrUsername(adminEmail);
-            
-            if (adminUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Admin user not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(adminUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
             // Check if the user to be updated exists
@@ -841,6 +922,14 @@ public class UserService {
             user.setRole(newRole);
             firestore.collection("users").document(userId).set(user).get();
 
+            // Move the user's device from the old role's topics to the new role's
+            topicService.syncSubscriptions(userDoc.toObject(User.class), user);
+
+            // Tokens issued before now still carry the old role: revoke them so the next sign-in picks up
+            // the new role, and publish the change so claims-only authentication overrides it meanwhile
+            roleChangeTracker.recordRoleChange(userId, user.getEmail(), newRole);
+            tokenRevocationService.revokeAllForUser(userId);
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "User role updated successfully");
             return ResponseEntity.ok(response);
@@ -856,50 +945,19 @@ public class UserService {
      */
     public ResponseEntity<?> getTotalTrashPickedUp() {
         try {
-            // Get the current authenticated user from SecurityContext
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            // Get the current user's email
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
-            
-            if (currentUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(currentUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
-            // Get all completed pickup requests
-            Query query = firestore.collection("pickup_requests")
-                .whereEqualTo("status", "COMPLETED");
-            QuerySnapshot querySnapshot = query.get().get();
-            
-            double totalWeight = 0.0;
-            int totalRequests = 0;
-            
-            for (QueryDocumentSnapshot document : querySnapshot.getDocuments()) {
-                PickupRequest pickupRequest = document.toObject(PickupRequest.class);
-                if (pickupRequest.getTrashWeight() != null) {
-                    totalWeight += pickupRequest.getTrashWeight();
-                }
-                totalRequests++;
-            }
+            // Count and sum the completed pickup requests server-side, without downloading them
+            AggregateQueries.CountAndSum completed = aggregateQueries.countAndSum(
+                "pickup_requests", "trashWeight", Map.of("status", "COMPLETED"));
 
             Map<String, Object> response = new HashMap<>();
-            response.put("totalTrashPickedUp", totalWeight);
-            response.put("totalCompletedRequests", totalRequests);
+            response.put("totalTrashPickedUp", completed.getSum());
+            response.put("totalCompletedRequests", (int) completed.getCount());
             return ResponseEntity.ok(response);
         } catch (Exception e) {
             Map<String, String> error = new HashMap<>();
@@ -916,16 +974,11 @@ public class UserService {
      * @throws InterruptedException If the operation is interrupted
      */
     public String getUserIdByEmail(String email) throws ExecutionException, InterruptedException {
-        CollectionReference usersCollection = firestore.collection("users");
-        Query query = usersCollection.whereEqualTo("email", email).limit(1);
-        
-        QuerySnapshot snapshot = query.get().get();
-        if (snapshot.isEmpty()) {
+        String userId = identifierIndex.resolveUserId(email);
+        if (userId == null) {
             throw new RuntimeException("User not found with email: " + email);
         }
-        
-        User user = snapshot.getDocuments().get(0).toObject(User.class);
-        return user.getUserId();
+        return userId;
     }
 
     /**
@@ -934,15 +987,13 @@ public class UserService {
     public ResponseEntity<?> updateUserLocation(LocationUpdateRequest request) {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
+            User currentUser = currentUserContext.getUser();
             
             if (currentUser == null) {
                 Map<String, String> error = new HashMap<>();
@@ -1006,6 +1057,9 @@ public class UserService {
                 privateEntityRef.set(privateEntity).get();
             }
 
+            // Make sure the user's device receives the broadcasts for their role and barangay
+            topicService.ensureSubscribed(userToUpdate);
+
             Map<String, String> response = new HashMap<>();
             response.put("message", "User location updated successfully");
             return ResponseEntity.ok(response);
@@ -1022,15 +1076,13 @@ public class UserService {
     public ResponseEntity<?> getUserLocation(String userId) {
         try {
             // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
+            User currentUser = currentUserContext.getUser();
             
             if (currentUser == null) {
                 Map<String, String> error = new HashMap<>();
@@ -1101,28 +1153,10 @@ public class UserService {
      */
     public ResponseEntity<?> getAllPrivateEntityLocations() {
         try {
-            // Get the current authenticated user
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not authenticated");
-                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
-            }
-
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
-            
-            if (currentUser == null) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "User not found");
-                return ResponseEntity.badRequest().body(error);
-            }
-
-            // Check if the user is an admin
-            if (!"admin".equalsIgnoreCase(currentUser.getRole())) {
-                Map<String, String> error = new HashMap<>();
-                error.put("error", "Access denied. Admin role required.");
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(error);
+            // Admin check from the token's authorities; no user lookup needed
+            ResponseEntity<?> denied = requireAdmin();
+            if (denied != null) {
+                return denied;
             }
 
             // Get all private entities with their locations
@@ -1175,16 +1209,14 @@ public class UserService {
     public ResponseEntity<?> uploadProfileImage(String imageUrl) {
         try {
             // Get the current authenticated user from SecurityContext
-            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-            if (authentication == null || !authentication.isAuthenticated()) {
+            if (!currentUserContext.isAuthenticated()) {
                 Map<String, String> error = new HashMap<>();
                 error.put("error", "User not authenticated");
                 return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(error);
             }
 
-            // Get the current user's email
-            String userEmail = authentication.getName();
-            User currentUser = getUserByEmailOrUsername(userEmail);
+            // Get the current user (loaded once per request)
+            User currentUser = currentUserContext.getUser();
             
             if (currentUser == null) {
                 Map<String, String> error = new HashMap<>();
@@ -0,0 +1,56 @@
+package com.capstone.GrabTrash.service;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how far a listener got when changes finish out of order. The watermark only moves past a
+ * change's timestamp once that change and every earlier one still in flight are done, so resuming from
+ * it after a crash never skips unprocessed work.
+ */
+class WatermarkTracker {
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<Long, Long> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong highestCompleted;
+
+    WatermarkTracker(Date initial) {
+        this.highestCompleted = new AtomicLong(initial.getTime());
+    }
+
+    /**
+     * Record that a change started processing
+     * @param timestamp The change's updatedAt, or null if it has none
+     * @return Ticket to pass to {@link #complete}
+     */
+    long begin(Date timestamp) {
+        long ticket = sequence.incrementAndGet();
+        if (timestamp != null) {
+            inFlight.put(ticket, timestamp.getTime());
+        }
+        return ticket;
+    }
+
+    /**
+     * Record that a change finished processing
+     */
+    void complete(long ticket) {
+        Long timestamp = inFlight.remove(ticket);
+        if (timestamp != null) {
+            highestCompleted.accumulateAndGet(timestamp, Math::max);
+        }
+    }
+
+    /**
+     * Every change up to the returned time has been processed
+     */
+    Date current() {
+        long watermark = highestCompleted.get();
+        for (Long pending : inFlight.values()) {
+            watermark = Math.min(watermark, pending - 1);
+        }
+        return new Date(watermark);
+    }
+}
@@ -0,0 +1,203 @@
+package com.capstone.GrabTrash.config;
+
+import com.capstone.GrabTrash.service.CurrentUserContext;
+import com.capstone.GrabTrash.service.JwtService;
+import com.capstone.GrabTrash.service.RoleChangeTracker;
+import com.capstone.GrabTrash.service.TokenRevocationService;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticationFilterTest {
+
+    private static final String TOKEN = "token";
+
+    private JwtService jwtService;
+    private UserDetailsService userDetailsService;
+    private RoleChangeTracker roleChangeTracker;
+    private TokenRevocationService tokenRevocationService;
+    private Claims claims;
+    private FilterChain chain;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = mock(JwtService.class);
+        userDetailsService = mock(UserDetailsService.class);
+        roleChangeTracker = mock(RoleChangeTracker.class);
+        tokenRevocationService = mock(TokenRevocationService.class);
+        claims = mock(Claims.class);
+        chain = mock(FilterChain.class);
+
+        when(jwtService.extractAllClaims(TOKEN)).thenReturn(claims);
+        when(claims.getSubject()).thenReturn("ana@example.com");
+        when(claims.get("userId", String.class)).thenReturn("user-1");
+
+        request = new MockHttpServletRequest("GET", "/api/payments");
+        request.setServletPath("/api/payments");
+        request.addHeader("Authorization", "Bearer " + TOKEN);
+        response = new MockHttpServletResponse();
+        SecurityContextHolder.clearContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void claimsTokenAuthenticatesAndRunsTheChainOnce() throws Exception {
+        when(claims.get("role", String.class)).thenReturn("admin");
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        assertNotNull(authentication);
+        assertEquals("ana@example.com", authentication.getName());
+        assertTrue(authorities(authentication).contains("ROLE_ADMIN"));
+        assertEquals("user-1", request.getAttribute(CurrentUserContext.USER_ID_ATTRIBUTE));
+        verify(userDetailsService, never()).loadUserByUsername(anyString());
+    }
+
+    @Test
+    void roleChangedAfterIssueReplacesTheTokenRole() throws Exception {
+        when(claims.get("role", String.class)).thenReturn("customer");
+        when(roleChangeTracker.getRoleChangedSince(anyString(), anyLong())).thenReturn("driver");
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        List<String> authorities = authorities(SecurityContextHolder.getContext().getAuthentication());
+        assertTrue(authorities.contains("ROLE_DRIVER"));
+        assertTrue(!authorities.contains("ROLE_CUSTOMER"));
+    }
+
+    @Test
+    void tokenWithoutRoleFallsBackToTheUserLookupAndRunsTheChainOnce() throws Exception {
+        UserDetails user = new User("ana@example.com", "", List.of());
+        when(userDetailsService.loadUserByUsername("ana@example.com")).thenReturn(user);
+        when(jwtService.isTokenValid(claims, user)).thenReturn(true);
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        verify(userDetailsService, times(1)).loadUserByUsername("ana@example.com");
+        assertEquals("ana@example.com", SecurityContextHolder.getContext().getAuthentication().getName());
+    }
+
+    @Test
+    void lookupModeLoadsTheUserEvenWithARole() throws Exception {
+        when(claims.get("role", String.class)).thenReturn("admin");
+        UserDetails user = new User("ana@example.com", "", List.of());
+        when(userDetailsService.loadUserByUsername("ana@example.com")).thenReturn(user);
+        when(jwtService.isTokenValid(claims, user)).thenReturn(true);
+
+        filter("lookup").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        verify(userDetailsService, times(1)).loadUserByUsername("ana@example.com");
+    }
+
+    @Test
+    void refreshTokenDoesNotAuthenticateButRunsTheChainOnce() throws Exception {
+        when(claims.get("role", String.class)).thenReturn("admin");
+        when(jwtService.isRefreshToken(claims)).thenReturn(true);
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void revokedTokenDoesNotAuthenticateButRunsTheChainOnce() throws Exception {
+        when(claims.get("role", String.class)).thenReturn("admin");
+        when(tokenRevocationService.isRevoked(claims)).thenReturn(true);
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void invalidTokenRunsTheChainOnceUnauthenticated() throws Exception {
+        when(jwtService.extractAllClaims(TOKEN)).thenThrow(new IllegalArgumentException("bad signature"));
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void failingUserLookupRunsTheChainOnceUnauthenticated() throws Exception {
+        when(userDetailsService.loadUserByUsername(anyString())).thenThrow(new IllegalStateException("Firestore down"));
+
+        filter("claims").doFilter(request, response, chain);
+
+        verify(chain, times(1)).doFilter(request, response);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+    }
+
+    @Test
+    void missingBearerTokenRunsTheChainOnce() throws Exception {
+        MockHttpServletRequest anonymous = new MockHttpServletRequest("GET", "/api/payments");
+        anonymous.setServletPath("/api/payments");
+
+        filter("claims").doFilter(anonymous, response, chain);
+
+        verify(chain, times(1)).doFilter(anonymous, response);
+        verify(jwtService, never()).extractAllClaims(any());
+    }
+
+    @Test
+    void publicPathSkipsTheTokenAndRunsTheChainOnce() throws Exception {
+        MockHttpServletRequest login = new MockHttpServletRequest("POST", "/api/users/login");
+        login.setServletPath("/api/users/login");
+        login.addHeader("Authorization", "Bearer " + TOKEN);
+
+        filter("claims").doFilter(login, response, chain);
+
+        verify(chain, times(1)).doFilter(login, response);
+        verify(jwtService, never()).extractAllClaims(any());
+    }
+
+    private JwtAuthenticationFilter filter(String mode) {
+        return new JwtAuthenticationFilter(jwtService, userDetailsService, roleChangeTracker, tokenRevocationService, mode);
+    }
+
+    private static List<String> authorities(Authentication authentication) {
+        return authentication.getAuthorities().stream()
+                .map(GrantedAuthority::getAuthority)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,52 @@
+package com.capstone.GrabTrash.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JwtKeyRingTest {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void keystoreWithoutPasswordFailsAtStartup() {
+        String keystore = directory.resolve("keys.p12").toString();
+
+        assertThrows(IllegalStateException.class, () -> ring("", keystore, ""));
+        assertTrue(Files.notExists(directory.resolve("keys.p12")));
+    }
+
+    @Test
+    void noPasswordIsNeededWithoutAKeystore() {
+        JwtKeyRing ring = ring(SECRET, "", "");
+
+        assertEquals("default", ring.getSigningKeyId());
+    }
+
+    @Test
+    void instancesSharingAKeystoreVerifyEachOthersKeys() {
+        String keystore = directory.resolve("keys.p12").toString();
+
+        JwtKeyRing first = ring("", keystore, "s3cret");
+        JwtKeyRing second = ring("", keystore, "s3cret");
+
+        assertEquals(first.getSigningKeyId(), second.getSigningKeyId());
+        assertNotNull(second.getVerificationKey(first.getSigningKeyId()));
+        assertEquals(first.getSigningKey(), second.getVerificationKey(first.getSigningKeyId()));
+    }
+
+    private static JwtKeyRing ring(String secret, String keystorePath, String keystorePassword) {
+        return new JwtKeyRing(new JwtConfig(900_000L, 604_800_000L), "", secret, "", keystorePath,
+                keystorePassword, false, 604_800_000L);
+    }
+}
@@ -0,0 +1,71 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AnalyticsRollupsTest {
+
+    @Test
+    void coverUsesTheCoarsestBucketThatFits() {
+        // 2026-10-01 starts a month; 2026-11-02 and 2026-11-09 are Mondays
+        List<String> cover = AnalyticsRollups.cover(LocalDate.of(2026, 10, 1), LocalDate.of(2026, 11, 10));
+
+        assertEquals(List.of(
+            "month_2026-10",
+            "day_2026-11-01",
+            "week_2026-11-02",
+            "day_2026-11-09",
+            "day_2026-11-10"), cover);
+    }
+
+    @Test
+    void coverOfASingleDayIsThatDay() {
+        assertEquals(List.of("day_2026-10-01"), AnalyticsRollups.cover(LocalDate.of(2026, 10, 1), LocalDate.of(2026, 10, 1)));
+    }
+
+    @Test
+    void weekIsNotUsedWhenItRunsPastTheRange() {
+        // Monday to Saturday
+        List<String> cover = AnalyticsRollups.cover(LocalDate.of(2026, 10, 19), LocalDate.of(2026, 10, 24));
+
+        assertEquals(6, cover.size());
+        cover.forEach(bucketId -> assertEquals("day", bucketId.substring(0, bucketId.indexOf('_'))));
+    }
+
+    @Test
+    void coverCountsEveryDayOfTheRangeExactlyOnce() {
+        LocalDate first = LocalDate.of(2025, 12, 20);
+        for (int offset = 0; offset < 60; offset += 3) {
+            for (int length = 1; length <= 120; length += 7) {
+                LocalDate from = first.plusDays(offset);
+                LocalDate to = from.plusDays(length - 1L);
+
+                LocalDate next = from;
+                for (String bucketId : AnalyticsRollups.cover(from, to)) {
+                    String granularity = bucketId.substring(0, bucketId.indexOf('_'));
+                    String key = bucketId.substring(bucketId.indexOf('_') + 1);
+                    LocalDate start;
+                    LocalDate end;
+                    if (AnalyticsRollups.MONTH.equals(granularity)) {
+                        start = YearMonth.parse(key).atDay(1);
+                        end = YearMonth.parse(key).atEndOfMonth();
+                    } else if (AnalyticsRollups.WEEK.equals(granularity)) {
+                        start = LocalDate.parse(key);
+                        end = start.plusDays(6);
+                    } else {
+                        start = LocalDate.parse(key);
+                        end = start;
+                    }
+                    assertEquals(next, start, "gap or overlap before " + bucketId + " in " + from + ".." + to);
+                    next = end.plusDays(1);
+                }
+                assertEquals(to.plusDays(1), next, "cover of " + from + ".." + to + " does not end on the last day");
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.cloud.firestore.Firestore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class BarangayRankingTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Asia/Manila");
+    private static final LocalDate DAY = LocalDate.of(2026, 10, 1);
+
+    private BarangayRanking ranking;
+
+    @BeforeEach
+    void setUp() {
+        AnalyticsRollups analyticsRollups = mock(AnalyticsRollups.class);
+        when(analyticsRollups.getZone()).thenReturn(ZONE);
+        ranking = new BarangayRanking(mock(Firestore.class), analyticsRollups, List.of(7, 30), 100);
+    }
+
+    @Test
+    void countsCompletedPaymentsPerWindow() {
+        record("a", DAY, 3);
+        record("b", DAY.plusDays(5), 1);
+
+        List<Map<String, Object>> top = ranking.top(7, 10, DAY.plusDays(5));
+
+        assertEquals(2, top.size());
+        assertEntry(top.get(0), "a", 3);
+        assertEntry(top.get(1), "b", 1);
+    }
+
+    @Test
+    void advanceSubtractsDaysLeavingTheShorterWindow() {
+        record("a", DAY, 3);
+        record("b", DAY.plusDays(5), 1);
+
+        // The 7-day window now starts the day after the payments of a
+        LocalDate now = DAY.plusDays(7);
+        List<Map<String, Object>> week = ranking.top(7, 10, now);
+        List<Map<String, Object>> month = ranking.top(30, 10, now);
+
+        assertEquals(1, week.size());
+        assertEntry(week.get(0), "b", 1);
+        assertEquals(2, month.size());
+        assertEntry(month.get(0), "a", 3);
+        assertEntry(month.get(1), "b", 1);
+    }
+
+    @Test
+    void advanceOnTheLastDayOfAWindowKeepsIt() {
+        record("a", DAY, 2);
+
+        assertEntry(ranking.top(7, 10, DAY.plusDays(6)).get(0), "a", 2);
+    }
+
+    @Test
+    void advancePastTheLongestWindowEmptiesTheRanking() {
+        record("a", DAY, 2);
+        record("b", DAY.plusDays(10), 1);
+
+        LocalDate now = DAY.plusDays(40);
+        assertTrue(ranking.top(7, 10, now).isEmpty());
+        assertTrue(ranking.top(30, 10, now).isEmpty());
+    }
+
+    @Test
+    void advanceOverSeveralDaysAtOnceSubtractsEachDay() {
+        record("a", DAY, 1);
+        record("a", DAY.plusDays(1), 1);
+        record("a", DAY.plusDays(2), 1);
+        record("b", DAY.plusDays(3), 2);
+
+        // Days 0 to 2 leave the 7-day window in one step
+        List<Map<String, Object>> week = ranking.top(7, 10, DAY.plusDays(9));
+
+        assertEquals(1, week.size());
+        assertEntry(week.get(0), "b", 2);
+        assertEntry(ranking.top(30, 10, DAY.plusDays(9)).get(0), "a", 3);
+    }
+
+    @Test
+    void paymentsOutsideTheLongestWindowAreIgnored() {
+        LocalDate now = DAY.plusDays(40);
+        ranking.top(30, 10, now);
+
+        record("a", DAY, 1, now);
+
+        assertTrue(ranking.top(30, 10, now).isEmpty());
+    }
+
+    @Test
+    void paymentsDatedInTheFutureCountForToday() {
+        record("a", DAY.plusDays(3), 1, DAY);
+
+        assertEntry(ranking.top(7, 10, DAY).get(0), "a", 1);
+        // ... and leave the window with today
+        assertTrue(ranking.top(7, 10, DAY.plusDays(7)).isEmpty());
+    }
+
+    @Test
+    void paymentsThatAreNotCompletedAreIgnored() {
+        Payment pending = payment("a", DAY);
+        pending.setStatus("PENDING");
+
+        ranking.record(pending, DAY);
+
+        assertTrue(ranking.top(7, 10, DAY).isEmpty());
+    }
+
+    @Test
+    void unsupportedWindowIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ranking.top(14, 10));
+    }
+
+    private void record(String barangayId, LocalDate day, int count) {
+        record(barangayId, day, count, day);
+    }
+
+    private void record(String barangayId, LocalDate day, int count, LocalDate now) {
+        for (int i = 0; i < count; i++) {
+            ranking.record(payment(barangayId, day), now);
+        }
+    }
+
+    private static Payment payment(String barangayId, LocalDate day) {
+        return Payment.builder()
+                .status(DashboardAggregates.COMPLETED)
+                .barangayId(barangayId)
+                .createdAt(Date.from(day.atTime(12, 0).atZone(ZONE).toInstant()))
+                .build();
+    }
+
+    private static void assertEntry(Map<String, Object> entry, String barangayId, long count) {
+        assertEquals(barangayId, entry.get("barangayId"));
+        assertEquals(count, entry.get("count"));
+    }
+}
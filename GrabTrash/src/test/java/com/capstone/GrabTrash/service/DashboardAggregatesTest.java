@@ -0,0 +1,203 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.FieldValue;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.Transaction;
+import com.google.cloud.firestore.TransactionOptions;
+import com.google.cloud.firestore.WriteBatch;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DashboardAggregatesTest {
+
+    private static final String REBUILD_LEASE = "dashboard-aggregates-rebuild";
+
+    private Firestore firestore;
+    private Transaction transaction;
+    private WriteBatch batch;
+    private InMemoryLeaseStore leaseStore;
+    private DashboardAggregates aggregates;
+    private final Map<String, DocumentReference> shardRefs = new HashMap<>();
+    private final Map<String, DocumentReference> barangayRefs = new HashMap<>();
+    // Increments written by the rebuild, by document ID
+    private final Map<String, Map<String, Object>> written = new HashMap<>();
+    private final List<String> deleted = new ArrayList<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        transaction = mock(Transaction.class);
+        when(firestore.runTransaction(any(Transaction.Function.class), any(TransactionOptions.class))).thenAnswer(invocation ->
+            ApiFutures.immediateFuture(((Transaction.Function<Object>) invocation.getArgument(0)).updateCallback(transaction)));
+
+        batch = mock(WriteBatch.class);
+        when(firestore.batch()).thenReturn(batch);
+        when(batch.set(any(DocumentReference.class), anyMap(), any(SetOptions.class))).thenAnswer(invocation -> {
+            written.put(((DocumentReference) invocation.getArgument(0)).getId(), invocation.getArgument(1));
+            return batch;
+        });
+        when(batch.delete(any(DocumentReference.class))).thenAnswer(invocation -> {
+            deleted.add(((DocumentReference) invocation.getArgument(0)).getId());
+            return batch;
+        });
+        when(batch.commit()).thenReturn(ApiFutures.immediateFuture(List.of()));
+        when(firestore.collection("indexStatus").document("dashboardAggregates").set(anyMap()))
+            .thenReturn(ApiFutures.immediateFuture(null));
+
+        leaseStore = new InMemoryLeaseStore();
+        aggregates = new DashboardAggregates(firestore, mock(FirestoreAsync.class), leaseStore, new NodeIdentity("node-a"), 4, true);
+    }
+
+    @Test
+    void rebuildWritesOnlyTheDifferenceAsIncrements() throws Exception {
+        completedPayments(payment("A", 100.0), payment("A", 200.0), payment("B", 300.0), payment(null, 50.0));
+        storedShards(shard("0", 1, 100.0), shard("3", 1, 200.0), shard("legacy", 5, 999.0));
+        storedBarangays(shard("A", 1, 100.0), shard("C", 1, 40.0));
+
+        Map<String, Object> result = aggregates.rebuild();
+
+        assertEquals(4L, result.get("orderCount"));
+        assertEquals(650.0, result.get("revenue"));
+        assertEquals(2L, result.get("orderCountAdjustment"));
+        assertEquals(FieldValue.increment(2L), written.get("0").get("orderCount"));
+        assertEquals(FieldValue.increment(350.0), written.get("0").get("revenue"));
+        // A shard outside the configured count is dropped rather than adjusted
+        assertEquals(List.of("legacy"), deleted);
+        assertEquals(FieldValue.increment(1L), written.get("A").get("count"));
+        assertEquals(FieldValue.increment(200.0), written.get("A").get("revenue"));
+        assertEquals(FieldValue.increment(1L), written.get("B").get("count"));
+        // A barangay without completed payments is brought to zero, not deleted
+        assertEquals(FieldValue.increment(-1L), written.get("C").get("count"));
+        assertEquals(FieldValue.increment(-40.0), written.get("C").get("revenue"));
+        assertTrue(aggregates.isComplete());
+        assertTrue(leaseStore.list(REBUILD_LEASE).isEmpty());
+    }
+
+    @Test
+    void rebuildOfConsistentAggregatesWritesNothing() throws Exception {
+        completedPayments(payment("A", 100.0), payment("A", 200.0));
+        storedShards(shard("0", 1, 100.0), shard("1", 1, 200.0));
+        storedBarangays(shard("A", 2, 300.0));
+
+        aggregates.rebuild();
+
+        assertTrue(written.isEmpty());
+        verify(batch, never()).commit();
+    }
+
+    @Test
+    void rebuildIsRefusedWhileAnotherInstanceRunsOne() {
+        leaseStore.tryAcquire(REBUILD_LEASE, "node-b", 60_000);
+
+        assertThrows(IllegalStateException.class, () -> aggregates.rebuild());
+
+        verify(firestore, never()).batch();
+    }
+
+    @Test
+    void consistencyCheckReportsDrift() throws Exception {
+        completedPayments(payment("A", 100.0), payment("B", 200.0));
+        storedShards(shard("0", 3, 300.0));
+        storedBarangays(shard("A", 1, 100.0), shard("C", 2, 200.0));
+
+        Map<String, Object> report = aggregates.checkConsistency();
+
+        assertFalse((Boolean) report.get("consistent"));
+        assertEquals(2L, report.get("expectedOrderCount"));
+        assertEquals(3L, report.get("storedOrderCount"));
+        Map<?, ?> mismatches = (Map<?, ?>) report.get("barangayMismatches");
+        assertEquals(Map.of("expected", 1L, "stored", 0L), mismatches.get("B"));
+        assertEquals(Map.of("expected", 0L, "stored", 2L), mismatches.get("C"));
+        assertFalse(mismatches.containsKey("A"));
+    }
+
+    @Test
+    void onlyCompletedPaymentsCount() {
+        Payment payment = payment("A", 100.0);
+        assertTrue(DashboardAggregates.counts(payment));
+        payment.setStatus("PENDING");
+        assertFalse(DashboardAggregates.counts(payment));
+        assertFalse(DashboardAggregates.counts(null));
+    }
+
+    private void completedPayments(Payment... payments) {
+        CollectionReference collection = mock(CollectionReference.class);
+        Query completed = mock(Query.class);
+        when(firestore.collection("payments")).thenReturn(collection);
+        when(collection.whereEqualTo("status", "COMPLETED")).thenReturn(completed);
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.toObjects(Payment.class)).thenReturn(List.of(payments));
+        when(transaction.get(completed)).thenReturn(ApiFutures.immediateFuture(snapshot));
+    }
+
+    private void storedShards(QueryDocumentSnapshot... documents) {
+        stored("shards", shardRefs, documents);
+    }
+
+    private void storedBarangays(QueryDocumentSnapshot... documents) {
+        stored("barangays", barangayRefs, documents);
+    }
+
+    private void stored(String collectionName, Map<String, DocumentReference> refs, QueryDocumentSnapshot... documents) {
+        CollectionReference collection = mock(CollectionReference.class);
+        when(firestore.collection("dashboardAggregates").document("payments").collection(collectionName)).thenReturn(collection);
+        when(collection.document(anyString())).thenAnswer(invocation -> refs.computeIfAbsent(invocation.getArgument(0), this::reference));
+        for (QueryDocumentSnapshot document : documents) {
+            DocumentReference reference = refs.computeIfAbsent(document.getId(), this::reference);
+            when(document.getReference()).thenReturn(reference);
+        }
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+        when(transaction.get(collection)).thenReturn(ApiFutures.immediateFuture(snapshot));
+    }
+
+    private DocumentReference reference(String id) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getId()).thenReturn(id);
+        return reference;
+    }
+
+    private static QueryDocumentSnapshot shard(String id, long count, double revenue) {
+        QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+        when(document.getId()).thenReturn(id);
+        when(document.getLong("orderCount")).thenReturn(count);
+        when(document.getLong("count")).thenReturn(count);
+        when(document.getDouble("revenue")).thenReturn(revenue);
+        return document;
+    }
+
+    private static Payment payment(String barangayId, double totalAmount) {
+        Payment payment = new Payment();
+        payment.setStatus("COMPLETED");
+        payment.setBarangayId(barangayId);
+        payment.setTotalAmount(totalAmount);
+        return payment;
+    }
+}
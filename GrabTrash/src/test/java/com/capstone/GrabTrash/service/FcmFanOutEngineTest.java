@@ -0,0 +1,176 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FcmFanOutEngineTest {
+
+    private static final FcmPayload PAYLOAD = new FcmPayload("Title", "Body", Map.of("type", "test"));
+
+    private FcmFanOutEngine engine;
+
+    @AfterEach
+    void tearDown() {
+        if (engine != null) {
+            engine.cleanup();
+        }
+    }
+
+    @Test
+    void splitsTokensIntoBatchesAndDeliversEachOnce() throws Exception {
+        StubFcmGateway gateway = new StubFcmGateway(0, 0.0);
+        engine = new FcmFanOutEngine(gateway, 2, 3, 3, 1, 1);
+
+        List<String> tokens = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            tokens.add("token-" + i);
+        }
+        FcmFanOutResult result = engine.send(tokens, PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertEquals(7, result.getTokenCount());
+        assertEquals(7, result.getSuccessCount());
+        assertEquals(3, gateway.getBatchCount());
+        for (FcmFanOutResult.TokenOutcome outcome : result.getOutcomes().values()) {
+            assertEquals(1, outcome.getAttempts());
+        }
+    }
+
+    @Test
+    void dropsBlankAndDuplicateTokens() throws Exception {
+        StubFcmGateway gateway = new StubFcmGateway(0, 0.0);
+        engine = new FcmFanOutEngine(gateway, 1, 500, 3, 1, 1);
+
+        FcmFanOutResult result = engine.send(Arrays.asList("a", " a ", "", null, "b"), PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getTokenCount());
+        assertEquals(1, gateway.getBatchCount());
+    }
+
+    @Test
+    void noTokensCompletesWithoutSending() throws Exception {
+        StubFcmGateway gateway = new StubFcmGateway(0, 0.0);
+        engine = new FcmFanOutEngine(gateway, 1, 500, 3, 1, 1);
+
+        FcmFanOutResult result = engine.send(Collections.emptyList(), PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertEquals(0, result.getTokenCount());
+        assertEquals(0, gateway.getBatchCount());
+    }
+
+    @Test
+    void retriesOnlyTheTransientFailures() throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway(1);
+        engine = new FcmFanOutEngine(gateway, 1, 500, 3, 1, 1);
+
+        FcmFanOutResult result = engine.send(List.of("flaky", "ok", "dead"), PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertTrue(result.getOutcomes().get("flaky").isDelivered());
+        assertEquals(2, result.getOutcomes().get("flaky").getAttempts());
+        assertEquals(1, result.getOutcomes().get("ok").getAttempts());
+        assertFalse(result.getOutcomes().get("dead").isDelivered());
+        assertEquals("UNREGISTERED", result.getOutcomes().get("dead").getErrorCode());
+        assertEquals(1, result.getOutcomes().get("dead").getAttempts());
+        // The retry batch holds only the flaky token
+        assertEquals(List.of(List.of("flaky", "ok", "dead"), List.of("flaky")), gateway.batches);
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws Exception {
+        ScriptedGateway gateway = new ScriptedGateway(Integer.MAX_VALUE);
+        engine = new FcmFanOutEngine(gateway, 1, 500, 3, 1, 1);
+
+        FcmFanOutResult result = engine.send(List.of("flaky"), PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        FcmFanOutResult.TokenOutcome outcome = result.getOutcomes().get("flaky");
+        assertFalse(outcome.isDelivered());
+        assertEquals("UNAVAILABLE", outcome.getErrorCode());
+        assertEquals(3, outcome.getAttempts());
+        assertEquals(3, gateway.batches.size());
+    }
+
+    @Test
+    void throwingGatewayFailsTheBatchInsteadOfLosingIt() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        FcmGateway gateway = new ScriptedGateway(0) {
+            @Override
+            public List<FcmSendResult> sendEach(List<String> tokens, FcmPayload payload) {
+                calls.incrementAndGet();
+                throw new IllegalStateException("boom");
+            }
+        };
+        engine = new FcmFanOutEngine(gateway, 1, 500, 2, 1, 1);
+
+        FcmFanOutResult result = engine.send(List.of("a", "b"), PAYLOAD).get(5, TimeUnit.SECONDS);
+
+        assertEquals(2, result.getFailureCount());
+        // An unexpected error is treated as transient, so it is retried up to the limit
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void backoffStaysBetweenHalfAndAllOfTheCappedDelay() {
+        for (int attempt = 1; attempt <= 30; attempt++) {
+            long expected = Math.min(1000L << Math.min(attempt - 1, 20), 30_000L);
+            long delay = FcmFanOutEngine.backoffMillis(attempt, 1000, 30_000);
+            assertTrue(delay >= expected / 2 && delay <= expected, "attempt " + attempt + ": " + delay);
+        }
+    }
+
+    /**
+     * "flaky" fails with UNAVAILABLE on its first flakyFailures sends, "dead" is always unregistered,
+     * anything else is delivered
+     */
+    private static class ScriptedGateway implements FcmGateway {
+
+        private final int flakyFailures;
+        private final AtomicInteger flakySends = new AtomicInteger();
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<>());
+
+        ScriptedGateway(int flakyFailures) {
+            this.flakyFailures = flakyFailures;
+        }
+
+        @Override
+        public List<FcmSendResult> sendEach(List<String> tokens, FcmPayload payload) {
+            batches.add(List.copyOf(tokens));
+            List<FcmSendResult> results = new ArrayList<>();
+            for (String token : tokens) {
+                if ("flaky".equals(token) && flakySends.incrementAndGet() <= flakyFailures) {
+                    results.add(FcmSendResult.failure(token, "UNAVAILABLE", "try again"));
+                } else if ("dead".equals(token)) {
+                    results.add(FcmSendResult.failure(token, "UNREGISTERED", "gone"));
+                } else {
+                    results.add(FcmSendResult.success(token, "message-" + token));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public FcmSendResult sendToTopic(String topic, FcmPayload payload) {
+            return FcmSendResult.success(topic, "message-" + topic);
+        }
+
+        @Override
+        public int subscribeToTopic(List<String> tokens, String topic) {
+            return tokens.size();
+        }
+
+        @Override
+        public int unsubscribeFromTopic(List<String> tokens, String topic) {
+            return tokens.size();
+        }
+    }
+}
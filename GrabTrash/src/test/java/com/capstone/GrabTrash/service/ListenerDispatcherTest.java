@@ -0,0 +1,122 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ListenerDispatcherTest {
+
+    private ListenerDispatcher dispatcher;
+
+    @AfterEach
+    void tearDown() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void changesToOneDocumentRunInOrder() throws Exception {
+        dispatcher = new ListenerDispatcher("test", 4, 1000);
+        List<Integer> seen = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch done = new CountDownLatch(200);
+
+        for (int i = 0; i < 200; i++) {
+            int change = i;
+            dispatcher.submit("p1", null, () -> {
+                seen.add(change);
+                done.countDown();
+            });
+        }
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < 200; i++) {
+            assertEquals(i, seen.get(i));
+        }
+    }
+
+    @Test
+    void slowDocumentDoesNotHoldUpOthersOnAnotherLane() throws Exception {
+        dispatcher = new ListenerDispatcher("test", 2, 10);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch other = new CountDownLatch(1);
+        String slowKey = keyOnLane(0, 2);
+        String otherKey = keyOnLane(1, 2);
+
+        dispatcher.submit(slowKey, null, () -> await(release));
+        dispatcher.submit(otherKey, null, other::countDown);
+
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    void fullDispatcherHoldsBackTheListener() throws Exception {
+        dispatcher = new ListenerDispatcher("test", 1, 1);
+        CountDownLatch release = new CountDownLatch(1);
+        dispatcher.submit("p1", null, () -> await(release));
+
+        CompletableFuture<Void> second = CompletableFuture.runAsync(() -> dispatcher.submit("p2", null, () -> { }));
+
+        assertThrows(TimeoutException.class, () -> second.get(200, TimeUnit.MILLISECONDS));
+        release.countDown();
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(1L, dispatcher.getMetrics().get("backpressureWaits"));
+    }
+
+    @Test
+    void failedTaskIsCountedAndFreesItsSlot() throws Exception {
+        dispatcher = new ListenerDispatcher("test", 1, 1);
+        dispatcher.submit("p1", null, () -> {
+            throw new IllegalStateException("boom");
+        });
+        CountDownLatch next = new CountDownLatch(1);
+
+        dispatcher.submit("p2", null, next::countDown);
+
+        assertTrue(next.await(5, TimeUnit.SECONDS));
+        Map<String, Object> metrics = dispatcher.getMetrics();
+        assertEquals(1L, metrics.get("failed"));
+    }
+
+    @Test
+    void lagIsMeasuredFromTheDocumentUpdate() throws Exception {
+        dispatcher = new ListenerDispatcher("test", 1, 10);
+        CountDownLatch done = new CountDownLatch(1);
+
+        dispatcher.submit("p1", new Date(System.currentTimeMillis() - 1000), done::countDown);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Map<String, Object> metrics = dispatcher.getMetrics();
+        assertTrue((Long) metrics.get("maxLagMillis") >= 1000);
+        assertTrue((Long) metrics.get("lastLagMillis") >= 1000);
+    }
+
+    private static String keyOnLane(int lane, int lanes) {
+        for (int i = 0; ; i++) {
+            String key = "payment-" + i;
+            if (Math.floorMod(key.hashCode(), lanes) == lane) {
+                return key;
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
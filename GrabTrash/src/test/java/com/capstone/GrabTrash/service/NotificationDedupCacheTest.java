@@ -0,0 +1,131 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationDedupCacheTest {
+
+    private static final String KEY = "payment-p1-accepted";
+
+    private final Firestore firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+
+    @Test
+    void keyIsClaimedOnceUntilReleased() {
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 60_000, false);
+
+        assertTrue(cache.claim(KEY));
+        assertFalse(cache.claim(KEY));
+
+        cache.release(KEY);
+        assertTrue(cache.claim(KEY));
+    }
+
+    @Test
+    void keyCanBeClaimedAgainAfterItsTtl() throws Exception {
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 50, false);
+        assertTrue(cache.claim(KEY));
+
+        Thread.sleep(100);
+
+        assertTrue(cache.claim(KEY));
+    }
+
+    @Test
+    void cacheStaysWithinItsSize() {
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 4, 60_000, false);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(cache.claim("payment-" + i + "-accepted"));
+        }
+
+        Map<String, Object> metrics = cache.getMetrics();
+        assertTrue((Integer) metrics.get("size") <= 4);
+        assertTrue((Long) metrics.get("evictions") > 0);
+        assertEquals(10L, metrics.get("misses"));
+    }
+
+    @Test
+    void keyClaimedByAnotherInstanceIsNotClaimedAgain() throws Exception {
+        DocumentReference document = persistedKey();
+        when(document.create(anyMap())).thenReturn(alreadyExists());
+        DocumentSnapshot existing = existing(new Date(System.currentTimeMillis() + 60_000));
+        when(document.get()).thenReturn(ApiFutures.immediateFuture(existing));
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 60_000, true);
+
+        assertFalse(cache.claim(KEY));
+        assertEquals(1L, cache.getMetrics().get("persistedHits"));
+    }
+
+    @Test
+    void expiredClaimOfAnotherInstanceIsTakenOver() throws Exception {
+        DocumentReference document = persistedKey();
+        when(document.create(anyMap())).thenReturn(alreadyExists());
+        DocumentSnapshot existing = existing(new Date(System.currentTimeMillis() - 1000));
+        when(document.get()).thenReturn(ApiFutures.immediateFuture(existing));
+        when(document.set(anyMap())).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 60_000, true);
+
+        assertTrue(cache.claim(KEY));
+        verify(document).set(anyMap());
+    }
+
+    @Test
+    void unreachableStoreFavoursSendingOverLosingTheNotification() {
+        DocumentReference document = persistedKey();
+        when(document.create(anyMap())).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+        when(document.get()).thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 60_000, true);
+
+        assertTrue(cache.claim(KEY));
+        // The local claim still holds on this instance
+        assertFalse(cache.claim(KEY));
+    }
+
+    @Test
+    void releaseDeletesThePersistedClaim() {
+        DocumentReference document = persistedKey();
+        when(document.create(anyMap())).thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+        NotificationDedupCache cache = new NotificationDedupCache(firestore, 100, 60_000, true);
+        assertTrue(cache.claim(KEY));
+
+        cache.release(KEY);
+
+        verify(document).delete();
+    }
+
+    private DocumentReference persistedKey() {
+        DocumentReference document = mock(DocumentReference.class);
+        when(firestore.collection("notificationDedup").document(KEY)).thenReturn(document);
+        return document;
+    }
+
+    private static ApiFuture<WriteResult> alreadyExists() {
+        return ApiFutures.immediateFailedFuture(new AlreadyExistsException("exists", null, mock(StatusCode.class), false));
+    }
+
+    private static DocumentSnapshot existing(Date expireAt) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(true);
+        when(snapshot.getDate("expireAt")).thenReturn(expireAt);
+        return snapshot;
+    }
+}
@@ -0,0 +1,185 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NotificationOutboxTest {
+
+    private static final long LEASE_MILLIS = 60_000L;
+
+    private InMemoryNotificationOutboxStore store;
+    private NotificationService notificationService;
+    private NotificationOutbox outbox;
+
+    @BeforeEach
+    void setUp() {
+        store = new InMemoryNotificationOutboxStore();
+        notificationService = mock(NotificationService.class);
+        // One worker, two attempts, and (almost) no backoff so retries happen within the test
+        outbox = new NotificationOutbox(store, notificationService, mock(UserIdentifierIndex.class),
+                1, 10, 2, 100, LEASE_MILLIS, 0, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        outbox.cleanup();
+    }
+
+    @Test
+    void claimLeasesDueEntriesOldestFirst() {
+        store.save(entry("second", new Date(2000), null));
+        store.save(entry("first", new Date(1000), null));
+
+        List<NotificationOutboxEntry> claimed = store.claimDue(10, LEASE_MILLIS);
+
+        assertEquals(2, claimed.size());
+        assertEquals("first", claimed.get(0).getId());
+        assertEquals("second", claimed.get(1).getId());
+        for (NotificationOutboxEntry entry : claimed) {
+            assertEquals(NotificationOutboxEntry.PROCESSING, entry.getStatus());
+            assertTrue(entry.getLeaseExpiresAt().after(new Date()));
+        }
+    }
+
+    @Test
+    void claimRespectsTheLimit() {
+        store.save(entry("first", new Date(1000), null));
+        store.save(entry("second", new Date(2000), null));
+
+        assertEquals(1, store.claimDue(1, LEASE_MILLIS).size());
+        assertEquals(1, store.claimDue(1, LEASE_MILLIS).size());
+        assertTrue(store.claimDue(1, LEASE_MILLIS).isEmpty());
+    }
+
+    @Test
+    void leasedEntryIsNotClaimedAgainUntilTheLeaseExpires() {
+        store.save(entry("held", new Date(1000), null));
+        store.save(entry("abandoned", new Date(2000), null));
+
+        assertEquals(1, store.claimDue(1, LEASE_MILLIS).size());
+        // A worker that claims with a lease already over behaves like one that died mid-send
+        assertEquals(1, store.claimDue(1, -1).size());
+
+        List<NotificationOutboxEntry> reclaimed = store.claimDue(10, LEASE_MILLIS);
+        assertEquals(1, reclaimed.size());
+        assertEquals("abandoned", reclaimed.get(0).getId());
+    }
+
+    @Test
+    void pendingEntryIsNotClaimedBeforeItsNextAttempt() {
+        store.save(entry("later", new Date(1000), new Date(System.currentTimeMillis() + 60_000L)));
+
+        assertTrue(store.claimDue(10, LEASE_MILLIS).isEmpty());
+    }
+
+    @Test
+    void transientFailureIsRetriedUntilDelivered() throws Exception {
+        when(notificationService.deliverToUser(eq("user-1"), any()))
+                .thenReturn(FcmSendResult.failure("token", "UNAVAILABLE", "try again"))
+                .thenReturn(FcmSendResult.success("token", "message-1"));
+
+        outbox.enqueue(outbox.toUser("payment-1-accepted", "user-1", "Title", "Body", Map.of()));
+
+        awaitUntil(() -> store.getEntries().isEmpty());
+        verify(notificationService, times(2)).deliverToUser(eq("user-1"), any());
+        assertTrue(store.isDelivered("payment-1-accepted"));
+        Map<String, Object> metrics = outbox.getMetrics();
+        assertEquals(1L, metrics.get("sent"));
+        assertEquals(1L, metrics.get("retried"));
+    }
+
+    @Test
+    void entryOutOfAttemptsIsDeadLettered() throws Exception {
+        when(notificationService.deliverToUser(eq("user-1"), any()))
+                .thenReturn(FcmSendResult.failure("token", "UNAVAILABLE", "still down"));
+
+        outbox.enqueue(outbox.toUser("payment-2-accepted", "user-1", "Title", "Body", Map.of()));
+
+        awaitUntil(() -> !store.getEntries().isEmpty()
+                && NotificationOutboxEntry.DEAD.equals(store.getEntries().get(0).getStatus()));
+        NotificationOutboxEntry dead = store.getEntries().get(0);
+        assertEquals(2, dead.getAttempts());
+        assertEquals("UNAVAILABLE: still down", dead.getLastError());
+        verify(notificationService, times(2)).deliverToUser(eq("user-1"), any());
+        assertEquals(false, store.isDelivered("payment-2-accepted"));
+    }
+
+    @Test
+    void permanentFailureIsDeadLetteredWithoutRetry() throws Exception {
+        when(notificationService.deliverToUser(eq("user-1"), any()))
+                .thenReturn(FcmSendResult.failure("token", "THIRD_PARTY_AUTH_ERROR", "bad credentials"));
+
+        outbox.enqueue(outbox.toUser(null, "user-1", "Title", "Body", Map.of()));
+
+        awaitUntil(() -> !store.getEntries().isEmpty()
+                && NotificationOutboxEntry.DEAD.equals(store.getEntries().get(0).getStatus()));
+        assertEquals(1, store.getEntries().get(0).getAttempts());
+        verify(notificationService, times(1)).deliverToUser(eq("user-1"), any());
+    }
+
+    @Test
+    void alreadyDeliveredKeyIsNotSentAgain() throws Exception {
+        when(notificationService.deliverToUser(eq("user-1"), any()))
+                .thenReturn(FcmSendResult.success("token", "message-1"));
+        outbox.enqueue(outbox.toUser("payment-3-accepted", "user-1", "Title", "Body", Map.of()));
+        awaitUntil(() -> store.isDelivered("payment-3-accepted") && store.getEntries().isEmpty());
+
+        outbox.enqueue(outbox.toUser("payment-3-accepted", "user-1", "Title", "Body", Map.of()));
+
+        awaitUntil(() -> store.getEntries().isEmpty());
+        verify(notificationService, times(1)).deliverToUser(eq("user-1"), any());
+        assertEquals(1L, outbox.getMetrics().get("duplicates"));
+    }
+
+    @Test
+    void missingRecipientIsDeadLetteredWithoutSending() throws Exception {
+        outbox.enqueue(outbox.toEmail(null, "nobody@example.com", "Title", "Body", Map.of()));
+
+        awaitUntil(() -> !store.getEntries().isEmpty()
+                && NotificationOutboxEntry.DEAD.equals(store.getEntries().get(0).getStatus()));
+        assertEquals("RECIPIENT_NOT_FOUND", store.getEntries().get(0).getLastError());
+        verify(notificationService, never()).deliverToUser(any(), any());
+    }
+
+    private static NotificationOutboxEntry entry(String id, Date createdAt, Date nextAttemptAt) {
+        return NotificationOutboxEntry.builder()
+                .id(id)
+                .recipientUserId("user-1")
+                .status(NotificationOutboxEntry.PENDING)
+                .attempts(0)
+                .nextAttemptAt(nextAttemptAt)
+                .createdAt(createdAt)
+                .build();
+    }
+
+    /**
+     * The outbox is only started by the application, so poll it here until the condition holds
+     */
+    private void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new AssertionError("Timed out waiting for the outbox");
+            }
+            outbox.wakeUp();
+            Thread.sleep(20);
+        }
+    }
+}
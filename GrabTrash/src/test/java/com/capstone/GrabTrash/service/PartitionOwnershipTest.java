@@ -0,0 +1,164 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PartitionOwnershipTest {
+
+    private static final String GROUP = "payments";
+    private static final int PARTITIONS = 4;
+    private static final long LEASE_MILLIS = 60_000;
+
+    private InMemoryLeaseStore leaseStore;
+
+    @BeforeEach
+    void setUp() {
+        leaseStore = new InMemoryLeaseStore();
+    }
+
+    @Test
+    void singleInstanceOwnsEveryPartition() {
+        RecordingListener listener = new RecordingListener();
+        PartitionOwnership a = ownership("node-a", LEASE_MILLIS, listener);
+
+        a.refresh();
+
+        assertEquals(Set.of(0, 1, 2, 3), owned(a));
+        assertEquals(List.of(Set.of(0, 1, 2, 3)), listener.acquired);
+        assertEquals(1, a.getMetrics().get("members"));
+    }
+
+    @Test
+    void joiningInstanceTakesOverItsRangeAfterTheHandover() {
+        RecordingListener aListener = new RecordingListener();
+        RecordingListener bListener = new RecordingListener();
+        PartitionOwnership a = ownership("node-a", LEASE_MILLIS, aListener);
+        PartitionOwnership b = ownership("node-b", LEASE_MILLIS, bListener);
+        a.refresh();
+
+        // b's range is still leased to a, so b waits rather than sharing it
+        b.refresh();
+        assertEquals(Set.of(), owned(b));
+        assertDisjoint(a, b);
+
+        a.refresh();
+        assertEquals(Set.of(0, 1), owned(a));
+        assertEquals(List.of(2, 3), aListener.released);
+
+        b.refresh();
+        assertEquals(Set.of(2, 3), owned(b));
+        assertEquals(List.of(Set.of(2, 3)), bListener.acquired);
+        assertDisjoint(a, b);
+    }
+
+    @Test
+    void deadInstancesRangeIsTakenOverOnceItsLeasesRunOut() throws Exception {
+        PartitionOwnership a = ownership("node-a", 200, new RecordingListener());
+        PartitionOwnership b = ownership("node-b", 200, new RecordingListener());
+        a.refresh();
+        b.refresh();
+        a.refresh();
+        b.refresh();
+        assertEquals(Set.of(2, 3), owned(b));
+
+        // b stops heartbeating
+        Thread.sleep(300);
+        a.refresh();
+
+        assertEquals(Set.of(0, 1, 2, 3), owned(a));
+        // The first member deleted b's expired member lease
+        assertEquals(0, leaseStore.deleteExpired(GROUP + "-member-"));
+        assertEquals(1, leaseStore.list(GROUP + "-member-").size());
+    }
+
+    @Test
+    void leavingInstanceHandsOverWithoutWaitingForExpiry() {
+        PartitionOwnership a = ownership("node-a", LEASE_MILLIS, new RecordingListener());
+        PartitionOwnership b = ownership("node-b", LEASE_MILLIS, new RecordingListener());
+        a.refresh();
+        b.refresh();
+        a.refresh();
+        b.refresh();
+
+        b.releaseAll();
+        a.refresh();
+
+        assertEquals(Set.of(0, 1, 2, 3), owned(a));
+        assertEquals(Set.of(), owned(b));
+    }
+
+    @Test
+    void partitionLeasedToSomeoneElseIsDropped() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        PartitionOwnership a = ownership("node-a", 200, listener);
+        a.refresh();
+
+        // a misses its renewals and another node takes partition 3 meanwhile
+        Thread.sleep(300);
+        assertTrue(leaseStore.tryAcquire(GROUP + "-partition-" + PARTITIONS + "-3", "node-z", LEASE_MILLIS));
+        a.refresh();
+
+        assertFalse(a.owns(3));
+        assertEquals(List.of(3), listener.released);
+    }
+
+    @Test
+    void keysMapToStablePartitionsInRange() {
+        PartitionOwnership a = ownership("node-a", LEASE_MILLIS, new RecordingListener());
+        Set<Integer> seen = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            // Payment IDs are random UUIDs
+            String key = UUID.randomUUID().toString();
+            int partition = a.partitionOf(key);
+            assertTrue(partition >= 0 && partition < PARTITIONS);
+            assertEquals(partition, a.partitionOf(key));
+            seen.add(partition);
+        }
+        assertEquals(Set.of(0, 1, 2, 3), seen);
+    }
+
+    private PartitionOwnership ownership(String nodeId, long leaseMillis, RecordingListener listener) {
+        return new PartitionOwnership(GROUP, PARTITIONS, leaseStore, nodeId, leaseMillis, listener);
+    }
+
+    private static Set<Integer> owned(PartitionOwnership ownership) {
+        Set<Integer> owned = new TreeSet<>();
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            if (ownership.owns(partition)) {
+                owned.add(partition);
+            }
+        }
+        return owned;
+    }
+
+    private static void assertDisjoint(PartitionOwnership a, PartitionOwnership b) {
+        for (int partition = 0; partition < PARTITIONS; partition++) {
+            assertFalse(a.owns(partition) && b.owns(partition), "partition " + partition + " owned twice");
+        }
+    }
+
+    private static class RecordingListener implements PartitionOwnership.Listener {
+        final List<Set<Integer>> acquired = new ArrayList<>();
+        final List<Integer> released = new ArrayList<>();
+
+        @Override
+        public void acquired(Set<Integer> partitions) {
+            acquired.add(new TreeSet<>(partitions));
+        }
+
+        @Override
+        public void released(int partition) {
+            released.add(partition);
+        }
+    }
+}
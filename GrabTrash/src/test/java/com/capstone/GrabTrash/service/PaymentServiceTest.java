@@ -0,0 +1,216 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.NotificationOutboxEntry;
+import com.capstone.GrabTrash.model.Payment;
+import com.capstone.GrabTrash.model.Truck;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentServiceTest {
+
+    private static final String PAYMENT_ID = "pay-1";
+
+    private Firestore firestore;
+    private Transaction transaction;
+    private DocumentReference paymentRef;
+    private NotificationOutbox notificationOutbox;
+    private NotificationDedupCache notificationDedup;
+    private NotificationOutboxEntry accepted;
+    private DashboardAggregates dashboardAggregates;
+    private BarangayRanking barangayRanking;
+    private AnalyticsRollups analyticsRollups;
+    private DriverDailyStats driverDailyStats;
+    private CurrentUserContext currentUserContext;
+    private PaymentService paymentService;
+    // Status the payment has when the transaction reads it, which a concurrent update may have changed
+    private String committedStatus;
+    private String committedJobOrderStatus;
+    private Date committedJobCompletedAt;
+    private boolean commitFails;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        transaction = mock(Transaction.class);
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Object result = ((Transaction.Function<Object>) invocation.getArgument(0)).updateCallback(transaction);
+            return commitFails
+                ? ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable"))
+                : ApiFutures.immediateFuture(result);
+        });
+        notificationOutbox = mock(NotificationOutbox.class);
+        accepted = new NotificationOutboxEntry();
+        when(notificationOutbox.toEmail(eq(PaymentService.acceptedNotificationKey(PAYMENT_ID)), eq("ana@example.com"),
+            anyString(), anyString(), anyMap())).thenReturn(accepted);
+        notificationDedup = mock(NotificationDedupCache.class);
+        when(notificationDedup.claim(anyString())).thenReturn(true);
+        dashboardAggregates = mock(DashboardAggregates.class);
+        barangayRanking = mock(BarangayRanking.class);
+        analyticsRollups = mock(AnalyticsRollups.class);
+        driverDailyStats = mock(DriverDailyStats.class);
+        currentUserContext = mock(CurrentUserContext.class);
+        when(currentUserContext.getEmail()).thenReturn("ana@example.com");
+        paymentService = new PaymentService(firestore, mock(UserService.class), mock(TruckService.class),
+            mock(TruckAssignmentIndex.class), mock(TruckReservationService.class), mock(FirestoreAsync.class),
+            currentUserContext, notificationOutbox, notificationDedup, mock(PaymentStatusListener.class),
+            dashboardAggregates, mock(AggregateQueries.class), analyticsRollups,
+            barangayRanking, driverDailyStats);
+    }
+
+    @Test
+    void acceptedNotificationIsCommittedWithTheStatusChange() throws Exception {
+        storedPayment("PENDING", "Pending");
+
+        paymentService.updateJobOrderStatus(PAYMENT_ID, "accepted");
+
+        InOrder order = inOrder(notificationOutbox, transaction);
+        order.verify(notificationOutbox).stage(transaction, accepted);
+        order.verify(notificationOutbox).wakeUp();
+        verify(transaction).set(eq(paymentRef), any(Payment.class));
+    }
+
+    @Test
+    void failedCommitGivesTheNotificationBack() throws Exception {
+        storedPayment("PENDING", "Pending");
+        commitFails = true;
+
+        assertThrows(RuntimeException.class, () -> paymentService.updateJobOrderStatus(PAYMENT_ID, "Accepted"));
+
+        verify(notificationDedup).release(PaymentService.acceptedNotificationKey(PAYMENT_ID));
+        verify(notificationOutbox, never()).wakeUp();
+    }
+
+    @Test
+    void alreadyAcceptedJobIsNotAnnouncedAgain() throws Exception {
+        storedPayment("PENDING", "Accepted");
+
+        paymentService.updateJobOrderStatus(PAYMENT_ID, "Accepted");
+
+        verify(notificationOutbox, never()).stage(any(), any());
+        verify(notificationOutbox, never()).wakeUp();
+    }
+
+    @Test
+    void releasingTheTruckCountsThePaymentOnce() throws Exception {
+        storedPayment("PENDING", "In-Progress");
+
+        paymentService.releaseTruckFromPayment(PAYMENT_ID);
+
+        verify(dashboardAggregates).recordCompleted(eq(transaction), any(Payment.class));
+        verify(barangayRanking).record(any(Payment.class));
+    }
+
+    @Test
+    void paymentCompletedByAConcurrentUpdateIsNotCountedAgain() throws Exception {
+        storedPayment("PENDING", "In-Progress");
+        // Another update completed the payment after this one first read it
+        committedStatus = "COMPLETED";
+
+        paymentService.releaseTruckFromPayment(PAYMENT_ID);
+
+        verify(dashboardAggregates, never()).recordCompleted(any(), any());
+        verify(barangayRanking, never()).record(any(Payment.class));
+        verify(transaction).set(eq(paymentRef), any(Payment.class));
+    }
+
+    @Test
+    void rankingIsLeftAloneWhenTheCompletionDoesNotCommit() throws Exception {
+        storedPayment("PENDING", "In-Progress");
+        commitFails = true;
+
+        assertThrows(RuntimeException.class, () -> paymentService.updateJobOrderStatus(PAYMENT_ID, "Completed"));
+
+        verify(barangayRanking, never()).record(any(Payment.class));
+    }
+
+    @Test
+    void customerCompletingAJobCountsItOnce() throws Exception {
+        storedPayment("PENDING", "In-Progress");
+
+        paymentService.updateJobOrderStatusByCustomer(PAYMENT_ID, "Completed");
+
+        verify(analyticsRollups).recordJobCompleted(eq(transaction), any(Payment.class));
+        verify(driverDailyStats).recordJobCompleted(eq(transaction), any(Payment.class));
+    }
+
+    @Test
+    void jobCompletedByTheDriverMeanwhileIsNotCountedAgainForTheCustomer() throws Exception {
+        storedPayment("PENDING", "In-Progress");
+        // The driver's update to Completed committed after the customer's first read
+        committedStatus = "COMPLETED";
+        committedJobOrderStatus = "Completed";
+        committedJobCompletedAt = new Date();
+
+        paymentService.updateJobOrderStatusByCustomer(PAYMENT_ID, "Completed");
+
+        verify(analyticsRollups, never()).recordJobCompleted(any(), any());
+        verify(driverDailyStats, never()).recordJobCompleted(any(), any());
+    }
+
+    @Test
+    void reopenedJobKeepsItsFirstCompletion() throws Exception {
+        storedPayment("COMPLETED", "In-Progress");
+        committedJobCompletedAt = new Date();
+
+        paymentService.updateJobOrderStatus(PAYMENT_ID, "Completed");
+
+        verify(analyticsRollups, never()).recordJobCompleted(any(), any());
+        verify(dashboardAggregates, never()).recordCompleted(any(), any());
+    }
+
+    private void storedPayment(String status, String jobOrderStatus) {
+        committedStatus = status;
+        committedJobOrderStatus = jobOrderStatus;
+        paymentRef = mock(DocumentReference.class);
+        DocumentSnapshot read = mock(DocumentSnapshot.class);
+        when(read.toObject(Payment.class)).thenAnswer(invocation -> payment(status, jobOrderStatus));
+        when(paymentRef.get()).thenReturn(ApiFutures.immediateFuture(read));
+        // Every transaction attempt reads its own copy, as committed at that point
+        DocumentSnapshot committed = mock(DocumentSnapshot.class);
+        when(committed.toObject(Payment.class)).thenAnswer(invocation -> {
+            Payment payment = payment(committedStatus, committedJobOrderStatus);
+            payment.setJobCompletedAt(committedJobCompletedAt);
+            return payment;
+        });
+        when(transaction.get(paymentRef)).thenReturn(ApiFutures.immediateFuture(committed));
+        when(firestore.collection("payments").document(PAYMENT_ID)).thenReturn(paymentRef);
+
+        DocumentReference truckRef = mock(DocumentReference.class, RETURNS_DEEP_STUBS);
+        DocumentSnapshot truck = mock(DocumentSnapshot.class);
+        when(truck.toObject(Truck.class)).thenReturn(new Truck());
+        when(truckRef.get()).thenReturn(ApiFutures.immediateFuture(truck));
+        when(firestore.collection("trucks").document("truck-1")).thenReturn(truckRef);
+    }
+
+    private static Payment payment(String status, String jobOrderStatus) {
+        Payment payment = new Payment();
+        payment.setId(PAYMENT_ID);
+        payment.setCustomerEmail("ana@example.com");
+        payment.setStatus(status);
+        payment.setJobOrderStatus(jobOrderStatus);
+        payment.setAmount(500.0);
+        payment.setTruckId("truck-1");
+        return payment;
+    }
+}
@@ -0,0 +1,146 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RankedCounterTest {
+
+    @Test
+    void countsAreExactWhileUnderCapacity() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 2);
+        counter.add("b", 5);
+        counter.add("a", 1);
+        counter.add("c", 3);
+
+        List<RankedCounter.Entry> top = counter.top(10);
+        assertEquals(3, top.size());
+        assertEntry(top.get(0), "b", 5, 0);
+        // Ties are broken by key
+        assertEntry(top.get(1), "a", 3, 0);
+        assertEntry(top.get(2), "c", 3, 0);
+    }
+
+    @Test
+    void topReturnsAtMostK() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 1);
+        counter.add("b", 2);
+        counter.add("c", 3);
+
+        List<RankedCounter.Entry> top = counter.top(2);
+        assertEquals(2, top.size());
+        assertEquals("c", top.get(0).getKey());
+        assertEquals("b", top.get(1).getKey());
+    }
+
+    @Test
+    void newKeyEvictsTheSmallestCounterAndInheritsItsCountAsError() {
+        RankedCounter counter = new RankedCounter(2);
+        counter.add("a", 5);
+        counter.add("b", 3);
+        counter.add("c", 1);
+
+        assertEquals(2, counter.size());
+        List<RankedCounter.Entry> top = counter.top(10);
+        assertEntry(top.get(0), "a", 5, 0);
+        // c took over b's counter: its true count lies in [4 - 3, 4]
+        assertEntry(top.get(1), "c", 4, 3);
+    }
+
+    @Test
+    void subtractingToZeroDropsTheKey() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 2);
+        counter.add("b", 1);
+
+        counter.subtract("a", 2);
+
+        assertEquals(1, counter.size());
+        assertEquals("b", counter.top(10).get(0).getKey());
+    }
+
+    @Test
+    void subtractingAnUnknownKeyDoesNothing() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 2);
+
+        counter.subtract("missing", 5);
+
+        assertEquals(1, counter.size());
+        assertEntry(counter.top(1).get(0), "a", 2, 0);
+    }
+
+    @Test
+    void subtractKeepsTheErrorWithinTheCount() {
+        RankedCounter counter = new RankedCounter(1);
+        counter.add("a", 2);
+        counter.add("b", 1);
+        assertEntry(counter.top(1).get(0), "b", 3, 2);
+
+        counter.subtract("b", 2);
+
+        assertEntry(counter.top(1).get(0), "b", 1, 1);
+    }
+
+    @Test
+    void subtractReordersTheRanking() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 5);
+        counter.add("b", 3);
+
+        counter.subtract("a", 4);
+
+        List<RankedCounter.Entry> top = counter.top(10);
+        assertEntry(top.get(0), "b", 3, 0);
+        assertEntry(top.get(1), "a", 1, 0);
+    }
+
+    @Test
+    void addAllAndSubtractAllCancelOut() {
+        RankedCounter window = new RankedCounter(10);
+        window.add("a", 1);
+
+        RankedCounter day = new RankedCounter(10);
+        day.add("a", 2);
+        day.add("b", 4);
+
+        window.addAll(day);
+        List<RankedCounter.Entry> top = window.top(10);
+        assertEntry(top.get(0), "b", 4, 0);
+        assertEntry(top.get(1), "a", 3, 0);
+
+        window.subtractAll(day);
+        assertEquals(1, window.size());
+        assertEntry(window.top(10).get(0), "a", 1, 0);
+    }
+
+    @Test
+    void topHandsOutCopies() {
+        RankedCounter counter = new RankedCounter(10);
+        counter.add("a", 1);
+        RankedCounter.Entry before = counter.top(1).get(0);
+
+        counter.add("a", 5);
+
+        assertEquals(1, before.getCount());
+        assertEquals(6, counter.top(1).get(0).getCount());
+    }
+
+    @Test
+    void capacityMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new RankedCounter(0));
+        assertTrue(new RankedCounter(1).top(5).isEmpty());
+    }
+
+    private static void assertEntry(RankedCounter.Entry entry, String key, long count, long error) {
+        assertEquals(key, entry.getKey());
+        assertEquals(count, entry.getCount());
+        assertEquals(error, entry.getError());
+    }
+}
@@ -0,0 +1,59 @@
+package com.capstone.GrabTrash.service;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.SetOptions;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ScheduledJobRegistryTest {
+
+    @AfterEach
+    void clearInterrupt() {
+        Thread.interrupted();
+    }
+
+    @Test
+    void failedUpdateIsThrownWithItsCause() {
+        IllegalStateException outage = new IllegalStateException("unavailable");
+        ScheduledJobRegistry registry = registryWhoseWritesReturn(ApiFutures.immediateFailedFuture(outage));
+
+        RuntimeException thrown = assertThrows(RuntimeException.class,
+            () -> registry.update("reminders", Map.of("lastOutcome", "RUNNING")));
+
+        assertTrue(thrown.getCause() instanceof ExecutionException);
+        assertSame(outage, thrown.getCause().getCause());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void interruptedUpdateIsThrownAndKeepsTheInterrupt() throws Exception {
+        ApiFuture<WriteResult> write = mock(ApiFuture.class);
+        when(write.get()).thenThrow(new InterruptedException());
+        ScheduledJobRegistry registry = registryWhoseWritesReturn(write);
+
+        assertThrows(RuntimeException.class, () -> registry.update("reminders", Map.of("lastOutcome", "RUNNING")));
+
+        assertTrue(Thread.currentThread().isInterrupted());
+    }
+
+    private static ScheduledJobRegistry registryWhoseWritesReturn(ApiFuture<WriteResult> write) {
+        Firestore firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        when(firestore.collection("scheduledJobs").document("reminders").set(anyMap(), any(SetOptions.class))).thenReturn(write);
+        return new ScheduledJobRegistry(firestore);
+    }
+}
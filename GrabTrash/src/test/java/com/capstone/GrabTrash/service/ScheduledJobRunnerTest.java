@@ -0,0 +1,224 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.ScheduledJobRun;
+import com.google.cloud.firestore.Firestore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class ScheduledJobRunnerTest {
+
+    // Hourly, so the latest trigger is always inside the catch-up window
+    private static final String HOURLY = "0 0 * * * *";
+    private static final String JOB = "reminders";
+    private static final long WINDOW_MILLIS = 2 * 60 * 60 * 1000L;
+
+    private InMemoryLeaseStore leaseStore;
+    private FakeRegistry registry;
+    private ScheduledJobRunner runner;
+    private AtomicInteger runs;
+
+    @BeforeEach
+    void setUp() {
+        leaseStore = new InMemoryLeaseStore();
+        registry = new FakeRegistry();
+        runner = runner("node-a");
+        runs = new AtomicInteger();
+        runner.register(JOB, HOURLY, runs::incrementAndGet);
+    }
+
+    @AfterEach
+    void tearDown() {
+        runner.cleanup();
+    }
+
+    @Test
+    void triggerRunsTheJobOnceAndRecordsIt() {
+        assertTrue(runner.trigger(JOB));
+        assertEquals(1, runs.get());
+        assertEquals(ScheduledJobRun.SUCCEEDED, registry.entry.getLastOutcome());
+        assertEquals(registry.entry.getLastScheduledFor(), registry.entry.getLastSucceededFor());
+
+        // Another replica firing for the same trigger finds it done
+        ScheduledJobRunner other = runner("node-b");
+        other.register(JOB, HOURLY, runs::incrementAndGet);
+        assertFalse(other.trigger(JOB));
+        assertEquals(1, runs.get());
+        other.cleanup();
+    }
+
+    @Test
+    void jobDoesNotRunWhileAnotherInstanceHoldsTheLease() {
+        leaseStore.tryAcquire("scheduled-job-" + JOB, "node-b", 60_000);
+
+        assertFalse(runner.trigger(JOB));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void jobIsSkippedWhenItsStartCannotBeRecorded() {
+        registry.failUpdates = true;
+
+        assertFalse(runner.trigger(JOB));
+        assertEquals(0, runs.get());
+        // The lease is given back, so the next attempt is not blocked
+        assertTrue(leaseStore.list("scheduled-job-").isEmpty());
+    }
+
+    @Test
+    void unrecordedOutcomeIsNotCaughtUp() {
+        registry.failUpdatesAfter = 1;
+
+        runner.trigger(JOB);
+        assertEquals(1, runs.get());
+        assertEquals(ScheduledJobRun.RUNNING, registry.entry.getLastOutcome());
+
+        registry.failUpdatesAfter = Integer.MAX_VALUE;
+        runner.catchUp();
+        ScheduledJobRunner other = runner("node-b");
+        other.register(JOB, HOURLY, runs::incrementAndGet);
+        other.catchUp();
+        assertEquals(1, runs.get());
+        other.cleanup();
+    }
+
+    @Test
+    void runLeftRunningByADeadInstanceIsNotRepeated() {
+        registry.entry = ScheduledJobRun.builder()
+            .jobName(JOB)
+            .lastScheduledFor(latestHour())
+            .lastOutcome(ScheduledJobRun.RUNNING)
+            .lastNode("dead-node")
+            .build();
+
+        runner.catchUp();
+        assertFalse(runner.trigger(JOB));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void failedRunIsNotRetriedForTheSameTrigger() {
+        ScheduledJobRunner failing = runner("node-c");
+        failing.register(JOB, HOURLY, () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("FCM down");
+        });
+
+        assertFalse(failing.trigger(JOB));
+        assertEquals(ScheduledJobRun.FAILED, registry.entry.getLastOutcome());
+        assertEquals("FCM down", registry.entry.getLastError());
+
+        failing.catchUp();
+        assertEquals(1, runs.get());
+        failing.cleanup();
+    }
+
+    @Test
+    void catchUpRunsATriggerMissedWithinTheWindow() {
+        registry.entry = ScheduledJobRun.builder()
+            .jobName(JOB)
+            .lastScheduledFor(new Date(latestHour().getTime() - 60 * 60 * 1000L))
+            .lastOutcome(ScheduledJobRun.SUCCEEDED)
+            .build();
+
+        runner.catchUp();
+
+        assertEquals(1, runs.get());
+        assertTrue(registry.entry.getLastCatchUp());
+        assertEquals(latestHour(), registry.entry.getLastScheduledFor());
+    }
+
+    @Test
+    void catchUpDoesNotReplayWithoutHistory() {
+        runner.catchUp();
+
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void catchUpIgnoresTriggersOlderThanTheWindow() {
+        // Fires once a day in the coming hour, so its latest trigger is at least 23 hours old
+        Date now = new Date();
+        int hour = (ZonedDateTime.now().getHour() + 1) % 24;
+        registry.entry = ScheduledJobRun.builder()
+            .jobName("daily")
+            .lastScheduledFor(new Date(now.getTime() - 3L * 24 * 60 * 60 * 1000))
+            .lastOutcome(ScheduledJobRun.SUCCEEDED)
+            .build();
+        AtomicInteger daily = new AtomicInteger();
+        runner.register("daily", "0 0 " + hour + " * * *", daily::incrementAndGet);
+
+        runner.catchUp();
+
+        assertEquals(0, daily.get());
+    }
+
+    private ScheduledJobRunner runner(String node) {
+        return new ScheduledJobRunner(leaseStore, registry, new NodeIdentity(node), 60_000, WINDOW_MILLIS);
+    }
+
+    private static Date latestHour() {
+        return Date.from(ZonedDateTime.now().truncatedTo(ChronoUnit.HOURS).toInstant());
+    }
+
+    /**
+     * Registry holding the entries in memory; updates can be made to fail like a Firestore outage
+     */
+    private static class FakeRegistry extends ScheduledJobRegistry {
+
+        ScheduledJobRun entry;
+        boolean failUpdates;
+        int failUpdatesAfter = Integer.MAX_VALUE;
+        final List<Map<String, Object>> updates = new ArrayList<>();
+
+        FakeRegistry() {
+            super(mock(Firestore.class));
+        }
+
+        @Override
+        public synchronized ScheduledJobRun get(String jobName) {
+            return entry != null && jobName.equals(entry.getJobName()) ? entry : null;
+        }
+
+        @Override
+        public synchronized void update(String jobName, Map<String, Object> fields) {
+            if (failUpdates || updates.size() >= failUpdatesAfter) {
+                throw new RuntimeException("Failed to update scheduled job " + jobName + ": unavailable");
+            }
+            updates.add(fields);
+            ScheduledJobRun run = entry != null && jobName.equals(entry.getJobName()) ? entry : new ScheduledJobRun();
+            run.setJobName(jobName);
+            fields.forEach((field, value) -> set(run, field, value));
+            entry = run;
+        }
+
+        private static void set(ScheduledJobRun run, String field, Object value) {
+            switch (field) {
+                case "cron" -> run.setCron((String) value);
+                case "lastScheduledFor" -> run.setLastScheduledFor((Date) value);
+                case "lastStartedAt" -> run.setLastStartedAt((Date) value);
+                case "lastFinishedAt" -> run.setLastFinishedAt((Date) value);
+                case "lastDurationMs" -> run.setLastDurationMs((Long) value);
+                case "lastOutcome" -> run.setLastOutcome((String) value);
+                case "lastError" -> run.setLastError((String) value);
+                case "lastNode" -> run.setLastNode((String) value);
+                case "lastCatchUp" -> run.setLastCatchUp((Boolean) value);
+                case "lastSucceededFor" -> run.setLastSucceededFor((Date) value);
+                default -> throw new IllegalArgumentException(field);
+            }
+        }
+    }
+}
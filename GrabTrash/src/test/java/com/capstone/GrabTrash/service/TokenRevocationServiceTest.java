@@ -0,0 +1,235 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.config.JwtConfig;
+import com.capstone.GrabTrash.model.User;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.firestore.DocumentChange;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.EventListener;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.Transaction;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationServiceTest {
+
+    private static final String USER_ID = "u1";
+
+    private Firestore firestore;
+    private Transaction transaction;
+    private DocumentReference userRef;
+    private DocumentReference revocationRef;
+    // Stored documents; null while a document does not exist
+    private Map<String, Object> userDocument;
+    private Map<String, Object> revocationDocument;
+    private EventListener<QuerySnapshot> listener;
+    private TokenRevocationService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        transaction = mock(Transaction.class);
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation ->
+            ApiFutures.immediateFuture(((Transaction.Function<Object>) invocation.getArgument(0)).updateCallback(transaction)));
+
+        userDocument = new HashMap<>();
+        userRef = mock(DocumentReference.class);
+        revocationRef = mock(DocumentReference.class);
+        when(firestore.collection("users").document(USER_ID)).thenReturn(userRef);
+        when(firestore.collection("revokedTokens").document("user:" + USER_ID)).thenReturn(revocationRef);
+        when(transaction.get(userRef)).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(userDocument)));
+        when(transaction.get(revocationRef)).thenAnswer(invocation -> ApiFutures.immediateFuture(snapshot(revocationDocument)));
+        when(transaction.update(userRef, "tokenVersion", 1L)).thenAnswer(invocation -> {
+            userDocument.put("tokenVersion", 1L);
+            return transaction;
+        });
+        when(transaction.set(eq(revocationRef), anyMap())).thenAnswer(invocation -> {
+            revocationDocument = invocation.getArgument(1);
+            return transaction;
+        });
+
+        service = new TokenRevocationService(firestore, new JwtConfig(900_000, 604_800_000), 1000, 0.001);
+        ArgumentCaptor<EventListener<QuerySnapshot>> captor = ArgumentCaptor.forClass(EventListener.class);
+        verify(firestore.collection("revokedTokens").whereGreaterThan(anyString(), any(Date.class)))
+            .addSnapshotListener(captor.capture());
+        listener = captor.getValue();
+    }
+
+    @Test
+    void revokingAllTokensMovesTheUserToTheNextVersion() {
+        Claims before = claims(0);
+
+        long version = service.revokeAllForUser(USER_ID);
+
+        assertEquals(1, version);
+        assertEquals(1L, userDocument.get("tokenVersion"));
+        assertEquals(1L, revocationDocument.get("tokenVersion"));
+        assertTrue(service.isRevoked(before));
+        assertFalse(service.isRevoked(claims(1)));
+    }
+
+    @Test
+    void issueTimesDoNotMatterOnlyVersions() {
+        service.revokeAllForUser(USER_ID);
+
+        // Issued by an instance whose clock runs ahead, but before the revocation
+        Claims oldVersion = claims(0);
+        oldVersion.setIssuedAt(new Date(System.currentTimeMillis() + 60_000));
+        // Issued by an instance whose clock runs behind, after the revocation
+        Claims newVersion = claims(1);
+        newVersion.setIssuedAt(new Date(System.currentTimeMillis() - 60_000));
+
+        assertTrue(service.isRevoked(oldVersion));
+        assertFalse(service.isRevoked(newVersion));
+    }
+
+    @Test
+    void newTokensCarryTheVersionEvenFromAStaleUser() {
+        User stale = new User();
+        stale.setUserId(USER_ID);
+        assertEquals(0, service.currentVersion(stale));
+
+        service.revokeAllForUser(USER_ID);
+
+        // The user was read before the revocation, but this instance has seen it
+        assertEquals(1, service.currentVersion(stale));
+        stale.setTokenVersion(3L);
+        assertEquals(3, service.currentVersion(stale));
+    }
+
+    @Test
+    void versionContinuesFromTheRevocationWhenTheUserLostIt() {
+        // The user document was overwritten from a copy read before an earlier revocation
+        revocationDocument = revocation(4L);
+        when(transaction.update(userRef, "tokenVersion", 5L)).thenReturn(transaction);
+
+        assertEquals(5, service.revokeAllForUser(USER_ID));
+        verify(transaction).update(userRef, "tokenVersion", 5L);
+    }
+
+    @Test
+    void deletedUserIsStillRevoked() {
+        userDocument = null;
+
+        assertEquals(1, service.revokeAllForUser(USER_ID));
+        assertTrue(service.isRevoked(claims(0)));
+    }
+
+    @Test
+    void failedRevocationIsReportedAndNotApplied() {
+        when(firestore.runTransaction(any(Transaction.Function.class)))
+            .thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+
+        assertThrows(RuntimeException.class, () -> service.revokeAllForUser(USER_ID));
+
+        assertFalse(service.isRevoked(claims(0)));
+    }
+
+    @Test
+    void revocationsFromOtherInstancesArriveThroughTheListener() {
+        deliver("user:" + USER_ID, revocation(2L));
+
+        assertTrue(service.isRevoked(claims(1)));
+        assertFalse(service.isRevoked(claims(2)));
+
+        // A late, older revocation does not lower the version
+        deliver("user:" + USER_ID, revocation(1L));
+        assertTrue(service.isRevoked(claims(1)));
+    }
+
+    @Test
+    void revocationWrittenBeforeVersionsRevokesUnversionedTokens() {
+        Map<String, Object> legacy = revocation(null);
+        legacy.remove("tokenVersion");
+        deliver("user:" + USER_ID, legacy);
+
+        assertTrue(service.isRevoked(claims(0)));
+        assertFalse(service.isRevoked(claims(1)));
+    }
+
+    @Test
+    void refreshTokenCanBeRedeemedOnce() {
+        Claims refresh = claims(0);
+        refresh.setId("jti-1");
+        refresh.setExpiration(new Date(System.currentTimeMillis() + 60_000));
+        when(firestore.collection("revokedTokens").document("token:jti-1").create(anyMap()))
+            .thenReturn(ApiFutures.immediateFuture(null))
+            .thenReturn(ApiFutures.immediateFailedFuture(new AlreadyExistsException("exists", null, mock(StatusCode.class), false)));
+
+        assertTrue(service.redeemToken(refresh));
+        assertFalse(service.redeemToken(refresh));
+        assertTrue(service.isRevoked(refresh));
+    }
+
+    private void deliver(String key, Map<String, Object> data) {
+        Map<String, Object> document = new HashMap<>(data);
+        document.put("key", key);
+        QueryDocumentSnapshot snapshot = mock(QueryDocumentSnapshot.class);
+        stub(snapshot, document);
+        DocumentChange change = mock(DocumentChange.class);
+        when(change.getType()).thenReturn(DocumentChange.Type.ADDED);
+        when(change.getDocument()).thenReturn(snapshot);
+        QuerySnapshot snapshots = mock(QuerySnapshot.class);
+        when(snapshots.getDocumentChanges()).thenReturn(List.of(change));
+        listener.onEvent(snapshots, null);
+    }
+
+    private static Map<String, Object> revocation(Long tokenVersion) {
+        Map<String, Object> document = new HashMap<>();
+        document.put("revokedAt", new Date());
+        document.put("expiresAt", new Date(System.currentTimeMillis() + 60_000));
+        document.put("tokenVersion", tokenVersion);
+        return document;
+    }
+
+    private static DocumentSnapshot snapshot(Map<String, Object> data) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(data != null);
+        if (data != null) {
+            stub(snapshot, data);
+        }
+        return snapshot;
+    }
+
+    private static void stub(DocumentSnapshot snapshot, Map<String, Object> data) {
+        when(snapshot.getString("key")).thenAnswer(invocation -> data.get("key"));
+        when(snapshot.getLong("tokenVersion")).thenAnswer(invocation -> data.get("tokenVersion"));
+        when(snapshot.getDate("revokedAt")).thenAnswer(invocation -> data.get("revokedAt"));
+        when(snapshot.getDate("expiresAt")).thenAnswer(invocation -> data.get("expiresAt"));
+    }
+
+    private static Claims claims(long tokenVersion) {
+        Claims claims = Jwts.claims();
+        claims.put("userId", USER_ID);
+        claims.put(JwtService.TOKEN_VERSION_CLAIM, tokenVersion);
+        claims.setIssuedAt(new Date());
+        return claims;
+    }
+}
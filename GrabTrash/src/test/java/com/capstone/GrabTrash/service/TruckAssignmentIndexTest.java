@@ -0,0 +1,172 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.FailedPreconditionException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Precondition;
+import com.google.cloud.firestore.Query;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TruckAssignmentIndexTest {
+
+    private Firestore firestore;
+    private TruckAssignmentIndex index;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        index = new TruckAssignmentIndex(firestore);
+    }
+
+    @Test
+    void activePaymentHoldsItsTruckUntilCompleted() {
+        Payment payment = payment("p1", "truck-1", "Accepted");
+        index.apply(payment);
+        assertTrue(index.isAssigned("truck-1"));
+        assertEquals("p1", index.getActivePaymentId("truck-1"));
+
+        payment.setJobOrderStatus("completed");
+        index.apply(payment);
+
+        assertFalse(index.isAssigned("truck-1"));
+    }
+
+    @Test
+    void paymentMovedToAnotherTruckFreesTheFirst() {
+        index.assign("truck-1", "p1");
+        index.assign("truck-2", "p1");
+
+        assertFalse(index.isAssigned("truck-1"));
+        assertEquals("p1", index.getActivePaymentId("truck-2"));
+    }
+
+    @Test
+    void releasingAnOldPaymentKeepsTheTrucksNewHolder() {
+        index.assign("truck-1", "p1");
+        index.assign("truck-1", "p2");
+
+        index.release("p1");
+
+        assertEquals("p2", index.getActivePaymentId("truck-1"));
+    }
+
+    @Test
+    void releasedDeliveredAndCancelledPaymentsDoNotHoldATruck() {
+        Payment released = payment("p1", "truck-1", "In-Progress");
+        released.setTruckReleased(true);
+        Payment delivered = payment("p2", "truck-1", "In-Progress");
+        delivered.setIsDelivered(true);
+
+        assertFalse(TruckAssignmentIndex.isActive(released));
+        assertFalse(TruckAssignmentIndex.isActive(delivered));
+        assertFalse(TruckAssignmentIndex.isActive(payment("p3", "truck-1", "Cancelled")));
+        assertFalse(TruckAssignmentIndex.isActive(payment("p4", null, "New")));
+        // A legacy payment without a job order status still holds its truck
+        assertTrue(TruckAssignmentIndex.isActive(payment("p5", "truck-1", null)));
+    }
+
+    @Test
+    void backfillSetsNewOnActiveLegacyPaymentsOnly() throws Exception {
+        QueryDocumentSnapshot legacy = document(payment("p1", "truck-1", null), ApiFutures.immediateFuture(mock(WriteResult.class)));
+        QueryDocumentSnapshot completed = document(payment("p2", "truck-2", "Completed"), null);
+        QueryDocumentSnapshot releasedLegacy = document(payment("p3", "truck-3", null), null);
+        releasedLegacy.toObject(Payment.class).setTruckReleased(true);
+        paymentsWithTrucks(legacy, completed, releasedLegacy);
+
+        index.backfillJobOrderStatus();
+
+        verify(legacy.getReference()).update(any(Precondition.class), eq("jobOrderStatus"), eq("New"));
+        verify(completed.getReference(), never()).update(any(Precondition.class), eq("jobOrderStatus"), any());
+        verify(releasedLegacy.getReference(), never()).update(any(Precondition.class), eq("jobOrderStatus"), any());
+        verify(firestore.collection("indexStatus").document("jobOrderStatusBackfill")).set(anyMap());
+    }
+
+    @Test
+    void paymentChangedDuringTheBackfillKeepsItsStatus() throws Exception {
+        QueryDocumentSnapshot changed = document(payment("p1", "truck-1", null), ApiFutures.immediateFailedFuture(
+            new FailedPreconditionException("updated", null, mock(StatusCode.class), false)));
+        paymentsWithTrucks(changed);
+
+        index.backfillJobOrderStatus();
+
+        // A conflict means an update set the status, so the backfill still completes
+        verify(firestore.collection("indexStatus").document("jobOrderStatusBackfill")).set(anyMap());
+    }
+
+    @Test
+    void failedBackfillIsNotMarkedComplete() {
+        QueryDocumentSnapshot failing = document(payment("p1", "truck-1", null),
+            ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+        paymentsWithTrucks(failing);
+
+        assertThrows(RuntimeException.class, () -> index.backfillJobOrderStatus());
+
+        verify(firestore.collection("indexStatus").document("jobOrderStatusBackfill"), never()).set(anyMap());
+    }
+
+    @Test
+    void missingIdsAreIgnored() {
+        index.apply(payment(null, "truck-1", "New"));
+        index.assign(null, "p1");
+
+        assertFalse(index.isAssigned("truck-1"));
+        assertNull(index.getActivePaymentId(null));
+    }
+
+    private void paymentsWithTrucks(QueryDocumentSnapshot... documents) {
+        CollectionReference payments = mock(CollectionReference.class);
+        Query withTrucks = mock(Query.class);
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(firestore.collection("payments")).thenReturn(payments);
+        when(payments.whereNotEqualTo("truckId", null)).thenReturn(withTrucks);
+        when(withTrucks.get()).thenReturn(ApiFutures.immediateFuture(snapshot));
+        when(snapshot.getDocuments()).thenReturn(List.of(documents));
+    }
+
+    private static QueryDocumentSnapshot document(Payment payment, ApiFuture<WriteResult> update) {
+        DocumentReference reference = mock(DocumentReference.class);
+        if (update != null) {
+            when(reference.update(any(Precondition.class), eq("jobOrderStatus"), eq("New"))).thenReturn(update);
+        }
+        QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+        when(document.getId()).thenReturn(payment.getId());
+        when(document.toObject(Payment.class)).thenReturn(payment);
+        when(document.getReference()).thenReturn(reference);
+        when(document.getUpdateTime()).thenReturn(Timestamp.now());
+        return document;
+    }
+
+    private static Payment payment(String id, String truckId, String jobOrderStatus) {
+        Payment payment = new Payment();
+        payment.setId(id);
+        payment.setTruckId(truckId);
+        payment.setJobOrderStatus(jobOrderStatus);
+        return payment;
+    }
+}
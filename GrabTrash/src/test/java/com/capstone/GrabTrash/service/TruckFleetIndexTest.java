@@ -0,0 +1,140 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Truck;
+import com.google.cloud.firestore.Firestore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+
+class TruckFleetIndexTest {
+
+    private TruckFleetIndex index;
+
+    @BeforeEach
+    void setUp() {
+        // The listener registration goes to a stub; the tests feed the index through upsert
+        index = new TruckFleetIndex(mock(Firestore.class, RETURNS_DEEP_STUBS));
+    }
+
+    @Test
+    void upsertIndexesAvailableTrucksWithADriver() {
+        index.upsert(truck("t1", 10.0, "AVAILABLE", "driver-1", "Plastic"));
+
+        assertEquals(List.of("t1"), ids(index.findAvailable(5.0, "plastic", null, 10)));
+        assertEquals("t1", index.getTruck("t1").getTruckId());
+    }
+
+    @Test
+    void upsertLeavesOutTrucksThatCannotTakeAJob() {
+        index.upsert(truck("busy", 10.0, "BUSY", "driver-1", null));
+        index.upsert(truck("no-driver", 10.0, "AVAILABLE", null, null));
+        index.upsert(truck("no-capacity", null, "AVAILABLE", "driver-1", null));
+
+        assertTrue(index.findAvailable(0.0, null, null, 10).isEmpty());
+        // They are still known by ID
+        assertEquals("busy", index.getTruck("busy").getTruckId());
+    }
+
+    @Test
+    void upsertReplacesThePreviousVersion() {
+        index.upsert(truck("t1", 10.0, "AVAILABLE", "driver-1", null));
+
+        index.upsert(truck("t1", 10.0, "BUSY", "driver-1", null));
+        assertTrue(index.findAvailable(0.0, null, null, 10).isEmpty());
+
+        index.upsert(truck("t1", 20.0, "AVAILABLE", "driver-1", null));
+        assertTrue(index.findAvailable(25.0, null, null, 10).isEmpty());
+        assertEquals(List.of("t1"), ids(index.findAvailable(15.0, null, null, 10)));
+    }
+
+    @Test
+    void upsertOverATruckWithoutCapacityDoesNotFail() {
+        index.upsert(truck("t1", null, "AVAILABLE", "driver-1", null));
+
+        assertDoesNotThrow(() -> index.upsert(truck("t1", 8.0, "AVAILABLE", "driver-1", null)));
+        assertEquals(List.of("t1"), ids(index.findAvailable(5.0, null, null, 10)));
+
+        assertDoesNotThrow(() -> index.upsert(truck("t1", null, "AVAILABLE", "driver-1", null)));
+        assertTrue(index.findAvailable(0.0, null, null, 10).isEmpty());
+    }
+
+    @Test
+    void upsertMovesATruckBetweenWasteTypes() {
+        index.upsert(truck("t1", 10.0, "AVAILABLE", "driver-1", "Plastic"));
+
+        index.upsert(truck("t1", 10.0, "AVAILABLE", "driver-1", "Glass"));
+
+        assertTrue(index.findAvailable(0.0, "plastic", null, 10).isEmpty());
+        assertEquals(List.of("t1"), ids(index.findAvailable(0.0, "glass", null, 10)));
+    }
+
+    @Test
+    void findAvailableMergesTrucksWithoutAWasteTypeSmallestFirst() {
+        index.upsert(truck("plastic-12", 12.0, "AVAILABLE", "driver-1", "Plastic"));
+        index.upsert(truck("any-8", 8.0, "AVAILABLE", "driver-2", null));
+        index.upsert(truck("plastic-6", 6.0, "AVAILABLE", "driver-3", "Plastic"));
+        index.upsert(truck("glass-7", 7.0, "AVAILABLE", "driver-4", "Glass"));
+        index.upsert(truck("any-3", 3.0, "AVAILABLE", "driver-5", null));
+
+        assertEquals(List.of("plastic-6", "any-8", "plastic-12"), ids(index.findAvailable(5.0, "Plastic", null, 10)));
+        assertEquals(List.of("any-8", "plastic-12"), ids(index.findAvailable(7.5, null, null, 10)));
+        assertEquals(List.of("plastic-6"), ids(index.findAvailable(5.0, "plastic", null, 1)));
+        assertEquals(List.of("any-8"), ids(index.findAvailable(5.0, "plastic", truck -> !truck.getTruckId().startsWith("plastic"), 10)));
+    }
+
+    @Test
+    void equalCapacitiesAreKeptApart() {
+        index.upsert(truck("a", 10.0, "AVAILABLE", "driver-1", null));
+        index.upsert(truck("b", 10.0, "AVAILABLE", "driver-2", null));
+
+        assertEquals(List.of("a", "b"), ids(index.findAvailable(10.0, null, null, 10)));
+    }
+
+    @Test
+    void removeDropsTheTruck() {
+        index.upsert(truck("t1", 10.0, "AVAILABLE", "driver-1", null));
+
+        index.remove("t1");
+
+        assertNull(index.getTruck("t1"));
+        assertTrue(index.findAvailable(0.0, null, null, 10).isEmpty());
+    }
+
+    @Test
+    void indexHandsOutCopies() {
+        Truck original = truck("t1", 10.0, "AVAILABLE", "driver-1", null);
+        index.upsert(original);
+
+        original.setStatus("BUSY");
+        Truck found = index.findAvailable(0.0, null, null, 10).get(0);
+        found.setStatus("BUSY");
+
+        assertNotSame(original, found);
+        assertEquals("AVAILABLE", index.getTruck("t1").getStatus());
+        assertEquals(1, index.findAvailable(0.0, null, null, 10).size());
+    }
+
+    private static Truck truck(String id, Double capacity, String status, String driverId, String wasteType) {
+        return Truck.builder()
+                .truckId(id)
+                .capacity(capacity)
+                .status(status)
+                .driverId(driverId)
+                .wasteType(wasteType)
+                .build();
+    }
+
+    private static List<String> ids(List<Truck> trucks) {
+        return trucks.stream().map(Truck::getTruckId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,187 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.Payment;
+import com.capstone.GrabTrash.model.Truck;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.DocumentSnapshot;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.Transaction;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TruckReservationServiceTest {
+
+    private static final String PAYMENT_ID = "pay-1";
+
+    private Firestore firestore;
+    private Transaction transaction;
+    private TruckFleetIndex truckFleetIndex;
+    private TruckAssignmentIndex truckAssignmentIndex;
+    private TruckReservationService service;
+    // Trucks as stored, by ID
+    private final Map<String, Truck> trucks = new HashMap<>();
+    private final Map<String, DocumentReference> truckRefs = new HashMap<>();
+    private final Set<String> unavailableTrucks = new HashSet<>();
+    private final List<String> attempted = new ArrayList<>();
+    private DocumentReference paymentRef;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() throws Exception {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        transaction = mock(Transaction.class);
+        paymentRef = mock(DocumentReference.class);
+        when(firestore.collection("payments").document(PAYMENT_ID)).thenReturn(paymentRef);
+        when(firestore.collection("trucks").document(anyString())).thenAnswer(invocation -> truckRef(invocation.getArgument(0)));
+        when(firestore.runTransaction(any(Transaction.Function.class))).thenAnswer(invocation -> {
+            Object result = ((Transaction.Function<Object>) invocation.getArgument(0)).updateCallback(transaction);
+            String truckId = attempted.get(attempted.size() - 1);
+            return unavailableTrucks.contains(truckId)
+                ? ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable"))
+                : ApiFutures.immediateFuture(result);
+        });
+        truckFleetIndex = mock(TruckFleetIndex.class);
+        truckAssignmentIndex = mock(TruckAssignmentIndex.class);
+        service = new TruckReservationService(firestore, truckFleetIndex, truckAssignmentIndex);
+    }
+
+    @Test
+    void firstAvailableCandidateIsReserved() {
+        List<Truck> candidates = List.of(truck("t1", "AVAILABLE", "d1"), truck("t2", "AVAILABLE", "d2"));
+
+        Payment payment = service.reserveAndCreatePayment(PAYMENT_ID, candidates, paymentFor());
+
+        assertEquals("t1", payment.getTruckId());
+        assertEquals("d1", payment.getDriverId());
+        assertEquals("CURRENTLY_IN_USE", trucks.get("t1").getStatus());
+        verify(transaction).create(paymentRef, payment);
+        verify(truckFleetIndex).upsert(trucks.get("t1"));
+        verify(truckAssignmentIndex).apply(payment);
+        assertEquals(List.of("t1"), attempted);
+    }
+
+    @Test
+    void truckTakenSinceTheCandidatesWereChosenIsSkipped() {
+        // Both looked available when the candidates were picked; t1 was reserved meanwhile
+        List<Truck> candidates = List.of(truck("t1", "AVAILABLE", "d1"), truck("t2", "AVAILABLE", "d2"));
+        trucks.get("t1").setStatus("CURRENTLY_IN_USE");
+
+        Payment payment = service.reserveAndCreatePayment(PAYMENT_ID, candidates, paymentFor());
+
+        assertEquals("t2", payment.getTruckId());
+        assertEquals("CURRENTLY_IN_USE", trucks.get("t2").getStatus());
+        verify(transaction, never()).set(truckRefs.get("t1"), trucks.get("t1"));
+    }
+
+    @Test
+    void truckWithoutADriverIsSkipped() {
+        List<Truck> candidates = List.of(truck("t1", "AVAILABLE", null), truck("t2", "AVAILABLE", "d2"));
+
+        Payment payment = service.reserveAndCreatePayment(PAYMENT_ID, candidates, paymentFor());
+
+        assertEquals("t2", payment.getTruckId());
+        assertEquals("AVAILABLE", trucks.get("t1").getStatus());
+    }
+
+    @Test
+    void failedTransactionMovesOnToTheNextCandidate() {
+        List<Truck> candidates = List.of(truck("t1", "AVAILABLE", "d1"), truck("t2", "AVAILABLE", "d2"));
+        unavailableTrucks.add("t1");
+
+        Payment payment = service.reserveAndCreatePayment(PAYMENT_ID, candidates, paymentFor());
+
+        assertEquals("t2", payment.getTruckId());
+        verify(truckFleetIndex, never()).upsert(trucks.get("t1"));
+    }
+
+    @Test
+    void givesUpAfterFiveTakenCandidates() {
+        List<Truck> candidates = new ArrayList<>();
+        for (int i = 1; i <= 7; i++) {
+            candidates.add(truck("t" + i, "CURRENTLY_IN_USE", "d" + i));
+        }
+
+        assertNull(service.reserveAndCreatePayment(PAYMENT_ID, candidates, paymentFor()));
+
+        assertEquals(List.of("t1", "t2", "t3", "t4", "t5"), attempted);
+        verify(truckAssignmentIndex, never()).apply(any());
+    }
+
+    @Test
+    void additionalWritesCommitWithTheReservation() {
+        List<Payment> staged = new ArrayList<>();
+
+        Payment payment = service.reserveAndCreatePayment(PAYMENT_ID, List.of(truck("t1", "AVAILABLE", "d1")), paymentFor(),
+            (writes, created) -> {
+                assertSame(transaction, writes);
+                staged.add(created);
+            });
+
+        assertEquals(List.of(payment), staged);
+    }
+
+    private DocumentReference truckRef(String truckId) {
+        return truckRefs.computeIfAbsent(truckId, id -> {
+            DocumentReference reference = mock(DocumentReference.class);
+            when(transaction.get(reference)).thenAnswer(invocation -> {
+                attempted.add(id);
+                return ApiFutures.immediateFuture(snapshot(trucks.get(id)));
+            });
+            return reference;
+        });
+    }
+
+    private Truck truck(String truckId, String status, String driverId) {
+        Truck truck = new Truck();
+        truck.setTruckId(truckId);
+        truck.setStatus(status);
+        truck.setDriverId(driverId);
+        truck.setTruckPrice(1000.0);
+        // The candidate list holds a copy; the transaction reads the stored truck
+        Truck stored = new Truck();
+        stored.setTruckId(truckId);
+        stored.setStatus(status);
+        stored.setDriverId(driverId);
+        stored.setTruckPrice(1000.0);
+        trucks.put(truckId, stored);
+        return truck;
+    }
+
+    private static DocumentSnapshot snapshot(Truck truck) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.exists()).thenReturn(truck != null);
+        when(snapshot.toObject(Truck.class)).thenReturn(truck);
+        return snapshot;
+    }
+
+    private static Function<Truck, Payment> paymentFor() {
+        return truck -> {
+            Payment payment = new Payment();
+            payment.setId(PAYMENT_ID);
+            payment.setTruckId(truck.getTruckId());
+            payment.setDriverId(truck.getDriverId());
+            payment.setAmount(truck.getTruckPrice());
+            return payment;
+        };
+    }
+}
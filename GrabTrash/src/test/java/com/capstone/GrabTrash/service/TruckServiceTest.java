@@ -0,0 +1,62 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.dto.TruckRequestDTO;
+import com.capstone.GrabTrash.model.Truck;
+import com.google.api.core.ApiFutures;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class TruckServiceTest {
+
+    private Firestore firestore;
+    private TruckFleetIndex truckFleetIndex;
+    private TruckService truckService;
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        truckFleetIndex = mock(TruckFleetIndex.class);
+        truckService = new TruckService(firestore, mock(UserService.class), truckFleetIndex,
+                mock(TruckAssignmentIndex.class), mock(FirestoreAsync.class));
+    }
+
+    @Test
+    void createdTruckIsIndexedOnceTheWriteCommits() {
+        when(firestore.collection("trucks").document(anyString()).set(any(Truck.class)))
+                .thenReturn(ApiFutures.immediateFuture(mock(WriteResult.class)));
+
+        truckService.createTruck(request());
+
+        verify(truckFleetIndex).upsert(any(Truck.class));
+    }
+
+    @Test
+    void failedWriteLeavesTheIndexAlone() {
+        when(firestore.collection("trucks").document(anyString()).set(any(Truck.class)))
+                .thenReturn(ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable")));
+
+        assertThrows(RuntimeException.class, () -> truckService.createTruck(request()));
+
+        verify(truckFleetIndex, never()).upsert(any(Truck.class));
+    }
+
+    private static TruckRequestDTO request() {
+        return TruckRequestDTO.builder()
+                .size("SMALL")
+                .wasteType("Plastic")
+                .capacity(10.0)
+                .driverId("driver-1")
+                .build();
+    }
+}
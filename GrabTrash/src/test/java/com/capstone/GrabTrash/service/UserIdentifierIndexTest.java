@@ -0,0 +1,264 @@
+package com.capstone.GrabTrash.service;
+
+import com.capstone.GrabTrash.model.User;
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.api.gax.rpc.AlreadyExistsException;
+import com.google.api.gax.rpc.StatusCode;
+import com.google.cloud.Timestamp;
+import com.google.cloud.firestore.CollectionReference;
+import com.google.cloud.firestore.DocumentReference;
+import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.QueryDocumentSnapshot;
+import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserIdentifierIndexTest {
+
+    private Firestore firestore;
+    private UserIdentifierIndex index;
+    // userIdentifiers documents by ID, as created through the index
+    private final Map<String, Map<String, Object>> entries = new ConcurrentHashMap<>();
+    private final Set<String> unavailableEntries = new HashSet<>();
+
+    @BeforeEach
+    void setUp() {
+        firestore = mock(Firestore.class, RETURNS_DEEP_STUBS);
+        CollectionReference identifiers = mock(CollectionReference.class);
+        when(firestore.collection("userIdentifiers")).thenReturn(identifiers);
+        when(identifiers.document(anyString())).thenAnswer(invocation -> entry(invocation.getArgument(0)));
+        index = new UserIdentifierIndex(firestore, mock(FirestoreAsync.class));
+    }
+
+    @Test
+    void backfillIndexesEveryEmailAndUsername() throws Exception {
+        users(user("u1", "Ana@Example.com", "ana", 100), user("u2", "ben@example.com", "Ben", 200));
+
+        index.backfill();
+
+        assertEquals("u1", userIdOf("ana@example.com"));
+        assertEquals("u1", userIdOf("ana"));
+        assertEquals("u2", userIdOf("ben@example.com"));
+        assertEquals("u2", userIdOf("ben"));
+        assertEquals("email", entries.get("ana%40example.com").get("type"));
+        assertEquals("ana@example.com", entries.get("ana%40example.com").get("value"));
+        Map<String, Object> status = status();
+        assertEquals(true, status.get("complete"));
+        assertEquals(0, status.get("conflictCount"));
+    }
+
+    @Test
+    void sameEmailAndUsernameIsIndexedOnce() throws Exception {
+        users(user("u1", "ana@example.com", "ANA@example.com", 100));
+
+        index.backfill();
+
+        assertEquals(1, entries.size());
+        assertEquals(0, status().get("conflictCount"));
+    }
+
+    @Test
+    void olderAccountKeepsACaseInsensitiveDuplicateEmail() throws Exception {
+        users(user("newer", "Ana@example.com", "ana2", 200), user("older", "ana@example.com", "ana1", 100));
+
+        index.backfill();
+
+        assertEquals("older", userIdOf("ana@example.com"));
+        // The loser keeps its other identifier
+        assertEquals("newer", userIdOf("ana2"));
+        Map<String, Object> status = status();
+        assertEquals(1, status.get("conflictCount"));
+        Map<?, ?> conflict = (Map<?, ?>) ((List<?>) status.get("conflicts")).get(0);
+        assertEquals("older", conflict.get("keptUserId"));
+        assertEquals("newer", conflict.get("droppedUserId"));
+    }
+
+    @Test
+    void emailWinsOverAnotherUsersUsername() throws Exception {
+        // The username holder is older, but an email always takes precedence
+        users(user("by-username", "x@example.com", "bob@example.com", 100), user("by-email", "bob@example.com", "bob", 200));
+
+        index.backfill();
+
+        assertEquals("by-email", userIdOf("bob@example.com"));
+        Map<?, ?> conflict = (Map<?, ?>) ((List<?>) status().get("conflicts")).get(0);
+        assertEquals("email", conflict.get("keptType"));
+        assertEquals("username", conflict.get("droppedType"));
+    }
+
+    @Test
+    void equalAgesFallBackToTheLowerUserId() throws Exception {
+        users(user("u2", "ana@example.com", "a2", 100), user("u1", "ANA@example.com", "a1", 100));
+
+        index.backfill();
+
+        assertEquals("u1", userIdOf("ana@example.com"));
+    }
+
+    @Test
+    void accountWithAKnownAgeWinsOverOneWithout() throws Exception {
+        users(user("u0", "ana@example.com", "a0", null), user("u9", "ANA@example.com", "a9", 900));
+
+        index.backfill();
+
+        assertEquals("u9", userIdOf("ana@example.com"));
+    }
+
+    @Test
+    void winnerDoesNotDependOnTheOrderUsersAreRead() throws Exception {
+        List<QueryDocumentSnapshot> documents = new ArrayList<>(List.of(
+            user("u1", "ana@example.com", "shared", 300),
+            user("u2", "Ana@example.com", "other", 100),
+            user("u3", "shared", "u3name", 200)));
+        for (int run = 0; run < 6; run++) {
+            entries.clear();
+            Collections.rotate(documents, 1);
+            if (run == 3) {
+                Collections.reverse(documents);
+            }
+            users(documents);
+
+            index.backfill();
+
+            assertEquals("u2", userIdOf("ana@example.com"));
+            assertEquals("u3", userIdOf("shared"));
+        }
+    }
+
+    @Test
+    void existingEntriesAreLeftAloneAndCountAsPresent() throws Exception {
+        entries.put("ana%40example.com", Map.of("userId", "signed-up", "type", "email"));
+        users(user("u1", "ana@example.com", "ana", 100));
+
+        index.backfill();
+
+        assertEquals("signed-up", userIdOf("ana@example.com"));
+        assertEquals("u1", userIdOf("ana"));
+        assertEquals(true, status().get("complete"));
+    }
+
+    @Test
+    void failedWriteLeavesTheIndexIncomplete() throws Exception {
+        unavailableEntries.add("ana");
+        users(user("u1", "ana@example.com", "ana", 100));
+
+        assertThrows(RuntimeException.class, () -> index.backfill());
+
+        verify(firestore.collection("indexStatus").document("userIdentifiers"), never()).set(anyMap());
+    }
+
+    @Test
+    void legacyUserIndexingReportsFailures() {
+        unavailableEntries.add("ana");
+
+        CompletableFuture<Void> indexed = index.indexLegacyUser(user("u1", "ana@example.com", "ana", 100).toObject(User.class), "u1");
+
+        assertTrue(indexed.isCompletedExceptionally());
+        assertThrows(ExecutionException.class, indexed::get);
+        // The email entry is still written
+        assertEquals("u1", userIdOf("ana@example.com"));
+    }
+
+    @Test
+    void legacyUserIndexingTreatsExistingEntriesAsIndexed() {
+        entries.put("ana", Map.of("userId", "u1", "type", "username"));
+
+        CompletableFuture<Void> indexed = index.indexLegacyUser(user("u1", "ana@example.com", "ana", 100).toObject(User.class), "u1");
+
+        assertTrue(indexed.isDone());
+        assertFalse(indexed.isCompletedExceptionally());
+        assertEquals("u1", userIdOf("ana@example.com"));
+    }
+
+    @Test
+    void normalizedIdentifiersCompareCaseInsensitively() {
+        assertEquals("ana@example.com", UserIdentifierIndex.normalize("  Ana@Example.COM "));
+        assertEquals(null, UserIdentifierIndex.normalize("   "));
+        assertTrue(UserIdentifierIndex.sameIdentifier("ANA", "ana "));
+        assertFalse(UserIdentifierIndex.sameIdentifier(null, null));
+    }
+
+    private DocumentReference entry(String documentId) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getId()).thenReturn(documentId);
+        when(reference.create(anyMap())).thenAnswer(invocation -> create(documentId, invocation.getArgument(0)));
+        return reference;
+    }
+
+    private ApiFuture<WriteResult> create(String documentId, Map<String, Object> data) {
+        if (unavailableEntries.contains(documentId)) {
+            return ApiFutures.immediateFailedFuture(new IllegalStateException("unavailable"));
+        }
+        if (entries.putIfAbsent(documentId, data) != null) {
+            return ApiFutures.immediateFailedFuture(
+                new AlreadyExistsException("exists", null, mock(StatusCode.class), false));
+        }
+        return ApiFutures.immediateFuture(mock(WriteResult.class));
+    }
+
+    private String userIdOf(String identifier) {
+        String documentId = URLEncoder.encode(identifier, StandardCharsets.UTF_8).replace("_", "%5F");
+        Map<String, Object> entry = entries.get(documentId);
+        return entry != null ? (String) entry.get("userId") : null;
+    }
+
+    private void users(QueryDocumentSnapshot... documents) {
+        users(List.of(documents));
+    }
+
+    private void users(List<QueryDocumentSnapshot> documents) {
+        CollectionReference users = mock(CollectionReference.class);
+        QuerySnapshot snapshot = mock(QuerySnapshot.class);
+        when(snapshot.getDocuments()).thenReturn(new ArrayList<>(documents));
+        when(users.get()).thenReturn(ApiFutures.immediateFuture(snapshot));
+        when(firestore.collection("users")).thenReturn(users);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> status() {
+        ArgumentCaptor<Map<String, Object>> status = ArgumentCaptor.forClass(Map.class);
+        verify(firestore.collection("indexStatus").document("userIdentifiers")).set(status.capture());
+        return status.getValue();
+    }
+
+    private static QueryDocumentSnapshot user(String userId, String email, String username, Integer createdAtSeconds) {
+        User user = new User();
+        user.setUserId(userId);
+        user.setEmail(email);
+        user.setUsername(username);
+        if (createdAtSeconds != null) {
+            user.setCreatedAt(Timestamp.ofTimeSecondsAndNanos(createdAtSeconds, 0));
+        }
+        QueryDocumentSnapshot document = mock(QueryDocumentSnapshot.class);
+        when(document.getId()).thenReturn(userId);
+        when(document.toObject(User.class)).thenReturn(user);
+        return document;
+    }
+}
@@ -0,0 +1,65 @@
+package com.capstone.GrabTrash.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WatermarkTrackerTest {
+
+    private static final long START = 1_000_000L;
+
+    @Test
+    void watermarkStartsAtTheResumePoint() {
+        WatermarkTracker tracker = new WatermarkTracker(new Date(START));
+
+        assertEquals(new Date(START), tracker.current());
+    }
+
+    @Test
+    void completedChangesMoveTheWatermark() {
+        WatermarkTracker tracker = new WatermarkTracker(new Date(START));
+
+        tracker.complete(tracker.begin(new Date(START + 10)));
+        tracker.complete(tracker.begin(new Date(START + 20)));
+
+        assertEquals(new Date(START + 20), tracker.current());
+    }
+
+    @Test
+    void earlierChangeStillInFlightHoldsTheWatermarkBack() {
+        WatermarkTracker tracker = new WatermarkTracker(new Date(START));
+        long slow = tracker.begin(new Date(START + 10));
+        long fast = tracker.begin(new Date(START + 20));
+
+        tracker.complete(fast);
+        // Resuming from here must still deliver the change at START + 10
+        assertEquals(new Date(START + 9), tracker.current());
+
+        tracker.complete(slow);
+        assertEquals(new Date(START + 20), tracker.current());
+    }
+
+    @Test
+    void watermarkNeverMovesBack() {
+        WatermarkTracker tracker = new WatermarkTracker(new Date(START + 100));
+
+        // A change older than the resume point, e.g. redelivered after a restart
+        tracker.complete(tracker.begin(new Date(START + 50)));
+
+        assertEquals(new Date(START + 100), tracker.current());
+    }
+
+    @Test
+    void changesWithoutATimestampDoNotAffectTheWatermark() {
+        WatermarkTracker tracker = new WatermarkTracker(new Date(START));
+        long untimed = tracker.begin(null);
+
+        tracker.complete(tracker.begin(new Date(START + 10)));
+        assertEquals(new Date(START + 10), tracker.current());
+
+        tracker.complete(untimed);
+        assertEquals(new Date(START + 10), tracker.current());
+    }
+}